@@ -0,0 +1,56 @@
+package es.ucm.fdi.control.evbuild;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.launcher.BenchmarkScenarios;
+
+/**
+ * Mide la construcción de los {@code Event}s de todas las
+ * secciones de un escenario de {@link BenchmarkScenarios#grid},
+ * como hace {@code Controller.pushEvents} al cargar un fichero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class EventParserBenchmark {
+
+	@Param({ "100", "2500", "10000" })
+	public int junctions;
+
+	@Param({ "1", "10" })
+	public int vehiclesPerRoad;
+
+	private List<IniSection> sections;
+
+	private EventParser parser = new EventParser();
+
+	@Setup
+	public void setUp() {
+		sections = BenchmarkScenarios.grid(junctions, vehiclesPerRoad).getSections();
+	}
+
+	@Benchmark
+	public void parse(Blackhole events) {
+		for (IniSection section : sections) {
+			events.consume(parser.parse(section));
+		}
+	}
+}
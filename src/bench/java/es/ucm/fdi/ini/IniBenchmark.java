@@ -0,0 +1,83 @@
+package es.ucm.fdi.ini;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.ucm.fdi.launcher.BenchmarkScenarios;
+
+/**
+ * Mide la lectura y la escritura de un fichero de eventos
+ * de {@link BenchmarkScenarios#grid}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class IniBenchmark {
+
+	/**
+	 * Salida que sólo cuenta los bytes escritos.
+	 */
+	private static class CountingStream extends OutputStream {
+
+		private long count = 0;
+
+		@Override
+		public void write(int b) {
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			count += len;
+		}
+	}
+
+	@Param({ "100", "2500", "10000" })
+	public int junctions;
+
+	@Param({ "1", "10" })
+	public int vehiclesPerRoad;
+
+	private Ini ini;
+
+	private byte[] file;
+
+	@Setup
+	public void setUp() throws IOException {
+		ini = BenchmarkScenarios.grid(junctions, vehiclesPerRoad);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		ini.store(bytes);
+		file = bytes.toByteArray();
+	}
+
+	@Benchmark
+	public Ini load() throws IOException {
+		return new Ini(new ByteArrayInputStream(file));
+	}
+
+	@Benchmark
+	public long store() throws IOException {
+		CountingStream out = new CountingStream();
+		ini.store(out);
+		return out.count;
+	}
+}
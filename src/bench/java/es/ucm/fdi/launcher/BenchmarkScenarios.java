@@ -0,0 +1,102 @@
+package es.ucm.fdi.launcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+
+/**
+ * Escenarios comunes a los benchmarks: una cuadrícula de
+ * {@link NetworkGenerator} con un número fijo de {@code Vehicle}s
+ * por {@code Road}, escritos uno a uno en vez de con generadores
+ * de demanda para que el tamaño del fichero crezca con ellos.
+ * <p>
+ * Cada {@code Vehicle} empieza en su {@code Road} y sigue un
+ * camino aleatorio de {@link #TRIP_ROADS} {@code Road}s sin dar
+ * la vuelta, de forma que la red sigue ocupada varias decenas de
+ * ticks. Con los mismos parámetros se obtiene siempre el mismo
+ * escenario.
+ * </p>
+ */
+public class BenchmarkScenarios {
+
+	/**
+	 * Número de {@code Road}s del itinerario de cada {@code Vehicle}.
+	 */
+	public static final int TRIP_ROADS = 8;
+
+	private BenchmarkScenarios() {
+		/*NADA*/
+	}
+
+	/**
+	 * Cuadrícula de unas {@code junctions} {@code Junction}s con
+	 * {@code vehiclesPerRoad} {@code Vehicle}s en cada {@code Road}.
+	 *
+	 * @param junctions 		- número aproximado de {@code Junction}s
+	 * @param vehiclesPerRoad 	- {@code Vehicle}s que empiezan
+	 * 							en cada {@code Road}
+	 *
+	 * @return 	{@code Ini} con el escenario
+	 */
+	public static Ini grid(int junctions, int vehiclesPerRoad) {
+		Ini ini = NetworkGenerator.fromSpec(
+			"grid:junctions=" + junctions + ",vehicles=0,seed=1").toIni();
+
+		// Salidas de cada Junction.
+		List<String[]> roads = new ArrayList<>();
+		Map<String, List<String>> exits = new HashMap<>();
+		for (IniSection section : ini.getSections()) {
+			if ( section.getTag().equals("new_road") ) {
+				String src = section.getValue("src");
+				String dest = section.getValue("dest");
+				roads.add(new String[] { src, dest });
+				exits.computeIfAbsent(src, k -> new ArrayList<>()).add(dest);
+			}
+		}
+
+		Random random = new Random(1);
+		int id = 0;
+		for (String[] road : roads) {
+			for (int i = 0; i < vehiclesPerRoad; ++i) {
+				IniSection vehicle = new IniSection("new_vehicle");
+				vehicle.setValue("time", 0);
+				vehicle.setValue("id", "v" + id++);
+				vehicle.setValue("itinerary", walk(road, exits, random));
+				vehicle.setValue("max_speed", 30 + random.nextInt(61));
+				ini.addsection(vehicle);
+			}
+		}
+
+		return ini;
+	}
+
+	/**
+	 * Camino aleatorio que empieza por {@code first} y no vuelve
+	 * por la {@code Road} por la que acaba de llegar.
+	 */
+	private static String walk(String[] first, Map<String, List<String>> exits,
+			Random random) {
+		StringBuilder itinerary = new StringBuilder();
+		itinerary.append(first[0]).append(',').append(first[1]);
+
+		String previous = first[0], current = first[1];
+		for (int r = 1; r < TRIP_ROADS; ++r) {
+			List<String> next = exits.get(current);
+			String chosen = next.get(random.nextInt(next.size()));
+			if ( chosen.equals(previous) && next.size() > 1 ) {
+				chosen = next.get((next.indexOf(chosen) + 1) % next.size());
+			}
+
+			itinerary.append(',').append(chosen);
+			previous = current;
+			current = chosen;
+		}
+
+		return itinerary.toString();
+	}
+}
@@ -0,0 +1,116 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide el avance de cada tipo de {@code Junction} vaciando sus
+ * colas de espera.
+ * <p>
+ * Antes de cada invocación se construye una {@code Junction} con
+ * {@code incomingRoads} {@code Road}s entrantes, cada una con
+ * {@code vehiclesPerRoad} {@code Vehicle}s en la cola, y una
+ * {@code Road} de salida. La invocación llama a {@code proceed}
+ * hasta que han cruzado todos, así que el resultado es el tiempo
+ * de vaciado, no el de un tick.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class JunctionBenchmark {
+
+	/**
+	 * Tipo de {@code Junction}: la básica, {@code rr} o {@code mc}.
+	 */
+	@Param({ "junction", "rr", "mc" })
+	public String junctionType;
+
+	@Param({ "2", "4", "8" })
+	public int incomingRoads;
+
+	@Param({ "100", "1000" })
+	public int vehiclesPerRoad;
+
+	private Junction junction;
+
+	private List<Road> incoming;
+
+	@Setup(Level.Invocation)
+	public void setUp() throws Exception {
+		VehicleStore store = new VehicleStore();
+
+		switch (junctionType) {
+		case "rr":
+			junction = new RobinJunction("j", 1, 5);
+			break;
+		case "mc":
+			junction = new CrowdedJunction("j");
+			break;
+		default:
+			junction = new Junction("j");
+			break;
+		}
+
+		Junction dest = new Junction("d");
+		Road out = new Road("out", 1_000_000_000, 90, junction, dest);
+		store.registerRoad(out);
+
+		incoming = new ArrayList<>();
+		for (int r = 0; r < incomingRoads; ++r) {
+			Junction src = new Junction("s" + r);
+			Road in = new Road("in" + r, 1, 10, src, junction);
+			store.registerRoad(in);
+			incoming.add(in);
+
+			ArrayList<Junction> trip = new ArrayList<>();
+			trip.add(src);
+			trip.add(junction);
+			trip.add(dest);
+			Road[] route = { in, out };
+
+			for (int i = 0; i < vehiclesPerRoad; ++i) {
+				new Vehicle("v" + r + "_" + i, trip, route, 50, store);
+			}
+
+			// Todos llegan al final en el primer tick.
+			in.proceed();
+		}
+	}
+
+	@Benchmark
+	public int drainQueues() {
+		int ticks = 0;
+		while ( ! allEmpty() ) {
+			junction.proceed();
+			ticks++;
+		}
+		return ticks;
+	}
+
+	private boolean allEmpty() {
+		for (Road in : incoming) {
+			if ( ! in.noVehiclesWaiting() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
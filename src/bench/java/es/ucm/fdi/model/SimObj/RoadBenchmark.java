@@ -0,0 +1,107 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Mide el avance de una {@code Road} y el cálculo de velocidades
+ * de cada tipo de {@code Road} según los {@code Vehicle}s que
+ * circulan por ella.
+ * <p>
+ * La {@code Road} es lo bastante larga para que ningún
+ * {@code Vehicle} llegue al final durante una iteración, y se
+ * reconstruye antes de cada una para que todas partan del mismo
+ * estado. Uno de cada diez {@code Vehicle}s está averiado y no se
+ * mueve, de forma que los demás lo adelantan.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RoadBenchmark {
+
+	/**
+	 * Tipo de {@code Road}: la básica, {@code lanes} o {@code dirt}.
+	 */
+	@Param({ "road", "lanes", "dirt" })
+	public String roadType;
+
+	@Param({ "10", "100", "1000" })
+	public int vehiclesPerRoad;
+
+	private Road road;
+
+	private ArrayList<Vehicle> onRoad;
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		VehicleStore store = new VehicleStore();
+		Junction from = new Junction("j1");
+		Junction to = new Junction("j2");
+
+		switch (roadType) {
+		case "lanes":
+			road = new HighwayRoad("r1", 1_000_000_000, 90, from, to, 3);
+			break;
+		case "dirt":
+			road = new DirtRoad("r1", 1_000_000_000, 90, from, to);
+			break;
+		default:
+			road = new Road("r1", 1_000_000_000, 90, from, to);
+			break;
+		}
+		store.registerRoad(road);
+
+		ArrayList<Junction> trip = new ArrayList<>();
+		trip.add(from);
+		trip.add(to);
+		Road[] route = { road };
+
+		Random random = new Random(1);
+		for (int i = 0; i < vehiclesPerRoad; ++i) {
+			Vehicle v = new Vehicle("v" + i, trip, route, 30 + random.nextInt(61), store);
+			if (i % 10 == 9) {
+				v.setBreakdownTime(Integer.MAX_VALUE / 2);
+			}
+		}
+
+		onRoad = new ArrayList<>(road.getRoadVehicles());
+	}
+
+	/**
+	 * Un tick de la {@code Road}: velocidades, avance
+	 * y reordenación tras los adelantamientos.
+	 */
+	@Benchmark
+	public Road proceed() {
+		road.proceed();
+		return road;
+	}
+
+	/**
+	 * Sólo el cálculo de velocidades, que cada
+	 * tipo de {@code Road} redefine.
+	 */
+	@Benchmark
+	public ArrayList<Vehicle> speedModifier() {
+		road.vehicleSpeedModifier(onRoad);
+		return onRoad;
+	}
+}
@@ -0,0 +1,96 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara la reordenación de los {@code Vehicle}s de una
+ * {@code Road} tras un avance con {@link Road#repairOrder(List)},
+ * que sólo recoloca los que han adelantado, con la ordenación
+ * completa por {@link Road#BY_LOCATION} de cada tick.
+ * <p>
+ * Los {@code Vehicle}s parten ordenados y separados 50 unidades,
+ * y avanzan un tick con velocidades entre 30 y 90; uno de cada
+ * diez está averiado y no se mueve, de forma que los de detrás
+ * lo adelantan. Antes de cada invocación se copia la lista tal
+ * y como queda tras ese avance.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RoadOrderBenchmark {
+
+	/**
+	 * Reordenación: {@code repair} (por inserción, sólo
+	 * donde hay adelantamientos) o {@code sort} (completa).
+	 */
+	@Param({ "repair", "sort" })
+	public String order;
+
+	@Param({ "1000", "10000", "100000" })
+	public int vehicles;
+
+	private List<Vehicle> advanced;
+
+	private List<Vehicle> toOrder;
+
+	@Setup(Level.Trial)
+	public void buildRoad() throws Exception {
+		VehicleStore store = new VehicleStore();
+		Junction j1 = new Junction("j1");
+		Junction j2 = new Junction("j2");
+		Road road = new Road("r1", Integer.MAX_VALUE, 90, j1, j2);
+		store.registerRoad(road);
+
+		ArrayList<Junction> trip = new ArrayList<>();
+		trip.add(j1);
+		trip.add(j2);
+		Road[] route = { road };
+
+		// Orden de la Road: el primero es el más adelantado.
+		Random random = new Random(1);
+		advanced = new ArrayList<>(vehicles);
+		for (int i = 0; i < vehicles; ++i) {
+			Vehicle v = new Vehicle("v" + i, trip, route, 90, store);
+			int location = 50 * (vehicles - i);
+			int speed = (i % 10 == 9) ? 0 : 30 + random.nextInt(61);
+			store.setLocation(v.handle, location + speed);
+			advanced.add(v);
+		}
+	}
+
+	@Setup(Level.Invocation)
+	public void copy() {
+		toOrder = new ArrayList<>(advanced);
+	}
+
+	@Benchmark
+	public List<Vehicle> reorder() {
+		if ( order.equals("repair") ) {
+			Road.repairOrder(toOrder);
+		}
+		else {
+			toOrder.sort(Road.BY_LOCATION);
+		}
+		return toOrder;
+	}
+}
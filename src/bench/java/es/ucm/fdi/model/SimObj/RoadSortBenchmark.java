@@ -0,0 +1,142 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compara el coste de ordenar los {@code Vehicle}s de una
+ * {@code Road} congestionada (todos en la misma localización)
+ * con el desempate antiguo, que recorría el registro de
+ * entradas, y con el número de orden de entrada.
+ * <p>
+ * Antes de cada invocación se invierte la lista de
+ * {@code Vehicle}s, el peor caso para el registro de entradas.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class RoadSortBenchmark {
+
+	/**
+	 * Desempate antiguo: búsqueda lineal en el registro de entradas.
+	 */
+	private static class CompByEntryRecord implements Comparator<Vehicle> {
+
+		private Deque<Vehicle> entries;
+
+		public CompByEntryRecord(Deque<Vehicle> entryRecord) {
+			entries = entryRecord;
+		}
+
+		@Override
+		public int compare(Vehicle v1, Vehicle v2) {
+			int dist = v2.getLocation() - v1.getLocation();
+
+			if (dist != 0) {
+				return dist;
+			}
+			for (Vehicle v : entries) {
+				if (v == v1) {
+					return -1;
+				}
+				if (v == v2) {
+					return 1;
+				}
+			}
+			throw new IllegalStateException("Vehicle not recorded.");
+		}
+	}
+
+	/**
+	 * Desempate por número de orden de entrada.
+	 */
+	private static class CompByEntrySeq implements Comparator<Vehicle> {
+
+		@Override
+		public int compare(Vehicle v1, Vehicle v2) {
+			int dist = v2.getLocation() - v1.getLocation();
+
+			if (dist != 0) {
+				return dist;
+			}
+			return Long.compare(v1.getEntrySeq(), v2.getEntrySeq());
+		}
+	}
+
+	/**
+	 * Desempate: {@code record} (registro de entradas)
+	 * o {@code seq} (número de orden de entrada).
+	 */
+	@Param({ "record", "seq" })
+	public String tieBreak;
+
+	@Param({ "1000", "10000" })
+	public int vehicles;
+
+	private List<Vehicle> entered;
+
+	private Comparator<Vehicle> comparator;
+
+	private List<Vehicle> toSort;
+
+	@Setup(Level.Trial)
+	public void buildRoad() throws Exception {
+		// Carretera con todos los vehículos en la misma localización.
+		VehicleStore store = new VehicleStore();
+		Junction j1 = new Junction("j1");
+		Junction j2 = new Junction("j2");
+		Road road = new Road("r1", 1000, 10, j1, j2);
+		store.registerRoad(road);
+
+		ArrayList<Junction> trip = new ArrayList<>();
+		trip.add(j1);
+		trip.add(j2);
+		Road[] route = { road };
+
+		Deque<Vehicle> entryRecord = new ArrayDeque<>();
+		entered = new ArrayList<>();
+		for (int i = 0; i < vehicles; ++i) {
+			Vehicle v = new Vehicle("v" + i, trip, route, 10, store);
+			entryRecord.add(v);
+			entered.add(v);
+		}
+
+		comparator = tieBreak.equals("record") ? 
+			new CompByEntryRecord(entryRecord) : new CompByEntrySeq();
+	}
+
+	@Setup(Level.Invocation)
+	public void reverse() {
+		toSort = new ArrayList<>(entered.size());
+		for (int i = entered.size() - 1; i >= 0; --i) {
+			toSort.add(entered.get(i));
+		}
+	}
+
+	@Benchmark
+	public List<Vehicle> sort() {
+		toSort.sort(comparator);
+		return toSort;
+	}
+}
@@ -0,0 +1,136 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.launcher.BenchmarkScenarios;
+
+/**
+ * Mide los ticks de un escenario de {@link BenchmarkScenarios#grid}
+ * con el mapa dividido en {@code regions} regiones, cada una
+ * avanzada por su propio hilo.
+ * <p>
+ * Como en {@link TickBenchmark}, cada iteración parte de la
+ * simulación recién cargada y mide {@link #TICKS} ticks sin
+ * informes. Al terminar, el informe del tick siguiente debe
+ * coincidir con el de la simulación sin dividir; si no, el
+ * benchmark falla.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = RegionScalingBenchmark.TICKS)
+@Measurement(iterations = 10, batchSize = RegionScalingBenchmark.TICKS)
+@Fork(2)
+public class RegionScalingBenchmark {
+
+	/**
+	 * Ticks medidos en cada iteración.
+	 */
+	static final int TICKS = 20;
+
+	@Param({ "2500", "10000" })
+	public int junctions;
+
+	@Param({ "10" })
+	public int vehiclesPerRoad;
+
+	@Param({ "1", "2", "4", "8", "16", "32", "64" })
+	public int regions;
+
+	private Ini scenario;
+
+	/**
+	 * Suma de comprobación del informe de la
+	 * simulación sin dividir tras {@link #TICKS} ticks.
+	 */
+	private long expected;
+
+	private Controller control;
+
+	@Setup(Level.Trial)
+	public void loadScenario() throws Exception {
+		scenario = BenchmarkScenarios.grid(junctions, vehiclesPerRoad);
+
+		try ( Controller sequential = load(1) ) {
+			sequential.getSimulator().execute(TICKS, null);
+			expected = finalReport(sequential.getSimulator());
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		control = load(regions);
+	}
+
+	@TearDown(Level.Iteration)
+	public void checkReport() throws IOException {
+		try {
+			if ( finalReport(control.getSimulator()) != expected ) {
+				throw new IllegalStateException(
+					"Reports with " + regions + " regions differ.");
+			}
+		}
+		finally {
+			control.close();
+		}
+	}
+
+	@Benchmark
+	public TrafficSimulation tick() throws IOException {
+		TrafficSimulation simulation = control.getSimulator();
+		simulation.execute(1, null);
+		return simulation;
+	}
+
+	/**
+	 * Carga el escenario, con los objetos ya
+	 * creados en el tick 0.
+	 */
+	private Controller load(int regions) throws Exception {
+		Controller loaded = new Controller(scenario, null, 0);
+		loaded.setRegionWorkers(regions);
+		loaded.pushEvents();
+		loaded.getSimulator().execute(1, null);
+		return loaded;
+	}
+
+	/**
+	 * Avanza un tick más y devuelve la suma de
+	 * comprobación de su informe.
+	 */
+	private static long finalReport(TrafficSimulation simulation) throws IOException {
+		CRC32 crc = new CRC32();
+		simulation.execute(1, new OutputStream() {
+			@Override
+			public void write(int b) {
+				crc.update(b);
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+				crc.update(b, off, len);
+			}
+		});
+		return crc.getValue();
+	}
+}
@@ -0,0 +1,98 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.launcher.BenchmarkScenarios;
+
+/**
+ * Mide un tick completo de {@link TrafficSimulation#execute}
+ * sobre un escenario de {@link BenchmarkScenarios#grid}.
+ * <p>
+ * La red se vacía según los {@code Vehicle}s llegan a su destino,
+ * así que cada iteración parte de la simulación recién cargada
+ * (con los objetos ya creados en el tick 0) y mide los mismos
+ * {@link #TICKS} ticks. El resultado es el tiempo de esos ticks,
+ * no el de uno solo.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, batchSize = TickBenchmark.TICKS)
+@Measurement(iterations = 10, batchSize = TickBenchmark.TICKS)
+@Fork(2)
+public class TickBenchmark {
+
+	/**
+	 * Ticks medidos en cada iteración.
+	 */
+	static final int TICKS = 20;
+
+	/**
+	 * Salida que descarta los informes.
+	 */
+	private static final OutputStream DISCARD = new OutputStream() {
+		@Override
+		public void write(int b) {
+			/*NADA*/
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			/*NADA*/
+		}
+	};
+
+	@Param({ "100", "2500", "10000" })
+	public int junctions;
+
+	@Param({ "1", "10" })
+	public int vehiclesPerRoad;
+
+	/**
+	 * Si se generan los informes de cada tick.
+	 */
+	@Param({ "false", "true" })
+	public boolean reports;
+
+	private Ini scenario;
+
+	private TrafficSimulation simulation;
+
+	@Setup(Level.Trial)
+	public void loadScenario() {
+		scenario = BenchmarkScenarios.grid(junctions, vehiclesPerRoad);
+	}
+
+	@Setup(Level.Iteration)
+	public void setUp() throws Exception {
+		Controller control = new Controller(scenario, null, 0);
+		control.pushEvents();
+
+		simulation = control.getSimulator();
+		simulation.execute(1, null);
+	}
+
+	@Benchmark
+	public TrafficSimulation tick() throws IOException {
+		simulation.execute(1, reports ? DISCARD : null);
+		return simulation;
+	}
+}
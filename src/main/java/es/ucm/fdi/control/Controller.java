@@ -1,17 +1,24 @@
 package es.ucm.fdi.control;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.commons.cli.ParseException;
 
 import es.ucm.fdi.control.evbuild.EventParser;
 import es.ucm.fdi.ini.*;
 import es.ucm.fdi.model.events.Event;
+import es.ucm.fdi.model.simulation.FlightEvents;
 import es.ucm.fdi.model.simulation.SimulationException;
+import es.ucm.fdi.model.simulation.StatsCollector;
+import es.ucm.fdi.model.simulation.TickMetrics;
 import es.ucm.fdi.model.simulation.TrafficSimulation;
 import es.ucm.fdi.model.simulation.TrafficSimulation.*;
+import es.ucm.fdi.util.EventType;
 
 /**
  * <p>
@@ -26,7 +33,7 @@ import es.ucm.fdi.model.simulation.TrafficSimulation.*;
  * de salida {@link #outStream}.
  * </p>
  */
-public class Controller {
+public class Controller implements AutoCloseable {
     
     // ** ATRIBUTOS ** //
     /**
@@ -142,7 +149,7 @@ public class Controller {
         }
         
         BatchListener error = new BatchListener();
-        simulator.addSimulatorListener(error);
+        simulator.addSimulatorListener(error, EventType.ERROR);
         
         // 2 // 
         // Se ejecuta el simulador el número de pasos batchTimeLimit
@@ -159,6 +166,36 @@ public class Controller {
 
 
 
+    /**
+     * Método de ejecución en modo {@code batch} que 
+     * reanuda la simulación desde un punto de control
+     * y la ejecuta hasta que el tiempo alcanza 
+     * {@code batchTimeLimit}.
+     * 
+     * @param checkpoint    - flujo con el punto de control
+     * 
+     * @throws SimulationException              if an error ocurred during 
+     *                                          the execution of events in 
+     *                                          the simulation
+     * @throws IOException                      if the checkpoint is not 
+     *                                          valid or an error ocurred 
+     *                                          during report generation
+     */
+    public void resumeBatch(InputStream checkpoint) 
+            throws SimulationException, IOException {
+
+        simulator.loadCheckpoint(checkpoint);
+
+        BatchListener error = new BatchListener();
+        simulator.addSimulatorListener(error, EventType.ERROR);
+
+        simulate(batchTimeLimit - simulator.getCurrentTime());
+    }
+
+
+
+
+
     // ** MÉTODOS DE SIMULACIÓN ** //
     /**
      * Carga los eventos del archivo de entrada
@@ -174,27 +211,21 @@ public class Controller {
             throws ParseException, IllegalArgumentException {
         
         EventParser parser = new EventParser();
+        List<Event> parsed = new ArrayList<>();
 
         for ( IniSection sec : iniInput.getSections() ) {
-        	Event ev;
-            
             try {
-        		ev = parser.parse(sec);
-                
+        		parsed.add( parser.parse(sec) );
         	}
             catch (IllegalArgumentException e) {
             	throw new ParseException(
                     "Event parsing failed:\n" + 
                     		e.getMessage());
             }
-
-            try {
-                simulator.pushEvent(ev);   
-            }
-            catch (IllegalArgumentException e) {
-                throw e; // Illegal time
-            }            
         }
+
+        // Un único aviso para todo el archivo.
+        simulator.pushEvents(parsed);
     }
 
     /**
@@ -244,6 +275,123 @@ public class Controller {
 		}
     }
 
+    /**
+     * Fija el número de hilos con los que el
+     * simulador avanza las {@code Road}s.
+     * 
+     * @param workers   - número de hilos (1 para
+     *                  ejecución secuencial)
+     */
+    public void setRoadWorkers(int workers) {
+        simulator.setRoadWorkers(workers);
+    }
+
+    /**
+     * Fija el número de regiones en que el simulador 
+     * divide el mapa, cada una avanzada por un hilo.
+     * 
+     * @param workers   - número de regiones (1 para
+     *                  no dividir el mapa)
+     */
+    public void setRegionWorkers(int workers) {
+        simulator.setRegionWorkers(workers);
+    }
+
+    /**
+     * Fija el número máximo de {@code Road}s que avanza
+     * cada hilo de {@link #setRoadWorkers(int)}.
+     * 
+     * @param size      - {@code Road}s por tarea
+     * 
+     * @throws IllegalArgumentException     if size is not positive
+     */
+    public void setRoadBatchSize(int size) {
+        simulator.setRoadBatchSize(size);
+    }
+
+    /**
+     * Para los hilos de trabajo del simulador.
+     */
+    @Override
+    public void close() {
+        simulator.close();
+    }
+
+    /**
+     * Activa el recálculo de rutas según la congestión
+     * en el simulador.
+     * 
+     * @param period    - ticks entre dos tomas de costes
+     *                  (0 para desactivarlo)
+     */
+    public void setReroutePeriod(int period) {
+        simulator.setReroutePeriod(period);
+    }
+
+    /**
+     * Fija cuántos costes mínimos conserva a la vez
+     * el recálculo de rutas del simulador.
+     * 
+     * @param budget    - costes mínimos (uno por 
+     *                  {@code Junction} y destino)
+     * 
+     * @throws IllegalArgumentException     if budget is not positive
+     */
+    public void setRerouteBudget(int budget) {
+        simulator.setRerouteBudget(budget);
+    }
+
+    /**
+     * Activa el autoguardado periódico de puntos
+     * de control del simulador.
+     * 
+     * @param file      - fichero del punto de control
+     * @param interval  - ticks entre puntos de control
+     */
+    public void setAutosave(File file, int interval) {
+        simulator.setAutosave(file, interval);
+    }
+
+    /**
+     * Fija el modo de avance rápido del simulador
+     * en los periodos en reposo.
+     * 
+     * @param mode  - modo de avance rápido
+     */
+    public void setFastForward(FastForward mode) {
+        simulator.setFastForward(mode);
+    }
+
+    /**
+     * Activa la medición de las fases de cada tick
+     * del simulador. Con {@code null} se desactiva.
+     * 
+     * @param metrics   - acumuladores de la medición
+     */
+    public void setMetrics(TickMetrics metrics) {
+        simulator.setMetrics(metrics);
+    }
+
+    /**
+     * Activa la recogida de estadísticas del mapa al final
+     * de cada tick. Con {@code null} se desactiva.
+     * 
+     * @param stats     - series de estadísticas
+     */
+    public void setStats(StatsCollector stats) {
+        simulator.setStats(stats);
+    }
+
+    /**
+     * Activa la emisión de eventos de Java Flight Recorder
+     * en el bucle del simulador. Con {@code null} se desactiva.
+     * 
+     * @param events    - emisor de los eventos
+     */
+    public void setFlightEvents(FlightEvents events) {
+        simulator.setFlightEvents(events);
+    }
+
     /**
      * Devuelve el tiempo actual de ejecución
      * del simulador.
@@ -35,7 +35,11 @@ public class EventParser {
 		// Vehículos
 		new NewVehicleBuilder(),
 		new NewCarVehicleBuilder(),
-		new NewBikeVehicleBuilder()
+		new NewBikeVehicleBuilder(),
+		new NewODVehicleBuilder(),
+
+		// Demanda
+		new NewDemandBuilder()
 	};
 
 
@@ -0,0 +1,337 @@
+package es.ucm.fdi.control.evbuild;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.events.Event;
+import es.ucm.fdi.model.events.NewDemand;
+import es.ucm.fdi.model.simulation.DemandGenerator;
+import es.ucm.fdi.model.simulation.RouteCache;
+
+/**
+ * Clase que construye un {@code Event}
+ * {@link NewDemand} utilizado para poner en marcha
+ * un generador de demanda. Hereda de {@link EventBuilder}.
+ */
+public class NewDemandBuilder extends EventBuilder {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Etiqueta utilizada en las {@code IniSection}s
+	 * para representar este tipo de eventos.
+	 */
+	private static final String SECTION_TAG = "new_demand";
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link NewDemandBuilder} que
+	 * pasa el atributo {@code SECTION_TAG} al
+	 * constructor de la superclase.
+	 */
+	public NewDemandBuilder() {
+		super(SECTION_TAG);
+	}
+
+
+
+
+	// ** MÉTODO DE PARSE ** //
+	/**
+	 * Método de parsing que comprueba si la
+	 * {@code IniSection} pasada como argumento
+	 * representa un evento {@code NewDemand}
+	 * y si sus parámetros son correctos.
+	 * <p>
+	 * Claves de la sección:
+	 * </p>
+	 * <ul>
+	 * <li>{@code time}, {@code id}, {@code max_speed}: como en
+	 * {@code new_vehicle}; {@code id} es el prefijo de los ids
+	 * de los {@code Vehicle}s.</li>
+	 * <li>{@code rate}: {@code Vehicle}s por tick, o lista de
+	 * tasas que se van turnando cada {@code rate_interval}
+	 * ticks (1 por defecto).</li>
+	 * <li>{@code end}, {@code max_vehicles}: opcionales, último
+	 * tick y número máximo de {@code Vehicle}s.</li>
+	 * <li>{@code itineraries}: itinerarios separados por comas,
+	 * con las {@code Junction}s separadas por {@code :}.</li>
+	 * <li>{@code od}: pares {@code origen:destino} separados por
+	 * comas, con {@code route_by} como en {@code new_od_vehicle}.
+	 * Debe haber al menos un itinerario o un par.</li>
+	 * <li>{@code mix}: pesos {@code tipo:peso} de {@code vehicle},
+	 * {@code car} y {@code bike} ({@code vehicle:1} por defecto).
+	 * Si hay coches, hacen falta {@code resistance},
+	 * {@code fault_probability} y {@code max_fault_duration}.</li>
+	 * <li>{@code seed}: semilla, opcional.</li>
+	 * </ul>
+	 *
+	 * @param ini -	{@code IniSection} a parsear
+	 *
+	 * @return 		{@code NewDemand} event or
+	 * 				{@code null} if parsing failed
+	 *
+	 * @throws IllegalArgumentException if {@code ini} represents
+	 *	 								the searched event but its
+	 *									arguments are not valid
+	 */
+	@Override
+	Event parse(IniSection ini)
+			throws IllegalArgumentException {
+
+		// Se comprueba que es un NewDemand
+		if ( iniNameMatch(ini) && typeMatch(ini, null) ) {
+			String id;
+			int time = 0, end = Integer.MAX_VALUE;
+			int maxVehicles = Integer.MAX_VALUE;
+			int maxSpeed, rateInterval = 1;
+			int resistance = 1, faultDuration = 1;
+			double faultyChance = 0;
+			double[] rates, mix;
+			long seed;
+			RouteCache.Metric metric = RouteCache.Metric.LENGTH;
+
+			// ID ok?
+			try {
+				id = parseID(ini, "id");
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " in new demand."
+				);
+			}
+
+			try {
+				// TIME ok?
+				if ( existsTimeKey(ini) ) {
+					time = parseNoNegativeInt(ini, "time");
+				}
+
+				// END/MAX_VEHICLES ok?
+				if ( ini.getValue("end") != null ) {
+					end = parseNoNegativeInt(ini, "end");
+				}
+				if ( ini.getValue("max_vehicles") != null ) {
+					maxVehicles = parsePositiveInt(ini, "max_vehicles");
+				}
+
+				// MAXSPEED ok?
+				maxSpeed = parseNoNegativeInt(ini, "max_speed");
+
+				// RATE ok?
+				rates = parseWeights(ini.getValue("rate"), "rate");
+				if ( ini.getValue("rate_interval") != null ) {
+					rateInterval = parsePositiveInt(ini, "rate_interval");
+				}
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " in demand with id " + id
+				);
+			}
+			if (end < time) {
+				throw new IllegalArgumentException(
+					"End before time in demand with id " + id
+				);
+			}
+
+			// ITINERARIES/OD ok?
+			List<List<String>> itineraries, odPairs;
+			try {
+				itineraries = parseRoutes(ini.getValue("itineraries"), 2, -1);
+				odPairs = parseRoutes(ini.getValue("od"), 2, 2);
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " when reading routes " +
+					"in demand with id " + id
+				);
+			}
+			if ( itineraries.isEmpty() && odPairs.isEmpty() ) {
+				throw new IllegalArgumentException(
+					"No itineraries or od pairs in demand with id " + id
+				);
+			}
+			for (List<String> pair : odPairs) {
+				if ( pair.get(0).equals(pair.get(1)) ) {
+					throw new IllegalArgumentException(
+						"Same origin and destination in demand with id " + id
+					);
+				}
+			}
+
+			// ROUTE_BY ok?
+			String by = ini.getValue("route_by");
+			if (by != null) {
+				try {
+					metric = RouteCache.Metric.valueOf(by.toUpperCase());
+				}
+				catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(
+						"Illegal route_by: " + by + " in demand with id " + id
+					);
+				}
+			}
+
+			// MIX ok?
+			try {
+				mix = parseMix(ini.getValue("mix"));
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " when reading mix " +
+					"in demand with id " + id
+				);
+			}
+
+			// Parámetros de los coches, si los hay.
+			if ( mix[DemandGenerator.Kind.CAR.ordinal()] > 0 ) {
+				try {
+					resistance = parsePositiveInt(ini, "resistance");
+					faultyChance = parseProbability(ini, "fault_probability");
+					faultDuration = parsePositiveInt(ini, "max_fault_duration");
+				}
+				catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(
+						e.getMessage() + " when reading car parameters " +
+						"in demand with id " + id
+					);
+				}
+			}
+
+			// SEED ok?
+			if ( existsSeedKey(ini) ) {
+				seed = parseLong(ini, "seed");
+			}
+			else {
+				seed = System.currentTimeMillis();
+			}
+
+			// New Demand.
+			return	new NewDemand(new DemandGenerator(id, time, end, maxVehicles,
+							rates, rateInterval, itineraries, odPairs, metric,
+							maxSpeed, mix, resistance, faultyChance,
+							faultDuration, seed));
+		}
+		else {
+			return null;
+		}
+	}
+
+	/**
+	 * Lee una lista de números no negativos separados
+	 * por comas, de los que alguno debe ser positivo.
+	 */
+	private double[] parseWeights(String line, String key)
+			throws IllegalArgumentException {
+		if (line == null) {
+			throw new IllegalArgumentException(
+				"No " + key + " found"
+			);
+		}
+
+		String[] input = line.split(",");
+		double[] result = new double[input.length];
+		double total = 0;
+		for (int i = 0; i < input.length; ++i) {
+			try {
+				result[i] = Double.parseDouble(input[i].trim());
+			}
+			catch (NumberFormatException e) {
+				throw new IllegalArgumentException(
+					"Double reading failure"
+				);
+			}
+			if ( ! (result[i] >= 0) || Double.isInfinite(result[i]) ) {
+				throw new IllegalArgumentException(
+					"Illegal " + key + ": " + input[i]
+				);
+			}
+			total += result[i];
+		}
+
+		if (total <= 0) {
+			throw new IllegalArgumentException(
+				"Every " + key + " is zero"
+			);
+		}
+		return result;
+	}
+
+	/**
+	 * Lee una lista de rutas separadas por comas, cada
+	 * una con sus ids separados por {@code :}. Sin
+	 * {@code line}, devuelve una lista vacía.
+	 *
+	 * @param minElems 	- ids mínimos por ruta
+	 * @param maxElems 	- ids máximos por ruta, o -1
+	 */
+	private List<List<String>> parseRoutes(String line, int minElems, int maxElems)
+			throws IllegalArgumentException {
+		List<List<String>> result = new ArrayList<>();
+		if (line == null) {
+			return result;
+		}
+
+		for (String route : line.split(",")) {
+			List<String> ids = Arrays.asList(route.trim().split(":"));
+			for (String jID : ids) {
+				if ( ! validID(jID) ) {
+					throw new IllegalArgumentException(
+						"Illegal ID: " + jID
+					);
+				}
+			}
+			if ( ids.size() < minElems || (maxElems >= 0 && ids.size() > maxElems) ) {
+				throw new IllegalArgumentException(
+					"Illegal route: " + route
+				);
+			}
+			result.add(new ArrayList<>(ids));
+		}
+
+		return result;
+	}
+
+	/**
+	 * Lee los pesos {@code tipo:peso} de la mezcla de
+	 * tipos de {@code Vehicle}, indexados por ordinal
+	 * de {@code DemandGenerator.Kind}.
+	 */
+	private double[] parseMix(String line) throws IllegalArgumentException {
+		DemandGenerator.Kind[] kinds = DemandGenerator.Kind.values();
+		double[] mix = new double[kinds.length];
+		if (line == null) {
+			mix[DemandGenerator.Kind.VEHICLE.ordinal()] = 1;
+			return mix;
+		}
+
+		for (String entry : line.split(",")) {
+			String[] parts = entry.trim().split(":");
+			if (parts.length != 2) {
+				throw new IllegalArgumentException(
+					"Illegal mix entry: " + entry
+				);
+			}
+
+			DemandGenerator.Kind kind;
+			try {
+				kind = DemandGenerator.Kind.valueOf(parts[0].toUpperCase());
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					"Illegal vehicle type: " + parts[0]
+				);
+			}
+			mix[kind.ordinal()] = parseWeights(parts[1], "weight")[0];
+		}
+
+		return mix;
+	}
+}
@@ -0,0 +1,144 @@
+package es.ucm.fdi.control.evbuild;
+
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.events.Event;
+import es.ucm.fdi.model.events.NewODVehicle;
+import es.ucm.fdi.model.simulation.RouteCache;
+
+/**
+ * Clase que construye un {@code Event}
+ * {@link NewODVehicle} utilizado para crear un
+ * {@code Vehicle} a partir de su origen y destino.
+ * Hereda de {@link EventBuilder}.
+ */
+public class NewODVehicleBuilder extends EventBuilder {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Etiqueta utilizada en las {@code IniSection}s
+	 * para representar este tipo de eventos.
+	 */
+	private static final String SECTION_TAG = "new_od_vehicle";
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link NewODVehicleBuilder} que
+	 * pasa el atributo {@code SECTION_TAG} al
+	 * constructor de la superclase.
+	 */
+	public NewODVehicleBuilder() {
+		super(SECTION_TAG);
+	}
+
+
+
+
+	// ** MÉTODO DE PARSE ** //
+	/**
+	 * Método de parsing que comprueba si la
+	 * {@code IniSection} pasada como argumento
+	 * representa un evento {@code NewODVehicle}
+	 * y si sus parámetros son correctos.
+	 * <p>
+	 * La clave opcional {@code route_by} indica el coste
+	 * de las {@code Road}s: {@code length} (por defecto)
+	 * o {@code time}.
+	 * </p>
+	 *
+	 * @param ini -	{@code IniSection} a parsear
+	 *
+	 * @return 		{@code NewODVehicle} event or
+	 * 				{@code null} if parsing failed
+	 *
+	 * @throws IllegalArgumentException if {@code ini} represents
+	 *	 								the searched event but its
+	 *									arguments are not valid
+	 */
+	@Override
+	Event parse(IniSection ini)
+			throws IllegalArgumentException {
+
+		// Se comprueba que es un NewODVehicle
+		if ( iniNameMatch(ini) && typeMatch(ini, null) ) {
+			String id, origin, destination;
+			int time = 0;
+			int maxSpeed;
+			RouteCache.Metric metric = RouteCache.Metric.LENGTH;
+
+			// ID ok?
+			try {
+				id = parseID(ini, "id");
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " in new OD Vehicle."
+				);
+			}
+
+			// TIME ok?
+			if ( existsTimeKey(ini) ) {
+				try {
+					time = parseNoNegativeInt(ini, "time");
+				}
+				catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(
+						e.getMessage() + " when reading time " +
+						"in Vehicle with id " + id
+					);
+				}
+			}
+
+			// MAXSPEED ok?
+			try {
+				maxSpeed = parseNoNegativeInt(ini, "max_speed");
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " when reading max_speed " +
+					"in Vehicle with id " + id
+				);
+			}
+
+			// ORIGIN/DESTINATION ok?
+			try {
+				origin = parseID(ini, "origin");
+				destination = parseID(ini, "destination");
+			}
+			catch (IllegalArgumentException e) {
+				throw new IllegalArgumentException(
+					e.getMessage() + " when reading origin or destination " +
+					"in Vehicle with id " + id
+				);
+			}
+			if ( origin.equals(destination) ) {
+				throw new IllegalArgumentException(
+					"Same origin and destination in Vehicle with id " + id
+				);
+			}
+
+			// ROUTE_BY ok?
+			String by = ini.getValue("route_by");
+			if (by != null) {
+				try {
+					metric = RouteCache.Metric.valueOf(by.toUpperCase());
+				}
+				catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException(
+						"Illegal route_by: " + by + " in Vehicle with id " + id
+					);
+				}
+			}
+
+			// New OD Vehicle.
+			return 	new NewODVehicle(time, id, maxSpeed, origin, destination, metric);
+		}
+		else {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,624 @@
+package es.ucm.fdi.launcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import es.ucm.fdi.control.evbuild.EventParser;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.SimObj.SimObjCodec;
+import es.ucm.fdi.model.events.Event;
+import es.ucm.fdi.model.events.FaultyVehicle;
+import es.ucm.fdi.model.events.NewDemand;
+import es.ucm.fdi.model.events.NewJunction;
+import es.ucm.fdi.model.events.NewRoad;
+import es.ucm.fdi.model.events.NewVehicle;
+import es.ucm.fdi.model.simulation.AlreadyExistingSimObjException;
+import es.ucm.fdi.model.simulation.NonExistingSimObjException;
+import es.ucm.fdi.model.simulation.PartitionWorker;
+import es.ucm.fdi.model.simulation.PartitionWorker.Report;
+import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.model.simulation.SimulationException;
+import es.ucm.fdi.model.simulation.TrafficSimulation;
+
+/**
+ * <p>
+ * Coordinador de una simulación distribuida en varios procesos de
+ * la misma máquina. Lanza un {@link DistributedWorker} por región
+ * del mapa, que se conecta por TCP a {@code localhost}, y los hace
+ * avanzar tick a tick a la vez.
+ * </p> <p>
+ * En cada tick, cada proceso ejecuta los {@code Event}s y avanza su
+ * región; el coordinador recoge los {@code Vehicle}s que cruzan de
+ * una región a otra y se los entrega al proceso de destino, que los
+ * mete en sus {@code Road}s, cierra el tick y devuelve sus informes.
+ * El coordinador los ordena y escribe el mismo informe que daría
+ * una simulación en un único proceso.
+ * </p> <p>
+ * El coordinador lee el escenario y reparte sus {@code Event}s:
+ * todos los procesos reciben la red, las averías y la demanda,
+ * pero cada {@code Vehicle} sólo lo recibe el proceso de la región
+ * de su primera {@code Road}; los demás sólo cuentan que existe,
+ * con un {@link es.ucm.fdi.model.events.RemoteVehicles}. Los IDs
+ * repetidos y las averías de {@code Vehicle}s que no existen se
+ * comprueban antes de lanzar los procesos.
+ * </p> <p>
+ * Los mensajes usan un formato binario explícito, sin
+ * serialización de Java. Cada proceso recibe en la línea de
+ * órdenes una clave de la ejecución y su región, y las envía al
+ * conectarse; el coordinador rechaza las conexiones con otra clave
+ * o con una región no válida o repetida.
+ * </p> <p>
+ * La red de {@code Junction}s y {@code Road}s debe crearse antes
+ * del primer {@code Vehicle}. No hay avance rápido ni puntos de
+ * control.
+ * </p>
+ */
+public class DistributedSimulation {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Órdenes del coordinador a los procesos.
+	 */
+	static final int STOP = 0, STEP = 1;
+
+	/**
+	 * Respuestas de los procesos: correcta, seguida de sus
+	 * datos, o fallida, seguida de la traza del error.
+	 */
+	static final int OK = 0, FAILED = 1;
+
+	/**
+	 * Tipos de los elementos de la lista de {@code Event}s de
+	 * un proceso: sección {@code .ini} o recuento de
+	 * {@code Vehicle}s de otras regiones.
+	 */
+	static final int SECTION = 0, REMOTE = 1;
+
+	/**
+	 * Bytes aleatorios de la clave de cada ejecución.
+	 */
+	private static final int TOKEN_BYTES = 16;
+
+	/**
+	 * Espera de cada {@code accept} antes de comprobar
+	 * que los procesos siguen vivos, y espera máxima
+	 * hasta que se conectan todos, en milisegundos.
+	 */
+	private static final int ACCEPT_TIMEOUT_MILLIS = 200;
+	private static final long CONNECT_TIMEOUT_MILLIS = 60_000;
+
+	/**
+	 * Fichero {@code .ini} del escenario.
+	 */
+	private String scenario;
+
+	/**
+	 * Número de procesos (y de regiones).
+	 */
+	private int workers;
+
+	/**
+	 * Ticks que se simulan.
+	 */
+	private int timeLimit;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link DistributedSimulation}.
+	 *
+	 * @param scenario 	- fichero {@code .ini} del escenario
+	 * @param workers 	- número de procesos, al menos 2
+	 * @param timeLimit - ticks a simular
+	 *
+	 * @throws IllegalArgumentException 	if there are fewer
+	 * 										than 2 workers
+	 */
+	public DistributedSimulation(String scenario, int workers, int timeLimit) {
+		if (workers < 2) {
+			throw new IllegalArgumentException(
+				"A distributed simulation needs at least 2 workers."
+			);
+		}
+		this.scenario = scenario;
+		this.workers = workers;
+		this.timeLimit = timeLimit;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE EJECUCIÓN ** //
+	/**
+	 * Lanza los procesos, simula {@code timeLimit} ticks
+	 * escribiendo los informes en {@code out} y los detiene.
+	 *
+	 * @param out 	- flujo de salida de los informes
+	 *
+	 * @throws SimulationException 	if a worker failed to
+	 * 								simulate its region
+	 * @throws IOException 			if the workers could not be
+	 * 								started or reached, or the
+	 * 								reports could not be written
+	 */
+	public void run(OutputStream out) throws SimulationException, IOException {
+		List<List<Object>> plan = planEvents();
+
+		List<Process> processes = new ArrayList<>();
+		DataOutputStream[] toWorker = new DataOutputStream[workers];
+		DataInputStream[] fromWorker = new DataInputStream[workers];
+		List<Socket> sockets = new ArrayList<>();
+
+		byte[] secret = new byte[TOKEN_BYTES];
+		new SecureRandom().nextBytes(secret);
+		String token = Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+
+		try ( ServerSocket server = new ServerSocket(0, workers,
+				InetAddress.getLoopbackAddress()) ) {
+
+			// 1 // Arranque de los procesos.
+			String java = System.getProperty("java.home") +
+				File.separator + "bin" + File.separator + "java";
+
+			for (int rank = 0; rank < workers; ++rank) {
+				processes.add( new ProcessBuilder(java,
+						"-cp", System.getProperty("java.class.path"),
+						DistributedWorker.class.getName(),
+						Integer.toString(server.getLocalPort()),
+						Integer.toString(rank),
+						Integer.toString(workers),
+						token)
+					.redirectOutput(ProcessBuilder.Redirect.INHERIT)
+					.redirectError(ProcessBuilder.Redirect.INHERIT)
+					.start() );
+			}
+
+			server.setSoTimeout(ACCEPT_TIMEOUT_MILLIS);
+			long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+
+			for (int i = 0; i < workers; ++i) {
+				Socket socket = accept(server, processes, deadline);
+				sockets.add(socket);
+				socket.setTcpNoDelay(true);
+
+				DataOutputStream os = new DataOutputStream(
+					new BufferedOutputStream(socket.getOutputStream()));
+				DataInputStream is = new DataInputStream(
+					new BufferedInputStream(socket.getInputStream()));
+
+				int rank = identify(socket, is, token, fromWorker);
+				toWorker[rank] = os;
+				fromWorker[rank] = is;
+
+				// Eventos de su región.
+				writePlan(plan.get(rank), os);
+				os.flush();
+			}
+
+			// 2 // Bucle de la simulación.
+			for (int tick = 0; tick < timeLimit; ++tick) {
+				step(toWorker, fromWorker, out);
+			}
+
+			for (DataOutputStream os : toWorker) {
+				os.writeInt(STOP);
+				os.flush();
+			}
+			for (Process p : processes) {
+				p.waitFor();
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while stopping the workers.");
+		}
+		finally {
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			for (Process p : processes) {
+				p.destroy();
+			}
+		}
+	}
+
+	/**
+	 * Lee la clave y la región de un proceso recién conectado,
+	 * con un tiempo máximo de espera.
+	 *
+	 * @return 	región del proceso
+	 *
+	 * @throws IOException 	if the connection did not send the
+	 * 						token of this run, or sent a rank
+	 * 						out of range or already connected
+	 */
+	private int identify(Socket socket, DataInputStream is, String token,
+			DataInputStream[] connected) throws IOException {
+		String received;
+		int rank;
+
+		socket.setSoTimeout((int) CONNECT_TIMEOUT_MILLIS);
+		try {
+			received = is.readUTF();
+			rank = is.readInt();
+		}
+		catch (SocketTimeoutException e) {
+			throw new IOException(
+				"A connection did not identify itself in " +
+				CONNECT_TIMEOUT_MILLIS + " ms."
+			);
+		}
+		socket.setSoTimeout(0);
+
+		if ( ! MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8),
+				received.getBytes(StandardCharsets.UTF_8)) ) {
+			throw new IOException("Rejected a connection with an invalid token.");
+		}
+		if (rank < 0 || rank >= workers) {
+			throw new IOException("Invalid worker rank: " + rank);
+		}
+		if (connected[rank] != null) {
+			throw new IOException("Worker " + rank + " connected twice.");
+		}
+
+		return rank;
+	}
+
+	/**
+	 * Espera la conexión del siguiente proceso, comprobando
+	 * entre esperas que ninguno ha terminado antes de tiempo.
+	 *
+	 * @throws IOException 	if a worker exited or the workers
+	 * 						did not connect in time
+	 */
+	private static Socket accept(ServerSocket server, List<Process> processes,
+			long deadline) throws IOException {
+		while (true) {
+			try {
+				return server.accept();
+			}
+			catch (SocketTimeoutException e) {
+				for (int rank = 0; rank < processes.size(); ++rank) {
+					Process p = processes.get(rank);
+					if ( ! p.isAlive() ) {
+						throw new IOException(
+							"Worker " + rank + " exited with code " +
+							p.exitValue() + " before connecting."
+						);
+					}
+				}
+				if (System.currentTimeMillis() > deadline) {
+					throw new IOException(
+						"Workers did not connect in " +
+						CONNECT_TIMEOUT_MILLIS + " ms."
+					);
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * Reparte los {@code Event}s del escenario entre los procesos,
+	 * en el orden en que los ejecutaría la simulación. Para saber
+	 * la región de cada {@code Vehicle} se crea aquí la red, en un
+	 * simulador que no avanza.
+	 * </p> <p>
+	 * Cada proceso recibe una lista con el texto de la sección de
+	 * cada uno de sus {@code Event}s y, en lugar de los
+	 * {@code Vehicle}s de otras regiones, un {@code int[]} con el
+	 * tiempo y el número de {@code Vehicle}s seguidos.
+	 * </p>
+	 *
+	 * @return 	{@code Event}s de cada proceso
+	 *
+	 * @throws SimulationException 	if an event could not be parsed,
+	 * 								a vehicle ID is repeated or a
+	 * 								vehicle to make faulty does not
+	 * 								exist
+	 * @throws IOException 			if the scenario could not be read
+	 */
+	private List<List<Object>> planEvents() throws SimulationException, IOException {
+		EventParser parser = new EventParser();
+		List<IniSection> sections = new ArrayList<>();
+		List<Event> events = new ArrayList<>();
+
+		for ( IniSection sec : new Ini(scenario).getSections() ) {
+			try {
+				Event ev = parser.parse(sec);
+				// Los posteriores al último tick no se ejecutan.
+				if ( ev.getTime() < timeLimit ) {
+					sections.add(sec);
+					events.add(ev);
+				}
+			}
+			catch (IllegalArgumentException e) {
+				throw new SimulationException(
+					"Event parsing failed:\n" + e.getMessage()
+				);
+			}
+		}
+
+		// Orden de la cola: por tiempo y, con el mismo,
+		// en el orden del fichero.
+		List<Integer> order = new ArrayList<>();
+		for (int i = 0; i < events.size(); ++i) {
+			order.add(i);
+		}
+		order.sort(Comparator.comparingInt(i -> events.get(i).getTime()));
+
+		List<List<Object>> plan = new ArrayList<>();
+		for (int rank = 0; rank < workers; ++rank) {
+			plan.add(new ArrayList<>());
+		}
+
+		try ( TrafficSimulation network = new TrafficSimulation() ) {
+			// 1 // Red, para calcular las regiones.
+			for (int i : order) {
+				Event ev = events.get(i);
+				if ( ev instanceof NewJunction || ev instanceof NewRoad ) {
+					try {
+						ev.execute(network);
+					}
+					catch (AlreadyExistingSimObjException | NonExistingSimObjException e) {
+						// Lo informa el proceso, en su tick.
+					}
+				}
+			}
+			RoadMap map = network.getRoadMap();
+			map.setRegions(workers);
+
+			// 2 // Reparto.
+			Set<String> vehicles = new HashSet<>();
+			List<String> demands = new ArrayList<>();
+
+			for (int i : order) {
+				Event ev = events.get(i);
+				String text = sections.get(i).toString();
+
+				if ( ev instanceof NewVehicle ) {
+					String id = ev.getObjectID();
+					if ( ! vehicles.add(id) ) {
+						throw new SimulationException(
+							"Simulation error:\nVehicle with id: " + id +
+							" already in simulation."
+						);
+					}
+
+					// Si la ruta no es válida, falla en el primero.
+					int owner = Math.max(0,
+						map.getRegionOf( ((NewVehicle) ev).getTrip(map) ));
+					for (int rank = 0; rank < workers; ++rank) {
+						if (rank == owner) {
+							plan.get(rank).add(text);
+						}
+						else {
+							addRemote(plan.get(rank), ev.getTime());
+						}
+					}
+				}
+				else {
+					if ( ev instanceof FaultyVehicle ) {
+						for ( String id : ((FaultyVehicle) ev).getVehiclesID() ) {
+							if ( ! vehicles.contains(id) && ! isDemand(id, demands) ) {
+								throw new SimulationException(
+									"Simulation error:\nVehicle with id: " + id +
+									" to make faulty not found."
+								);
+							}
+						}
+					}
+					else if ( ev instanceof NewDemand ) {
+						demands.add(ev.getObjectID() + "_");
+					}
+
+					for ( List<Object> items : plan ) {
+						items.add(text);
+					}
+				}
+			}
+		}
+
+		return plan;
+	}
+
+	/**
+	 * Cuenta un {@code Vehicle} de otra región, sumándolo
+	 * al último recuento si es del mismo tiempo.
+	 */
+	private static void addRemote(List<Object> items, int time) {
+		Object last = items.isEmpty() ? null : items.get(items.size() - 1);
+		if ( last instanceof int[] && ((int[]) last)[0] == time ) {
+			((int[]) last)[1]++;
+		}
+		else {
+			items.add(new int[] { time, 1 });
+		}
+	}
+
+	/**
+	 * Comprueba si {@code id} puede ser de un {@code Vehicle}
+	 * creado por un generador de demanda ya empezado.
+	 */
+	private static boolean isDemand(String id, List<String> prefixes) {
+		for (String prefix : prefixes) {
+			if ( id.startsWith(prefix) ) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Simula un tick en todos los procesos y escribe
+	 * su informe.
+	 *
+	 * @throws SimulationException 	if a worker failed
+	 * @throws IOException 			if a worker could not
+	 * 								be reached
+	 */
+	private void step(DataOutputStream[] toWorker, DataInputStream[] fromWorker,
+			OutputStream out) throws SimulationException, IOException {
+
+		// Avance de las regiones.
+		for (DataOutputStream os : toWorker) {
+			os.writeInt(STEP);
+			os.flush();
+		}
+
+		// Reparto de los vehículos que cambian de región.
+		List<List<byte[]>> incoming = new ArrayList<>();
+		for (int i = 0; i < workers; ++i) {
+			incoming.add(new ArrayList<>());
+		}
+		for (int rank = 0; rank < workers; ++rank) {
+			DataInputStream is = receive(fromWorker[rank], rank);
+			for (int target = 0; target < workers; ++target) {
+				incoming.get(target).addAll( readBlocks(is) );
+			}
+		}
+		for (int rank = 0; rank < workers; ++rank) {
+			writeBlocks(incoming.get(rank), toWorker[rank]);
+			toWorker[rank].flush();
+		}
+
+		// Informes.
+		List<Report> reports = new ArrayList<>();
+		for (int rank = 0; rank < workers; ++rank) {
+			DataInputStream is = receive(fromWorker[rank], rank);
+			int n = SimObjCodec.readCount(is);
+			for (int i = 0; i < n; ++i) {
+				reports.add( Report.read(is) );
+			}
+		}
+		reports.sort(PartitionWorker.Report.ORDER);
+
+		for (Report report : reports) {
+			out.write(report.getText().getBytes());
+		}
+	}
+
+	/**
+	 * Lee el estado de la respuesta de un proceso, que si ha
+	 * fallado va seguido de la traza completa del error.
+	 *
+	 * @return 	{@code is}, para leer los datos de la respuesta
+	 *
+	 * @throws SimulationException 	if the worker failed
+	 * @throws IOException 			if the worker could not
+	 * 								be reached
+	 */
+	private static DataInputStream receive(DataInputStream is, int rank)
+			throws SimulationException, IOException {
+		int status = is.readInt();
+		if (status == FAILED) {
+			throw new SimulationException(
+				"Worker " + rank + " failed:\n" + readText(is)
+			);
+		}
+		if (status != OK) {
+			throw new IOException("Invalid answer from worker " + rank + ": " + status);
+		}
+		return is;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE CODIFICACIÓN ** //
+	/**
+	 * Escribe la lista de {@code Event}s de un proceso.
+	 */
+	private static void writePlan(List<Object> items, DataOutput out)
+			throws IOException {
+		out.writeInt(items.size());
+		for (Object item : items) {
+			if (item instanceof int[]) {
+				out.writeInt(REMOTE);
+				out.writeInt( ((int[]) item)[0] );
+				out.writeInt( ((int[]) item)[1] );
+			}
+			else {
+				out.writeInt(SECTION);
+				writeText((String) item, out);
+			}
+		}
+	}
+
+	/**
+	 * Escribe una lista de bloques de bytes.
+	 */
+	static void writeBlocks(List<byte[]> blocks, DataOutput out)
+			throws IOException {
+		out.writeInt(blocks.size());
+		for (byte[] block : blocks) {
+			out.writeInt(block.length);
+			out.write(block);
+		}
+	}
+
+	/**
+	 * Lee una lista escrita con {@link #writeBlocks(List, DataOutput)}.
+	 *
+	 * @throws IOException 	if the input is not a list of blocks
+	 */
+	static List<byte[]> readBlocks(DataInput in) throws IOException {
+		int n = SimObjCodec.readCount(in);
+		List<byte[]> blocks = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i) {
+			byte[] block = new byte[ SimObjCodec.readCount(in) ];
+			in.readFully(block);
+			blocks.add(block);
+		}
+		return blocks;
+	}
+
+	/**
+	 * Escribe un texto en UTF-8 de cualquier longitud.
+	 */
+	static void writeText(String text, DataOutput out) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * Lee un texto escrito con {@link #writeText(String, DataOutput)}.
+	 *
+	 * @throws IOException 	if the input is not a text
+	 */
+	static String readText(DataInput in) throws IOException {
+		byte[] bytes = new byte[ SimObjCodec.readCount(in) ];
+		in.readFully(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
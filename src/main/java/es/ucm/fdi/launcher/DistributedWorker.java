@@ -0,0 +1,165 @@
+package es.ucm.fdi.launcher;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import es.ucm.fdi.control.evbuild.EventParser;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.model.SimObj.SimObjCodec;
+import es.ucm.fdi.model.events.Event;
+import es.ucm.fdi.model.events.RemoteVehicles;
+import es.ucm.fdi.model.simulation.PartitionWorker;
+import es.ucm.fdi.model.simulation.PartitionWorker.Report;
+import es.ucm.fdi.model.simulation.TrafficSimulation;
+
+/**
+ * <p>
+ * Proceso de una {@link DistributedSimulation}: se conecta al
+ * coordinador, recibe de él los {@code Event}s de su región y la
+ * avanza cada vez que éste se lo ordena. Si falla, responde con
+ * la traza completa del error.
+ * </p> <p>
+ * Uso: {@code DistributedWorker <puerto> <región> <regiones> <clave>}
+ * </p>
+ */
+public class DistributedWorker {
+
+	/**
+	 * Punto de entrada del proceso.
+	 *
+	 * @param args 	- puerto del coordinador, región local,
+	 * 				número de regiones y clave de la ejecución
+	 *
+	 * @throws Exception 	if the coordinator could not be
+	 * 						reached
+	 */
+	public static void main(String[] args) throws Exception {
+		int port = Integer.parseInt(args[0]);
+		int rank = Integer.parseInt(args[1]);
+		int parts = Integer.parseInt(args[2]);
+		String token = args[3];
+
+		try ( Socket socket = new Socket(InetAddress.getLoopbackAddress(), port) ) {
+			socket.setTcpNoDelay(true);
+
+			DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(socket.getOutputStream()));
+			out.writeUTF(token);
+			out.writeInt(rank);
+			out.flush();
+			DataInputStream in = new DataInputStream(
+				new BufferedInputStream(socket.getInputStream()));
+
+			PartitionWorker worker;
+			try {
+				TrafficSimulation sim = new TrafficSimulation();
+				sim.pushEvents( readEvents(in) );
+				worker = new PartitionWorker(sim, rank, parts);
+			}
+			catch (Exception e) {
+				// Se informa en el primer tick.
+				answerError(in, out, e);
+				return;
+			}
+
+			while ( in.readInt() == DistributedSimulation.STEP ) {
+				try {
+					List<List<byte[]>> outgoing = worker.step();
+					out.writeInt(DistributedSimulation.OK);
+					for (List<byte[]> vehicles : outgoing) {
+						DistributedSimulation.writeBlocks(vehicles, out);
+					}
+					out.flush();
+
+					List<Report> reports = worker.finish(
+						DistributedSimulation.readBlocks(in));
+					out.writeInt(DistributedSimulation.OK);
+					out.writeInt(reports.size());
+					for (Report report : reports) {
+						report.write(out);
+					}
+					out.flush();
+				}
+				catch (EOFException e) {
+					// El coordinador ha terminado.
+					return;
+				}
+				catch (Exception e) {
+					answer(out, e);
+					return;
+				}
+			}
+		}
+		catch (EOFException e) {
+			// El coordinador ha terminado.
+		}
+	}
+
+	/**
+	 * Lee los {@code Event}s enviados por el coordinador:
+	 * secciones {@code .ini} y recuentos de {@code Vehicle}s
+	 * de otras regiones.
+	 */
+	private static List<Event> readEvents(DataInputStream in) throws Exception {
+		EventParser parser = new EventParser();
+		int n = SimObjCodec.readCount(in);
+		List<Event> events = new ArrayList<>(n);
+
+		for (int i = 0; i < n; ++i) {
+			int kind = in.readInt();
+			if (kind == DistributedSimulation.REMOTE) {
+				events.add( new RemoteVehicles(in.readInt(), in.readInt()) );
+			}
+			else if (kind == DistributedSimulation.SECTION) {
+				Ini section = new Ini( new ByteArrayInputStream(
+					DistributedSimulation.readText(in).getBytes(StandardCharsets.UTF_8)) );
+				events.add( parser.parse(section.getSections().get(0)) );
+			}
+			else {
+				throw new IOException("Unknown event item: " + kind);
+			}
+		}
+		return events;
+	}
+
+	/**
+	 * Responde con un error a la primera orden del coordinador.
+	 */
+	private static void answerError(DataInputStream in, DataOutputStream out,
+			Exception e) throws Exception {
+		if ( in.readInt() == DistributedSimulation.STEP ) {
+			answer(out, e);
+		}
+	}
+
+	/**
+	 * Envía al coordinador la traza completa de un error.
+	 */
+	private static void answer(DataOutputStream out, Exception e) throws Exception {
+		out.writeInt(DistributedSimulation.FAILED);
+		DistributedSimulation.writeText(stackTrace(e), out);
+		out.flush();
+	}
+
+	/**
+	 * Devuelve la traza completa de un error,
+	 * con sus causas.
+	 */
+	private static String stackTrace(Exception e) {
+		StringWriter trace = new StringWriter();
+		e.printStackTrace(new PrintWriter(trace));
+		return trace.toString();
+	}
+}
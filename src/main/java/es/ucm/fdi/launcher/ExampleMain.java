@@ -1,12 +1,19 @@
 package es.ucm.fdi.launcher;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FilenameFilter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
 import javax.swing.SwingUtilities;
 
 import org.apache.commons.cli.CommandLine;
@@ -19,6 +26,10 @@ import org.apache.commons.cli.ParseException;
 
 import es.ucm.fdi.control.Controller;
 import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.model.simulation.FlightEvents;
+import es.ucm.fdi.model.simulation.StatsCollector;
+import es.ucm.fdi.model.simulation.TickMetrics;
+import es.ucm.fdi.model.simulation.TrafficSimulation.FastForward;
 import es.ucm.fdi.view.SimWindow;
 
 
@@ -34,6 +45,26 @@ public class ExampleMain {
 	 * Default execution mode if none indicated by user.
 	 */
 	private final static String _MODE_DEFAULT = "batch";
+
+	/**
+	 * Default number of road worker threads if none indicated by user.
+	 */
+	private final static Integer _WORKERS_DEFAULT = 1;
+
+	/**
+	 * Default number of ticks between checkpoints if none indicated by user.
+	 */
+	private final static Integer _CHECKPOINT_EVERY_DEFAULT = 1000;
+
+	/**
+	 * Default number of ticks folded into each statistics window.
+	 */
+	private final static Integer _STATS_WINDOW_DEFAULT = 1;
+
+	/**
+	 * Number of statistics windows kept per series.
+	 */
+	private final static int _STATS_CAPACITY = 1024;
 	
 	/**
 	 * Execution time limit: number of ticks the simulator will do.
@@ -55,6 +86,94 @@ public class ExampleMain {
 	 */
 	private static String _mode = null;
 
+	/**
+	 * Number of threads used to advance the roads on each tick.
+	 */
+	private static Integer _workers = _WORKERS_DEFAULT;
+
+	/**
+	 * Number of map regions, each advanced by its own thread.
+	 */
+	private static Integer _regions = _WORKERS_DEFAULT;
+
+	/**
+	 * Number of processes of a distributed simulation (1 to run
+	 * in this process).
+	 */
+	private static Integer _processes = _WORKERS_DEFAULT;
+
+	/**
+	 * Ticks between two samples of road travel times for
+	 * congestion-aware rerouting (0 to disable it).
+	 */
+	private static Integer _reroute = 0;
+
+	/**
+	 * Fast-forward mode over periods where no vehicle can move.
+	 */
+	private static FastForward _fastForward = FastForward.OFF;
+
+	/**
+	 * Directory or manifest of scenarios to run in batch mode.
+	 */
+	private static String _scenarios = null;
+
+	/**
+	 * Number of scenarios simulated at the same time.
+	 */
+	private static Integer _jobs = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Parameters swept over the input file, as {@code key=v1,v2,...}.
+	 */
+	private static String[] _sweep = null;
+
+	/**
+	 * Synthetic scenario to generate, as {@code topology[:key=value,...]}.
+	 */
+	private static String _generate = null;
+
+	/**
+	 * Whether tick metrics are published over JMX.
+	 */
+	private static boolean _jmx = false;
+
+	/**
+	 * Checkpoint file to resume the batch simulation from.
+	 */
+	private static String _resume = null;
+
+	/**
+	 * Checkpoint file written periodically during the simulation.
+	 */
+	private static String _checkpoint = null;
+
+	/**
+	 * Ticks between two checkpoints written to {@code _checkpoint}.
+	 */
+	private static Integer _checkpointEvery = _CHECKPOINT_EVERY_DEFAULT;
+
+	/**
+	 * CSV file where per-tick statistics are written.
+	 */
+	private static String _stats = null;
+
+	/**
+	 * Ticks folded into each window of {@code _stats}.
+	 */
+	private static Integer _statsWindow = _STATS_WINDOW_DEFAULT;
+
+	/**
+	 * Whether Java Flight Recorder events are emitted.
+	 */
+	private static boolean _jfr = false;
+
+	/**
+	 * File where a Java Flight Recorder recording of the
+	 * batch simulation is written, or {@code null}.
+	 */
+	private static String _jfrFile = null;
+
 	
 	
 	
@@ -92,9 +211,22 @@ public class ExampleMain {
 			CommandLine line = parser.parse(cmdLineOptions, args);
 			parseModeOption(line);
 			parseHelpOption(line, cmdLineOptions);
+			parseScenariosOption(line);
+			parseGenerateOption(line);
+			parseCheckpointOptions(line);
 			parseInFileOption(line);
 			parseOutFileOption(line);
 			parseStepsOption(line);
+			parseWorkersOption(line);
+			parseRegionsOption(line);
+			parseRerouteOption(line);
+			parseProcessesOption(line);
+			parseFastForwardOption(line);
+			parseJobsOption(line);
+			parseSweepOption(line);
+			parseJmxOption(line);
+			parseStatsOptions(line);
+			parseJfrOption(line);
 
 			// if there are some remaining arguments, then something wrong is
 			// provided in the command line!
@@ -167,6 +299,154 @@ public class ExampleMain {
 			.build()
 		);
 
+		// Comando de hilos: -w; --workers; <x>; "Threads used to advance roads..."
+		cmdLineOptions.addOption(
+			Option.builder("w")
+			.longOpt("workers")
+			.hasArg()
+			.desc("Threads used to advance roads on each tick (default value is " + _WORKERS_DEFAULT + ", sequential).")
+			.build()
+		);
+
+		// Comando de regiones: -p; --regions; <x>; "Map regions advanced..."
+		cmdLineOptions.addOption(
+			Option.builder("p")
+			.longOpt("regions")
+			.hasArg()
+			.desc("Map regions advanced in parallel, one thread each (default value is " + _WORKERS_DEFAULT + ", not partitioned).")
+			.build()
+		);
+
+		// Comando de procesos: -n; --processes; <x>; "Worker processes..."
+		cmdLineOptions.addOption(
+			Option.builder("n")
+			.longOpt("processes")
+			.hasArg()
+			.desc("Worker processes on this machine, each simulating one map region (default value is " + _WORKERS_DEFAULT + ", single process).")
+			.build()
+		);
+
+		// Comando de recálculo de rutas: --reroute; <x>; "Let vehicles change..."
+		cmdLineOptions.addOption(
+			Option.builder()
+			.longOpt("reroute")
+			.hasArg()
+			.desc("Let vehicles change the rest of their route at each junction to avoid congestion, sampling road travel times every given number of ticks (disabled by default).")
+			.build()
+		);
+
+		// Comando de avance rápido: -f; --fast-forward; [full|compact]; "Skip idle ticks..."
+		cmdLineOptions.addOption(
+			Option.builder("f")
+			.longOpt("fast-forward")
+			.hasArg()
+			.optionalArg(true)
+			.argName("full|compact")
+			.desc("Skip ticks where no vehicle can move up to the next event. 'full' (default) still writes every report, 'compact' summarizes them in an [unchanged_report] section.")
+			.build()
+		);
+
+		// Comando de escenarios: -d; --scenarios; <x>; "Directory or manifest..."
+		cmdLineOptions.addOption(
+			Option.builder("d")
+			.longOpt("scenarios")
+			.hasArg()
+			.desc("Directory of .ini files, or manifest with one .ini path per line, to run concurrently in batch mode.")
+			.build()
+		);
+
+		// Comando de trabajos: -j; --jobs; <x>; "Scenarios simulated at the same time..."
+		cmdLineOptions.addOption(
+			Option.builder("j")
+			.longOpt("jobs")
+			.hasArg()
+			.desc("Scenarios simulated at the same time with -d (default value is the number of available processors).")
+			.build()
+		);
+
+		// Comando de barrido: -s; --sweep; <key=v1,v2,...>; "Sweep a parameter..."
+		cmdLineOptions.addOption(
+			Option.builder("s")
+			.longOpt("sweep")
+			.hasArg()
+			.argName("key=v1,v2,...")
+			.desc("Sweep a parameter of the input file over the given values (may be repeated; use tag.key to restrict it to one section type). Variants run in parallel and one row of KPIs per variant is printed.")
+			.build()
+		);
+
+		// Comando de generación: -g; --generate; <spec>; "Write a synthetic scenario..."
+		cmdLineOptions.addOption(
+			Option.builder("g")
+			.longOpt("generate")
+			.hasArg()
+			.argName("grid|ring|random[:key=value,...]")
+			.desc("Write a synthetic scenario to the output file instead of simulating. Keys: junctions, vehicles, seed, lanes, dirt, rr, mc, keep, demands, pairs, window.")
+			.build()
+		);
+
+		// Comando de reanudación: -r; --resume; <x>; "Checkpoint file to resume..."
+		cmdLineOptions.addOption(
+			Option.builder("r")
+			.longOpt("resume")
+			.hasArg()
+			.desc("Checkpoint file to resume a batch simulation from. The simulation runs until its time reaches the ticks given with -t.")
+			.build()
+		);
+
+		// Comando de autoguardado: -c; --checkpoint; <x>; "Checkpoint file written..."
+		cmdLineOptions.addOption(
+			Option.builder("c")
+			.longOpt("checkpoint")
+			.hasArg()
+			.desc("Checkpoint file written periodically during the simulation.")
+			.build()
+		);
+
+		// Comando de intervalo de autoguardado: --checkpoint-every; <x>; "Ticks between..."
+		cmdLineOptions.addOption(
+			Option.builder()
+			.longOpt("checkpoint-every")
+			.hasArg()
+			.desc("Ticks between two checkpoints (default value is " + _CHECKPOINT_EVERY_DEFAULT + ").")
+			.build()
+		);
+
+		// Comando de instrumentación: --jmx; "Publish per-phase tick..."
+		cmdLineOptions.addOption(
+			Option.builder()
+			.longOpt("jmx")
+			.desc("Publish per-phase tick timings and counters as an MBean readable with jconsole (single simulation only).")
+			.build()
+		);
+
+		// Comando de Flight Recorder: --jfr; [<x>]; "Emit Java Flight Recorder..."
+		cmdLineOptions.addOption(
+			Option.builder()
+			.longOpt("jfr")
+			.hasArg()
+			.optionalArg(true)
+			.desc("Emit Java Flight Recorder events for ticks, phases, events and reports. With a file, also record the batch simulation into it (needs JDK 11+ or OpenJDK 8u262+).")
+			.build()
+		);
+
+		// Comando de estadísticas: --stats; <x>; "CSV file with per-tick..."
+		cmdLineOptions.addOption(
+			Option.builder()
+			.longOpt("stats")
+			.hasArg()
+			.desc("CSV file with per-tick road occupancy and queues, junction throughput and moving/faulty vehicles (single batch simulation only).")
+			.build()
+		);
+
+		// Comando de ventana de estadísticas: --stats-window; <x>; "Ticks folded..."
+		cmdLineOptions.addOption(
+			Option.builder()
+			.longOpt("stats-window")
+			.hasArg()
+			.desc("Ticks folded into each min/max/mean statistics window, keeping the last " + _STATS_CAPACITY + " windows (default value is " + _STATS_WINDOW_DEFAULT + ").")
+			.build()
+		);
+
 		return cmdLineOptions;
 	}
 
@@ -232,7 +512,8 @@ public class ExampleMain {
 
 		_inFile = line.getOptionValue("i");
 		if (_inFile == null) {
-			if( ! _mode.equals("gui") ) {
+			if( ! _mode.equals("gui") && _scenarios == null && _resume == null
+					&& _generate == null ) {
 				throw new ParseException("An events file is missing");
 			}
 		}
@@ -277,6 +558,381 @@ public class ExampleMain {
 		}
 	}
 
+
+	/**
+	 * <p>
+	 * Stores the number of road worker threads indicated by the 
+	 * command line in attribute {@code _workers}.
+	 * </p> <p>
+	 * If no value is indicated, automatically set up to 
+	 * {@code _WORKERS_DEFAULT}
+	 * </p>
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the number of workers
+	 * 							is not valid
+	 */
+	private static void parseWorkersOption(CommandLine line) 
+			throws ParseException {
+
+		String w = line.getOptionValue("w", _WORKERS_DEFAULT.toString());
+
+		try {
+			_workers = Integer.parseInt(w);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid value for workers: " + w);
+		}
+
+		if (_workers < 1) {
+			throw new ParseException("Invalid value for workers: " + w);
+		}
+	}
+
+
+	/**
+	 * <p>
+	 * Stores the number of map regions indicated by the 
+	 * command line in attribute {@code _regions}.
+	 * </p> <p>
+	 * If no value is indicated, automatically set up to 
+	 * {@code _WORKERS_DEFAULT}
+	 * </p>
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the number of regions
+	 * 							is not valid
+	 */
+	private static void parseRegionsOption(CommandLine line) 
+			throws ParseException {
+
+		String p = line.getOptionValue("p", _WORKERS_DEFAULT.toString());
+
+		try {
+			_regions = Integer.parseInt(p);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid value for regions: " + p);
+		}
+
+		if (_regions < 1) {
+			throw new ParseException("Invalid value for regions: " + p);
+		}
+	}
+
+
+	/**
+	 * <p>
+	 * Stores the number of worker processes indicated by the 
+	 * command line in attribute {@code _processes}.
+	 * </p> <p>
+	 * A distributed simulation only runs in batch mode, and 
+	 * it cannot be resumed from or write checkpoints.
+	 * </p>
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the number of processes
+	 * 							is not valid
+	 */
+	private static void parseProcessesOption(CommandLine line) 
+			throws ParseException {
+
+		String n = line.getOptionValue("n", _WORKERS_DEFAULT.toString());
+
+		try {
+			_processes = Integer.parseInt(n);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid value for processes: " + n);
+		}
+
+		if (_processes < 1) {
+			throw new ParseException("Invalid value for processes: " + n);
+		}
+		if ( _processes > 1 && ( _mode.equals("gui") || 
+				_resume != null || _checkpoint != null ) ) {
+			throw new ParseException(
+				"A distributed simulation only runs in batch mode, without checkpoints.");
+		}
+		if ( _processes > 1 && _reroute > 0 ) {
+			throw new ParseException(
+				"Rerouting needs the whole map and cannot be distributed.");
+		}
+	}
+
+
+	/**
+	 * Stores the rerouting period indicated by the command
+	 * line in attribute {@code _reroute}.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the period is not valid
+	 */
+	private static void parseRerouteOption(CommandLine line) 
+			throws ParseException {
+
+		String r = line.getOptionValue("reroute", "0");
+
+		try {
+			_reroute = Integer.parseInt(r);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid value for rerouting period: " + r);
+		}
+
+		if (_reroute < 0) {
+			throw new ParseException("Invalid value for rerouting period: " + r);
+		}
+	}
+
+
+	/**
+	 * <p>
+	 * Stores the fast-forward mode indicated by the command 
+	 * line in attribute {@code _fastForward}.
+	 * </p> <p>
+	 * If the option is not present, fast-forward is disabled; 
+	 * if present without value, {@code full} is assumed.
+	 * </p>
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the mode is not valid
+	 */
+	private static void parseFastForwardOption(CommandLine line) 
+			throws ParseException {
+
+		if ( line.hasOption("f") ) {
+			String f = line.getOptionValue("f", "full");
+
+			switch (f) {
+			case "full":
+				_fastForward = FastForward.FULL;
+				break;
+			case "compact":
+				_fastForward = FastForward.COMPACT;
+				break;
+			default:
+				throw new ParseException("Invalid value for fast-forward: " + f);
+			}
+		}
+	}
+
+
+	/**
+	 * Stores in attribute {@code _jmx} whether tick metrics
+	 * are published over JMX.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the run is not a single
+	 * 							simulation in this process
+	 */
+	private static void parseJmxOption(CommandLine line) 
+			throws ParseException {
+
+		_jmx = line.hasOption("jmx");
+		if ( _jmx && ( _scenarios != null || _sweep != null || 
+				_generate != null || _processes > 1 ) ) {
+			throw new ParseException(
+				"Tick metrics can only be published for a single simulation.");
+		}
+	}
+
+
+	/**
+	 * Stores in attributes {@code _stats} and {@code _statsWindow}
+	 * the statistics file and window indicated in the command line.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the window is not valid or the
+	 * 							run is not a single simulation
+	 * 							in batch mode
+	 */
+	private static void parseStatsOptions(CommandLine line) 
+			throws ParseException {
+
+		_stats = line.getOptionValue("stats");
+		if ( _stats != null && ( _mode.equals("gui") || _scenarios != null || 
+				_sweep != null || _generate != null || _processes > 1 ) ) {
+			throw new ParseException(
+				"Statistics can only be collected for a single batch simulation.");
+		}
+
+		String w = line.getOptionValue("stats-window", _STATS_WINDOW_DEFAULT.toString());
+		try {
+			_statsWindow = Integer.parseInt(w);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid value for statistics window: " + w);
+		}
+
+		if (_statsWindow < 1) {
+			throw new ParseException("Invalid value for statistics window: " + w);
+		}
+	}
+
+
+	/**
+	 * Stores in attributes {@code _jfr} and {@code _jfrFile}
+	 * whether Java Flight Recorder events are emitted and
+	 * where they are recorded.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if a recording is asked
+	 * 							for outside a single
+	 * 							batch simulation or the
+	 * 							JVM has no Flight Recorder
+	 */
+	private static void parseJfrOption(CommandLine line) 
+			throws ParseException {
+
+		_jfr = line.hasOption("jfr");
+		_jfrFile = line.getOptionValue("jfr");
+		if ( _jfr && ( _scenarios != null || _sweep != null || 
+				_generate != null || _processes > 1 ) ) {
+			throw new ParseException(
+				"Flight Recorder events can only be emitted for a single simulation.");
+		}
+		if ( _jfrFile != null && _mode.equals("gui") ) {
+			throw new ParseException("A Flight Recorder file can only be written in batch mode.");
+		}
+		if ( _jfr && ! FlightEvents.isSupported() ) {
+			throw new ParseException(
+				"Java Flight Recorder is not available in this JVM (JDK 11+ or OpenJDK 8u262+ required).");
+		}
+	}
+
+
+	/**
+	 * Modifies the scenarios attribute {@code _scenarios}
+	 * with the directory or manifest indicated in the
+	 * command line.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if scenarios are given
+	 * 							in {@code GUI} mode
+	 */
+	private static void parseScenariosOption(CommandLine line) 
+			throws ParseException {
+
+		_scenarios = line.getOptionValue("d");
+		if ( _scenarios != null && _mode.equals("gui") ) {
+			throw new ParseException("Scenarios can only be run in batch mode.");
+		}
+	}
+
+	/**
+	 * Stores the synthetic scenario specification indicated 
+	 * by the command line in attribute {@code _generate}.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the specification is not
+	 * 							valid or given in {@code GUI} 
+	 * 							mode
+	 */
+	private static void parseGenerateOption(CommandLine line) 
+			throws ParseException {
+
+		_generate = line.getOptionValue("g");
+		if ( _generate != null ) {
+			if ( _mode.equals("gui") ) {
+				throw new ParseException("Scenarios can only be generated in batch mode.");
+			}
+			try {
+				NetworkGenerator.fromSpec(_generate);
+			} catch (IllegalArgumentException e) {
+				throw new ParseException(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Stores the checkpoint options indicated by the command line
+	 * in attributes {@code _resume}, {@code _checkpoint} and
+	 * {@code _checkpointEvery}.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if resuming in {@code GUI} 
+	 * 							mode or the checkpoint 
+	 * 							interval is not valid
+	 */
+	private static void parseCheckpointOptions(CommandLine line) 
+			throws ParseException {
+
+		_resume = line.getOptionValue("r");
+		if ( _resume != null && _mode.equals("gui") ) {
+			throw new ParseException("A checkpoint can only be resumed in batch mode.");
+		}
+
+		_checkpoint = line.getOptionValue("c");
+
+		String e = line.getOptionValue("checkpoint-every", _CHECKPOINT_EVERY_DEFAULT.toString());
+		try {
+			_checkpointEvery = Integer.parseInt(e);
+		} catch (NumberFormatException ex) {
+			throw new ParseException("Invalid value for checkpoint interval: " + e);
+		}
+
+		if (_checkpointEvery < 1) {
+			throw new ParseException("Invalid value for checkpoint interval: " + e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * Stores the number of concurrent scenarios indicated by 
+	 * the command line in attribute {@code _jobs}.
+	 * </p> <p>
+	 * If no value is indicated, the number of available 
+	 * processors is used.
+	 * </p>
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if the number of jobs
+	 * 							is not valid
+	 */
+	private static void parseJobsOption(CommandLine line) 
+			throws ParseException {
+
+		String j = line.getOptionValue("j", _jobs.toString());
+
+		try {
+			_jobs = Integer.parseInt(j);
+		} catch (NumberFormatException e) {
+			throw new ParseException("Invalid value for jobs: " + j);
+		}
+
+		if (_jobs < 1) {
+			throw new ParseException("Invalid value for jobs: " + j);
+		}
+	}
+
+
+	/**
+	 * Stores the swept parameters indicated by the command
+	 * line in attribute {@code _sweep}.
+	 * 
+	 * @param line 	- {@code CommandLine} introduced
+	 * 
+	 * @throws ParseException 	if a sweep is requested
+	 * 							without input file or in 
+	 * 							{@code GUI} mode
+	 */
+	private static void parseSweepOption(CommandLine line) 
+			throws ParseException {
+
+		_sweep = line.getOptionValues("s");
+		if ( _sweep != null && (_inFile == null || _mode.equals("gui")) ) {
+			throw new ParseException("A sweep needs an events file in batch mode.");
+		}
+	}
+
 	
 	
 
@@ -394,7 +1050,7 @@ public class ExampleMain {
 	 */
 	private static void startBatchMode() throws Exception {		
 		// Argumentos
-		Ini iniInput = new Ini(_inFile);
+		Ini iniInput = (_resume == null) ? new Ini(_inFile) : null;
 		OutputStream os = System.out;
 		if(_outFile != null){
 			File outFile = new File(_outFile);
@@ -403,14 +1059,212 @@ public class ExampleMain {
 		
 		// Controlador
 		Controller control = new Controller(iniInput, os, _timeLimit);
+		control.setRoadWorkers(_workers);
+		control.setRegionWorkers(_regions);
+		control.setReroutePeriod(_reroute);
+		control.setFastForward(_fastForward);
+		publishMetrics(control);
+		FlightEvents flight = emitFlightEvents(control);
+		StatsCollector stats = null;
+		if (_stats != null) {
+			stats = new StatsCollector(_STATS_CAPACITY, _statsWindow);
+			control.setStats(stats);
+		}
+		if (_checkpoint != null) {
+			control.setAutosave(new File(_checkpoint), _checkpointEvery);
+		}
 
 		// Ejecución y captura de excepciones
 		try {
-			control.executeBatch();
+			if (_resume != null) {
+				try ( InputStream checkpoint = new BufferedInputStream(new FileInputStream(_resume)) ) {
+					control.resumeBatch(checkpoint);
+				}
+			}
+			else {
+				control.executeBatch();
+			}
 		}
 		catch (Exception e) {
 			throw e;
 		}
+		finally {
+			control.close();
+			if (flight != null) {
+				flight.stopRecording();
+			}
+		}
+
+		if (stats != null) {
+			try ( OutputStream csv = new FileOutputStream(_stats) ) {
+				stats.writeCsv(csv);
+			}
+		}
+	}
+
+
+
+
+
+
+
+
+
+	/**
+	 * Run the simulation in {@code batch} mode distributed 
+	 * over {@code _processes} processes.
+	 * 
+	 * @throws Exception 	if the workers cannot be started
+	 * 						or one of them fails
+	 */
+	private static void startDistributedMode() throws Exception {
+		OutputStream os = System.out;
+		if(_outFile != null){
+			os = new BufferedOutputStream(new FileOutputStream(_outFile));
+		}
+
+		try {
+			new DistributedSimulation(_inFile, _processes, _timeLimit).run(os);
+		}
+		finally {
+			os.flush();
+		}
+	}
+
+	/**
+	 * Run all the scenarios in {@code _scenarios} concurrently
+	 * in {@code batch} mode, printing the time and result of 
+	 * each one and a summary.
+	 * 
+	 * @return 	results of the scenarios
+	 * 
+	 * @throws Exception 	if the scenarios cannot be listed
+	 * 						or the execution is interrupted
+	 */
+	static List<ScenarioRunner.Result> startScenariosMode() throws Exception {
+		List<File> scenarios = ScenarioRunner.listScenarios(_scenarios);
+
+		ScenarioRunner runner = new ScenarioRunner(_jobs, _timeLimit);
+		runner.setRoadWorkers(_workers);
+		runner.setFastForward(_fastForward);
+
+		// Ejecución y resumen
+		long start = System.nanoTime();
+		List<ScenarioRunner.Result> results = runner.run(scenarios);
+		ScenarioRunner.printReport(results, System.nanoTime() - start, System.out);
+
+		return results;
+	}
+
+
+
+
+
+
+
+
+
+	/**
+	 * Run every variant of the parameter sweep {@code _sweep}
+	 * over the input file, printing a table of KPIs.
+	 * 
+	 * @throws Exception 	if the input file cannot be read,
+	 * 						a parameter is not valid or the 
+	 * 						execution is interrupted
+	 */
+	private static void startSweepMode() throws Exception {
+		ParameterSweep sweep = new ParameterSweep(new Ini(_inFile), _timeLimit, _jobs);
+		sweep.setFastForward(_fastForward);
+		for (String spec : _sweep) {
+			sweep.addParameter(spec);
+		}
+
+		sweep.run(System.out);
+	}
+
+
+
+
+
+
+
+
+
+	/**
+	 * Write the synthetic scenario {@code _generate} to
+	 * the output file, or to the standard output.
+	 * 
+	 * @throws IOException 	if the scenario cannot be written
+	 */
+	private static void startGenerateMode() throws IOException {
+		NetworkGenerator generator = NetworkGenerator.fromSpec(_generate);
+
+		OutputStream os = System.out;
+		if(_outFile != null){
+			os = new BufferedOutputStream(new FileOutputStream(_outFile));
+		}
+
+		try {
+			generator.write(os);
+		}
+		finally {
+			os.flush();
+			if (os != System.out) {
+				os.close();
+			}
+		}
+	}
+
+
+
+
+
+
+
+
+
+	/**
+	 * If {@code _jfr} is set, emits Java Flight Recorder events
+	 * from the simulation of {@code control}, recording them 
+	 * into {@code _jfrFile} if given.
+	 * 
+	 * @param control 	- controller of the simulation
+	 * 
+	 * @return 			events emitter, or {@code null}
+	 * 
+	 * @throws Exception 	if the recording could
+	 * 						not be started
+	 */
+	private static FlightEvents emitFlightEvents(Controller control) throws Exception {
+		if ( ! _jfr ) {
+			return null;
+		}
+
+		FlightEvents flight = FlightEvents.create();
+		if (_jfrFile != null) {
+			flight.startRecording(new File(_jfrFile));
+		}
+		control.setFlightEvents(flight);
+		return flight;
+	}
+
+	/**
+	 * If {@code _jmx} is set, measures the ticks of the
+	 * simulation of {@code control} and publishes the 
+	 * metrics in the platform MBean server.
+	 * 
+	 * @param control 	- controller of the simulation
+	 * 
+	 * @throws JMException 	if the MBean could not
+	 * 						be registered
+	 */
+	private static void publishMetrics(Controller control) throws JMException {
+		if (_jmx) {
+			TickMetrics metrics = new TickMetrics();
+			ObjectName name = metrics.register();
+			control.setMetrics(metrics);
+			System.err.println("Tick metrics published as " + name);
+		}
 	}
 
 
@@ -436,6 +1290,12 @@ public class ExampleMain {
 
 		// Controlador de salida nula
 		Controller control = new Controller(iniInput, null, _timeLimit);
+		control.setRoadWorkers(_workers);
+		control.setRegionWorkers(_regions);
+		control.setReroutePeriod(_reroute);
+		control.setFastForward(_fastForward);
+		publishMetrics(control);
+		emitFlightEvents(control);
 
 		// Interfaz gráfica
 		try {
@@ -473,7 +1333,21 @@ public class ExampleMain {
 			parseArgs(args);
 			switch (_mode) {
 			case "batch" : 
-				startBatchMode();
+				if (_generate != null) {
+					startGenerateMode();
+				}
+				else if (_scenarios != null) {
+					startScenariosMode();
+				}
+				else if (_sweep != null) {
+					startSweepMode();
+				}
+				else if (_processes > 1) {
+					startDistributedMode();
+				}
+				else {
+					startBatchMode();
+				}
 				break;
 			case "gui":
 				startGUIMode();
@@ -0,0 +1,570 @@
+package es.ucm.fdi.launcher;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+
+/**
+ * <p>
+ * Generador de escenarios sintéticos de gran tamaño, la entrada
+ * de referencia para medir cómo escala el simulador. Crea una red
+ * con la topología elegida y el número de {@code Junction}s
+ * pedido, con todas las {@code Road}s en los dos sentidos para
+ * que se pueda llegar de cualquier {@code Junction} a cualquier
+ * otra:
+ * </p>
+ * <ul>
+ * <li>{@code grid}: cuadrícula con {@code Road}s entre vecinas.</li>
+ * <li>{@code ring}: anillos concéntricos unidos por radios
+ * desde un centro.</li>
+ * <li>{@code random}: red plana aleatoria. Cuadrícula con los
+ * puntos desplazados y una diagonal al azar por celda, de la que
+ * se quitan {@code Road}s al azar sin desconectarla.</li>
+ * </ul>
+ * <p>
+ * Una parte de las {@code Road}s son de varios carriles o sin
+ * asfaltar y una parte de las {@code Junction}s son
+ * {@code rr} o {@code mc}. Los {@code Vehicle}s no se escriben
+ * uno a uno: se reparten entre varios {@code [new_demand]} con
+ * pares origen-destino al azar.
+ * </p> <p>
+ * Las secciones se entregan según se crean, de forma que las
+ * redes grandes se pueden escribir a fichero sin tenerlas
+ * enteras en memoria. Con la misma configuración y semilla se
+ * obtiene siempre el mismo escenario.
+ * </p>
+ */
+public class NetworkGenerator {
+
+	// ** CLASE INTERNA ** //
+	/**
+	 * Topologías de red disponibles.
+	 */
+	public enum Topology {
+		GRID, RING, RANDOM
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Distancia media entre {@code Junction}s vecinas.
+	 */
+	private static final int SPACING = 100;
+
+	/**
+	 * Velocidades máximas de las {@code Road}s.
+	 */
+	private static final int[] SPEEDS = { 30, 50, 70, 90 };
+
+	/**
+	 * Topología de la red.
+	 */
+	private Topology topology;
+
+	/**
+	 * Número aproximado de {@code Junction}s.
+	 */
+	private int junctions;
+
+	/**
+	 * Número total de {@code Vehicle}s.
+	 */
+	private int vehicles = 1000;
+
+	/**
+	 * Semilla de la generación.
+	 */
+	private long seed = 0;
+
+	/**
+	 * Proporción de {@code Road}s de varios carriles
+	 * y sin asfaltar.
+	 */
+	private double lanes = 0.2;
+	private double dirt = 0.1;
+
+	/**
+	 * Proporción de {@code Junction}s {@code rr} y {@code mc}.
+	 */
+	private double robin = 0.2;
+	private double crowded = 0.2;
+
+	/**
+	 * Proporción de {@code Road}s que se conservan
+	 * en la red aleatoria, además de las necesarias
+	 * para que siga conectada.
+	 */
+	private double keep = 0.7;
+
+	/**
+	 * Número de generadores de demanda y de pares
+	 * origen-destino de cada uno.
+	 */
+	private int demands = 8;
+	private int pairs = 4;
+
+	/**
+	 * Ticks en los que se crean, de media, todos
+	 * los {@code Vehicle}s.
+	 */
+	private int window = 100;
+
+	/**
+	 * Generador aleatorio de la generación en curso.
+	 */
+	private Random random;
+
+	/**
+	 * Destino de las secciones y número de
+	 * {@code Road}s creadas.
+	 */
+	private Consumer<IniSection> out;
+	private int numRoads;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link NetworkGenerator}.
+	 *
+	 * @param topology 	- topología de la red
+	 * @param junctions - número aproximado de
+	 * 					{@code Junction}s
+	 */
+	public NetworkGenerator(Topology topology, int junctions) {
+		this.topology = topology;
+		this.junctions = Math.max(4, junctions);
+	}
+
+	/**
+	 * Crea un generador a partir de una especificación
+	 * {@code topología[:clave=valor,...]}, por ejemplo
+	 * {@code grid:junctions=250000,vehicles=10000000,seed=3}.
+	 * Las claves son {@code junctions}, {@code vehicles},
+	 * {@code seed}, {@code lanes}, {@code dirt}, {@code rr},
+	 * {@code mc}, {@code keep}, {@code demands}, {@code pairs}
+	 * y {@code window}.
+	 *
+	 * @param spec 	- especificación del escenario
+	 *
+	 * @return 		generador configurado
+	 *
+	 * @throws IllegalArgumentException 	if the specification
+	 * 										is not valid
+	 */
+	public static NetworkGenerator fromSpec(String spec)
+			throws IllegalArgumentException {
+		String[] parts = spec.split(":", 2);
+
+		NetworkGenerator generator;
+		try {
+			generator = new NetworkGenerator(
+				Topology.valueOf(parts[0].trim().toUpperCase()), 100);
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException(
+				"Invalid topology: " + parts[0]
+			);
+		}
+
+		if (parts.length == 1 || parts[1].trim().isEmpty()) {
+			return generator;
+		}
+		for (String param : parts[1].split(",")) {
+			int eq = param.indexOf('=');
+			if ( eq <= 0 ) {
+				throw new IllegalArgumentException(
+					"Invalid scenario parameter: " + param
+				);
+			}
+			generator.set(param.substring(0, eq).trim(),
+				param.substring(eq + 1).trim());
+		}
+
+		return generator;
+	}
+
+	/**
+	 * Fija un parámetro a partir de su clave.
+	 */
+	private void set(String key, String value) throws IllegalArgumentException {
+		try {
+			switch (key) {
+			case "junctions": junctions = Math.max(4, Integer.parseInt(value)); break;
+			case "vehicles": vehicles = nonNegative(Integer.parseInt(value)); break;
+			case "seed": seed = Long.parseLong(value); break;
+			case "lanes": lanes = fraction(value); break;
+			case "dirt": dirt = fraction(value); break;
+			case "rr": robin = fraction(value); break;
+			case "mc": crowded = fraction(value); break;
+			case "keep": keep = fraction(value); break;
+			case "demands": demands = Math.max(1, Integer.parseInt(value)); break;
+			case "pairs": pairs = Math.max(1, Integer.parseInt(value)); break;
+			case "window": window = Math.max(1, Integer.parseInt(value)); break;
+			default:
+				throw new IllegalArgumentException(
+					"Unknown scenario parameter: " + key
+				);
+			}
+		}
+		catch (NumberFormatException e) {
+			throw new IllegalArgumentException(
+				"Invalid value for " + key + ": " + value
+			);
+		}
+
+		if ( lanes + dirt > 1 || robin + crowded > 1 ) {
+			throw new IllegalArgumentException(
+				"Type proportions add up to more than 1"
+			);
+		}
+	}
+
+	private static int nonNegative(int value) {
+		if (value < 0) {
+			throw new NumberFormatException();
+		}
+		return value;
+	}
+
+	private static double fraction(String value) {
+		double result = Double.parseDouble(value);
+		if ( ! (result >= 0 && result <= 1) ) {
+			throw new NumberFormatException();
+		}
+		return result;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE CONFIGURACIÓN ** //
+	/**
+	 * Fija el número total de {@code Vehicle}s.
+	 *
+	 * @param vehicles 	- número de {@code Vehicle}s
+	 */
+	public void setVehicles(int vehicles) {
+		this.vehicles = Math.max(0, vehicles);
+	}
+
+	/**
+	 * Fija la semilla de la generación.
+	 *
+	 * @param seed 	- semilla
+	 */
+	public void setSeed(long seed) {
+		this.seed = seed;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE GENERACIÓN ** //
+	/**
+	 * Genera el escenario, entregando sus secciones en
+	 * orden: {@code Junction}s, {@code Road}s y demanda.
+	 *
+	 * @param sink 	- destino de las secciones
+	 */
+	public void generate(Consumer<IniSection> sink) {
+		random = new Random(seed);
+		out = sink;
+		numRoads = 0;
+
+		int nodes;
+		switch (topology) {
+		case GRID:
+			nodes = grid();
+			break;
+		case RING:
+			nodes = ring();
+			break;
+		default:
+			nodes = randomPlanar();
+			break;
+		}
+
+		demand(nodes);
+		out = null;
+	}
+
+	/**
+	 * Genera el escenario completo en memoria.
+	 *
+	 * @return 	{@code Ini} con el escenario
+	 */
+	public Ini toIni() {
+		Ini ini = new Ini();
+		generate(ini::addsection);
+		return ini;
+	}
+
+	/**
+	 * Escribe el escenario en {@code os} según se genera,
+	 * con el mismo formato que {@link Ini#store}.
+	 *
+	 * @param os 	- flujo de salida
+	 *
+	 * @throws IOException 	if the scenario could
+	 * 						not be written
+	 */
+	public void write(OutputStream os) throws IOException {
+		byte[] separator = System.lineSeparator().getBytes();
+		try {
+			generate(section -> {
+				try {
+					section.store(os);
+					os.write(separator);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			});
+		}
+		catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Cuadrícula de {@code rows x cols} {@code Junction}s.
+	 *
+	 * @return 	número de {@code Junction}s
+	 */
+	private int grid() {
+		int rows = (int) Math.ceil(Math.sqrt(junctions));
+		int cols = (junctions + rows - 1) / rows;
+
+		for (int i = 0; i < rows * cols; ++i) {
+			junction(i);
+		}
+		for (int r = 0; r < rows; ++r) {
+			for (int c = 0; c < cols; ++c) {
+				int u = r * cols + c;
+				if (c + 1 < cols) {
+					twoWay(u, u + 1, SPACING);
+				}
+				if (r + 1 < rows) {
+					twoWay(u, u + cols, SPACING);
+				}
+			}
+		}
+
+		return rows * cols;
+	}
+
+	/**
+	 * Centro más {@code rings} anillos de {@code spokes}
+	 * {@code Junction}s, unidos por radios.
+	 *
+	 * @return 	número de {@code Junction}s
+	 */
+	private int ring() {
+		int spokes = Math.max(4, (int) Math.sqrt(junctions - 1));
+		int rings = Math.max(1, (junctions - 1) / spokes);
+
+		for (int i = 0; i <= rings * spokes; ++i) {
+			junction(i);
+		}
+		for (int r = 1; r <= rings; ++r) {
+			int arc = (int) Math.max(1,
+				Math.round(2 * Math.PI * r * SPACING / spokes));
+			for (int s = 0; s < spokes; ++s) {
+				int u = 1 + (r - 1) * spokes + s;
+				twoWay(u, 1 + (r - 1) * spokes + (s + 1) % spokes, arc);
+				twoWay(r == 1 ? 0 : u - spokes, u, SPACING);
+			}
+		}
+
+		return 1 + rings * spokes;
+	}
+
+	/**
+	 * Red plana aleatoria sobre una cuadrícula con los
+	 * puntos desplazados: lados y una diagonal por celda.
+	 * Se conserva un árbol generador aleatorio y, del
+	 * resto, una proporción {@code keep}.
+	 *
+	 * @return 	número de {@code Junction}s
+	 */
+	private int randomPlanar() {
+		int side = (int) Math.ceil(Math.sqrt(junctions));
+		int nodes = side * side;
+
+		double[] x = new double[nodes], y = new double[nodes];
+		for (int i = 0; i < nodes; ++i) {
+			junction(i);
+			x[i] = (i % side + 0.8 * (random.nextDouble() - 0.5)) * SPACING;
+			y[i] = (i / side + 0.8 * (random.nextDouble() - 0.5)) * SPACING;
+		}
+
+		// Lados y diagonales: no se cruzan entre sí.
+		int[] from = new int[3 * nodes], to = new int[3 * nodes];
+		int edges = 0;
+		for (int r = 0; r < side; ++r) {
+			for (int c = 0; c < side; ++c) {
+				int u = r * side + c;
+				if (c + 1 < side) {
+					from[edges] = u; to[edges++] = u + 1;
+				}
+				if (r + 1 < side) {
+					from[edges] = u; to[edges++] = u + side;
+				}
+				if (c + 1 < side && r + 1 < side) {
+					if ( random.nextBoolean() ) {
+						from[edges] = u; to[edges++] = u + side + 1;
+					}
+					else {
+						from[edges] = u + 1; to[edges++] = u + side;
+					}
+				}
+			}
+		}
+
+		// Orden aleatorio: los lados que unen dos componentes
+		// forman el árbol generador (Kruskal).
+		int[] order = new int[edges];
+		for (int e = 0; e < edges; ++e) {
+			order[e] = e;
+		}
+		for (int e = edges - 1; e > 0; --e) {
+			int k = random.nextInt(e + 1);
+			int tmp = order[e]; order[e] = order[k]; order[k] = tmp;
+		}
+
+		int[] parent = new int[nodes];
+		for (int i = 0; i < nodes; ++i) {
+			parent[i] = i;
+		}
+		for (int k = 0; k < edges; ++k) {
+			int e = order[k];
+			int a = find(parent, from[e]), b = find(parent, to[e]);
+			boolean tree = (a != b);
+			if (tree) {
+				parent[a] = b;
+			}
+
+			if ( tree || random.nextDouble() < keep ) {
+				double length = Math.hypot(x[from[e]] - x[to[e]], y[from[e]] - y[to[e]]);
+				twoWay(from[e], to[e], (int) Math.max(1, Math.round(length)));
+			}
+		}
+
+		return nodes;
+	}
+
+	private static int find(int[] parent, int i) {
+		while (parent[i] != i) {
+			parent[i] = parent[parent[i]];
+			i = parent[i];
+		}
+		return i;
+	}
+
+	/**
+	 * Sección de la {@code Junction} {@code i}, de un tipo al azar.
+	 */
+	private void junction(int i) {
+		IniSection junction = new IniSection("new_junction");
+		junction.setValue("time", 0);
+		junction.setValue("id", "j" + i);
+
+		double u = random.nextDouble();
+		if (u < robin) {
+			junction.setValue("type", "rr");
+			junction.setValue("min_time_slice", 1 + random.nextInt(2));
+			junction.setValue("max_time_slice", 3 + random.nextInt(3));
+		}
+		else if (u < robin + crowded) {
+			junction.setValue("type", "mc");
+		}
+
+		out.accept(junction);
+	}
+
+	/**
+	 * Secciones de las {@code Road}s entre {@code u} y {@code v}
+	 * en los dos sentidos.
+	 */
+	private void twoWay(int u, int v, int length) {
+		road(u, v, length);
+		road(v, u, length);
+	}
+
+	/**
+	 * Sección de una {@code Road} de un tipo al azar.
+	 */
+	private void road(int u, int v, int length) {
+		IniSection road = new IniSection("new_road");
+		road.setValue("time", 0);
+		road.setValue("id", "r" + numRoads++);
+		road.setValue("src", "j" + u);
+		road.setValue("dest", "j" + v);
+		road.setValue("max_speed", SPEEDS[ random.nextInt(SPEEDS.length) ]);
+		road.setValue("length", length);
+
+		double t = random.nextDouble();
+		if (t < lanes) {
+			road.setValue("type", "lanes");
+			road.setValue("lanes", 2 + random.nextInt(2));
+		}
+		else if (t < lanes + dirt) {
+			road.setValue("type", "dirt");
+		}
+
+		out.accept(road);
+	}
+
+	/**
+	 * Secciones de los generadores de demanda, que se
+	 * reparten {@code vehicles} a partes iguales.
+	 */
+	private void demand(int nodes) {
+		int generators = Math.min(demands, Math.max(1, vehicles));
+
+		for (int d = 0; d < generators && vehicles > 0; ++d) {
+			int share = vehicles / generators + (d < vehicles % generators ? 1 : 0);
+
+			StringBuilder od = new StringBuilder();
+			for (int p = 0; p < pairs; ++p) {
+				int origin = random.nextInt(nodes);
+				int destination = (origin + 1 + random.nextInt(nodes - 1)) % nodes;
+				if (p > 0) {
+					od.append(',');
+				}
+				od.append('j').append(origin).append(":j").append(destination);
+			}
+
+			IniSection demand = new IniSection("new_demand");
+			demand.setValue("time", 0);
+			demand.setValue("id", "d" + d);
+			demand.setValue("rate", (double) share / window);
+			demand.setValue("max_vehicles", share);
+			demand.setValue("od", od);
+			demand.setValue("max_speed", SPEEDS[ random.nextInt(SPEEDS.length) ]);
+			demand.setValue("mix", "vehicle:6,car:3,bike:1");
+			demand.setValue("resistance", 5);
+			demand.setValue("fault_probability", 0.05);
+			demand.setValue("max_fault_duration", 3);
+			demand.setValue("seed", random.nextLong());
+			out.accept(demand);
+		}
+	}
+}
@@ -0,0 +1,387 @@
+package es.ucm.fdi.launcher;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.SimObj.Vehicle;
+import es.ucm.fdi.model.SimObj.VehicleArchive;
+import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.model.simulation.TrafficSimulation.FastForward;
+import es.ucm.fdi.util.EventType;
+
+/**
+ * <p>
+ * Barrido de parámetros sobre un escenario base. El {@code .ini}
+ * base se lee una sola vez y cada variante se obtiene en memoria
+ * sustituyendo el valor de las claves barridas en las secciones
+ * que las contienen (por ejemplo {@code seed}, {@code max_speed},
+ * {@code resistance}, {@code fault_probability},
+ * {@code max_time_slice} o {@code min_time_slice}). Una clave
+ * puede restringirse a un tipo de sección con la forma
+ * {@code etiqueta.clave} (por ejemplo {@code new_road.max_speed}).
+ * </p> <p>
+ * Las variantes son el producto cartesiano de los valores de cada
+ * parámetro. Se simulan en paralelo sin generar informes y, según
+ * terminan, se escribe una fila con sus indicadores: vehículos
+ * llegados, kilometraje medio y longitud media y máxima de las
+ * colas de espera.
+ * </p>
+ */
+public class ParameterSweep {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Escenario base.
+	 */
+	private Ini base;
+
+	/**
+	 * Ticks que se simula cada variante.
+	 */
+	private int timeLimit;
+
+	/**
+	 * Número de variantes que se simulan a la vez.
+	 */
+	private int jobs;
+
+	/**
+	 * Modo de avance rápido de cada simulación.
+	 */
+	private FastForward fastForward = FastForward.OFF;
+
+	/**
+	 * Parámetros barridos y sus valores, en orden.
+	 */
+	private Map<String, List<String>> parameters = new LinkedHashMap<>();
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link ParameterSweep}.
+	 *
+	 * @param base 		- escenario base, ya leído
+	 * @param timeLimit - ticks a simular por variante
+	 * @param jobs 		- número de variantes simultáneas
+	 */
+	public ParameterSweep(Ini base, int timeLimit, int jobs) {
+		this.base = base;
+		this.timeLimit = timeLimit;
+		this.jobs = jobs;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE CONFIGURACIÓN ** //
+	/**
+	 * Añade un parámetro con sus valores a partir de una
+	 * especificación {@code clave=v1,v2,...}.
+	 *
+	 * @param spec 	- especificación del parámetro
+	 *
+	 * @throws IllegalArgumentException 	if the specification
+	 * 										is not valid
+	 */
+	public void addParameter(String spec) throws IllegalArgumentException {
+		int eq = spec.indexOf('=');
+		if ( eq <= 0 || eq == spec.length() - 1 ) {
+			throw new IllegalArgumentException(
+				"Invalid sweep parameter: " + spec
+			);
+		}
+
+		addParameter(spec.substring(0, eq).trim(),
+			Arrays.asList(spec.substring(eq + 1).split(",")));
+	}
+
+	/**
+	 * Añade un parámetro con sus valores.
+	 *
+	 * @param key 		- clave, opcionalmente con
+	 * 					la forma {@code etiqueta.clave}
+	 * @param values 	- valores que toma
+	 */
+	public void addParameter(String key, List<String> values) {
+		List<String> trimmed = new ArrayList<>();
+		for (String v : values) {
+			trimmed.add(v.trim());
+		}
+		parameters.put(key, trimmed);
+	}
+
+	/**
+	 * Fija el modo de avance rápido de cada simulación.
+	 *
+	 * @param mode 	- modo de avance rápido
+	 */
+	public void setFastForward(FastForward mode) {
+		fastForward = mode;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE EJECUCIÓN ** //
+	/**
+	 * Devuelve todas las combinaciones de valores
+	 * de los parámetros (producto cartesiano).
+	 *
+	 * @return 	lista de variantes, cada una como
+	 * 			mapa de clave a valor
+	 */
+	public List<Map<String, String>> variants() {
+		List<Map<String, String>> variants = new ArrayList<>();
+		variants.add(new LinkedHashMap<>());
+
+		for (Map.Entry<String, List<String>> param : parameters.entrySet()) {
+			List<Map<String, String>> expanded = new ArrayList<>();
+
+			for (Map<String, String> variant : variants) {
+				for (String value : param.getValue()) {
+					Map<String, String> next = new LinkedHashMap<>(variant);
+					next.put(param.getKey(), value);
+					expanded.add(next);
+				}
+			}
+			variants = expanded;
+		}
+
+		return variants;
+	}
+
+	/**
+	 * Simula todas las variantes en un pool de {@code jobs}
+	 * hilos, escribiendo en {@code out} la cabecera de la
+	 * tabla y una fila por variante según terminan.
+	 *
+	 * @param out 	- flujo de salida de la tabla
+	 *
+	 * @return 		número de variantes con error
+	 *
+	 * @throws InterruptedException 		if interrupted while
+	 * 										waiting for the variants
+	 * @throws IllegalArgumentException 	if a parameter matches
+	 * 										no key of the scenario
+	 */
+	public int run(PrintStream out) throws InterruptedException {
+		checkParameters();
+		List<Map<String, String>> variants = variants();
+
+		// Cabecera.
+		StringBuilder header = new StringBuilder("run");
+		for (String key : parameters.keySet()) {
+			header.append('\t').append(key);
+		}
+		header.append("\tarrived\tvehicles\tmean_kilometrage")
+			.append("\tmean_queue\tmax_queue\tms");
+		out.println(header);
+
+		ExecutorService pool = Executors.newFixedThreadPool(jobs);
+		CompletionService<String> rows = new ExecutorCompletionService<>(pool);
+		Map<Future<String>, Integer> runs = new HashMap<>();
+		int errors = 0;
+
+		try {
+			for (int i = 0; i < variants.size(); ++i) {
+				final int run = i;
+				runs.put(rows.submit(() -> runVariant(run, variants.get(run))), run);
+			}
+
+			for (int i = 0; i < variants.size(); ++i) {
+				Future<String> done = rows.take();
+				try {
+					out.println( done.get() );
+				}
+				catch (ExecutionException e) {
+					int run = runs.get(done);
+					out.println( errorRow(run, variants.get(run), e.getCause()) );
+					errors++;
+				}
+			}
+		}
+		finally {
+			pool.shutdownNow();
+		}
+
+		return errors;
+	}
+
+	/**
+	 * Comprueba que cada parámetro sustituye algún valor
+	 * del escenario base, pues si no todas las variantes
+	 * serían iguales.
+	 *
+	 * @throws IllegalArgumentException 	if a parameter matches
+	 * 										no key of the scenario
+	 */
+	private void checkParameters() throws IllegalArgumentException {
+		for (String param : parameters.keySet()) {
+			boolean found = false;
+
+			for ( IniSection section : base.getSections() ) {
+				for ( String key : section.getKeys() ) {
+					if ( param.equals(key) ||
+							param.equals(section.getTag() + "." + key) ) {
+						found = true;
+					}
+				}
+			}
+
+			if ( ! found ) {
+				throw new IllegalArgumentException(
+					"Sweep parameter " + param + " matches no key of the scenario."
+				);
+			}
+		}
+	}
+
+	/**
+	 * Simula una variante sin generar informes y
+	 * devuelve su fila de la tabla.
+	 *
+	 * @param run 		- número de la variante
+	 * @param variant 	- valores de los parámetros
+	 *
+	 * @return 			fila con los indicadores
+	 *
+	 * @throws Exception 	if the variant could not be
+	 * 						parsed or simulated
+	 */
+	private String runVariant(int run, Map<String, String> variant)
+			throws Exception {
+
+		long start = System.nanoTime();
+
+		Controller control = new Controller(applyVariant(variant), null, timeLimit);
+		control.setFastForward(fastForward);
+
+		// Muestreo de las colas tras cada tick.
+		long[] queues = new long[2]; // { suma, máximo }
+		control.getSimulator().addSimulatorListener( (ue, error) -> {
+			if ( ue.getEvent() == EventType.ADVANCED ) {
+				int waiting = 0;
+				for ( Road road : ue.getRoadMap().getRoads().values() ) {
+					waiting += road.getNumWaitingVehicles();
+				}
+				queues[0] += waiting;
+				queues[1] = Math.max(queues[1], waiting);
+			}
+		}, EventType.ADVANCED);
+
+		control.executeBatch();
+
+		// Indicadores finales.
+		RoadMap map = control.getSimulator().getRoadMap();
+		VehicleArchive archive = map.getVehicleArchive();
+		int arrived = archive.size();
+		long kilometrage = 0;
+		for (int i = 0; i < archive.size(); ++i) {
+			kilometrage += archive.getKilometrage(i);
+		}
+		for ( Vehicle v : map.getVehicles().values() ) {
+			kilometrage += v.getKilometrage();
+		}
+		int numVehicles = map.getVehicles().size() + arrived;
+		int ticks = Math.max(control.getExecutionTime(), 1);
+
+		StringBuilder row = rowStart(run, variant);
+		row.append('\t').append(arrived)
+			.append('\t').append(numVehicles)
+			.append('\t').append( String.format("%.2f",
+				(numVehicles > 0) ? (double) kilometrage / numVehicles : 0.0) )
+			.append('\t').append( String.format("%.2f", (double) queues[0] / ticks) )
+			.append('\t').append(queues[1])
+			.append('\t').append( String.format("%.1f", (System.nanoTime() - start) / 1e6) );
+
+		return row.toString();
+	}
+
+	/**
+	 * Devuelve la fila de una variante que no se ha podido
+	 * simular: su número y sus parámetros, como el resto de
+	 * filas, seguidos de {@code ERROR} y la causa.
+	 *
+	 * @param run 		- número de la variante
+	 * @param variant 	- valores de los parámetros
+	 * @param cause 	- excepción de la variante
+	 *
+	 * @return 			fila de error
+	 */
+	private String errorRow(int run, Map<String, String> variant, Throwable cause) {
+		String message = (cause.getMessage() != null) ? 
+			cause.getMessage() : cause.toString();
+
+		return rowStart(run, variant)
+			.append("\tERROR\t")
+			.append( message.replaceAll("\\s+", " ").trim() )
+			.toString();
+	}
+
+	/**
+	 * Empieza una fila con el número de la variante
+	 * y los valores de sus parámetros.
+	 */
+	private static StringBuilder rowStart(int run, Map<String, String> variant) {
+		StringBuilder row = new StringBuilder().append(run);
+		for (String value : variant.values()) {
+			row.append('\t').append(value);
+		}
+		return row;
+	}
+
+	/**
+	 * Copia en memoria el escenario base sustituyendo
+	 * los valores de los parámetros de la variante.
+	 *
+	 * @param variant 	- valores de los parámetros
+	 *
+	 * @return 			{@code Ini} de la variante
+	 */
+	private Ini applyVariant(Map<String, String> variant) {
+		Ini ini = new Ini();
+
+		for ( IniSection section : base.getSections() ) {
+			IniSection copy = new IniSection(section.getTag());
+
+			for ( String key : section.getKeys() ) {
+				String value = section.getValue(key);
+				String tagged = section.getTag() + "." + key;
+
+				if ( variant.containsKey(tagged) ) {
+					value = variant.get(tagged);
+				}
+				else if ( variant.containsKey(key) ) {
+					value = variant.get(key);
+				}
+				copy.setValue(key, value);
+			}
+			ini.addsection(copy);
+		}
+
+		return ini;
+	}
+}
@@ -0,0 +1,320 @@
+package es.ucm.fdi.launcher;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.model.simulation.TrafficSimulation.FastForward;
+
+/**
+ * <p>
+ * Ejecutor de baterías de escenarios en modo {@code batch}.
+ * Cada escenario es un fichero {@code .ini} que se simula con
+ * su propio {@link Controller} (y, por tanto, su propia
+ * {@code TrafficSimulation}) en uno de los hilos del pool.
+ * </p> <p>
+ * El informe de {@code escenario.ini} se guarda en
+ * {@code escenario.ini.out} y, si existe
+ * {@code escenario.ini.eout}, se compara con él.
+ * </p>
+ */
+public class ScenarioRunner {
+
+	// ** CLASES INTERNAS ** //
+	/**
+	 * Resultado de la ejecución de un escenario.
+	 */
+	public static class Result {
+
+		/**
+		 * Posibles estados de un escenario ejecutado.
+		 */
+		public enum Status {
+			OK, DIFFERENT, DONE, ERROR
+		}
+
+		private File scenario;
+		private Status status;
+		private long nanos;
+		private String message;
+
+		public Result(File scenario, Status status, long nanos, String message) {
+			this.scenario = scenario;
+			this.status = status;
+			this.nanos = nanos;
+			this.message = message;
+		}
+
+		public File getScenario() {
+			return scenario;
+		}
+
+		public Status getStatus() {
+			return status;
+		}
+
+		public long getNanos() {
+			return nanos;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Número de escenarios que se simulan a la vez.
+	 */
+	private int jobs;
+
+	/**
+	 * Ticks que se simula cada escenario.
+	 */
+	private int timeLimit;
+
+	/**
+	 * Hilos de avance de {@code Road}s de cada simulación.
+	 */
+	private int roadWorkers = 1;
+
+	/**
+	 * Modo de avance rápido de cada simulación.
+	 */
+	private FastForward fastForward = FastForward.OFF;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link ScenarioRunner}.
+	 *
+	 * @param jobs 		- número de escenarios simultáneos
+	 * @param timeLimit - ticks a simular por escenario
+	 */
+	public ScenarioRunner(int jobs, int timeLimit) {
+		this.jobs = jobs;
+		this.timeLimit = timeLimit;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE EJECUCIÓN ** //
+	/**
+	 * <p>
+	 * Devuelve los escenarios indicados por {@code path}:
+	 * </p> <p>
+	 * - Si es un directorio, sus ficheros {@code .ini}
+	 * en orden alfabético.
+	 * </p> <p>
+	 * - Si es un fichero, se lee como manifiesto: una ruta
+	 * por línea, relativa al directorio del manifiesto. Las
+	 * líneas vacías o que empiezan por {@code #} se ignoran.
+	 * </p>
+	 *
+	 * @param path 	- directorio o manifiesto
+	 *
+	 * @return 		lista de ficheros de escenario
+	 *
+	 * @throws IOException 	if {@code path} does not exist
+	 * 						or the manifest cannot be read
+	 */
+	public static List<File> listScenarios(String path) throws IOException {
+		File source = new File(path);
+
+		if ( ! source.exists() ) {
+			throw new FileNotFoundException(path);
+		}
+
+		List<File> scenarios = new ArrayList<>();
+
+		// Directorio.
+		if ( source.isDirectory() ) {
+			File[] files = source.listFiles(
+				(dir, name) -> name.endsWith(".ini")
+			);
+			Arrays.sort(files);
+			scenarios.addAll(Arrays.asList(files));
+		}
+		// Manifiesto.
+		else {
+			File base = source.getAbsoluteFile().getParentFile();
+
+			try ( BufferedReader reader = new BufferedReader(new FileReader(source)) ) {
+				String line;
+				while ( (line = reader.readLine()) != null ) {
+					line = line.trim();
+					if ( line.isEmpty() || line.startsWith("#") ) {
+						continue;
+					}
+
+					File scenario = new File(line);
+					if ( ! scenario.isAbsolute() ) {
+						scenario = new File(base, line);
+					}
+					scenarios.add(scenario);
+				}
+			}
+		}
+
+		return scenarios;
+	}
+
+	/**
+	 * Simula todos los escenarios en un pool de {@code jobs}
+	 * hilos y devuelve sus resultados en el mismo orden.
+	 *
+	 * @param scenarios 	- ficheros de escenario
+	 *
+	 * @return 				resultados de cada escenario
+	 *
+	 * @throws InterruptedException 	if interrupted while
+	 * 									waiting for the scenarios
+	 */
+	public List<Result> run(List<File> scenarios) throws InterruptedException {
+		ExecutorService pool = Executors.newFixedThreadPool(jobs);
+		List<Future<Result>> pending = new ArrayList<>();
+
+		try {
+			for (File scenario : scenarios) {
+				pending.add( pool.submit(() -> runScenario(scenario)) );
+			}
+
+			List<Result> results = new ArrayList<>();
+			for (int i = 0; i < pending.size(); ++i) {
+				try {
+					results.add( pending.get(i).get() );
+				}
+				catch (ExecutionException e) {
+					results.add( new Result(scenarios.get(i),
+						Result.Status.ERROR, 0, e.getCause().toString()) );
+				}
+			}
+
+			return results;
+		}
+		finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Simula un escenario con su propio {@code Controller}
+	 * y compara la salida con la esperada, si existe.
+	 *
+	 * @param scenario 	- fichero de escenario
+	 *
+	 * @return 			resultado del escenario
+	 */
+	private Result runScenario(File scenario) {
+		File outFile = new File(scenario.getPath() + ".out");
+		File expectedFile = new File(scenario.getPath() + ".eout");
+
+		long start = System.nanoTime();
+		try {
+			try ( OutputStream os = new BufferedOutputStream(new FileOutputStream(outFile));
+					Controller control = new Controller(new Ini(scenario.getPath()), os, timeLimit) ) {
+				control.setRoadWorkers(roadWorkers);
+				control.setFastForward(fastForward);
+				control.executeBatch();
+			}
+			long elapsed = System.nanoTime() - start;
+
+			// Comparación con la salida esperada.
+			if ( ! expectedFile.exists() ) {
+				return new Result(scenario, Result.Status.DONE, elapsed, null);
+			}
+			boolean equalOutput = ( new Ini(outFile.getPath()) ).equals(
+				new Ini(expectedFile.getPath()) );
+
+			return new Result(scenario,
+				equalOutput ? Result.Status.OK : Result.Status.DIFFERENT,
+				elapsed, null);
+		}
+		catch (Exception e) {
+			return new Result(scenario, Result.Status.ERROR,
+				System.nanoTime() - start, e.getMessage());
+		}
+	}
+
+	/**
+	 * Escribe el tiempo y estado de cada escenario,
+	 * seguidos de un resumen de la batería.
+	 *
+	 * @param results 		- resultados de los escenarios
+	 * @param wallNanos 	- tiempo total de la batería
+	 * @param out 			- flujo de salida
+	 */
+	public static void printReport(List<Result> results, long wallNanos, PrintStream out) {
+		int[] counts = new int[Result.Status.values().length];
+		long scenarioNanos = 0;
+
+		for (Result r : results) {
+			out.printf("%10.1f ms  %-9s %s%s%n",
+				r.getNanos() / 1e6, r.getStatus(), r.getScenario().getPath(),
+				(r.getMessage() != null) ? (" : " + r.getMessage()) : "");
+
+			counts[r.getStatus().ordinal()]++;
+			scenarioNanos += r.getNanos();
+		}
+
+		out.printf("Scenarios: %d, OK: %d, different: %d, no expected output: %d, errors: %d%n",
+			results.size(), counts[Result.Status.OK.ordinal()],
+			counts[Result.Status.DIFFERENT.ordinal()],
+			counts[Result.Status.DONE.ordinal()],
+			counts[Result.Status.ERROR.ordinal()]);
+		out.printf("Wall time: %.1f ms, summed scenario time: %.1f ms%n",
+			wallNanos / 1e6, scenarioNanos / 1e6);
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE CONFIGURACIÓN ** //
+	/**
+	 * Fija el número de hilos de avance de {@code Road}s
+	 * de cada simulación.
+	 *
+	 * @param workers 	- número de hilos
+	 */
+	public void setRoadWorkers(int workers) {
+		roadWorkers = workers;
+	}
+
+	/**
+	 * Fija el modo de avance rápido de cada simulación.
+	 *
+	 * @param mode 	- modo de avance rápido
+	 */
+	public void setFastForward(FastForward mode) {
+		fastForward = mode;
+	}
+}
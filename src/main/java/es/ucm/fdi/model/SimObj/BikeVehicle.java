@@ -1,6 +1,6 @@
 package es.ucm.fdi.model.SimObj;
 
-import java.util.ArrayList;
+import java.util.List;
 
 import es.ucm.fdi.ini.IniSection;
 import es.ucm.fdi.model.simulation.SimulationException;
@@ -17,14 +17,29 @@ public class BikeVehicle extends Vehicle {
 	 * 
 	 * @param identifier 	- identificador del objeto
 	 * @param trp 			- ruta de {@code Junction}s
+	 * @param rt 			- ruta de {@code Road}s
 	 * @param max 			- máxima velocidad alcanzable
+	 * @param vs 			- almacén de estado de los
+	 * 						{@code Vehicle}s
 	 * 
 	 * @throws SimulationException {@inheritDoc}
 	 */
-	public BikeVehicle(String identifier, ArrayList<Junction> trp, int max) 
-			throws SimulationException {
+	public BikeVehicle(String identifier, List<Junction> trp, Road[] rt,
+			int max, VehicleStore vs) throws SimulationException {
 
-		super(identifier, trp, max);
+		super(identifier, trp, rt, max, vs);
+	}
+
+	/**
+	 * Constructor de {@link BikeVehicle} que se lee de
+	 * un punto de control o de otro proceso.
+	 * 
+	 * @param identifier 	- identificador del objeto
+	 * @param vs 			- almacén de estado de los
+	 * 						{@code Vehicle}s
+	 */
+	BikeVehicle(String identifier, VehicleStore vs) {
+		super(identifier, vs);
 	}
 
 
@@ -43,8 +58,8 @@ public class BikeVehicle extends Vehicle {
 	public void setBreakdownTime(int addedBreakdownTime)  {
 		// Si la bicicleta avanza más rápido que la mitad de su velocidad
 		// alcanzable, entonces podrá sumársele el tiempo de avería.
-		if ( actualSpeed > (maxSpeed / 2) ) {
-			breakdownTime += addedBreakdownTime;
+		if ( getSpeed() > (maxSpeed / 2) ) {
+			store.addBreakdownTime(handle, addedBreakdownTime);
 		}
 	}	
 	
@@ -77,9 +92,9 @@ public class BikeVehicle extends Vehicle {
 		section.setValue("id", id);
 		section.setValue("time", simTime);
 		section.setValue("type", getType());
-		section.setValue("speed", actualSpeed);
-		section.setValue("kilometrage", kilometrage);
-		section.setValue("faulty", breakdownTime);
+		section.setValue("speed", getSpeed());
+		section.setValue("kilometrage", getKilometrage());
+		section.setValue("faulty", getBreakdownTime());
 		section.setValue("location", getReportLocation());
 		
 		
@@ -95,4 +110,12 @@ public class BikeVehicle extends Vehicle {
     protected String getType() {
 		return "bike";
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	String getReportType() {
+		return getType();
+	}
 }
@@ -1,10 +1,14 @@
 package es.ucm.fdi.model.SimObj;
 
-import java.util.ArrayList;
-import java.util.Random;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
 
 import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.simulation.RoadMap;
 import es.ucm.fdi.model.simulation.SimulationException;
+import es.ucm.fdi.util.CounterRandom;
 
 /**
  * Clase que representa un coche como un objeto
@@ -29,14 +33,17 @@ public class CarVehicle extends Vehicle {
 	private int faultDuration;
 	
 	/**
-	 * Semilla aleatoria.
+	 * Generador aleatorio basado en contador: cada sorteo 
+	 * depende sólo de la semilla y de su número de orden, 
+	 * no del orden en que avanzan las {@code Road}s.
 	 */
-	private Random randomSeed;
+	private CounterRandom randomSeed;
 	
 	/**
-	 * Distancia transcurrida desde la última avería.
+	 * Kilometraje en la última avería, para calcular
+	 * la distancia recorrida desde entonces.
 	 */
-	private int kmSinceFaulty = 0;
+	private int faultKilometrage = 0;
 	
 
 
@@ -51,22 +58,37 @@ public class CarVehicle extends Vehicle {
 	 * 
 	 * @param identifier 	- identificador del objeto
 	 * @param trp 			- ruta de {@code Junction}s
+	 * @param rt 			- ruta de {@code Road}s
 	 * @param max 			- máxima velocidad alcanzable
 	 * @param res 			- resistencia a averiarse
 	 * @param breakChance 	- probabilidad de avería
 	 * @param breakDuration - duración máxima de avería
 	 * @param seed 			- semilla aleatoria
+	 * @param vs 			- almacén de estado de los
+	 * 						{@code Vehicle}s
 	 * 
 	 * @throws SimulationException {@inheritDoc}
 	 */
-	public CarVehicle(String identifier, ArrayList<Junction> trp,
+	public CarVehicle(String identifier, List<Junction> trp, Road[] rt,
 			int max, int res, double breakChance, int breakDuration, 
-			long seed) throws SimulationException {
-		super(identifier, trp, max);
+			long seed, VehicleStore vs) throws SimulationException {
+		super(identifier, trp, rt, max, vs);
 		resistance = res;
 		faultyChance = breakChance;
 		faultDuration = breakDuration;
-		randomSeed = new Random(seed);
+		randomSeed = new CounterRandom(seed);
+	}
+
+	/**
+	 * Constructor de {@link CarVehicle} que se lee de
+	 * un punto de control o de otro proceso.
+	 * 
+	 * @param identifier 	- identificador del objeto
+	 * @param vs 			- almacén de estado de los
+	 * 						{@code Vehicle}s
+	 */
+	CarVehicle(String identifier, VehicleStore vs) {
+		super(identifier, vs);
 	}
 	
 
@@ -87,11 +109,13 @@ public class CarVehicle extends Vehicle {
 	 * </p>
 	 */
 	@Override
-	public void proceed() {
+	protected void checkFault() {
 		// 1 //
 		// No está averiado, pero puede averiarse
 		// si se dan las condiciones.
 		if ( ! isFaulty() ) {
+			int kmSinceFaulty = getKilometrage() - faultKilometrage;
+
 			if ( kmSinceFaulty > resistance ) {
 				if ( randomSeed.nextDouble() < faultyChance ) {
 					// Generamos un tiempo de avería entre 1 y faultDuration
@@ -102,20 +126,12 @@ public class CarVehicle extends Vehicle {
 
 		// 2 //
 		// Puede averarse por un evento o si se dan
-		// las condiciones anteriores.
+		// las condiciones anteriores. La distancia
+		// se cuenta de nuevo desde aquí.
 		if ( isFaulty() ) {
-			kmSinceFaulty = 0;
-			actualSpeed = 0;
+			faultKilometrage = getKilometrage();
+			store.setSpeed(handle, 0);
 		}
-
-		// 3 //
-		// El coche avanza como un vehículo normal y con
-		// las diferencias de kilometraje se calculan la
-		// distancia que lleva el coche sin averiarse.
-		int oldKilometrage = kilometrage;
-		super.proceed();
-
-		kmSinceFaulty += kilometrage - oldKilometrage;
 	}
 	
 	
@@ -125,6 +141,45 @@ public class CarVehicle extends Vehicle {
 	
 	
 	
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * En un {@code CarVehicle}, también los parámetros de
+	 * avería, la semilla y el número de sorteos de su
+	 * generador aleatorio.
+	 * </p>
+	 */
+	@Override
+	void writeState(DataOutput out) throws IOException {
+		super.writeState(out);
+		out.writeInt(resistance);
+		out.writeDouble(faultyChance);
+		out.writeInt(faultDuration);
+		out.writeLong(randomSeed.getSeed());
+		out.writeLong(randomSeed.getCounter());
+		out.writeInt(faultKilometrage);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	void readState(DataInput in, RoadMap map) throws IOException {
+		super.readState(in, map);
+		resistance = in.readInt();
+		faultyChance = in.readDouble();
+		faultDuration = in.readInt();
+		long seed = in.readLong();
+		randomSeed = new CounterRandom(seed, in.readLong());
+		faultKilometrage = in.readInt();
+	}
+
+
+
+
+
+
 	// ** MÉTODO DE INFORME ** //
 	/**
 	 * Genera una {@code IniSection} que informa de
@@ -149,9 +204,9 @@ public class CarVehicle extends Vehicle {
 		section.setValue("id", id);
 		section.setValue("time", simTime);
 		section.setValue("type", getType());
-		section.setValue("speed", actualSpeed);
-		section.setValue("kilometrage", kilometrage);
-		section.setValue("faulty", breakdownTime);
+		section.setValue("speed", getSpeed());
+		section.setValue("kilometrage", getKilometrage());
+		section.setValue("faulty", getBreakdownTime());
 		section.setValue("location", getReportLocation());
 
 		return section;
@@ -166,4 +221,12 @@ public class CarVehicle extends Vehicle {
     protected String getType() {
 		return "car";
 	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	String getReportType() {
+		return getType();
+	}
 }
@@ -1,5 +1,8 @@
 package es.ucm.fdi.model.SimObj;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -72,9 +75,7 @@ public class CrowdedJunction extends Junction {
         // 1 // 
         // La carretera con la cola más concurrida se pone en verde.
         light = mostCrowdedRoad();
-        List<String> array = new ArrayList<>(incomingRoads.keySet());
-		String nextRoad = array.get(light);
-        Road crowdedRoad = incomingRoads.get(nextRoad);
+        Road crowdedRoad = incomingList.get(light);
 
         crowdedRoad.setLight(true);
         
@@ -121,9 +122,7 @@ public class CrowdedJunction extends Junction {
      */
     @Override
     protected void lightUpdate() {
-    	List<String> array = new ArrayList<>(incomingRoads.keySet());
-		String nextRoad = array.get(light);
-        Road usedRoad = incomingRoads.get(nextRoad);
+        Road usedRoad = incomingList.get(light);
         int roadTimeLapse = timeLapses.get(usedRoad);
 
         // Se actualiza el tiempo transcurrido con el semáforo en verde.
@@ -138,8 +137,7 @@ public class CrowdedJunction extends Junction {
             // 1 //
             // La carretera con la cola más concurrida se pone en verde.
             light = mostCrowdedRoad();
-            nextRoad = array.get(light);
-            Road crowdedRoad = incomingRoads.get(nextRoad);
+            Road crowdedRoad = incomingList.get(light);
 
             crowdedRoad.setLight(true);
 
@@ -156,6 +154,41 @@ public class CrowdedJunction extends Junction {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * En una {@code CrowdedJunction}, el semáforo en verde
+     * agota su tiempo y, como todas las colas están vacías,
+     * cada {@code Road} siguiente pasa a estar un tick en
+     * verde, en el orden de {@code incomingRoads}.
+     * </p>
+     * 
+     * @param ticks     - {@inheritDoc}
+     */
+    @Override
+    protected void skipLights(int ticks) {
+        int remaining = timeLapses.get( incomingList.get(light) ) - elapsedTime;
+        if (remaining <= 0 || ticks < remaining) {
+            // El semáforo no cambia en el reposo.
+            elapsedTime += ticks;
+            return;
+        }
+
+        elapsedTime += remaining - 1;
+        lightUpdate();
+        ticks -= remaining;
+
+        if (ticks > 0) {
+            int numIncomingRoads = incomingList.size();
+            incomingList.get(light).setLight(false);
+            for (int k = 1; k <= Math.min(ticks, numIncomingRoads); ++k) {
+                timeLapses.put(incomingList.get( (light + k) % numIncomingRoads ), 1);
+            }
+            light = (light + ticks) % numIncomingRoads;
+            incomingList.get(light).setLight(true);
+        }
+    }
+
     /**
      * Busca la carretera más concurrida y devuelve su 
      * posición en la lista {@code incomingRoads}. 
@@ -170,12 +203,9 @@ public class CrowdedJunction extends Junction {
         int max = 0; // 0 vehículos
         int crowdedPos = 0; // la primera carretera
 
-        List<String> array = new ArrayList<>(incomingRoads.keySet());
-        
         // Se halla el máximo.
-        for (int i = 0; i < array.size(); ++i) {
-            int numVehicles = incomingRoads.get(array.get(i)).
-            		getNumWaitingVehicles();
+        for (int i = 0; i < incomingList.size(); ++i) {
+            int numVehicles = incomingList.get(i).getNumWaitingVehicles();
 
             if (numVehicles > max) {
                 max = numVehicles;
@@ -186,9 +216,8 @@ public class CrowdedJunction extends Junction {
         // Posiciones de las carreteras que empatan.
         HashSet<Integer> equallyCrowdedPos = new HashSet<>();
         
-        for (int i = 0; i < array.size(); ++i) {
-            int numVehicles = incomingRoads.get(array.get(i)).
-            		getNumWaitingVehicles();
+        for (int i = 0; i < incomingList.size(); ++i) {
+            int numVehicles = incomingList.get(i).getNumWaitingVehicles();
 
             if (numVehicles == max) {
                 equallyCrowdedPos.add(i);
@@ -304,6 +333,36 @@ public class CrowdedJunction extends Junction {
 
 
 
+    // ** MÉTODOS DE PUNTOS DE CONTROL ** //
+    /**
+     * {@inheritDoc}
+     * <p>
+     * En una {@code CrowdedJunction}, también el tiempo 
+     * consumido y la duración del semáforo de cada {@code Road}.
+     * </p>
+     */
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeInt(elapsedTime);
+        writeLapses(out, timeLapses);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        elapsedTime = in.readInt();
+        readLapses(in, timeLapses);
+    }
+
+
+
+
+
+
     // ** MÉTODODS ADICIONALES ** //
     /**
      * {@inheritDoc}
@@ -138,6 +138,15 @@ public class HighwayRoad extends Road {
         return section;
     }
 
+    /**
+     * Devuelve el número de carriles de la vía.
+     * 
+     * @return  número de carriles
+     */
+    int getNumLanes() {
+        return numLanes;
+    }
+
     /**
      * {@inheritDoc}
      * 
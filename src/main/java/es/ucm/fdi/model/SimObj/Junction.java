@@ -1,5 +1,8 @@
 package es.ucm.fdi.model.SimObj;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -29,6 +32,12 @@ public class Junction extends SimObject {
 	 */
 	protected Map<String, Road> incomingRoads = new LinkedHashMap<>();
 
+	/**
+	 * Lista de {@code Road}s entrantes en el mismo orden 
+	 * que {@code incomingRoads}, indexada por {@code light}.
+	 */
+	protected List<Road> incomingList = new ArrayList<>();
+
 	/**
 	 * Mapa de {@code Road}s salientes 
 	 * en la {@code Junction}.
@@ -41,6 +50,12 @@ public class Junction extends SimObject {
 	 */
 	protected int light = -1;	
 
+	/**
+	 * Número de {@code Vehicle}s que cruzaron
+	 * en el último {@link #proceed()}.
+	 */
+	private int crossedVehicles = 0;
+
 
 
 
@@ -83,6 +98,8 @@ public class Junction extends SimObject {
 	 */
 	@Override
 	public void proceed() {
+		crossedVehicles = 0;
+
 		// Si no tiene carreteras entrantes no necesita
 		// ningún control de semáforo
 		if ( hasIncomingRoads() ) {
@@ -94,11 +111,11 @@ public class Junction extends SimObject {
 			else {
 				// 1 //
 				// Actualización de la cola de la Road con el semáforo en verde.
-				List<String> array = new ArrayList<>(incomingRoads.keySet());
-				String nextRoadID = array.get(light);
-				Road greenRoad = incomingRoads.get(nextRoadID);
+				Road greenRoad = incomingList.get(light);
+				int waiting = greenRoad.getNumWaitingVehicles();
 
 				roadUpdate(greenRoad);
+				crossedVehicles = waiting - greenRoad.getNumWaitingVehicles();
 				
 				// 2 //
 				// Actualización del tiempo de avería de los coches de la cola.
@@ -111,6 +128,42 @@ public class Junction extends SimObject {
 		}	
 	}
 
+	/**
+	 * Avanza {@code ticks} ticks en los que no hay ningún
+	 * {@code Vehicle} en las {@code Road}s entrantes. El
+	 * resultado es el mismo que el de llamar {@code ticks}
+	 * veces a {@link #proceed()}, pero sólo se actualiza
+	 * el semáforo, sin recorrer colas vacías.
+	 * 
+	 * @param ticks 	- número de ticks en reposo
+	 */
+	public void proceedIdle(int ticks) {
+		crossedVehicles = 0;
+
+		if ( hasIncomingRoads() && ticks > 0 ) {
+			if (light == -1) {
+				firstLightUpdate();
+				ticks--;
+			}
+			skipLights(ticks);
+		}
+	}
+
+	/**
+	 * Avanza el semáforo {@code ticks} ticks sin que
+	 * cruce ningún {@code Vehicle}. En una {@code Junction}
+	 * común, el semáforo avanza una {@code Road} por tick.
+	 * 
+	 * @param ticks 	- número de ticks en reposo
+	 */
+	protected void skipLights(int ticks) {
+		if (ticks > 0) {
+			incomingList.get(light).setLight(false);
+			light = (light + ticks) % incomingRoads.size();
+			incomingList.get(light).setLight(true);
+		}
+	}
+
 	/**
 	 * Comprueba si la {@code Junction}
 	 * tiene {@code Road}s entrantes.
@@ -129,11 +182,8 @@ public class Junction extends SimObject {
 	protected void firstLightUpdate() {
 		light = 0; // Suponemos que hay al menos una carretera entrante
 		
-		List<String> array = new ArrayList<>(incomingRoads.keySet());
-		String nextRoadID = array.get(light);
-		
 		// El semáforo de la carretera se pone verde.
-		incomingRoads.get(nextRoadID).setLight(true);
+		incomingList.get(light).setLight(true);
 	}
 
 	/**
@@ -163,9 +213,7 @@ public class Junction extends SimObject {
 	 */
 	protected void lightUpdate() {
 		// Tomamos la carretera usada
-		List<String> array = new ArrayList<>(incomingRoads.keySet());
-		String nextRoad = array.get(light);
-		Road usedRoad = incomingRoads.get(nextRoad); // Carretera actualizada
+		Road usedRoad = incomingList.get(light); // Carretera actualizada
 
 		// * //
 		// La carretera actualizada se pone en rojo.
@@ -178,8 +226,7 @@ public class Junction extends SimObject {
 
 		// 2 // 
 		// La siguiente carretera se pone en verde.
-		nextRoad = array.get(light);
-		incomingRoads.get(nextRoad).setLight(true);
+		incomingList.get(light).setLight(true);
 	}
 
 
@@ -338,7 +385,94 @@ public class Junction extends SimObject {
 
 
 	
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe el estado del semáforo de la {@code Junction}.
+	 * Las {@code Road}s entrantes y salientes no se escriben:
+	 * se vuelven a enlazar al crearlas.
+	 * 
+	 * @param out 	- flujo de salida
+	 * 
+	 * @throws IOException 	if the state could not be written
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeInt(light);
+	}
+
+	/**
+	 * Lee el estado escrito con {@link #writeState(DataOutput)},
+	 * con las {@code Road}s entrantes ya enlazadas.
+	 * 
+	 * @param in 	- flujo de entrada
+	 * 
+	 * @throws IOException 	if the state does not match
+	 * 						the incoming roads
+	 */
+	void readState(DataInput in) throws IOException {
+		light = in.readInt();
+		if ( light < -1 || light >= incomingList.size() ) {
+			throw new IOException(
+				"Invalid light of junction " + id + ": " + light
+			);
+		}
+	}
+
+	/**
+	 * Escribe la duración del semáforo de cada {@code Road}
+	 * entrante, en el orden de {@code incomingList}.
+	 * 
+	 * @param out 		- flujo de salida
+	 * @param lapses 	- duración de cada semáforo
+	 * 
+	 * @throws IOException 	if the state could not be written
+	 */
+	protected void writeLapses(DataOutput out, Map<Road, Integer> lapses) 
+			throws IOException {
+		for (Road r : incomingList) {
+			Integer lapse = lapses.get(r);
+			out.writeBoolean(lapse != null);
+			if (lapse != null) {
+				out.writeInt(lapse);
+			}
+		}
+	}
+
+	/**
+	 * Lee las duraciones escritas con 
+	 * {@link #writeLapses(DataOutput, Map)}.
+	 * 
+	 * @param in 		- flujo de entrada
+	 * @param lapses 	- duración de cada semáforo
+	 * 
+	 * @throws IOException 	if the input ends early
+	 */
+	protected void readLapses(DataInput in, Map<Road, Integer> lapses) 
+			throws IOException {
+		lapses.clear();
+		for (Road r : incomingList) {
+			if ( in.readBoolean() ) {
+				lapses.put(r, in.readInt());
+			}
+		}
+	}
+
+
+
+
+
+
 	// ** MÉTODOS ADICIONALES ** //
+	/**
+	 * Devuelve el número de {@code Vehicle}s que
+	 * cruzaron en el último tick de la {@code Junction}.
+	 *
+	 * @return 	{@code Vehicle}s que salieron de
+	 * 			la cola en verde
+	 */
+	public int getCrossedVehicles() {
+		return crossedVehicles;
+	}
+
 	/**
 	 * Devuelve la Mapa de {@code Road}s entrantes
 	 * 
@@ -375,6 +509,7 @@ public class Junction extends SimObject {
 	 */
 	public void addNewIncomingRoad(Road newRoad) {
 		incomingRoads.put(newRoad.getID(), newRoad);
+		incomingList.add(newRoad);
 	}
 	
 	
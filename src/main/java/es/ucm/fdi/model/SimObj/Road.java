@@ -1,5 +1,8 @@
 package es.ucm.fdi.model.SimObj;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
@@ -7,6 +10,7 @@ import java.util.Deque;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Set;
 
 
 import es.ucm.fdi.ini.IniSection;
@@ -50,12 +54,13 @@ public class Road extends SimObject {
 	private Junction toJunction;
 	
 	/**
-	 * Lista de {@code Vehicle}s ordenada por orden 
-	 * de entrada en la {@code Road}. Utilizada para 
-	 * el caso en que dos {@code Vehicle}s se encuentran 
-	 * en la misma posición.
+	 * Contador de entradas en la {@code Road}. Cada
+	 * {@code Vehicle} que entra recibe el valor actual
+	 * como número de orden, utilizado para el caso en
+	 * que dos {@code Vehicle}s se encuentran en la
+	 * misma posición.
 	 */
-	private Deque<Vehicle> entryRecord = new ArrayDeque<>();
+	private long entryCount = 0;
 
 	/**
 	 * Lista de {@code Vehicle}s en la {@code Road} 
@@ -63,6 +68,14 @@ public class Road extends SimObject {
 	 */
 	protected List<Vehicle> vehiclesOnRoad = new ArrayList<>();
 
+	/**
+	 * Lista temporal reutilizada en cada tick con una 
+	 * copia de {@code vehiclesOnRoad}, pues los 
+	 * {@code Vehicle}s pueden salir de ella durante 
+	 * su avance.
+	 */
+	private ArrayList<Vehicle> onRoad = new ArrayList<>();
+
 	/**
 	 * Lista temporal reutilizada en cada tick en la que 
 	 * se ordenan los {@code Vehicle}s que llegan a 
@@ -81,6 +94,47 @@ public class Road extends SimObject {
 	 * {@code toJunction} está verde para la {@code Road}.
 	 */
 	private boolean isGreen = false;
+
+	/**
+	 * Índice de la {@code Road} en el
+	 * {@code VehicleStore} de la simulación.
+	 */
+	private int index = -1;
+
+	/**
+	 * Almacén de los {@code Vehicle}s de la simulación,
+	 * asignado al registrar la {@code Road}.
+	 */
+	private VehicleStore store = null;
+
+	/**
+	 * Índices en {@code store} de los {@code Vehicle}s
+	 * de {@code onRoad} durante {@link #proceed()}.
+	 */
+	private int[] handles = new int[0];
+
+	/**
+	 * Conjunto de {@code Road}s con {@code Vehicle}s
+	 * circulando, que la simulación avanza en cada tick.
+	 * La {@code Road} se apunta al recibir un {@code Vehicle}
+	 * estando vacía.
+	 */
+	private Set<Road> activeRoads = null;
+
+	/**
+	 * Buffer de intercambio de una {@code Road} frontera entre
+	 * dos regiones del mapa: los {@code Vehicle}s que entran desde
+	 * {@code fromJunction} durante el tick esperan aquí hasta que
+	 * terminan todas las regiones. Es {@code null} si la
+	 * {@code Road} no es frontera.
+	 */
+	private List<Vehicle> handoff = null;
+
+	/**
+	 * Número de {@code Vehicle}s que avanzaron (no estaban
+	 * averiados) en el último {@link #proceed()}.
+	 */
+	private int movedVehicles = 0;
 	
 
 
@@ -89,18 +143,18 @@ public class Road extends SimObject {
 
 
 	// ** COMPARADORES ** //
+	/**
+	 * Comparador por localización compartido por 
+	 * todas las {@code Road}s.
+	 */
+	static final Comparator<Vehicle> BY_LOCATION = new CompByLocation();
+
 	/**
 	 * Comparador según la localización de 2 {@code Vehicle}s
 	 * en la {@code Road}, para ordenar {@code vehiclesOnRoad} 
 	 * tras cada avance de los {@code Vehicle}s.
 	 */
 	private static class CompByLocation implements Comparator<Vehicle> {
-		
-		Deque<Vehicle> entries;		
-
-		public CompByLocation(Road road) {
-			entries = road.getEntryRecord();
-		}
 
 		@Override
 		public int compare(Vehicle v1, Vehicle v2) {
@@ -112,19 +166,7 @@ public class Road extends SimObject {
 			else {
 				// Están en la misma posición, se ordena por orden 
 				// de entrada en carretera.
-				for (Vehicle v : entries ) {
-					if (v == v1) {
-						return -1;
-					}
-					if (v == v2) {
-						return 1;
-					}
-				}
-
-				// Fallo del programa (no se debería dar)
-				throw new RuntimeException(
-					"Vehicles weren´t recorded when entered their road."
-				);
+				return Long.compare(v1.getEntrySeq(), v2.getEntrySeq());
 			}
 		}
 
@@ -241,14 +283,10 @@ public class Road extends SimObject {
 	@Override
 	public void proceed() {
 		// * //
-		// Se crea lista con los vehículos en la 
-		// carretera en ese momento, pues pueden salir 
-		// durante su proceed y provocar un error en 
-		// el foreach
-		ArrayList<Vehicle> onRoad = new ArrayList<>();
-		for (Vehicle v : vehiclesOnRoad) {
-			onRoad.add(v);
-		}
+		// Se copian los vehículos en la carretera en 
+		// ese momento, pues pueden salir durante su 
+		// proceed y provocar un error en el foreach
+		onRoad.addAll(vehiclesOnRoad);
 
 		// 1 //
 		// Se modifica la velocidad a la que avanzarán los 
@@ -256,11 +294,31 @@ public class Road extends SimObject {
 		vehicleSpeedModifier(onRoad);
 
 		// 2 //
-		// Los vehículos avanzan y se pueden adelantar.
-		for (Vehicle v : onRoad) {
-			v.proceed();
+		// Los vehículos avanzan y se pueden adelantar. Primero
+		// se comprueban sus averías y luego avanzan todos a la 
+		// vez sobre las columnas del VehicleStore.
+		int count = onRoad.size();
+		if (handles.length < count) {
+			handles = new int[Math.max(count, 2 * handles.length)];
 		}
-		vehiclesOnRoad.sort(new CompByLocation(this));
+
+		for (int i = 0; i < count; ++i) {
+			Vehicle v = onRoad.get(i);
+			v.checkFault();
+			handles[i] = v.handle;
+		}
+
+		// Los que se averían en este tick no cuentan.
+		movedVehicles = store.advance(handles, count, length);
+
+		// Los que llegan al final salen de la carretera.
+		for (int i = 0; i < count; ++i) {
+			if (handles[i] < 0) {
+				onRoad.get(i).waitInJunction();
+			}
+		}
+		onRoad.clear();
+		repairOrder(vehiclesOnRoad);
 
 		// 3 //
 		// Los coches que llegan al final entran 
@@ -268,6 +326,36 @@ public class Road extends SimObject {
 		pushArrivalsToWaiting();
 	}
 
+	/**
+	 * <p>
+	 * Reordena los {@code Vehicle}s de una {@code Road} 
+	 * tras el avance. 
+	 * </p> <p>
+	 * La lista sólo se desordena donde ha habido adelantamientos, 
+	 * así que una ordenación por inserción la recompone en tiempo 
+	 * lineal más el número de adelantamientos, en lugar de 
+	 * ordenarla entera con {@link #BY_LOCATION} en cada tick.
+	 * </p>
+	 * 
+	 * @param vehicles 	- {@code Vehicle}s en la {@code Road}
+	 */
+	static void repairOrder(List<Vehicle> vehicles) {
+		for (int i = 1; i < vehicles.size(); ++i) {
+			Vehicle v = vehicles.get(i);
+			int j = i - 1;
+
+			// Sólo se mueve si ha adelantado al anterior.
+			if ( BY_LOCATION.compare(vehicles.get(j), v) > 0 ) {
+				do {
+					vehicles.set(j + 1, vehicles.get(j));
+					j--;
+				} while ( j >= 0 && BY_LOCATION.compare(vehicles.get(j), v) > 0 );
+
+				vehicles.set(j + 1, v);
+			}
+		}
+	}
+
 	/**
 	 * Modifica la velocidad que llevarán los {@code Vehicle}s
 	 * en la {@code Road} previo avance.
@@ -529,13 +617,13 @@ public class Road extends SimObject {
 
 			// Si hay algún vehículo y no está averiado.
 			if (toMove != null && toMove.getBreakdownTime() == 0) {
-				// Se le saca de la lista de espera y del registro de entradas. 
-				entryRecord.remove(toMove);
-				waiting.pollFirst();
-
-				// Se mueve a la siguiente carretera.
+				// Se mueve a la siguiente carretera. Si aún no
+				// existe, se queda el primero de la cola.
 				toMove.moveToNextRoad();
 
+				// Se le saca de la lista de espera.
+				waiting.pollFirst();
+
 				hasCrossed = true;
 			}
 
@@ -582,12 +670,56 @@ public class Road extends SimObject {
 	 * 				añadir al final
 	 */
 	public void pushVehicle(Vehicle v) {
+		// Pasa a estar activa.
+		if ( vehiclesOnRoad.isEmpty() && activeRoads != null ) {
+			activeRoads.add(this);
+		}
+
 		vehiclesOnRoad.add(v);
 
-		// Se guarda el último de la lista en 
-		// el registro de entradas, pues ha sido
+		// Se numera su entrada, pues ha sido
 		// el último en entrar.
-		entryRecord.add(v);
+		v.setEntrySeq(entryCount++);
+	}
+
+	/**
+	 * Introduce un {@code Vehicle} que cruza {@code fromJunction}.
+	 * Si la {@code Road} es frontera entre regiones, se deja en
+	 * {@code handoff} hasta {@link #flushHandoff()}.
+	 * 
+	 * @param v 	- {@code Vehicle} que entra
+	 */
+	public void enterVehicle(Vehicle v) {
+		if ( handoff != null ) {
+			handoff.add(v);
+		}
+		else {
+			pushVehicle(v);
+		}
+	}
+
+	/**
+	 * Introduce en {@code vehiclesOnRoad}, en el orden en que
+	 * llegaron, los {@code Vehicle}s que esperan en {@code handoff}.
+	 */
+	public void flushHandoff() {
+		for ( Vehicle v : handoff ) {
+			pushVehicle(v);
+		}
+		handoff.clear();
+	}
+
+	/**
+	 * Devuelve y vacía los {@code Vehicle}s que esperan en
+	 * {@code handoff}, para meterlos en la {@code Road} de
+	 * otro proceso.
+	 * 
+	 * @return 	{@code Vehicle}s en orden de entrada
+	 */
+	public List<Vehicle> takeHandoff() {
+		List<Vehicle> taken = new ArrayList<>(handoff);
+		handoff.clear();
+		return taken;
 	}
 
 	/**
@@ -626,6 +758,59 @@ public class Road extends SimObject {
 
 
 
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe el estado del semáforo, el contador de entradas
+	 * y los ids de los {@code Vehicle}s de {@code vehiclesOnRoad}
+	 * y de {@code waiting}, en orden.
+	 * 
+	 * @param out 	- flujo de salida
+	 * 
+	 * @throws IOException 	if the state could not be written
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeBoolean(isGreen);
+		out.writeLong(entryCount);
+
+		out.writeInt(vehiclesOnRoad.size());
+		for (Vehicle v : vehiclesOnRoad) {
+			out.writeUTF(v.getID());
+		}
+		out.writeInt(waiting.size());
+		for (Vehicle v : waiting) {
+			out.writeUTF(v.getID());
+		}
+	}
+
+	/**
+	 * Lee el estado escrito con {@link #writeState(DataOutput)},
+	 * tomando los {@code Vehicle}s de {@code vehicles}.
+	 * 
+	 * @param in 		- flujo de entrada
+	 * @param vehicles 	- {@code Vehicle}s del mapa, por id
+	 * 
+	 * @throws IOException 	if a vehicle is not in the map
+	 */
+	void readState(DataInput in, Map<String, Vehicle> vehicles) 
+			throws IOException {
+		isGreen = in.readBoolean();
+		entryCount = in.readLong();
+
+		vehiclesOnRoad.clear();
+		for (int n = SimObjCodec.readCount(in); n > 0; --n) {
+			vehiclesOnRoad.add( SimObjCodec.readVehicleID(in, vehicles) );
+		}
+		waiting.clear();
+		for (int n = SimObjCodec.readCount(in); n > 0; --n) {
+			waiting.addLast( SimObjCodec.readVehicleID(in, vehicles) );
+		}
+	}
+
+
+
+
+
+
 	// ** MÉTODOS ADICIONALES (DE INFO) ** //
 	/**
 	 * <p>
@@ -708,6 +893,50 @@ public class Road extends SimObject {
 		return state;
 	}
 
+	/**
+	 * Devuelve el índice de la {@code Road} en el
+	 * {@code VehicleStore} de la simulación.
+	 * 
+	 * @return 	índice de la {@code Road}
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * Modifica el índice de la {@code Road}. Usado
+	 * por el {@code VehicleStore} al registrarla.
+	 * 
+	 * @param vs 		- almacén que la registra
+	 * @param newIndex 	- nuevo índice
+	 */
+	void setIndex(VehicleStore vs, int newIndex) {
+		store = vs;
+		index = newIndex;
+	}
+
+	/**
+	 * Modifica el conjunto de {@code Road}s activas
+	 * en el que se apunta la {@code Road}.
+	 * 
+	 * @param active 	- conjunto de {@code Road}s
+	 * 					activas de la simulación
+	 */
+	public void setActiveRoads(Set<Road> active) {
+		activeRoads = active;
+	}
+
+	/**
+	 * Convierte la {@code Road} en frontera entre dos regiones,
+	 * o deja de serlo si {@code buffer} es {@code null}.
+	 * 
+	 * @param buffer 	- buffer de intercambio vacío
+	 * 					o {@code null}
+	 */
+	public void setHandoff(List<Vehicle> buffer) {
+		handoff = buffer;
+	}
+
 	/**
 	 * Devuelve la longitud de la vía.
 	 * 
@@ -717,6 +946,15 @@ public class Road extends SimObject {
 		return length;
 	}
 
+	/**
+	 * Devuelve el límite de velocidad de la vía.
+	 * 
+	 * @return límite de velocidad
+	 */
+	public int getSpeedLimit() {
+		return speedLimit;
+	}
+
 	/**
 	 * Devuelve si el semáforo está en verde.
 	 * 
@@ -736,6 +974,16 @@ public class Road extends SimObject {
 		return waiting.isEmpty();
 	}
 
+	/**
+	 * Devuelve si no hay {@code Vehicle}s circulando
+	 * por la {@code Road} (sin contar {@code waiting}).
+	 * 
+	 * @return si {@code vehiclesOnRoad} está vacía
+	 */
+	public boolean noVehiclesOnRoad() {
+		return vehiclesOnRoad.isEmpty();
+	}
+
 	/**
 	 * Devuelve la {@code Junction}s desde la que 
 	 * empieza la {@code Road}.
@@ -756,17 +1004,6 @@ public class Road extends SimObject {
 		return toJunction;
 	}
 
-	/**
-	 * Devuelve la lista de registro de entradas de 
-	 * los {@code Vehicle}s que están en la 
-	 * {@code Road}
-	 * 
-	 * @return 	registro de entradas
-	 */
-	private Deque<Vehicle> getEntryRecord() {
-		return entryRecord;
-	}
-
 	/**
 	 * Devuelve el número de {@code Vehicle}s esperando
 	 * en la cola {@code waiting}.
@@ -777,6 +1014,44 @@ public class Road extends SimObject {
 		return waiting.size();
 	}
 
+	/**
+	 * Devuelve el número de {@code Vehicle}s en la
+	 * {@code Road}, incluidos los que esperan, sin
+	 * copiar la lista como {@link #getRoadVehicles()}.
+	 * 
+	 * @return número de {@code Vehicle}s en la {@code Road}.
+	 */
+	public int getNumVehiclesOnRoad() {
+		return vehiclesOnRoad.size();
+	}
+
+	/**
+	 * Devuelve el número de {@code Vehicle}s que
+	 * avanzaron en el último tick de la {@code Road}.
+	 * 
+	 * @return 	{@code Vehicle}s no averiados 
+	 * 			en el último avance
+	 */
+	public int getMovedVehicles() {
+		return movedVehicles;
+	}
+
+	/**
+	 * Estima el tiempo que tardaría en recorrer la
+	 * {@code Road} un {@code Vehicle} que entrase ahora:
+	 * la longitud a la velocidad base actual, más un tick
+	 * por cada {@code Road} que llega al cruce por cada
+	 * {@code Vehicle} en la cola de espera.
+	 * 
+	 * @return 	tiempo de recorrido estimado
+	 */
+	public double getTravelTimeEstimate() {
+		int turn = Math.max(1, toJunction.getIncomingRoads().size());
+
+		return 	(double) length / Math.max(1, getBaseSpeed()) + 
+				(double) waiting.size() * turn;
+	}
+
 	/**
 	 * Devuelve un {@code String} con el tipo de 
 	 * {@code Road} que debe ponerse como valor 
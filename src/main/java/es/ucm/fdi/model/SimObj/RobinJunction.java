@@ -1,5 +1,8 @@
 package es.ucm.fdi.model.SimObj;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -156,9 +159,7 @@ public class RobinJunction extends Junction {
      */
     @Override
     protected void lightUpdate() {
-    	List<String> array = new ArrayList<>(incomingRoads.keySet());
-		String nextRoad = array.get(light);
-        Road usedRoad = incomingRoads.get(nextRoad);
+        Road usedRoad = incomingList.get(light);
         int roadTimeLapse = timeLapses.get(usedRoad);
 
         // Se actualiza el tiempo transcurrido con el semáforo en verde.
@@ -197,8 +198,7 @@ public class RobinJunction extends Junction {
             light = (light + 1) % numIncomingRoads;
 
             // El semáforo de la carretera se pone verde.
-    		nextRoad = array.get(light);
-            incomingRoads.get(nextRoad).setLight(true);
+            incomingList.get(light).setLight(true);
 
             // 3 //
             // Se resetea elapsedTime y los booleanos
@@ -207,6 +207,36 @@ public class RobinJunction extends Junction {
             usefulGreen = true;
         }
     }
+
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * En una {@code RobinJunction}, se salta cada periodo
+     * en verde de una vez: como no cruza nadie, el semáforo
+     * deja de ser útil y, si no lo había sido, se acorta.
+     * </p>
+     * 
+     * @param ticks     - {@inheritDoc}
+     */
+    @Override
+    protected void skipLights(int ticks) {
+        while (ticks > 0) {
+            usefulGreen = false;
+
+            int remaining = timeLapses.get( incomingList.get(light) ) - elapsedTime;
+            if (remaining <= 0) {
+                // El semáforo ya no cambiará.
+                elapsedTime += ticks;
+                return;
+            }
+
+            int step = Math.min(ticks, remaining);
+            elapsedTime += step - 1;
+            lightUpdate();
+            ticks -= step;
+        }
+    }
 	
 	
     
@@ -299,6 +329,41 @@ public class RobinJunction extends Junction {
     
     
     
+    // ** MÉTODOS DE PUNTOS DE CONTROL ** //
+    /**
+     * {@inheritDoc}
+     * <p>
+     * En una {@code RobinJunction}, también el tiempo consumido,
+     * si el semáforo ha sido útil o inútil y la duración del
+     * semáforo de cada {@code Road}.
+     * </p>
+     */
+    @Override
+    void writeState(DataOutput out) throws IOException {
+        super.writeState(out);
+        out.writeInt(elapsedTime);
+        out.writeBoolean(uselessGreen);
+        out.writeBoolean(usefulGreen);
+        writeLapses(out, timeLapses);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    void readState(DataInput in) throws IOException {
+        super.readState(in);
+        elapsedTime = in.readInt();
+        uselessGreen = in.readBoolean();
+        usefulGreen = in.readBoolean();
+        readLapses(in, timeLapses);
+    }
+
+
+
+
+
+
     // ** MÉTODOS ADICIONALES ** //
     /**
      * Añade una nueva {@code Road} de entrada a la 
@@ -309,7 +374,7 @@ public class RobinJunction extends Junction {
      */
     @Override
     public void addNewIncomingRoad(Road newRoad) {
-        incomingRoads.put(newRoad.getID(), newRoad);
+        super.addNewIncomingRoad(newRoad);
         timeLapses.put(newRoad, maxLightTime);
     }
 
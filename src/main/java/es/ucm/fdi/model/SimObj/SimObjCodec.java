@@ -0,0 +1,384 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import es.ucm.fdi.model.simulation.RoadMap;
+
+/**
+ * <p>
+ * Codificación binaria de los {@link SimObject}s para los puntos
+ * de control y para los {@code Vehicle}s que pasan de un proceso
+ * a otro en una simulación distribuida.
+ * </p> <p>
+ * Cada objeto se escribe como su tipo (el mismo que en los
+ * informes), su id y los parámetros con los que se crea. Las
+ * referencias a otros objetos se escriben como ids, que al leer
+ * se resuelven con los objetos del {@code RoadMap} de destino.
+ * El estado dinámico (semáforos, colas y rutas) se escribe
+ * aparte, cuando ya existen todos los objetos.
+ * </p>
+ */
+public final class SimObjCodec {
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Clase no instanciable.
+	 */
+	private SimObjCodec() {
+		/*NADA*/
+	}
+
+
+
+
+
+
+	// ** JUNCTIONS ** //
+	/**
+	 * Escribe una {@code Junction}, sin su estado.
+	 *
+	 * @param j 	- {@code Junction} a escribir
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the junction could not be written
+	 */
+	public static void writeJunction(Junction j, DataOutput out)
+			throws IOException {
+		out.writeUTF( j.getType() );
+		out.writeUTF( j.getID() );
+
+		if (j instanceof RobinJunction) {
+			out.writeInt( ((RobinJunction) j).minLightTime );
+			out.writeInt( ((RobinJunction) j).maxLightTime );
+		}
+	}
+
+	/**
+	 * Lee una {@code Junction} escrita con
+	 * {@link #writeJunction(Junction, DataOutput)}.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @return 		nueva {@code Junction}, sin {@code Road}s
+	 *
+	 * @throws IOException 	if the input is not a junction
+	 */
+	public static Junction readJunction(DataInput in) throws IOException {
+		String type = in.readUTF();
+		String id = in.readUTF();
+
+		switch (type) {
+			case "-": return new Junction(id);
+			case "rr": return new RobinJunction(id, in.readInt(), in.readInt());
+			case "mc": return new CrowdedJunction(id);
+			default: throw new IOException("Unknown junction type: " + type);
+		}
+	}
+
+	/**
+	 * Escribe el estado del semáforo de una {@code Junction}.
+	 *
+	 * @param j 	- {@code Junction} a escribir
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the state could not be written
+	 */
+	public static void writeState(Junction j, DataOutput out)
+			throws IOException {
+		j.writeState(out);
+	}
+
+	/**
+	 * Lee el estado del semáforo de una {@code Junction},
+	 * con todas sus {@code Road}s entrantes ya creadas.
+	 *
+	 * @param j 	- {@code Junction} a modificar
+	 * @param in 	- flujo de entrada
+	 *
+	 * @throws IOException 	if the input is not a valid state
+	 */
+	public static void readState(Junction j, DataInput in) throws IOException {
+		j.readState(in);
+	}
+
+
+
+
+
+
+	// ** ROADS ** //
+	/**
+	 * Escribe una {@code Road}, sin su estado.
+	 *
+	 * @param r 	- {@code Road} a escribir
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the road could not be written
+	 */
+	public static void writeRoad(Road r, DataOutput out) throws IOException {
+		out.writeUTF( r.getType() );
+		out.writeUTF( r.getID() );
+		out.writeInt( r.getLength() );
+		out.writeInt( r.getSpeedLimit() );
+		out.writeUTF( r.getFromJunction().getID() );
+		out.writeUTF( r.getToJunction().getID() );
+
+		if (r instanceof HighwayRoad) {
+			out.writeInt( ((HighwayRoad) r).getNumLanes() );
+		}
+	}
+
+	/**
+	 * Lee una {@code Road} escrita con {@link #writeRoad(Road, DataOutput)},
+	 * enlazándola con sus {@code Junction}s de {@code map}.
+	 *
+	 * @param in 	- flujo de entrada
+	 * @param map 	- mapa de la simulación
+	 *
+	 * @return 		nueva {@code Road}, vacía
+	 *
+	 * @throws IOException 	if the input is not a road
+	 * 						between junctions of the map
+	 */
+	public static Road readRoad(DataInput in, RoadMap map) throws IOException {
+		String type = in.readUTF();
+		String id = in.readUTF();
+		int length = in.readInt();
+		int speedLimit = in.readInt();
+		Junction from = readJunctionID(in, map);
+		Junction to = readJunctionID(in, map);
+
+		switch (type) {
+			case "-": return new Road(id, length, speedLimit, from, to);
+			case "dirt": return new DirtRoad(id, length, speedLimit, from, to);
+			case "lanes":
+				return new HighwayRoad(id, length, speedLimit, from, to, in.readInt());
+			default: throw new IOException("Unknown road type: " + type);
+		}
+	}
+
+	/**
+	 * Escribe el estado de una {@code Road}: semáforo
+	 * y {@code Vehicle}s en la vía y en la cola.
+	 *
+	 * @param r 	- {@code Road} a escribir
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the state could not be written
+	 */
+	public static void writeState(Road r, DataOutput out) throws IOException {
+		r.writeState(out);
+	}
+
+	/**
+	 * Lee el estado de una {@code Road}, con todos
+	 * los {@code Vehicle}s de {@code map} ya creados.
+	 *
+	 * @param r 	- {@code Road} a modificar
+	 * @param in 	- flujo de entrada
+	 * @param map 	- mapa de la simulación
+	 *
+	 * @throws IOException 	if the input is not a valid state
+	 */
+	public static void readState(Road r, DataInput in, RoadMap map)
+			throws IOException {
+		r.readState(in, map.getVehicles());
+	}
+
+
+
+
+
+
+	// ** VEHICLES ** //
+	/**
+	 * Escribe los {@code Vehicle}s de un mapa con su fila del
+	 * {@code VehicleStore}, que se escribe aparte.
+	 *
+	 * @param vehicles 	- {@code Vehicle}s a escribir
+	 * @param out 		- flujo de salida
+	 *
+	 * @throws IOException 	if the vehicles could not be written
+	 */
+	public static void writeVehicles(Collection<Vehicle> vehicles,
+			DataOutput out) throws IOException {
+		out.writeInt(vehicles.size());
+		for (Vehicle v : vehicles) {
+			writeVehicle(v, out);
+			out.writeInt(v.handle);
+		}
+	}
+
+	/**
+	 * Lee los {@code Vehicle}s escritos con
+	 * {@link #writeVehicles(Collection, DataOutput)}, con el
+	 * {@code VehicleStore} de {@code map} ya leído. No se
+	 * añaden al mapa ni se meten en sus {@code Road}s.
+	 *
+	 * @param in 	- flujo de entrada
+	 * @param map 	- mapa de la simulación
+	 *
+	 * @return 		{@code Vehicle}s en el orden escrito
+	 *
+	 * @throws IOException 	if the input is not a list of
+	 * 						vehicles of the map
+	 */
+	public static List<Vehicle> readVehicles(DataInput in, RoadMap map)
+			throws IOException {
+		int n = readCount(in);
+		List<Vehicle> vehicles = new ArrayList<>(n);
+
+		for (int i = 0; i < n; ++i) {
+			Vehicle v = readVehicle(in, map);
+			v.handle = in.readInt();
+			if ( ! map.getVehicleStore().hasRow(v.handle) ) {
+				throw new IOException(
+					"Invalid row of vehicle " + v.getID() + ": " + v.handle
+				);
+			}
+			vehicles.add(v);
+		}
+
+		return vehicles;
+	}
+
+	/**
+	 * Escribe un {@code Vehicle}, sin su fila del
+	 * {@code VehicleStore}.
+	 *
+	 * @param v 	- {@code Vehicle} a escribir
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the vehicle could not be written
+	 */
+	static void writeVehicle(Vehicle v, DataOutput out) throws IOException {
+		out.writeUTF( v.getType() );
+		out.writeUTF( v.getID() );
+		v.writeState(out);
+	}
+
+	/**
+	 * Lee un {@code Vehicle} escrito con
+	 * {@link #writeVehicle(Vehicle, DataOutput)}, todavía
+	 * sin fila en el {@code VehicleStore} de {@code map}.
+	 *
+	 * @param in 	- flujo de entrada
+	 * @param map 	- mapa de la simulación
+	 *
+	 * @return 		{@code Vehicle} leído
+	 *
+	 * @throws IOException 	if the input is not a vehicle
+	 * 						of the map
+	 */
+	static Vehicle readVehicle(DataInput in, RoadMap map) throws IOException {
+		String type = in.readUTF();
+		String id = in.readUTF();
+		VehicleStore store = map.getVehicleStore();
+
+		Vehicle v;
+		switch (type) {
+			case "-": v = new Vehicle(id, store); break;
+			case "car": v = new CarVehicle(id, store); break;
+			case "bike": v = new BikeVehicle(id, store); break;
+			default: throw new IOException("Unknown vehicle type: " + type);
+		}
+		v.readState(in, map);
+
+		return v;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS AUXILIARES ** //
+	/**
+	 * Lee un número de elementos, que no puede ser negativo.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @return 		número de elementos
+	 *
+	 * @throws IOException 	if the count is negative
+	 */
+	public static int readCount(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) {
+			throw new IOException("Invalid element count: " + n);
+		}
+		return n;
+	}
+
+	/**
+	 * Escribe una lista de ids, que puede ser {@code null}.
+	 *
+	 * @param ids 	- lista de ids o {@code null}
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the list could not be written
+	 */
+	public static void writeIDs(List<String> ids, DataOutput out)
+			throws IOException {
+		out.writeInt( (ids == null) ? -1 : ids.size() );
+		if (ids != null) {
+			for (String id : ids) {
+				out.writeUTF(id);
+			}
+		}
+	}
+
+	/**
+	 * Lee una lista escrita con {@link #writeIDs(List, DataOutput)}.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @return 		lista de ids o {@code null}
+	 *
+	 * @throws IOException 	if the input is not a list of ids
+	 */
+	public static List<String> readIDs(DataInput in) throws IOException {
+		int n = in.readInt();
+		if (n < 0) {
+			return null;
+		}
+
+		List<String> ids = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i) {
+			ids.add( in.readUTF() );
+		}
+		return ids;
+	}
+
+	/**
+	 * Lee el id de una {@code Junction} de {@code map}.
+	 */
+	private static Junction readJunctionID(DataInput in, RoadMap map)
+			throws IOException {
+		String id = in.readUTF();
+		Junction j = map.getJunctionWithID(id);
+		if (j == null) {
+			throw new IOException("Unknown junction: " + id);
+		}
+		return j;
+	}
+
+	/**
+	 * Lee el id de un {@code Vehicle} de {@code vehicles}.
+	 */
+	static Vehicle readVehicleID(DataInput in, Map<String, Vehicle> vehicles)
+			throws IOException {
+		String id = in.readUTF();
+		Vehicle v = vehicles.get(id);
+		if (v == null) {
+			throw new IOException("Unknown vehicle: " + id);
+		}
+		return v;
+	}
+}
@@ -1,10 +1,16 @@
 package es.ucm.fdi.model.SimObj;
 
-import java.util.ArrayList;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.simulation.Rerouter;
+import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.model.simulation.RouteCache.Route;
 import es.ucm.fdi.model.simulation.SimulationException;
 import es.ucm.fdi.util.TableDataType;
 
@@ -23,10 +29,21 @@ public class Vehicle extends SimObject {
 	
 	/**
 	 * Ruta del {@code Vehicle} en forma de
-	 * lista de {@code Junction}s.
+	 * lista de {@code Junction}s. Puede compartirse
+	 * con otros {@code Vehicle}s, así que no se modifica:
+	 * si cambia la ruta, se sustituye.
 	 */
 	protected List<Junction> trip;
 
+	/**
+	 * Ruta del {@code Vehicle} en forma de array de
+	 * {@code Road}s, resuelta al crearse: {@code route[i]}
+	 * une {@code trip.get(i)} con {@code trip.get(i + 1)}, 
+	 * o es {@code null} si esa {@code Road} no existía
+	 * todavía, y se busca al llegar a ella.
+	 */
+	protected Road[] route;
+
 	/**
 	 * Última posición en la lista que representa la ruta,
 	 * de forma que {@code trip.get(lastTripPos)} es la
@@ -42,16 +59,30 @@ public class Vehicle extends SimObject {
 	protected int maxSpeed;
 
 	/**
-	 * Distancia recorrida por el {@code Vehicle} desde 
-	 * que empezo la simulación.
+	 * Almacén por columnas donde se guardan la localización,
+	 * velocidad, kilometraje, tiempo de avería y {@code Road}
+	 * actual del {@code Vehicle}.
+	 */
+	protected VehicleStore store;
+
+	/**
+	 * Índice del {@code Vehicle} en las 
+	 * columnas de {@code store}.
+	 */
+	protected int handle;
+
+	/**
+	 * Número de orden de entrada en la {@code Road}
+	 * actual. Desempata entre {@code Vehicle}s en
+	 * la misma localización.
 	 */
-	protected int kilometrage = 0;
+	protected long entrySeq = 0;
 
 	/**
-	 * Tiempo restante hasta la recuperación de un {@code Vehicle}
-	 * averiado. Si {@code breakdownTime = 0}, no está averiado.
+	 * Orden de creación del {@code Vehicle} en la
+	 * simulación. Ordena sus informes.
 	 */
-	protected int breakdownTime = 0;
+	protected int serial = 0;
 
 	/**
 	 * Booleano que indica si el {@code Vehicle}
@@ -67,23 +98,6 @@ public class Vehicle extends SimObject {
 	 */
 	protected boolean isWaiting = false;
 
-	/**
-	 * {@code Road} en la que se encuentra el 
-	 * {@code Vehicle}.
-	 */
-	protected Road road;
-
-	/**
-	 * Localización del {@code Vehicle}
-	 * dentro de la {@code road}.
-	 */
-	protected int location = 0;
-
-	/**
-	 * Velocidad actual del coche en la {@code road}.
-	 */
-	protected int actualSpeed = 0;	
-
 
 
 
@@ -96,28 +110,45 @@ public class Vehicle extends SimObject {
 	 * 
 	 * @param identifier 	- identificador del objeto
 	 * @param trp 			- ruta de {@code Junction}s
+	 * @param rt 			- ruta de {@code Road}s entre
+	 * 						las {@code Junction}s de {@code trp}
 	 * @param max 			- máxima velocidad alcanzable
+	 * @param vs 			- almacén de estado de los
+	 * 						{@code Vehicle}s
 	 * 
 	 * @throws SimulationException 	cuando no se encuentra la 
 	 * 								primera carretera entre 
 	 * 								sus junction
 	 */
-	public Vehicle(String identifier, ArrayList<Junction> trp, int max) throws SimulationException {
+	public Vehicle(String identifier, List<Junction> trp, Road[] rt,
+			int max, VehicleStore vs) throws SimulationException {
 		super(identifier);
 		trip = trp;
+		route = rt;
 		maxSpeed = max;
+		store = vs;
+
+		// Se mete en la primera carretera. Se busca antes
+		// de reservar su fila, por si no existe.
+		Road road = getRouteRoad(lastTripPos);
+		handle = store.newHandle();
+		store.setRoad(handle, road);
+					
+		road.pushVehicle(this);
+	}
 
-		// Se mete en la primera carretera.
-		try {
-			Junction fromJunction = trip.get(lastTripPos);
-			Junction nextJunction = trip.get(lastTripPos + 1);
-			road = fromJunction.getRoadTo(nextJunction);
-						
-			road.pushVehicle(this);
-		}
-		catch (SimulationException e) {
-			throw e;
-		}
+	/**
+	 * Constructor de {@link Vehicle} que se lee de un punto
+	 * de control o de otro proceso. No tiene ruta ni fila en 
+	 * {@code vs} hasta {@link #readState(DataInput, RoadMap)}.
+	 * 
+	 * @param identifier 	- identificador del objeto
+	 * @param vs 			- almacén de estado de los
+	 * 						{@code Vehicle}s
+	 */
+	Vehicle(String identifier, VehicleStore vs) {
+		super(identifier);
+		store = vs;
 	}
 	
 
@@ -141,25 +172,34 @@ public class Vehicle extends SimObject {
 	 * en la cola correspondiente a su {@code Road}. 
 	 * Si no, se modifica su  {@code location} sumándola 
 	 * su {@code actualSpeed}.
+	 * </p> <p>
+	 * Es el mismo avance que hace la {@code Road} con todos
+	 * sus {@code Vehicle}s, en
+	 * {@link VehicleStore#advance(int[], int, int)}.
 	 * </p>
 	 */
 	@Override
 	public void proceed() {
-		// Comprobamos primero si el vehículo está averiado o no
-		if ( isFaulty() ) {
-			breakdownTime--;
+		checkFault();
+
+		int[] handles = { handle };
+		store.advance(handles, 1, getRoad().getLength());
+
+		// Ha llegado al cruce.
+		if (handles[0] < 0) {
+			waitInJunction();
 		}
-		else {
-			// Comprobamos si el vehículo llega al cruce.
-			if ( location + actualSpeed >= road.getLength() ) {
-				kilometrage += ( road.getLength() - location );
-				waitInJunction();
-			}
-			else {
-				location += actualSpeed;
-				kilometrage += actualSpeed;
-			}
-		}		
+	}
+
+	/**
+	 * Comprueba, antes de avanzar, si el {@code Vehicle}
+	 * se avería por sí mismo. {@code Road} lo llama para
+	 * cada {@code Vehicle} antes de avanzarlos todos a la
+	 * vez en {@link VehicleStore#advance(int[], int, int)}.
+	 * Un {@code Vehicle} normal no se avería solo.
+	 */
+	protected void checkFault() {
+		/*NADA*/
 	}
 
 	/**
@@ -173,6 +213,10 @@ public class Vehicle extends SimObject {
 	 * </p>
 	 */
 	public void waitInJunction() {
+		Road road = getRoad();
+		int location = store.getLocation(handle);
+		int actualSpeed = store.getSpeed(handle);
+
 		// Saca al vehículo de la zona de circulación de la Road
 		road.popVehicle(this);
 		
@@ -183,9 +227,9 @@ public class Vehicle extends SimObject {
 		road.arriveToWaiting(this, arrivalTime);	
 		
 		// Localización = longitud de Road
-		location = road.getLength();
+		store.setLocation(handle, road.getLength());
 		isWaiting = true;
-		actualSpeed = 0;
+		store.setSpeed(handle, 0);
 	}
 
 
@@ -215,9 +259,9 @@ public class Vehicle extends SimObject {
 		// Se generan los datos en el informe.
 		section.setValue("id", id);
 		section.setValue("time", simTime);
-		section.setValue("speed", actualSpeed);
-		section.setValue("kilometrage", kilometrage);
-		section.setValue("faulty", breakdownTime);
+		section.setValue("speed", getSpeed());
+		section.setValue("kilometrage", getKilometrage());
+		section.setValue("faulty", getBreakdownTime());
 		section.setValue("location", getReportLocation());
 
 		return section;
@@ -234,7 +278,7 @@ public class Vehicle extends SimObject {
 	protected String getReportLocation() {
 		return 	hasArrived ? 
 					"arrived" : 
-					"(" + road.getID() + "," + location + ")";
+					"(" + getRoad().getID() + "," + getLocation() + ")";
 	}
 
 
@@ -257,11 +301,11 @@ public class Vehicle extends SimObject {
 	public void describe(Map<TableDataType, Object> out) {
 		// Strings
 		String type = getType();
-		String road = this.road.getID();
+		String road = getRoad().getID();
 		String location = getDescriptionLocation();
-		String speed = Integer.toString(this.actualSpeed);
-		String km = Integer.toString(this.kilometrage);
-		String faulty = Integer.toString(this.breakdownTime);
+		String speed = Integer.toString(getSpeed());
+		String km = Integer.toString(getKilometrage());
+		String faulty = Integer.toString(getBreakdownTime());
 		String route = getRouteDescription();
 
 		// Map update
@@ -314,7 +358,7 @@ public class Vehicle extends SimObject {
 	protected String getDescriptionLocation() {
 		return 	hasArrived ?
 					"arrived" :
-					Integer.toString(location);
+					Integer.toString(getLocation());
 	}
 
 
@@ -327,6 +371,89 @@ public class Vehicle extends SimObject {
 
 
 
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe la velocidad máxima, los ids de la ruta, la 
+	 * posición en ella y los números de orden del {@code Vehicle}.
+	 * Su fila del {@code VehicleStore} no se escribe.
+	 * 
+	 * @param out 	- flujo de salida
+	 * 
+	 * @throws IOException 	if the state could not be written
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeInt(maxSpeed);
+
+		out.writeInt(trip.size());
+		for (Junction j : trip) {
+			out.writeUTF(j.getID());
+		}
+		for (int i = 0; i < trip.size() - 1; ++i) {
+			out.writeBoolean(route[i] != null);
+			if (route[i] != null) {
+				out.writeUTF(route[i].getID());
+			}
+		}
+
+		out.writeInt(lastTripPos);
+		out.writeLong(entrySeq);
+		out.writeInt(serial);
+		out.writeBoolean(hasArrived);
+		out.writeBoolean(isWaiting);
+	}
+
+	/**
+	 * Lee el estado escrito con {@link #writeState(DataOutput)},
+	 * enlazando la ruta con los objetos de {@code map}.
+	 * 
+	 * @param in 	- flujo de entrada
+	 * @param map 	- mapa de la simulación
+	 * 
+	 * @throws IOException 	if a junction or road of the
+	 * 						route is not in the map
+	 */
+	void readState(DataInput in, RoadMap map) throws IOException {
+		maxSpeed = in.readInt();
+
+		int length = SimObjCodec.readCount(in);
+		if (length < 2) {
+			throw new IOException("Invalid route of vehicle " + id);
+		}
+		Junction[] junctions = new Junction[length];
+		for (int i = 0; i < length; ++i) {
+			String jID = in.readUTF();
+			junctions[i] = map.getJunctionWithID(jID);
+			if (junctions[i] == null) {
+				throw new IOException("Unknown junction: " + jID);
+			}
+		}
+		trip = Arrays.asList(junctions);
+		route = new Road[length - 1];
+		for (int i = 0; i < route.length; ++i) {
+			if ( in.readBoolean() ) {
+				String rID = in.readUTF();
+				route[i] = map.getRoadWithID(rID);
+				if (route[i] == null) {
+					throw new IOException("Unknown road: " + rID);
+				}
+			}
+		}
+
+		lastTripPos = in.readInt();
+		if ( lastTripPos < 0 || lastTripPos >= length ) {
+			throw new IOException("Invalid route position of vehicle " + id);
+		}
+		entrySeq = in.readLong();
+		serial = in.readInt();
+		hasArrived = in.readBoolean();
+		isWaiting = in.readBoolean();
+	}
+
+
+
+
+
+
 	// ** MÉTODOS ADICIONALES ** //
 	/**
 	 * <p>
@@ -346,20 +473,24 @@ public class Vehicle extends SimObject {
 		if ( nextWaitingPos == trip.size() ) {
 			// Última vez. El cruce donde se espera es el destino final.
 			hasArrived = true;
+			store.addArrival(this);
 		}				 
 		else {
+			// Con recálculo de rutas, puede cambiar
+			// el resto del camino antes de salir.
+			Rerouter rerouter = store.getRerouter();
+			if (rerouter != null) {
+				reroute(rerouter, waitingPos);
+				waitingPos = lastTripPos + 1;
+			}
+
 			// Cambio normal de una road a otra.
-			try {
-				Junction fromJunction = trip.get(waitingPos);
-				Junction nextJunction = trip.get(nextWaitingPos);
-				road = fromJunction.getRoadTo(nextJunction);
-				
-				road.pushVehicle(this);
-
-				location = 0;
-			} catch (SimulationException e) {
-				throw e;
-			}			
+			Road road = getRouteRoad(waitingPos);
+			store.setRoad(handle, road);
+			
+			road.enterVehicle(this);
+
+			store.setLocation(handle, 0);
 		}
 
 		// Se ha pasado ya la siguiente Junction
@@ -368,6 +499,64 @@ public class Vehicle extends SimObject {
 		isWaiting = false;
 	}
 	
+	/**
+	 * Sustituye el resto de la ruta desde la {@code Junction}
+	 * en la posición {@code pos} de {@code trip} por el camino
+	 * que proponga {@code rerouter}, si propone alguno. Se toman 
+	 * directamente las listas del camino, sin copiarlas: la 
+	 * {@code Junction} de la que sale pasa a ser la primera de
+	 * {@code trip}, y la parte ya recorrida se descarta.
+	 * 
+	 * @param rerouter 	- política de recálculo de rutas
+	 * @param pos 		- posición de la {@code Junction}
+	 * 					de la que sale
+	 */
+	private void reroute(Rerouter rerouter, int pos) {
+		Route detour = rerouter.reroute(trip.get(pos), 
+				trip.get(trip.size() - 1), route, pos);
+
+		if (detour != null) {
+			trip = detour.getJunctions();
+			route = detour.getRoads();
+			lastTripPos = -1;
+		}
+	}
+
+	/**
+	 * Devuelve la {@code Road} de la ruta que sale 
+	 * de la {@code Junction} en la posición {@code pos}
+	 * de {@code trip}. Si no se resolvió al crear el 
+	 * {@code Vehicle}, se busca entre las {@code Road}s 
+	 * que hay ahora en el mapa.
+	 * 
+	 * @param pos 	- posición de la {@code Junction}
+	 * 				de origen en {@code trip}
+	 * 
+	 * @return 		{@code Road} hacia la siguiente
+	 * 				{@code Junction}
+	 * 
+	 * @throws SimulationException 	si no existe esa 
+	 * 								{@code Road}
+	 */
+	Road getRouteRoad(int pos) throws SimulationException {
+		Road road = route[pos];
+
+		// La Road pudo añadirse después de crear el Vehicle.
+		// No se guarda en route, que puede ser compartida.
+		if (road == null) {
+			road = store.getRoadBetween(trip.get(pos), trip.get(pos + 1));
+		}
+
+		if (road == null) {
+			throw new SimulationException(
+				"Road not found between junctions with id: " + 
+				trip.get(pos).getID() + ", " + trip.get(pos + 1).getID()
+			);
+		}
+
+		return road;
+	}
+	
 	/**
 	 * Añade más tiempo de avería al ya existente.
 	 * 
@@ -375,7 +564,7 @@ public class Vehicle extends SimObject {
 	 * 								a sumar
 	 */
 	public void setBreakdownTime(int addedBreakdownTime)  {
-		breakdownTime += addedBreakdownTime;
+		store.addBreakdownTime(handle, addedBreakdownTime);
 	}	
 	
 	/**
@@ -388,11 +577,11 @@ public class Vehicle extends SimObject {
 	 * 						la {@code Road}
 	 */
 	public void setSpeed(int roadSpeed) {
-		if (breakdownTime == 0 ) {
-			actualSpeed = Math.min(roadSpeed, maxSpeed);
+		if ( getBreakdownTime() == 0 ) {
+			store.setSpeed(handle, Math.min(roadSpeed, maxSpeed));
 		}
 		else {
-			actualSpeed = 0;
+			store.setSpeed(handle, 0);
 		}
 	}	
 	
@@ -403,7 +592,7 @@ public class Vehicle extends SimObject {
 	 * @return 	tiempo de avería
 	 */
 	public int getBreakdownTime() {
-		return breakdownTime;
+		return store.getBreakdownTime(handle);
 	}
 
 	/**
@@ -414,7 +603,78 @@ public class Vehicle extends SimObject {
 	 * 			{@code Vehicle}
 	 */
 	public int getLocation() {
-		return location;
+		return store.getLocation(handle);
+	}
+
+	/**
+	 * Devuelve la velocidad actual del 
+	 * {@code Vehicle}.
+	 * 
+	 * @return 	velocidad actual
+	 */
+	public int getSpeed() {
+		return store.getSpeed(handle);
+	}
+
+	/**
+	 * Devuelve la distancia recorrida por
+	 * el {@code Vehicle}.
+	 * 
+	 * @return 	kilometraje
+	 */
+	public int getKilometrage() {
+		return store.getKilometrage(handle);
+	}
+
+	/**
+	 * Devuelve el número de orden de entrada del
+	 * {@code Vehicle} en su {@code Road}.
+	 * 
+	 * @return 	número de orden de entrada
+	 */
+	public long getEntrySeq() {
+		return entrySeq;
+	}
+
+	/**
+	 * Modifica el número de orden de entrada del
+	 * {@code Vehicle}. Usado por la {@code Road}
+	 * al introducirlo.
+	 * 
+	 * @param seq 	- nuevo número de orden
+	 */
+	void setEntrySeq(long seq) {
+		entrySeq = seq;
+	}
+
+	/**
+	 * Devuelve el orden de creación del
+	 * {@code Vehicle} en la simulación.
+	 * 
+	 * @return 	orden de creación
+	 */
+	public int getSerial() {
+		return serial;
+	}
+
+	/**
+	 * Modifica el orden de creación del {@code Vehicle}.
+	 * Usado por el {@code RoadMap} al añadirlo.
+	 * 
+	 * @param s 	- orden de creación
+	 */
+	public void setSerial(int s) {
+		serial = s;
+	}
+
+	/**
+	 * Devuelve la {@code Road} en la que se
+	 * encuentra el {@code Vehicle}.
+	 * 
+	 * @return 	{@code Road} actual
+	 */
+	public Road getRoad() {
+		return store.getRoad(handle);
 	}
 	
 	/**
@@ -424,7 +684,17 @@ public class Vehicle extends SimObject {
 	 * @return si hay avería
 	 */
 	public boolean isFaulty() {
-		return (breakdownTime > 0);
+		return ( getBreakdownTime() > 0 );
+	}
+	
+	/**
+	 * Devuelve si el {@code Vehicle} ha 
+	 * llegado a su destino.
+	 * 
+	 * @return si ha llegado
+	 */
+	public boolean hasArrived() {
+		return hasArrived;
 	}
 	
 	/**
@@ -441,6 +711,17 @@ public class Vehicle extends SimObject {
 	protected String getType() {
 		return "-";
 	}
+
+	/**
+	 * Devuelve el valor de la clave {@code type} del
+	 * informe del {@code Vehicle}, o {@code null}
+	 * si su informe no la incluye.
+	 * 
+	 * @return 	tipo en el informe o {@code null}
+	 */
+	String getReportType() {
+		return null;
+	}
 }
 
 
@@ -0,0 +1,386 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import es.ucm.fdi.ini.IniSection;
+
+/**
+ * <p>
+ * Archivo de los {@link Vehicle Vehicles} que han llegado a su
+ * destino, organizado por columnas de tipos primitivos.
+ * </p> <p>
+ * Un {@code Vehicle} llegado ya no avanza ni cambia, salvo por
+ * las averías que se le sigan aplicando, así que se saca del
+ * mapa de la simulación y de su {@link VehicleStore} y sólo se
+ * guarda lo necesario para seguir generando su informe: id,
+ * tipo, kilometraje, tiempo de avería y tick de llegada.
+ * </p> <p>
+ * Los registros se guardan en orden de llegada; además se mantiene
+ * su orden de creación ({@code serial}) para poder intercalar sus
+ * informes con los de los {@code Vehicle}s que siguen circulando.
+ * </p>
+ */
+public class VehicleArchive {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Capacidad inicial de las columnas.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Etiqueta (sin corchetes) del informe de un {@code Vehicle}.
+	 */
+	private static final String REPORT_TAG = "vehicle_report";
+
+	/**
+	 * Identificador de cada {@code Vehicle}.
+	 */
+	private String[] id = new String[INITIAL_CAPACITY];
+
+	/**
+	 * Tipo de cada {@code Vehicle} tal y como aparece
+	 * en su informe, o {@code null} si no tiene.
+	 */
+	private String[] type = new String[INITIAL_CAPACITY];
+
+	/**
+	 * Orden de creación de cada {@code Vehicle}.
+	 */
+	private int[] serial = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Tick en el que llegó cada {@code Vehicle}.
+	 */
+	private int[] arrivalTime = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Distancia recorrida por cada {@code Vehicle}.
+	 */
+	private int[] kilometrage = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Tiempo de avería de cada {@code Vehicle}.
+	 */
+	private int[] breakdownTime = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Si cada {@code Vehicle} admite nuevas averías.
+	 */
+	private boolean[] faultable = new boolean[INITIAL_CAPACITY];
+
+	/**
+	 * Posiciones de los registros ordenadas por {@code serial}.
+	 */
+	private int[] bySerial = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Número de registros.
+	 */
+	private int size = 0;
+
+	/**
+	 * Posición del registro de cada id.
+	 */
+	private Map<String, Integer> index = new HashMap<>();
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor vacío de {@link VehicleArchive}.
+	 */
+	public VehicleArchive() {
+		/*NADA*/
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE REGISTRO ** //
+	/**
+	 * Archiva un {@code Vehicle} que acaba de llegar a su
+	 * destino y libera su fila de {@code VehicleStore}. El
+	 * {@code Vehicle} no debe usarse después.
+	 *
+	 * @param v 		- {@code Vehicle} llegado
+	 * @param tick 		- tick de llegada
+	 */
+	public void archive(Vehicle v, int tick) {
+		if (size == id.length) {
+			int capacity = size * 2;
+
+			id = Arrays.copyOf(id, capacity);
+			type = Arrays.copyOf(type, capacity);
+			serial = Arrays.copyOf(serial, capacity);
+			arrivalTime = Arrays.copyOf(arrivalTime, capacity);
+			kilometrage = Arrays.copyOf(kilometrage, capacity);
+			breakdownTime = Arrays.copyOf(breakdownTime, capacity);
+			faultable = Arrays.copyOf(faultable, capacity);
+			bySerial = Arrays.copyOf(bySerial, capacity);
+		}
+
+		int pos = size++;
+		id[pos] = v.getID();
+		type[pos] = v.getReportType();
+		serial[pos] = v.getSerial();
+		arrivalTime[pos] = tick;
+		kilometrage[pos] = v.getKilometrage();
+		breakdownTime[pos] = v.getBreakdownTime();
+		// Una bicicleta parada nunca supera la mitad de su
+		// velocidad máxima, así que ya no puede averiarse.
+		faultable[pos] = !(v instanceof BikeVehicle);
+		index.put(id[pos], pos);
+
+		// Inserción ordenada por serial. Los vehículos suelen llegar
+		// en el orden en que se crearon, así que casi nunca se desplaza.
+		int i = pos;
+		while (i > 0 && serial[bySerial[i - 1]] > serial[pos]) {
+			bySerial[i] = bySerial[i - 1];
+			i--;
+		}
+		bySerial[i] = pos;
+
+		v.store.releaseHandle(v.handle);
+	}
+
+	/**
+	 * Vacía el archivo.
+	 */
+	public void clear() {
+		id = new String[INITIAL_CAPACITY];
+		type = new String[INITIAL_CAPACITY];
+		serial = new int[INITIAL_CAPACITY];
+		arrivalTime = new int[INITIAL_CAPACITY];
+		kilometrage = new int[INITIAL_CAPACITY];
+		breakdownTime = new int[INITIAL_CAPACITY];
+		faultable = new boolean[INITIAL_CAPACITY];
+		bySerial = new int[INITIAL_CAPACITY];
+		size = 0;
+		index.clear();
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe los registros en orden de llegada.
+	 *
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the archive could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int pos = 0; pos < size; ++pos) {
+			out.writeUTF(id[pos]);
+			out.writeBoolean(type[pos] != null);
+			if (type[pos] != null) {
+				out.writeUTF(type[pos]);
+			}
+			out.writeInt(serial[pos]);
+			out.writeInt(arrivalTime[pos]);
+			out.writeInt(kilometrage[pos]);
+			out.writeInt(breakdownTime[pos]);
+			out.writeBoolean(faultable[pos]);
+		}
+		for (int i = 0; i < size; ++i) {
+			out.writeInt(bySerial[i]);
+		}
+	}
+
+	/**
+	 * Sustituye los registros por los escritos
+	 * con {@link #write(DataOutput)}.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @throws IOException 	if the input is not a valid archive
+	 */
+	public void read(DataInput in) throws IOException {
+		int n = SimObjCodec.readCount(in);
+		int capacity = Math.max(n, INITIAL_CAPACITY);
+
+		id = new String[capacity];
+		type = new String[capacity];
+		serial = new int[capacity];
+		arrivalTime = new int[capacity];
+		kilometrage = new int[capacity];
+		breakdownTime = new int[capacity];
+		faultable = new boolean[capacity];
+		bySerial = new int[capacity];
+		index.clear();
+
+		for (int pos = 0; pos < n; ++pos) {
+			id[pos] = in.readUTF();
+			type[pos] = in.readBoolean() ? in.readUTF() : null;
+			serial[pos] = in.readInt();
+			arrivalTime[pos] = in.readInt();
+			kilometrage[pos] = in.readInt();
+			breakdownTime[pos] = in.readInt();
+			faultable[pos] = in.readBoolean();
+			index.put(id[pos], pos);
+		}
+		for (int i = 0; i < n; ++i) {
+			bySerial[i] = in.readInt();
+			if (bySerial[i] < 0 || bySerial[i] >= n) {
+				throw new IOException("Invalid archive position: " + bySerial[i]);
+			}
+		}
+		size = n;
+	}
+
+
+
+
+
+
+	// ** GETTERS/SETTERS ** //
+	/**
+	 * Devuelve el número de {@code Vehicle}s archivados.
+	 *
+	 * @return 	número de registros
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Devuelve la posición del registro de un
+	 * {@code Vehicle}, o {@code -1} si no está archivado.
+	 *
+	 * @param vehicleID 	- id del {@code Vehicle}
+	 *
+	 * @return 				posición del registro o {@code -1}
+	 */
+	public int indexOf(String vehicleID) {
+		Integer pos = index.get(vehicleID);
+		return (pos != null) ? pos : -1;
+	}
+
+	/**
+	 * Devuelve el id de un {@code Vehicle} archivado.
+	 *
+	 * @param pos 	- posición del registro
+	 *
+	 * @return 		id del {@code Vehicle}
+	 */
+	public String getID(int pos) {
+		return id[pos];
+	}
+
+	/**
+	 * Devuelve el tick de llegada de un {@code Vehicle} archivado.
+	 *
+	 * @param pos 	- posición del registro
+	 *
+	 * @return 		tick de llegada
+	 */
+	public int getArrivalTime(int pos) {
+		return arrivalTime[pos];
+	}
+
+	/**
+	 * Devuelve el kilometraje de un {@code Vehicle} archivado.
+	 *
+	 * @param pos 	- posición del registro
+	 *
+	 * @return 		distancia recorrida
+	 */
+	public int getKilometrage(int pos) {
+		return kilometrage[pos];
+	}
+
+	/**
+	 * Devuelve el tiempo de avería de un {@code Vehicle} archivado.
+	 *
+	 * @param pos 	- posición del registro
+	 *
+	 * @return 		tiempo de avería
+	 */
+	public int getBreakdownTime(int pos) {
+		return breakdownTime[pos];
+	}
+
+	/**
+	 * Suma tiempo de avería a un {@code Vehicle} archivado,
+	 * igual que haría {@link Vehicle#setBreakdownTime(int)}
+	 * sobre el {@code Vehicle} llegado.
+	 *
+	 * @param pos 	- posición del registro
+	 * @param value - tiempo a sumar
+	 */
+	public void addBreakdownTime(int pos, int value) {
+		if ( faultable[pos] ) {
+			breakdownTime[pos] += value;
+		}
+	}
+
+	/**
+	 * Devuelve la posición del {@code i}-ésimo registro
+	 * en orden de creación de los {@code Vehicle}s.
+	 *
+	 * @param i 	- índice en orden de creación
+	 *
+	 * @return 		posición del registro
+	 */
+	public int getBySerial(int i) {
+		return bySerial[i];
+	}
+
+	/**
+	 * Devuelve el orden de creación de un {@code Vehicle} archivado.
+	 *
+	 * @param pos 	- posición del registro
+	 *
+	 * @return 		orden de creación
+	 */
+	public int getSerial(int pos) {
+		return serial[pos];
+	}
+
+
+
+
+
+
+	// ** MÉTODO DE INFORME ** //
+	/**
+	 * Genera el informe de un {@code Vehicle} archivado, idéntico
+	 * al que generaría el propio {@code Vehicle} llegado.
+	 *
+	 * @param pos 		- posición del registro
+	 * @param simTime 	- tiempo del simulador
+	 *
+	 * @return 	{@code IniSection} con información
+	 * 			del {@code Vehicle}
+	 */
+	public IniSection generateIniSection(int pos, int simTime) {
+		IniSection section = new IniSection(REPORT_TAG);
+
+		section.setValue("id", id[pos]);
+		section.setValue("time", simTime);
+		if (type[pos] != null) {
+			section.setValue("type", type[pos]);
+		}
+		// Llegó desde la cola de espera, donde la velocidad es 0.
+		section.setValue("speed", 0);
+		section.setValue("kilometrage", kilometrage[pos]);
+		section.setValue("faulty", breakdownTime[pos]);
+		section.setValue("location", "arrived");
+
+		return section;
+	}
+}
@@ -0,0 +1,570 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.ucm.fdi.model.simulation.Rerouter;
+
+/**
+ * <p>
+ * Almacén del estado dinámico de los {@link Vehicle Vehicles}
+ * de una simulación, organizado por columnas de tipos primitivos.
+ * </p> <p>
+ * Cada {@code Vehicle} recibe al crearse un índice denso
+ * ({@code handle}) y guarda en las columnas su localización,
+ * velocidad, kilometraje, tiempo de avería y el índice de la
+ * {@code Road} en la que se encuentra. El {@code Vehicle} es
+ * una vista sobre esas columnas, de forma que el avance de
+ * muchos vehículos recorre memoria contigua en vez de
+ * objetos dispersos.
+ * </p>
+ */
+public class VehicleStore {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Capacidad inicial de las columnas.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * Localización de cada {@code Vehicle} en su {@code Road}.
+	 */
+	private int[] location = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Velocidad actual de cada {@code Vehicle}.
+	 */
+	private int[] speed = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Distancia recorrida por cada {@code Vehicle}.
+	 */
+	private int[] kilometrage = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Tiempo restante de avería de cada {@code Vehicle}.
+	 */
+	private int[] breakdownTime = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Índice de la {@code Road} en la que está
+	 * cada {@code Vehicle}.
+	 */
+	private int[] road = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Número de {@code Vehicle}s registrados.
+	 */
+	private int size = 0;
+
+	/**
+	 * {@code Road}s registradas, indexadas por
+	 * el valor de la columna {@code road}.
+	 */
+	private List<Road> roads = new ArrayList<>();
+
+	/**
+	 * Filas liberadas por {@code Vehicle}s archivados,
+	 * que se reutilizan antes de crecer.
+	 */
+	private int[] freeHandles = new int[INITIAL_CAPACITY];
+
+	/**
+	 * Número de filas liberadas.
+	 */
+	private int numFree = 0;
+
+	/**
+	 * {@code Vehicle}s que han llegado a su destino en
+	 * el tick actual y aún no se han archivado.
+	 */
+	private List<Vehicle> arrivals = new ArrayList<>();
+
+	/**
+	 * Política de recálculo de rutas que consultan los
+	 * {@code Vehicle}s al salir de cada {@code Junction},
+	 * o {@code null} si siguen siempre su ruta.
+	 */
+	private Rerouter rerouter = null;
+
+	/**
+	 * Índice de adyacencia del {@code RoadMap}: id de
+	 * {@code Junction} de origen a id de {@code Junction}
+	 * de destino a la {@code Road} que las une.
+	 */
+	private Map<String, Map<String, Road>> roadIndex;
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor vacío de {@link VehicleStore}, con
+	 * su propio índice de adyacencia vacío.
+	 */
+	public VehicleStore() {
+		this( new HashMap<>() );
+	}
+
+	/**
+	 * Constructor de {@link VehicleStore} que comparte
+	 * el índice de adyacencia de un {@code RoadMap}.
+	 *
+	 * @param index 	- índice de adyacencia del mapa
+	 */
+	public VehicleStore(Map<String, Map<String, Road>> index) {
+		roadIndex = index;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE REGISTRO ** //
+	/**
+	 * Reserva una nueva fila en las columnas, con
+	 * todos sus valores a cero, y devuelve su índice.
+	 *
+	 * @return 	{@code handle} del nuevo
+	 * 			{@code Vehicle}
+	 */
+	int newHandle() {
+		if (numFree > 0) {
+			int handle = freeHandles[--numFree];
+
+			location[handle] = 0;
+			speed[handle] = 0;
+			kilometrage[handle] = 0;
+			breakdownTime[handle] = 0;
+			road[handle] = 0;
+
+			return handle;
+		}
+
+		if (size == location.length) {
+			int capacity = size * 2;
+
+			location = Arrays.copyOf(location, capacity);
+			speed = Arrays.copyOf(speed, capacity);
+			kilometrage = Arrays.copyOf(kilometrage, capacity);
+			breakdownTime = Arrays.copyOf(breakdownTime, capacity);
+			road = Arrays.copyOf(road, capacity);
+		}
+
+		return size++;
+	}
+
+	/**
+	 * Libera la fila de un {@code Vehicle} archivado
+	 * para que la reutilice otro nuevo. La fila libre
+	 * queda parada y sin avería, de forma que no cuenta
+	 * en {@link #countMoving()} ni en {@link #countFaulty()}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 */
+	void releaseHandle(int handle) {
+		speed[handle] = 0;
+		breakdownTime[handle] = 0;
+
+		if (numFree == freeHandles.length) {
+			freeHandles = Arrays.copyOf(freeHandles, numFree * 2);
+		}
+		freeHandles[numFree++] = handle;
+	}
+
+	/**
+	 * Anota un {@code Vehicle} que acaba de llegar
+	 * a su destino, para archivarlo al final del tick.
+	 * Pueden llamarlo a la vez varias regiones del mapa.
+	 *
+	 * @param v 	- {@code Vehicle} llegado
+	 */
+	synchronized void addArrival(Vehicle v) {
+		arrivals.add(v);
+	}
+
+	/**
+	 * Devuelve los {@code Vehicle}s llegados desde
+	 * la última vez y vacía la lista.
+	 *
+	 * @return 	{@code Vehicle}s llegados, en
+	 * 			orden de llegada
+	 */
+	public List<Vehicle> drainArrivals() {
+		List<Vehicle> drained = arrivals;
+		arrivals = new ArrayList<>();
+		return drained;
+	}
+
+	/**
+	 * Registra una {@code Road} en el almacén,
+	 * asignándole su índice.
+	 *
+	 * @param newRoad 	- {@code Road} a registrar
+	 */
+	public void registerRoad(Road newRoad) {
+		newRoad.setIndex(this, roads.size());
+		roads.add(newRoad);
+	}
+
+	/**
+	 * Busca la {@code Road} que va de una {@code Junction}
+	 * a otra en el índice de adyacencia del mapa, la misma
+	 * que devuelve {@code RoadMap.getRoadBetween}.
+	 *
+	 * @param from 	- {@code Junction} de origen
+	 * @param to 	- {@code Junction} de destino
+	 *
+	 * @return 		{@code Road} buscada, o {@code null}
+	 */
+	public Road getRoadBetween(Junction from, Junction to) {
+		//O(1)
+		Map<String, Road> exits = roadIndex.get(from.getID());
+
+		return (exits != null) ? exits.get(to.getID()) : null;
+	}
+
+	/**
+	 * Vacía el almacén de {@code Vehicle}s
+	 * y {@code Road}s.
+	 */
+	public void clear() {
+		location = new int[INITIAL_CAPACITY];
+		speed = new int[INITIAL_CAPACITY];
+		kilometrage = new int[INITIAL_CAPACITY];
+		breakdownTime = new int[INITIAL_CAPACITY];
+		road = new int[INITIAL_CAPACITY];
+		size = 0;
+		roads.clear();
+		freeHandles = new int[INITIAL_CAPACITY];
+		numFree = 0;
+		arrivals.clear();
+		rerouter = null;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe las filas de las columnas y las filas libres.
+	 * Las {@code Road}s no se escriben: al leerlo, deben estar
+	 * registradas de nuevo en el mismo orden.
+	 *
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the store could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeInt(size);
+		for (int i = 0; i < size; ++i) {
+			out.writeInt(location[i]);
+			out.writeInt(speed[i]);
+			out.writeInt(kilometrage[i]);
+			out.writeInt(breakdownTime[i]);
+			out.writeInt(road[i]);
+		}
+
+		out.writeInt(numFree);
+		for (int i = 0; i < numFree; ++i) {
+			out.writeInt(freeHandles[i]);
+		}
+	}
+
+	/**
+	 * Sustituye las filas de las columnas y las filas libres
+	 * por las escritas con {@link #write(DataOutput)}.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @throws IOException 	if the input is not a valid store
+	 * 						for the registered roads
+	 */
+	public void read(DataInput in) throws IOException {
+		int n = SimObjCodec.readCount(in);
+		int capacity = Math.max(n, INITIAL_CAPACITY);
+
+		location = new int[capacity];
+		speed = new int[capacity];
+		kilometrage = new int[capacity];
+		breakdownTime = new int[capacity];
+		road = new int[capacity];
+		for (int i = 0; i < n; ++i) {
+			location[i] = in.readInt();
+			speed[i] = in.readInt();
+			kilometrage[i] = in.readInt();
+			breakdownTime[i] = in.readInt();
+			road[i] = in.readInt();
+
+			if ( road[i] < 0 || road[i] >= roads.size() ) {
+				throw new IOException("Invalid road index: " + road[i]);
+			}
+		}
+		size = n;
+
+		numFree = SimObjCodec.readCount(in);
+		freeHandles = new int[Math.max(numFree, INITIAL_CAPACITY)];
+		for (int i = 0; i < numFree; ++i) {
+			freeHandles[i] = in.readInt();
+		}
+	}
+
+
+
+
+
+
+	// ** GETTERS/SETTERS ** //
+	/**
+	 * Devuelve la política de recálculo de rutas.
+	 *
+	 * @return 	{@code rerouter} o {@code null}
+	 */
+	public Rerouter getRerouter() {
+		return rerouter;
+	}
+
+	/**
+	 * Fija la política de recálculo de rutas de
+	 * los {@code Vehicle}s.
+	 *
+	 * @param r 	- política o {@code null}
+	 */
+	public void setRerouter(Rerouter r) {
+		rerouter = r;
+	}
+
+	/**
+	 * Comprueba si {@code handle} es una fila de las columnas,
+	 * ocupada o libre.
+	 *
+	 * @param handle 	- índice de un {@code Vehicle}
+	 *
+	 * @return 			si la fila existe
+	 */
+	boolean hasRow(int handle) {
+		return handle >= 0 && handle < size;
+	}
+
+	/**
+	 * Devuelve el número de {@code Vehicle}s registrados.
+	 *
+	 * @return 	número de filas ocupadas
+	 */
+	public int size() {
+		return size - numFree;
+	}
+
+	/**
+	 * <p>
+	 * Avanza un tick los {@code count} primeros {@code Vehicle}s
+	 * de {@code handles}, que circulan por una {@code Road} de
+	 * longitud {@code length}, leyendo y escribiendo directamente
+	 * las columnas.
+	 * </p> <p>
+	 * Los averiados descuentan un tick de avería. El resto suma
+	 * su velocidad a su localización y kilometraje, salvo los que
+	 * llegan al final: éstos sólo suman la distancia que les
+	 * quedaba y su {@code handle} se cambia por -1, sin tocar su
+	 * localización, para que la {@code Road} los pase a la cola
+	 * de espera con {@link Vehicle#waitInJunction()}.
+	 * </p>
+	 *
+	 * @param handles 	- índices de los {@code Vehicle}s
+	 * @param count 	- número de {@code Vehicle}s
+	 * @param length 	- longitud de la {@code Road}
+	 *
+	 * @return 			número de {@code Vehicle}s no averiados,
+	 * 					que son los que avanzan
+	 */
+	int advance(int[] handles, int count, int length) {
+		int moved = 0;
+
+		for (int i = 0; i < count; ++i) {
+			int h = handles[i];
+
+			if (breakdownTime[h] > 0) {
+				breakdownTime[h]--;
+			}
+			else {
+				moved++;
+				int next = location[h] + speed[h];
+
+				if (next >= length) {
+					kilometrage[h] += length - location[h];
+					handles[i] = -1;
+				}
+				else {
+					location[h] = next;
+					kilometrage[h] += speed[h];
+				}
+			}
+		}
+
+		return moved;
+	}
+
+	/**
+	 * Cuenta los {@code Vehicle}s con velocidad
+	 * distinta de cero.
+	 *
+	 * @return 	número de {@code Vehicle}s en marcha
+	 */
+	public int countMoving() {
+		int moving = 0;
+		for (int i = 0; i < size; ++i) {
+			if (speed[i] > 0) {
+				moving++;
+			}
+		}
+		return moving;
+	}
+
+	/**
+	 * Cuenta los {@code Vehicle}s con tiempo
+	 * de avería pendiente.
+	 *
+	 * @return 	número de {@code Vehicle}s averiados
+	 */
+	public int countFaulty() {
+		int faulty = 0;
+		for (int i = 0; i < size; ++i) {
+			if (breakdownTime[i] > 0) {
+				faulty++;
+			}
+		}
+		return faulty;
+	}
+
+	/**
+	 * Devuelve la localización de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 *
+	 * @return 			localización en su {@code Road}
+	 */
+	public int getLocation(int handle) {
+		return location[handle];
+	}
+
+	/**
+	 * Modifica la localización de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 * @param value 	- nueva localización
+	 */
+	public void setLocation(int handle, int value) {
+		location[handle] = value;
+	}
+
+	/**
+	 * Devuelve la velocidad actual de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 *
+	 * @return 			velocidad actual
+	 */
+	public int getSpeed(int handle) {
+		return speed[handle];
+	}
+
+	/**
+	 * Modifica la velocidad actual de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 * @param value 	- nueva velocidad
+	 */
+	public void setSpeed(int handle, int value) {
+		speed[handle] = value;
+	}
+
+	/**
+	 * Devuelve el kilometraje de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 *
+	 * @return 			distancia recorrida
+	 */
+	public int getKilometrage(int handle) {
+		return kilometrage[handle];
+	}
+
+	/**
+	 * Suma distancia al kilometraje de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 * @param value 	- distancia a sumar
+	 */
+	public void addKilometrage(int handle, int value) {
+		kilometrage[handle] += value;
+	}
+
+	/**
+	 * Devuelve el tiempo de avería de un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 *
+	 * @return 			tiempo restante de avería
+	 */
+	public int getBreakdownTime(int handle) {
+		return breakdownTime[handle];
+	}
+
+	/**
+	 * Suma tiempo de avería a un {@code Vehicle}
+	 * (o lo resta, si {@code value} es negativo).
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 * @param value 	- tiempo a sumar
+	 */
+	public void addBreakdownTime(int handle, int value) {
+		breakdownTime[handle] += value;
+	}
+
+	/**
+	 * Devuelve el índice de la {@code Road} en la
+	 * que se encuentra un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 *
+	 * @return 			índice de su {@code Road}
+	 */
+	public int getRoadIndex(int handle) {
+		return road[handle];
+	}
+
+	/**
+	 * Devuelve la {@code Road} en la que se
+	 * encuentra un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 *
+	 * @return 			{@code Road} actual
+	 */
+	public Road getRoad(int handle) {
+		return roads.get(road[handle]);
+	}
+
+	/**
+	 * Cambia la {@code Road} en la que se
+	 * encuentra un {@code Vehicle}.
+	 *
+	 * @param handle 	- índice del {@code Vehicle}
+	 * @param newRoad 	- nueva {@code Road}, ya
+	 * 					registrada en el almacén
+	 */
+	public void setRoad(int handle, Road newRoad) {
+		road[handle] = newRoad.getIndex();
+	}
+}
@@ -0,0 +1,101 @@
+package es.ucm.fdi.model.SimObj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.model.simulation.SimulationException;
+
+/**
+ * <p>
+ * Codificación de un {@link Vehicle} que pasa de un proceso a otro
+ * en una simulación distribuida.
+ * </p> <p>
+ * El {@code Vehicle} se escribe con {@link SimObjCodec}: las
+ * {@code Junction}s y {@code Road}s de su ruta se escriben como ids,
+ * de forma que al recibirlo se enlaza con los objetos del mapa del
+ * proceso de destino. Los valores de su fila del {@code VehicleStore}
+ * se escriben detrás.
+ * </p>
+ */
+public final class VehicleTransfer {
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Clase no instanciable.
+	 */
+	private VehicleTransfer() {
+		/*NADA*/
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE TRANSFERENCIA ** //
+	/**
+	 * Codifica un {@code Vehicle} que sale del proceso y
+	 * libera su fila del {@code VehicleStore}. El
+	 * {@code Vehicle} no debe usarse después.
+	 *
+	 * @param v 	- {@code Vehicle} que sale
+	 *
+	 * @return 		{@code Vehicle} codificado
+	 *
+	 * @throws IOException 	if the vehicle could not
+	 * 						be written
+	 */
+	public static byte[] export(Vehicle v) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try ( DataOutputStream out = new DataOutputStream(bytes) ) {
+			SimObjCodec.writeVehicle(v, out);
+			out.writeInt(v.store.getLocation(v.handle));
+			out.writeInt(v.store.getSpeed(v.handle));
+			out.writeInt(v.store.getKilometrage(v.handle));
+			out.writeInt(v.store.getBreakdownTime(v.handle));
+		}
+
+		v.store.releaseHandle(v.handle);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decodifica un {@code Vehicle} que llega al proceso, le
+	 * asigna una fila del {@code VehicleStore} de {@code map}
+	 * y lo sitúa en la {@code Road} actual de su ruta, aunque
+	 * sin meterlo todavía en ella.
+	 *
+	 * @param data 	- {@code Vehicle} codificado
+	 * @param map 	- mapa del proceso de destino
+	 *
+	 * @return 		{@code Vehicle} recibido
+	 *
+	 * @throws IOException 	if the data is not a valid
+	 * 						vehicle for this map
+	 */
+	public static Vehicle adopt(byte[] data, RoadMap map) throws IOException {
+		try ( DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(data)) ) {
+
+			Vehicle v = SimObjCodec.readVehicle(in, map);
+			VehicleStore store = v.store;
+
+			v.handle = store.newHandle();
+			store.setLocation(v.handle, in.readInt());
+			store.setSpeed(v.handle, in.readInt());
+			store.addKilometrage(v.handle, in.readInt());
+			store.addBreakdownTime(v.handle, in.readInt());
+			store.setRoad(v.handle, v.getRouteRoad(v.lastTripPos));
+
+			return v;
+		}
+		catch (SimulationException e) {
+			throw new IOException(e);
+		}
+	}
+}
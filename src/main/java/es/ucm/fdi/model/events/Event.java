@@ -119,4 +119,15 @@ public abstract class Event implements Describable {
 	public int getTime() {
 		return time;
 	}
+
+	/**
+	 * Devuelve el identificador del objeto de la
+	 * simulación sobre el que actúa el {@code Event}.
+	 * 
+	 * @return 	identificador, o {@code ""} si no
+	 * 			actúa sobre un objeto concreto
+	 */
+	public String getObjectID() {
+		return "";
+	}
 }
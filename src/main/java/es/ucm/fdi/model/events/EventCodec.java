@@ -0,0 +1,209 @@
+package es.ucm.fdi.model.events;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.List;
+
+import es.ucm.fdi.model.SimObj.SimObjCodec;
+import es.ucm.fdi.model.simulation.DemandGenerator;
+import es.ucm.fdi.model.simulation.RouteCache;
+
+/**
+ * Codificación binaria de los {@link Event}s para los puntos de
+ * control. Cada {@code Event} se escribe como el nombre de su clase,
+ * su tiempo y los parámetros con los que se crea, de forma que al
+ * leerlo se crea de nuevo con su constructor.
+ */
+public final class EventCodec {
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Clase no instanciable.
+	 */
+	private EventCodec() {
+		/*NADA*/
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE CODIFICACIÓN ** //
+	/**
+	 * Escribe un {@code Event}.
+	 *
+	 * @param e 	- {@code Event} a escribir
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the event could not be written
+	 */
+	public static void write(Event e, DataOutput out) throws IOException {
+		String kind = e.getClass().getSimpleName();
+		out.writeUTF(kind);
+		out.writeInt( e.getTime() );
+
+		switch (kind) {
+			case "NewJunction":
+			case "NewCrowdedJunction":
+				out.writeUTF( ((NewJunction) e).id );
+				break;
+			case "NewRobinJunction":
+				NewRobinJunction robin = (NewRobinJunction) e;
+				out.writeUTF(robin.id);
+				out.writeInt(robin.minTime);
+				out.writeInt(robin.maxTime);
+				break;
+			case "NewRoad":
+			case "NewDirtRoad":
+			case "NewHighwayRoad":
+				writeRoad((NewRoad) e, out);
+				break;
+			case "NewVehicle":
+			case "NewBikeVehicle":
+			case "NewCarVehicle":
+			case "NewODVehicle":
+				writeVehicle((NewVehicle) e, out);
+				break;
+			case "FaultyVehicle":
+				FaultyVehicle faulty = (FaultyVehicle) e;
+				SimObjCodec.writeIDs(faulty.vehiclesID, out);
+				out.writeInt(faulty.duration);
+				break;
+			case "NewDemand":
+				((NewDemand) e).getGenerator().write(out);
+				break;
+			case "RemoteVehicles":
+				out.writeInt( ((RemoteVehicles) e).count );
+				break;
+			default:
+				throw new IOException("Unsupported event: " + kind);
+		}
+	}
+
+	/**
+	 * Lee un {@code Event} escrito con {@link #write(Event, DataOutput)}.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @return 		nuevo {@code Event}
+	 *
+	 * @throws IOException 	if the input is not an event
+	 */
+	public static Event read(DataInput in) throws IOException {
+		String kind = in.readUTF();
+		int time = in.readInt();
+
+		switch (kind) {
+			case "NewJunction":
+				return new NewJunction(time, in.readUTF());
+			case "NewCrowdedJunction":
+				return new NewCrowdedJunction(time, in.readUTF());
+			case "NewRobinJunction":
+				return new NewRobinJunction(time, in.readUTF(), in.readInt(), in.readInt());
+			case "NewRoad":
+			case "NewDirtRoad":
+			case "NewHighwayRoad":
+				return readRoad(kind, time, in);
+			case "NewVehicle":
+			case "NewBikeVehicle":
+			case "NewCarVehicle":
+			case "NewODVehicle":
+				return readVehicle(kind, time, in);
+			case "FaultyVehicle":
+				return new FaultyVehicle(time, SimObjCodec.readIDs(in), in.readInt());
+			case "NewDemand":
+				return new NewDemand( DemandGenerator.read(in) );
+			case "RemoteVehicles":
+				return new RemoteVehicles(time, in.readInt());
+			default:
+				throw new IOException("Unknown event: " + kind);
+		}
+	}
+
+	private static void writeRoad(NewRoad e, DataOutput out) throws IOException {
+		out.writeUTF(e.id);
+		out.writeInt(e.length);
+		out.writeInt(e.speedLimit);
+		out.writeUTF(e.fromJunctionID);
+		out.writeUTF(e.toJunctionID);
+
+		if (e instanceof NewHighwayRoad) {
+			out.writeInt( ((NewHighwayRoad) e).numLanes );
+		}
+	}
+
+	private static NewRoad readRoad(String kind, int time, DataInput in)
+			throws IOException {
+		String id = in.readUTF();
+		int length = in.readInt();
+		int speedLimit = in.readInt();
+		String from = in.readUTF();
+		String to = in.readUTF();
+
+		switch (kind) {
+			case "NewDirtRoad":
+				return new NewDirtRoad(time, id, length, speedLimit, from, to);
+			case "NewHighwayRoad":
+				return new NewHighwayRoad(time, id, length, speedLimit, from, to,
+						in.readInt());
+			default:
+				return new NewRoad(time, id, length, speedLimit, from, to);
+		}
+	}
+
+	private static void writeVehicle(NewVehicle e, DataOutput out)
+			throws IOException {
+		out.writeUTF(e.id);
+		out.writeInt(e.maxSpeed);
+		SimObjCodec.writeIDs(e.tripID, out);
+
+		if (e instanceof NewCarVehicle) {
+			NewCarVehicle car = (NewCarVehicle) e;
+			out.writeInt(car.resistance);
+			out.writeDouble(car.faultyChance);
+			out.writeInt(car.faultDuration);
+			out.writeLong(car.randomSeed);
+		}
+		else if (e instanceof NewODVehicle) {
+			NewODVehicle od = (NewODVehicle) e;
+			out.writeUTF(od.origin);
+			out.writeUTF(od.destination);
+			out.writeUTF( od.metric.name() );
+		}
+	}
+
+	private static NewVehicle readVehicle(String kind, int time, DataInput in)
+			throws IOException {
+		String id = in.readUTF();
+		int maxSpeed = in.readInt();
+		List<String> trip = SimObjCodec.readIDs(in);
+
+		switch (kind) {
+			case "NewBikeVehicle":
+				return new NewBikeVehicle(time, id, maxSpeed, trip);
+			case "NewCarVehicle":
+				return new NewCarVehicle(time, id, maxSpeed, trip, in.readInt(),
+						in.readDouble(), in.readInt(), in.readLong());
+			case "NewODVehicle":
+				String from = in.readUTF();
+				String to = in.readUTF();
+				String metric = in.readUTF();
+
+				NewODVehicle od;
+				try {
+					od = new NewODVehicle(time, id, maxSpeed, from, to,
+							RouteCache.Metric.valueOf(metric));
+				}
+				catch (IllegalArgumentException e) {
+					throw new IOException("Unknown route metric: " + metric);
+				}
+				// Ruta ya calculada, si se ejecutó.
+				od.tripID = trip;
+				return od;
+			default:
+				return new NewVehicle(time, id, maxSpeed, trip);
+		}
+	}
+}
@@ -1,5 +1,6 @@
 package es.ucm.fdi.model.events;
 
+import java.util.Collections;
 import java.util.List;
 
 import es.ucm.fdi.model.SimObj.Vehicle;
@@ -17,12 +18,12 @@ public class FaultyVehicle extends Event {
 	 * Lista con los IDs de los {@code Vehicle}s
 	 * que se van a averiar.
 	 */
-	private List<String> vehiclesID;
+	protected List<String> vehiclesID;
 
 	/**
 	 * Duración de la avería inducida.
 	 */
-	private int duration;
+	protected int duration;
 	
 
 
@@ -145,4 +146,25 @@ public class FaultyVehicle extends Event {
 
 		return same;
 	}
+
+	/**
+	 * Devuelve los IDs de los {@code Vehicle}s
+	 * que se van a averiar.
+	 * 
+	 * @return 	lista no modificable de IDs
+	 */
+	public List<String> getVehiclesID() {
+		return Collections.unmodifiableList(vehiclesID);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return 	identificadores de los {@code Vehicle}s
+	 * 			averiados, separados por comas
+	 */
+	@Override
+	public String getObjectID() {
+		return String.join(",", vehiclesID);
+	}
 }
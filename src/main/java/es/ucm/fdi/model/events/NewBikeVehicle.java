@@ -132,7 +132,8 @@ public class NewBikeVehicle extends NewVehicle {
 		}
 		
 		try {
-			return	new BikeVehicle( id, trip, maxSpeed );
+			return	new BikeVehicle( id, trip, newRoute(sim, trip), maxSpeed, 
+							sim.getRoadMap().getVehicleStore() );
 		} 
 		catch (SimulationException e) {
 			throw new NonExistingSimObjException(e.getMessage());
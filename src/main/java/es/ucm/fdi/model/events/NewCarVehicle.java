@@ -22,23 +22,23 @@ public class NewCarVehicle extends NewVehicle {
 	 * Entero que representa 
 	 * la resistencia a las averías.
 	 */
-	private int resistance;
+	protected int resistance;
 
 	/**
 	 * Probabilidad de avería del 
 	 * {@code CarVehicle}
 	 */
-	private double faultyChance;
+	protected double faultyChance;
 	
 	/**
 	 * Duración máxima de la avería.
 	 */
-	private int faultDuration;
+	protected int faultDuration;
 	
 	/**
 	 * Semilla aleatoria.
 	 */
-	private long randomSeed;
+	protected long randomSeed;
 	
 
 
@@ -168,8 +168,9 @@ public class NewCarVehicle extends NewVehicle {
 		}
 
 		try {
-			return	new CarVehicle(id, trip, maxSpeed, resistance, faultyChance,
-							faultDuration, randomSeed);
+			return	new CarVehicle(id, trip, newRoute(sim, trip), maxSpeed, resistance, faultyChance,
+							faultDuration, randomSeed, 
+							sim.getRoadMap().getVehicleStore());
 		} catch (SimulationException e) {
 			throw new NonExistingSimObjException(e.getMessage());
 		}
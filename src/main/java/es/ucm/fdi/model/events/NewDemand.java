@@ -0,0 +1,133 @@
+package es.ucm.fdi.model.events;
+
+import es.ucm.fdi.model.simulation.DemandGenerator;
+import es.ucm.fdi.model.simulation.TrafficSimulation;
+
+/**
+ * {@link Event} que pone en marcha un {@link DemandGenerator}
+ * en la simulación. A partir del tiempo del evento, el
+ * generador crea {@code Vehicle}s en cada tick sin que haga
+ * falta un {@code Event} por cada uno.
+ */
+public class NewDemand extends Event {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Generador que se pone en marcha.
+	 */
+	private DemandGenerator generator;
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link NewDemand}, que se ejecuta
+	 * en el primer tick del generador.
+	 *
+	 * @param demand 	- generador de demanda
+	 */
+	public NewDemand(DemandGenerator demand) {
+		super(demand.getStart());
+		generator = demand;
+	}
+
+
+
+
+
+
+	// ** MÉTODO DE EJECUCIÓN ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * El {@code NewDemand} añade su generador a los
+	 * generadores activos de la simulación, que crea
+	 * sus primeros {@code Vehicle}s en este mismo tick.
+	 * </p>
+	 *
+	 * @param sim 	- la simulación sobre la que
+	 * 				se ejecuta el evento
+	 */
+	@Override
+	public void execute(TrafficSimulation sim) {
+		sim.addDemand(generator);
+	}
+
+
+
+
+
+	// ** MÉTODO DE DESCRIPCIÓN ** //
+	/**
+	 * <p>
+	 * Devuelve la descripción {@code NewDemand}
+	 * utilizada en las tablas de la GUI. Ejemplo:
+	 * </p> <p>
+	 * "New demand d1"
+	 * </p>
+	 *
+	 * @return 	{@code String} con la descripción
+	 */
+	@Override
+	protected String getEventDescription() {
+		// Descripción del evento.
+		StringBuilder description = new StringBuilder();
+		description.append("New demand ");
+		description.append(generator.getID());
+
+		return description.toString();
+	}
+
+
+
+
+
+	// ** MÉTODO DE COMPARACIÓN ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * En el caso de {@code NewDemand}, comprueba
+	 * también que los generadores tienen los
+	 * mismos parámetros.
+	 * </p>
+	 *
+	 * @param obj 	objeto a comparar
+	 * @return 		if {@code NewDemand} equals <code>obj</code>
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return 	super.equals(obj) &&
+				generator.equals( ((NewDemand) obj).generator );
+	}
+
+	@Override
+	public int hashCode() {
+		return generator.hashCode() * 31 + getTime();
+	}
+
+
+
+
+
+	// ** MÉTODO DE ACCESO ** //
+	/**
+	 * Devuelve el generador de demanda del evento.
+	 *
+	 * @return 	{@code DemandGenerator} del evento
+	 */
+	public DemandGenerator getGenerator() {
+		return generator;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return 	identificador del generador de demanda
+	 */
+	@Override
+	public String getObjectID() {
+		return generator.getID();
+	}
+}
@@ -17,7 +17,7 @@ public class NewHighwayRoad extends NewRoad {
     /**
      * Número de carriles de la vía.
      */
-    private int numLanes;
+    protected int numLanes;
 
     
     
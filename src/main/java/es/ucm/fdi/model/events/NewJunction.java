@@ -141,4 +141,14 @@ public class NewJunction extends Event {
 		
 		return same;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return 	identificador de la nueva {@code Junction}
+	 */
+	@Override
+	public String getObjectID() {
+		return id;
+	}
 }
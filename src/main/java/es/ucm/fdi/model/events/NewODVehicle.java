@@ -0,0 +1,230 @@
+package es.ucm.fdi.model.events;
+
+import java.util.List;
+
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Vehicle;
+import es.ucm.fdi.model.simulation.AlreadyExistingSimObjException;
+import es.ucm.fdi.model.simulation.NonExistingSimObjException;
+import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.model.simulation.RouteCache;
+import es.ucm.fdi.model.simulation.RouteCache.Route;
+import es.ucm.fdi.model.simulation.SimulationException;
+import es.ucm.fdi.model.simulation.TrafficSimulation;
+
+/**
+ * {@link Event} que representa la creación de un nuevo
+ * {@link Vehicle} del que sólo se conocen el origen y el
+ * destino. Su ruta es el camino mínimo entre ambos en el
+ * momento de ejecutarse el evento. Hereda de {@link NewVehicle}.
+ */
+public class NewODVehicle extends NewVehicle {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Id de la {@code Junction} de origen.
+	 */
+	protected String origin;
+
+	/**
+	 * Id de la {@code Junction} de destino.
+	 */
+	protected String destination;
+
+	/**
+	 * Coste de las {@code Road}s con el
+	 * que se calcula la ruta.
+	 */
+	protected RouteCache.Metric metric;
+
+	/**
+	 * Ruta calculada al ejecutarse el evento.
+	 */
+	private Route route;
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link NewODVehicle}.
+	 *
+	 * @param newTime 	- tiempo de ejecución del evento
+	 * @param ID 		- identificador del nuevo
+	 * 					{@code Vehicle}
+	 * @param max 		- máxima velocidad alcanzable
+	 * @param from 		- id de la {@code Junction} de origen
+	 * @param to 		- id de la {@code Junction} de destino
+	 * @param by 		- coste de las {@code Road}s
+	 */
+	public NewODVehicle(int newTime, String ID, int max, String from, String to,
+			RouteCache.Metric by) {
+		super(newTime, ID, max, null);
+		origin = from;
+		destination = to;
+		metric = by;
+	}
+
+
+
+
+
+
+	// ** MÉTODO DE EJECUCIÓN ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * El {@code NewODVehicle} calcula primero la ruta del
+	 * {@code Vehicle} con la caché de caminos del {@code RoadMap},
+	 * de forma que los {@code Vehicle}s con el mismo origen y
+	 * destino comparten una única búsqueda.
+	 * </p>
+	 *
+	 * @param sim 	- la simulación sobre la que
+	 * 				se ejecuta el evento
+	 *
+	 * @throws AlreadyExistingSimObjException 	if {@code Vehicle}
+	 * 											ID already registered
+	 * @throws NonExistingSimObjException 		if the origin or the
+	 * 											destination do not exist,
+	 * 											or there is no route
+	 * 											between them
+	 */
+	@Override
+	public void execute(TrafficSimulation sim)
+			throws AlreadyExistingSimObjException, NonExistingSimObjException {
+		Junction from = sim.getRoadMap().getJunctionWithID(origin);
+		Junction to = sim.getRoadMap().getJunctionWithID(destination);
+
+		if (from == null || to == null) {
+			throw new NonExistingSimObjException(
+				"Junction with id: " + (from == null ? origin : destination) +
+				" from route of vehicle with id: " + id +
+				" not found in simulation."
+			);
+		}
+
+		route = sim.getRoadMap().getRouteCache().getRoute(from, to, metric);
+		if (route == null) {
+			throw new NonExistingSimObjException(
+				"No route from junction " + origin + " to junction " +
+				destination + " for vehicle with id: " + id
+			);
+		}
+
+		tripID = route.getIDs();
+		super.execute(sim);
+	}
+
+
+
+
+
+	// ** MÉTODO DE DESCRIPCIÓN ** //
+	/**
+	 * <p>
+	 * Devuelve la descripción {@code NewODVehicle}
+	 * utilizada en las tablas de la GUI. Ejemplo:
+	 * </p> <p>
+	 * "New vehicle v1 (j1 to j5)"
+	 * </p>
+	 *
+	 * @return 	{@code String} con la descripción
+	 */
+	@Override
+	protected String getEventDescription() {
+		// Descripción del evento.
+		StringBuilder description = new StringBuilder();
+		description.append("New vehicle ");
+		description.append(id);
+		description.append(" (");
+		description.append(origin);
+		description.append(" to ");
+		description.append(destination);
+		description.append(")");
+
+		return description.toString();
+	}
+
+
+
+
+
+	// ** MÉTODO DE NUEVO VEHÍCULO ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * Las {@code Junction}s y {@code Road}s de la ruta
+	 * se toman directamente del camino calculado.
+	 * </p>
+	 */
+	@Override
+	protected Vehicle newVehicle(TrafficSimulation sim)
+			throws NonExistingSimObjException {
+		try {
+			return	new Vehicle(id, route.getJunctions(), route.getRoads(),
+							maxSpeed, sim.getRoadMap().getVehicleStore());
+		} catch (SimulationException e) {
+			throw new NonExistingSimObjException(e.getMessage());
+		}
+	}
+
+
+
+
+
+	// ** MÉTODO DE COMPARACIÓN ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * En el caso de {@code NewODVehicle}, comprueba
+	 * que los IDs, la velocidad máxima, el origen,
+	 * el destino y el coste son iguales.
+	 * </p>
+	 *
+	 * @param obj 	objeto a comparar
+	 * @return 		if {@code NewODVehicle} equals <code>obj</code>
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if ( this == obj ) {
+			return true;
+		}
+		if ( obj == null || getClass() != obj.getClass() ) {
+			return false;
+		}
+
+		NewODVehicle other = (NewODVehicle) obj;
+		return 	getTime() == other.getTime() &&
+				id.equals(other.id) &&
+				maxSpeed == other.maxSpeed &&
+				origin.equals(other.origin) &&
+				destination.equals(other.destination) &&
+				metric == other.metric;
+	}
+
+	@Override
+	public int hashCode() {
+		return (id.hashCode() * 31 + origin.hashCode()) * 31 + destination.hashCode();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * En el caso de {@code NewODVehicle}, es el camino
+	 * mínimo en {@code map} entre el origen y el destino.
+	 * </p>
+	 */
+	@Override
+	public List<String> getTrip(RoadMap map) {
+		Junction from = map.getJunctionWithID(origin);
+		Junction to = map.getJunctionWithID(destination);
+		if (from == null || to == null) {
+			return null;
+		}
+
+		Route path = map.getRouteCache().getRoute(from, to, metric);
+		return (path != null) ? path.getIDs() : null;
+	}
+}
@@ -217,4 +217,14 @@ public class NewRoad extends Event {
 		
 		return same;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return 	identificador de la nueva {@code Road}
+	 */
+	@Override
+	public String getObjectID() {
+		return id;
+	}
 }
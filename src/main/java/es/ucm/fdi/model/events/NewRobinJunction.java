@@ -16,12 +16,12 @@ public class NewRobinJunction extends NewJunction {
     /**
      * Tiempo mínimo de encendido del semáforo.
      */
-    private int minTime;
+    protected int minTime;
 
     /**
      * Tiempo máximo de encendido del semáforo.
      */
-    private int maxTime;
+    protected int maxTime;
 
 
 
@@ -4,9 +4,11 @@ import java.util.ArrayList;
 import java.util.List;
 
 import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
 import es.ucm.fdi.model.SimObj.Vehicle;
 import es.ucm.fdi.model.simulation.AlreadyExistingSimObjException;
 import es.ucm.fdi.model.simulation.NonExistingSimObjException;
+import es.ucm.fdi.model.simulation.RoadMap;
 import es.ucm.fdi.model.simulation.SimulationException;
 import es.ucm.fdi.model.simulation.TrafficSimulation;
 
@@ -164,7 +166,8 @@ public class NewVehicle extends Event {
 			}
 		}
 		try {
-			return	new Vehicle(id, trip, maxSpeed);
+			return	new Vehicle(id, trip, newRoute(sim, trip), maxSpeed, 
+							sim.getRoadMap().getVehicleStore());
 		} catch (SimulationException e) {
 			throw new NonExistingSimObjException(e.getMessage());
 		}
@@ -174,6 +177,33 @@ public class NewVehicle extends Event {
 
 
 
+	/**
+	 * Método que resuelve, una única vez, las {@code Road}s
+	 * entre cada par de {@code Junction}s consecutivas de
+	 * la ruta. Si alguna no existe todavía, su posición queda
+	 * a {@code null} y el {@code Vehicle} la busca al llegar a
+	 * ella; sólo falla si entonces sigue sin existir.
+	 * 
+	 * @param sim 	- la simulación sobre la que
+	 * 				se ejecuta el evento
+	 * @param trip 	- ruta de {@code Junction}s
+	 * 
+	 * @return 		array de {@code Road}s de la ruta
+	 */
+	protected Road[] newRoute(TrafficSimulation sim, List<Junction> trip) {
+		Road[] route = new Road[trip.size() - 1];
+
+		for (int i = 0; i < route.length; ++i) {
+			route[i] = sim.getRoadMap().getRoadBetween(trip.get(i), trip.get(i + 1));
+		}
+
+		return route;
+	}
+
+
+
+
+
 	// ** MÉTODO DE COMPARACIÓN ** //
 	/**
 	 * {@inheritDoc}
@@ -201,4 +231,29 @@ public class NewVehicle extends Event {
 		
 		return same;
 	}
+
+	/**
+	 * {@inheritDoc}
+	 * 
+	 * @return 	identificador del nuevo {@code Vehicle}
+	 */
+	@Override
+	public String getObjectID() {
+		return id;
+	}
+
+	/**
+	 * Devuelve los IDs de las {@code Junction}s de la ruta
+	 * que seguiría el {@code Vehicle} en {@code map}, sin 
+	 * crearlo. En una simulación distribuida, decide qué 
+	 * proceso ejecuta el evento.
+	 * 
+	 * @param map 	- mapa de la simulación
+	 * 
+	 * @return 		IDs de la ruta, o {@code null} 
+	 * 				si no se puede calcular
+	 */
+	public List<String> getTrip(RoadMap map) {
+		return tripID;
+	}
 }
@@ -0,0 +1,103 @@
+package es.ucm.fdi.model.events;
+
+import es.ucm.fdi.model.simulation.TrafficSimulation;
+
+/**
+ * {@link Event} de un proceso de una simulación distribuida
+ * que ocupa el lugar de los {@link NewVehicle} de otras regiones.
+ * No crea ningún {@code Vehicle}: sólo cuenta los que se crean
+ * en otro proceso, para que los informes sigan el orden de
+ * creación de toda la simulación. No se lee de un fichero
+ * {@code .ini}; lo genera el coordinador.
+ */
+public class RemoteVehicles extends Event {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Número de {@code Vehicle}s creados en
+	 * otras regiones en este punto de la cola.
+	 */
+	protected int count;
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link RemoteVehicles}.
+	 *
+	 * @param newTime 	- tiempo de ejecución del evento
+	 * @param n 		- número de {@code Vehicle}s remotos
+	 */
+	public RemoteVehicles(int newTime, int n) {
+		super(newTime);
+		count = n;
+	}
+
+
+
+
+
+	// ** MÉTODO DE EJECUCIÓN ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * El {@code RemoteVehicles} reserva el orden
+	 * de creación de los {@code Vehicle}s remotos.
+	 * </p>
+	 *
+	 * @param sim 	- la simulación sobre la que
+	 * 				se ejecuta el evento
+	 */
+	@Override
+	public void execute(TrafficSimulation sim) {
+		sim.getRoadMap().addRemoteVehicles(count);
+	}
+
+
+
+
+
+	// ** MÉTODO DE DESCRIPCIÓN ** //
+	/**
+	 * <p>
+	 * Devuelve la descripción {@code RemoteVehicles}
+	 * utilizada en las tablas de la GUI. Ejemplo:
+	 * </p> <p>
+	 * "3 vehicles in other regions"
+	 * </p>
+	 *
+	 * @return 	{@code String} con la descripción
+	 */
+	@Override
+	protected String getEventDescription() {
+		return count + " vehicles in other regions";
+	}
+
+
+
+
+
+	// ** MÉTODO DE COMPARACIÓN ** //
+	/**
+	 * {@inheritDoc}
+	 * <p>
+	 * En el caso de {@code RemoteVehicles}, comprueba
+	 * también que cuentan los mismos {@code Vehicle}s.
+	 * </p>
+	 *
+	 * @param obj 	objeto a comparar
+	 * @return 		if {@code RemoteVehicles} equals <code>obj</code>
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		return 	super.equals(obj) &&
+				count == ((RemoteVehicles) obj).count;
+	}
+
+	@Override
+	public int hashCode() {
+		return count * 31 + getTime();
+	}
+}
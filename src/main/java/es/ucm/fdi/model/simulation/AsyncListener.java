@@ -0,0 +1,337 @@
+package es.ucm.fdi.model.simulation;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import es.ucm.fdi.model.simulation.TrafficSimulation.Listener;
+import es.ucm.fdi.model.simulation.TrafficSimulation.UpdateEvent;
+import es.ucm.fdi.util.EventType;
+
+/**
+ * <p>
+ * {@link Listener} que reparte los avisos del simulador a otro
+ * {@code Listener} desde un hilo propio, de forma que un
+ * {@code Listener} lento no detiene el bucle de la simulación.
+ * </p> <p>
+ * Los avisos se guardan en un buffer circular de tamaño fijo. Si
+ * se llena, la política {@link Backpressure} decide qué hacer:
+ * {@code BLOCK} espera a que haya sitio, {@code DROP_OLDEST}
+ * descarta el aviso más antiguo y {@code COALESCE} además junta
+ * los {@code ADVANCED} seguidos en el último, esperando como
+ * {@code BLOCK} si no queda otra opción.
+ * </p> <p>
+ * Cada {@code UpdateEvent} conserva el tick en el que se creó,
+ * pero su {@code RoadMap} es el de la simulación en curso: el
+ * {@code Listener} no debe suponer que no ha cambiado desde
+ * el aviso.
+ * </p>
+ */
+public class AsyncListener implements Listener, AutoCloseable {
+
+	// ** CLASE INTERNA ** //
+	/**
+	 * Políticas cuando el buffer está lleno.
+	 */
+	public enum Backpressure {
+		BLOCK, DROP_OLDEST, COALESCE
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * {@code Listener} que recibe los avisos.
+	 */
+	private final Listener delegate;
+
+	/**
+	 * Política cuando el buffer está lleno.
+	 */
+	private final Backpressure policy;
+
+	/**
+	 * Buffer circular de avisos y de sus mensajes de error:
+	 * {@code size} avisos desde la posición {@code head}.
+	 */
+	private final UpdateEvent[] events;
+	private final String[] errors;
+	private int head = 0;
+	private int size = 0;
+
+	/**
+	 * Cerrojo del buffer, con las condiciones de
+	 * buffer no vacío y no lleno.
+	 */
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notEmpty = lock.newCondition();
+	private final Condition notFull = lock.newCondition();
+
+	/**
+	 * Avisos descartados y juntados con otro.
+	 */
+	private long dropped = 0;
+	private long coalesced = 0;
+
+	/**
+	 * Avisos en los que {@code delegate} lanzó una
+	 * excepción. Sólo lo escribe el hilo de reparto.
+	 */
+	private volatile long failed = 0;
+
+	/**
+	 * Si ya no se aceptan avisos.
+	 */
+	private boolean closed = false;
+
+	/**
+	 * Hilo que entrega los avisos a {@code delegate}.
+	 */
+	private final Thread consumer;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link AsyncListener}, que arranca
+	 * el hilo de reparto.
+	 *
+	 * @param delegate 	- {@code Listener} que recibe los avisos
+	 * @param capacity 	- tamaño del buffer
+	 * @param policy 	- política cuando el buffer está lleno
+	 *
+	 * @throws IllegalArgumentException 	if capacity is
+	 * 										not positive
+	 */
+	public AsyncListener(Listener delegate, int capacity, Backpressure policy) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException(
+				"Invalid listener buffer capacity: " + capacity
+			);
+		}
+
+		this.delegate = delegate;
+		this.policy = policy;
+		events = new UpdateEvent[capacity];
+		errors = new String[capacity];
+
+		consumer = new Thread(this::dispatch, "listener-dispatch");
+		consumer.setDaemon(true);
+		consumer.start();
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE REPARTO ** //
+	/**
+	 * {@inheritDoc}
+	 * Guarda el aviso en el buffer y vuelve enseguida, salvo
+	 * que haya que esperar por la política {@code BLOCK}. Los
+	 * avisos que llegan tras {@link #close()} se descartan.
+	 */
+	@Override
+	public void update(UpdateEvent ue, String error) {
+		lock.lock();
+		try {
+			if (closed) {
+				dropped++;
+				return;
+			}
+
+			// Un ADVANCED sustituye al ADVANCED pendiente más reciente.
+			if ( policy == Backpressure.COALESCE && size > 0 &&
+					ue.getEvent() == EventType.ADVANCED ) {
+				int last = (head + size - 1) % events.length;
+				if ( events[last].getEvent() == EventType.ADVANCED ) {
+					events[last] = ue;
+					errors[last] = error;
+					coalesced++;
+					return;
+				}
+			}
+
+			while ( size == events.length ) {
+				if ( policy == Backpressure.DROP_OLDEST ) {
+					poll();
+					dropped++;
+				}
+				else {
+					notFull.awaitUninterruptibly();
+					if (closed) {
+						dropped++;
+						return;
+					}
+				}
+			}
+
+			int tail = (head + size) % events.length;
+			events[tail] = ue;
+			errors[tail] = error;
+			size++;
+			notEmpty.signal();
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Bucle del hilo de reparto: entrega los avisos en orden
+	 * hasta que se cierra y se vacía el buffer. Los errores de
+	 * {@code delegate} se informan y no detienen el reparto; si
+	 * el hilo termina por cualquier otro motivo, el
+	 * {@code AsyncListener} se cierra para que ningún
+	 * productor se quede esperando.
+	 */
+	private void dispatch() {
+		try {
+			deliverAll();
+		}
+		finally {
+			lock.lock();
+			try {
+				closed = true;
+				dropped += size;
+				while (size > 0) {
+					poll();
+				}
+				notFull.signalAll();
+			}
+			finally {
+				lock.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Entrega los avisos del buffer hasta que se
+	 * cierra y se vacía.
+	 */
+	private void deliverAll() {
+		while (true) {
+			UpdateEvent ue;
+			String error;
+
+			lock.lock();
+			try {
+				while ( size == 0 && ! closed ) {
+					notEmpty.awaitUninterruptibly();
+				}
+				if (size == 0) {
+					return;
+				}
+
+				ue = events[head];
+				error = errors[head];
+				poll();
+				notFull.signal();
+			}
+			finally {
+				lock.unlock();
+			}
+
+			try {
+				delegate.update(ue, error);
+			}
+			catch (RuntimeException e) {
+				failed++;
+				System.err.println("Listener error on " + ue.getEvent() + ": " + e);
+			}
+		}
+	}
+
+	/**
+	 * Quita el aviso más antiguo del buffer.
+	 * Se llama con el cerrojo cogido.
+	 */
+	private void poll() {
+		events[head] = null;
+		errors[head] = null;
+		head = (head + 1) % events.length;
+		size--;
+	}
+
+	/**
+	 * Deja de aceptar avisos y espera a que el hilo de
+	 * reparto entregue los que quedan en el buffer. Si se
+	 * interrumpe la espera, se deja de esperar y se
+	 * restaura la marca de interrupción del hilo.
+	 */
+	@Override
+	public void close() {
+		lock.lock();
+		try {
+			closed = true;
+			notEmpty.signalAll();
+			notFull.signalAll();
+		}
+		finally {
+			lock.unlock();
+		}
+
+		if ( Thread.currentThread() != consumer ) {
+			try {
+				consumer.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE ACCESO ** //
+	/**
+	 * Devuelve el número de avisos descartados por
+	 * {@code DROP_OLDEST} o por llegar tras el cierre.
+	 *
+	 * @return 	avisos descartados
+	 */
+	public long getDropped() {
+		lock.lock();
+		try {
+			return dropped;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Devuelve el número de avisos en los que el
+	 * {@code Listener} lanzó una excepción.
+	 *
+	 * @return 	avisos fallidos
+	 */
+	public long getFailed() {
+		return failed;
+	}
+
+	/**
+	 * Devuelve el número de {@code ADVANCED} que se han
+	 * juntado con otro por {@code COALESCE}.
+	 *
+	 * @return 	avisos juntados
+	 */
+	public long getCoalesced() {
+		lock.lock();
+		try {
+			return coalesced;
+		}
+		finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,99 @@
+package es.ucm.fdi.model.simulation;
+
+import java.util.Arrays;
+
+/**
+ * Montículo binario de mínimos con claves {@code double}
+ * y valores {@code int}, sin objetos por elemento. Lo usan
+ * las búsquedas de caminos mínimos sobre índices de
+ * {@code Junction}s.
+ */
+final class CostHeap {
+
+	private int[] nodes = new int[16];
+	private double[] costs = new double[16];
+	private int size = 0;
+
+	/**
+	 * Devuelve si el montículo está vacío.
+	 *
+	 * @return 	if there are no elements
+	 */
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Vacía el montículo, conservando su capacidad.
+	 */
+	void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Devuelve el coste del mínimo, sin sacarlo.
+	 *
+	 * @return 	coste mínimo
+	 */
+	double peekCost() {
+		return costs[0];
+	}
+
+	/**
+	 * Añade un elemento.
+	 *
+	 * @param node 	- valor
+	 * @param cost 	- clave
+	 */
+	void push(int node, double cost) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			costs = Arrays.copyOf(costs, size * 2);
+		}
+
+		int i = size++;
+		while (i > 0) {
+			int parent = (i - 1) / 2;
+			if (costs[parent] <= cost) {
+				break;
+			}
+			nodes[i] = nodes[parent];
+			costs[i] = costs[parent];
+			i = parent;
+		}
+		nodes[i] = node;
+		costs[i] = cost;
+	}
+
+	/**
+	 * Saca el elemento de menor coste.
+	 *
+	 * @return 	valor del mínimo
+	 */
+	int pop() {
+		int top = nodes[0];
+		int node = nodes[--size];
+		double cost = costs[size];
+
+		int i = 0;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= size) {
+				break;
+			}
+			if (child + 1 < size && costs[child + 1] < costs[child]) {
+				child++;
+			}
+			if (costs[child] >= cost) {
+				break;
+			}
+			nodes[i] = nodes[child];
+			costs[i] = costs[child];
+			i = child;
+		}
+		nodes[i] = node;
+		costs[i] = cost;
+
+		return top;
+	}
+}
@@ -0,0 +1,640 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import es.ucm.fdi.model.SimObj.BikeVehicle;
+import es.ucm.fdi.model.SimObj.CarVehicle;
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.SimObj.SimObjCodec;
+import es.ucm.fdi.model.SimObj.Vehicle;
+import es.ucm.fdi.model.simulation.RouteCache.Route;
+import es.ucm.fdi.util.CounterRandom;
+
+/**
+ * <p>
+ * Generador de demanda: crea {@code Vehicle}s tick a tick
+ * mientras está activo, sin un {@code Event} por cada uno.
+ * </p> <p>
+ * En cada tick llega un número de {@code Vehicle}s que sigue
+ * una distribución de Poisson con la tasa del perfil en ese
+ * tick. Cada uno recorre uno de los itinerarios o pares
+ * origen-destino del generador, elegido al azar, y es de un
+ * tipo elegido según los pesos de la mezcla. Todas las
+ * decisiones salen de un único {@link CounterRandom}, así
+ * que con la misma semilla se generan siempre los mismos
+ * {@code Vehicle}s, también al continuar desde un punto de
+ * control o en una simulación distribuida.
+ * </p> <p>
+ * Los {@code Vehicle}s se llaman {@code id_0}, {@code id_1}...
+ * en orden de creación.
+ * </p>
+ */
+public class DemandGenerator {
+
+	// ** CLASE INTERNA ** //
+	/**
+	 * Tipos de {@code Vehicle} que puede crear el generador.
+	 */
+	public enum Kind {
+		VEHICLE, CAR, BIKE
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Tasa máxima con la que se toma una muestra de Poisson
+	 * de una vez; las tasas mayores se reparten en trozos
+	 * para que {@code exp(-rate)} no se anule.
+	 */
+	private static final double POISSON_CHUNK = 16;
+
+	/**
+	 * Prefijo de los ids de los {@code Vehicle}s.
+	 */
+	private String id;
+
+	/**
+	 * Primer y último tick (incluido) en que se
+	 * crean {@code Vehicle}s.
+	 */
+	private int start;
+	private int end;
+
+	/**
+	 * Número máximo de {@code Vehicle}s a crear.
+	 */
+	private int maxVehicles;
+
+	/**
+	 * Perfil de llegadas: {@code Vehicle}s por tick, cada
+	 * valor durante {@code rateInterval} ticks. El perfil
+	 * se repite hasta que termina el generador.
+	 */
+	private double[] rates;
+	private int rateInterval;
+
+	/**
+	 * Itinerarios fijos, como ids de {@code Junction}s.
+	 */
+	private List<List<String>> itineraries;
+
+	/**
+	 * Pares origen-destino, cuyas rutas se piden
+	 * a la caché de caminos del {@code RoadMap}.
+	 */
+	private List<List<String>> odPairs;
+
+	/**
+	 * Coste de las {@code Road}s en las rutas
+	 * origen-destino.
+	 */
+	private RouteCache.Metric metric;
+
+	/**
+	 * Velocidad máxima de los {@code Vehicle}s.
+	 */
+	private int maxSpeed;
+
+	/**
+	 * Peso de cada {@link Kind} en la mezcla, por ordinal.
+	 */
+	private double[] mix;
+
+	/**
+	 * Parámetros de avería de los {@code CarVehicle}s.
+	 */
+	private int resistance;
+	private double faultProbability;
+	private int maxFaultDuration;
+
+	/**
+	 * Semilla del generador.
+	 */
+	private long seed;
+
+	/**
+	 * Generador aleatorio, creado al empezar.
+	 */
+	private CounterRandom random;
+
+	/**
+	 * Número de {@code Vehicle}s creados.
+	 */
+	private int spawned;
+
+	/**
+	 * Rutas de los itinerarios fijos y {@code Junction}s de
+	 * los pares origen-destino, resueltas en el primer tick
+	 * y de nuevo cada vez que cambia la red.
+	 */
+	private Route[] fixedRoutes;
+	private Junction[][] odJunctions;
+
+	/**
+	 * Versión de la red para la que se resolvieron
+	 * {@code fixedRoutes} y {@code odJunctions}.
+	 */
+	private int resolvedVersion;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link DemandGenerator}.
+	 *
+	 * @param id 			- prefijo de los ids de los
+	 * 						{@code Vehicle}s
+	 * @param start 		- primer tick
+	 * @param end 			- último tick
+	 * @param maxVehicles 	- número máximo de {@code Vehicle}s
+	 * @param rates 		- {@code Vehicle}s por tick de
+	 * 						cada tramo del perfil
+	 * @param rateInterval 	- ticks de cada tramo del perfil
+	 * @param itineraries 	- itinerarios fijos
+	 * @param odPairs 		- pares origen-destino
+	 * @param metric 		- coste de las rutas origen-destino
+	 * @param maxSpeed 		- velocidad máxima
+	 * @param mix 			- peso de cada {@link Kind}
+	 * @param resistance 	- resistencia a la avería
+	 * 						de los {@code CarVehicle}s
+	 * @param faultProbability 	- probabilidad de avería
+	 * @param maxFaultDuration 	- duración máxima de avería
+	 * @param seed 			- semilla aleatoria
+	 */
+	public DemandGenerator(String id, int start, int end, int maxVehicles,
+			double[] rates, int rateInterval, List<List<String>> itineraries,
+			List<List<String>> odPairs, RouteCache.Metric metric, int maxSpeed,
+			double[] mix, int resistance, double faultProbability,
+			int maxFaultDuration, long seed) {
+		this.id = id;
+		this.start = start;
+		this.end = end;
+		this.maxVehicles = maxVehicles;
+		this.rates = rates;
+		this.rateInterval = Math.max(1, rateInterval);
+		this.itineraries = itineraries;
+		this.odPairs = odPairs;
+		this.metric = metric;
+		this.maxSpeed = maxSpeed;
+		this.mix = mix;
+		this.resistance = resistance;
+		this.faultProbability = faultProbability;
+		this.maxFaultDuration = maxFaultDuration;
+		this.seed = seed;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE GENERACIÓN ** //
+	/**
+	 * Prepara el generador para empezar a crear
+	 * {@code Vehicle}s desde el principio.
+	 */
+	void begin() {
+		random = new CounterRandom(seed);
+		spawned = 0;
+		fixedRoutes = null;
+		odJunctions = null;
+	}
+
+	/**
+	 * Crea los {@code Vehicle}s que llegan en el tick
+	 * actual de {@code sim}.
+	 *
+	 * @param sim 	- simulación en la que se crean
+	 *
+	 * @throws AlreadyExistingSimObjException 	if a vehicle ID is
+	 * 											already registered
+	 * @throws NonExistingSimObjException 		if a junction of the
+	 * 											routes or a road of an
+	 * 											itinerary does not exist,
+	 * 											or there is no route
+	 * 											for an OD pair
+	 */
+	void spawn(TrafficSimulation sim)
+			throws AlreadyExistingSimObjException, NonExistingSimObjException {
+		RoadMap map = sim.getRoadMap();
+		resolveRoutes(map);
+
+		int arrivals = poisson( rateAt(sim.getCurrentTime()) );
+		for (int i = 0; i < arrivals && spawned < maxVehicles; ++i) {
+			String vehicleID = id + "_" + spawned++;
+
+			// Se sacan siempre los mismos números por Vehicle,
+			// se cree en este proceso o no.
+			int choice = random.nextInt(fixedRoutes.length + odJunctions.length);
+			Kind kind = pickKind();
+			long carSeed = random.nextInt(Integer.MAX_VALUE);
+
+			if ( map.existsVehicleID(vehicleID) ) {
+				throw new AlreadyExistingSimObjException(
+					"Vehicle with id: " + vehicleID + " already in simulation."
+				);
+			}
+
+			Route route = (choice < fixedRoutes.length) ?
+				fixedRoutes[choice] : odRoute(map, choice - fixedRoutes.length);
+
+			if ( ! sim.ownsNewVehicle(route.getIDs()) ) {
+				map.addRemoteVehicles(1);
+				continue;
+			}
+
+			sim.addVehicle( newVehicle(vehicleID, kind, route, carSeed, map) );
+		}
+	}
+
+	/**
+	 * Comprueba si el generador ya no creará más
+	 * {@code Vehicle}s a partir del tick siguiente
+	 * a {@code tick}.
+	 *
+	 * @param tick 	- tick que termina
+	 *
+	 * @return 		si el generador ha terminado
+	 */
+	boolean isFinished(int tick) {
+		return tick >= end || spawned >= maxVehicles;
+	}
+
+	/**
+	 * Devuelve la tasa de llegadas del perfil en {@code tick}.
+	 */
+	private double rateAt(int tick) {
+		int step = (tick - start) / rateInterval;
+		return rates[ step % rates.length ];
+	}
+
+	/**
+	 * Toma una muestra de una distribución de Poisson
+	 * de media {@code rate}.
+	 */
+	private int poisson(double rate) {
+		int count = 0;
+
+		while (rate > 0) {
+			double chunk = Math.min(rate, POISSON_CHUNK);
+			double limit = Math.exp(-chunk);
+			double product = random.nextDouble();
+			while (product > limit) {
+				count++;
+				product *= random.nextDouble();
+			}
+			rate -= chunk;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Elige el tipo de un {@code Vehicle} según la mezcla.
+	 */
+	private Kind pickKind() {
+		double total = 0;
+		for (double weight : mix) {
+			total += weight;
+		}
+
+		double u = random.nextDouble() * total;
+		Kind[] kinds = Kind.values();
+		for (int k = 0; k < kinds.length - 1; ++k) {
+			if (u < mix[k]) {
+				return kinds[k];
+			}
+			u -= mix[k];
+		}
+		return kinds[kinds.length - 1];
+	}
+
+	/**
+	 * Resuelve las {@code Junction}s y {@code Road}s de los
+	 * itinerarios fijos y las {@code Junction}s de los pares
+	 * origen-destino, si no se ha hecho aún con la red actual.
+	 */
+	private void resolveRoutes(RoadMap map) throws NonExistingSimObjException {
+		if ( fixedRoutes != null && resolvedVersion == map.getNetworkVersion() ) {
+			return;
+		}
+
+		Route[] routes = new Route[itineraries.size()];
+		for (int i = 0; i < routes.length; ++i) {
+			List<Junction> trip = junctions(map, itineraries.get(i));
+			Road[] roads = new Road[trip.size() - 1];
+			for (int r = 0; r < roads.length; ++r) {
+				roads[r] = map.getRoadBetween(trip.get(r), trip.get(r + 1));
+				if (roads[r] == null) {
+					throw new NonExistingSimObjException(
+						"Road from junction " + trip.get(r).getID() + 
+						" to junction " + trip.get(r + 1).getID() + 
+						" from demand " + id + " not found in simulation."
+					);
+				}
+			}
+			routes[i] = new Route(trip, roads);
+		}
+
+		Junction[][] pairs = new Junction[odPairs.size()][];
+		for (int i = 0; i < pairs.length; ++i) {
+			pairs[i] = junctions(map, odPairs.get(i)).toArray(new Junction[0]);
+		}
+
+		fixedRoutes = routes;
+		odJunctions = pairs;
+		resolvedVersion = map.getNetworkVersion();
+	}
+
+	/**
+	 * Busca las {@code Junction}s con los ids dados.
+	 */
+	private List<Junction> junctions(RoadMap map, List<String> ids)
+			throws NonExistingSimObjException {
+		List<Junction> result = new ArrayList<>(ids.size());
+
+		for (String jID : ids) {
+			Junction j = map.getJunctionWithID(jID);
+			if (j == null) {
+				throw new NonExistingSimObjException(
+					"Junction with id: " + jID + " from demand " +
+					id + " not found in simulation."
+				);
+			}
+			result.add(j);
+		}
+
+		return result;
+	}
+
+	/**
+	 * Devuelve la ruta del par origen-destino {@code pair}.
+	 */
+	private Route odRoute(RoadMap map, int pair) throws NonExistingSimObjException {
+		Junction[] od = odJunctions[pair];
+		Route route = map.getRouteCache().getRoute(od[0], od[1], metric);
+
+		if (route == null) {
+			throw new NonExistingSimObjException(
+				"No route from junction " + od[0].getID() + " to junction " +
+				od[1].getID() + " for demand " + id
+			);
+		}
+		return route;
+	}
+
+	/**
+	 * Crea un {@code Vehicle} del tipo {@code kind}
+	 * que recorre {@code route}.
+	 */
+	private Vehicle newVehicle(String vehicleID, Kind kind, Route route,
+			long carSeed, RoadMap map) throws NonExistingSimObjException {
+		try {
+			switch (kind) {
+			case CAR:
+				return new CarVehicle(vehicleID, route.getJunctions(),
+						route.getRoads(), maxSpeed, resistance, faultProbability,
+						maxFaultDuration, carSeed, map.getVehicleStore());
+			case BIKE:
+				return new BikeVehicle(vehicleID, route.getJunctions(),
+						route.getRoads(), maxSpeed, map.getVehicleStore());
+			default:
+				return new Vehicle(vehicleID, route.getJunctions(),
+						route.getRoads(), maxSpeed, map.getVehicleStore());
+			}
+		} catch (SimulationException e) {
+			throw new NonExistingSimObjException(e.getMessage());
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe los parámetros del generador.
+	 *
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the generator could not be written
+	 */
+	public void write(DataOutput out) throws IOException {
+		out.writeUTF(id);
+		out.writeInt(start);
+		out.writeInt(end);
+		out.writeInt(maxVehicles);
+		writeDoubles(rates, out);
+		out.writeInt(rateInterval);
+		writeRoutes(itineraries, out);
+		writeRoutes(odPairs, out);
+		out.writeBoolean(metric != null);
+		if (metric != null) {
+			out.writeUTF( metric.name() );
+		}
+		out.writeInt(maxSpeed);
+		writeDoubles(mix, out);
+		out.writeInt(resistance);
+		out.writeDouble(faultProbability);
+		out.writeInt(maxFaultDuration);
+		out.writeLong(seed);
+	}
+
+	/**
+	 * Lee un generador escrito con {@link #write(DataOutput)},
+	 * todavía sin empezar.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @return 		nuevo generador
+	 *
+	 * @throws IOException 	if the input is not a generator
+	 */
+	public static DemandGenerator read(DataInput in) throws IOException {
+		String id = in.readUTF();
+		int start = in.readInt();
+		int end = in.readInt();
+		int maxVehicles = in.readInt();
+		double[] rates = readDoubles(in);
+		int rateInterval = in.readInt();
+		List<List<String>> itineraries = readRoutes(in);
+		List<List<String>> odPairs = readRoutes(in);
+
+		RouteCache.Metric metric = null;
+		if ( in.readBoolean() ) {
+			String name = in.readUTF();
+			try {
+				metric = RouteCache.Metric.valueOf(name);
+			}
+			catch (IllegalArgumentException e) {
+				throw new IOException("Unknown route metric: " + name);
+			}
+		}
+
+		int maxSpeed = in.readInt();
+		double[] mix = readDoubles(in);
+		int resistance = in.readInt();
+		double faultProbability = in.readDouble();
+		int maxFaultDuration = in.readInt();
+		long seed = in.readLong();
+
+		return new DemandGenerator(id, start, end, maxVehicles, rates,
+			rateInterval, itineraries, odPairs, metric, maxSpeed, mix,
+			resistance, faultProbability, maxFaultDuration, seed);
+	}
+
+	/**
+	 * Escribe el estado de un generador empezado: sorteos
+	 * de su generador aleatorio y {@code Vehicle}s creados.
+	 *
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the state could not be written
+	 */
+	void writeState(DataOutput out) throws IOException {
+		out.writeLong( random.getCounter() );
+		out.writeInt(spawned);
+	}
+
+	/**
+	 * Continúa el generador desde el estado escrito con
+	 * {@link #writeState(DataOutput)}. Las rutas se resuelven
+	 * de nuevo en el siguiente tick.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @throws IOException 	if the input ends early
+	 */
+	void readState(DataInput in) throws IOException {
+		random = new CounterRandom(seed, in.readLong());
+		spawned = in.readInt();
+		fixedRoutes = null;
+		odJunctions = null;
+	}
+
+	private static void writeDoubles(double[] values, DataOutput out)
+			throws IOException {
+		out.writeInt(values.length);
+		for (double v : values) {
+			out.writeDouble(v);
+		}
+	}
+
+	private static double[] readDoubles(DataInput in) throws IOException {
+		double[] values = new double[ SimObjCodec.readCount(in) ];
+		for (int i = 0; i < values.length; ++i) {
+			values[i] = in.readDouble();
+		}
+		return values;
+	}
+
+	private static void writeRoutes(List<List<String>> routes, DataOutput out)
+			throws IOException {
+		out.writeInt(routes.size());
+		for (List<String> route : routes) {
+			SimObjCodec.writeIDs(route, out);
+		}
+	}
+
+	private static List<List<String>> readRoutes(DataInput in) throws IOException {
+		int n = SimObjCodec.readCount(in);
+		List<List<String>> routes = new ArrayList<>(n);
+		for (int i = 0; i < n; ++i) {
+			routes.add( SimObjCodec.readIDs(in) );
+		}
+		return routes;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE ACCESO ** //
+	/**
+	 * Devuelve el prefijo de los ids de los
+	 * {@code Vehicle}s.
+	 *
+	 * @return 	id del generador
+	 */
+	public String getID() {
+		return id;
+	}
+
+	/**
+	 * Devuelve el primer tick del generador.
+	 *
+	 * @return 	tick de inicio
+	 */
+	public int getStart() {
+		return start;
+	}
+
+	/**
+	 * Devuelve el número de {@code Vehicle}s
+	 * creados hasta ahora.
+	 *
+	 * @return 	{@code Vehicle}s creados
+	 */
+	public int getSpawned() {
+		return spawned;
+	}
+
+
+
+
+
+	// ** MÉTODO DE COMPARACIÓN ** //
+	/**
+	 * Comprueba si dos generadores tienen
+	 * los mismos parámetros.
+	 *
+	 * @param obj 	objeto a comparar
+	 * @return 		if {@code DemandGenerator} equals <code>obj</code>
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if ( this == obj ) {
+			return true;
+		}
+		if ( obj == null || getClass() != obj.getClass() ) {
+			return false;
+		}
+
+		DemandGenerator other = (DemandGenerator) obj;
+		return 	id.equals(other.id) &&
+				start == other.start &&
+				end == other.end &&
+				maxVehicles == other.maxVehicles &&
+				Arrays.equals(rates, other.rates) &&
+				rateInterval == other.rateInterval &&
+				itineraries.equals(other.itineraries) &&
+				odPairs.equals(other.odPairs) &&
+				metric == other.metric &&
+				maxSpeed == other.maxSpeed &&
+				Arrays.equals(mix, other.mix) &&
+				resistance == other.resistance &&
+				faultProbability == other.faultProbability &&
+				maxFaultDuration == other.maxFaultDuration &&
+				seed == other.seed;
+	}
+
+	@Override
+	public int hashCode() {
+		return id.hashCode() * 31 + start;
+	}
+}
@@ -0,0 +1,156 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>
+ * Eventos de Java Flight Recorder del bucle de
+ * {@link TrafficSimulation}: cada tick, cada fase de su avance,
+ * cada {@code Event} ejecutado (con su clase y el objeto sobre
+ * el que actúa) y cada volcado de informes. En una grabación
+ * aparecen junto a las pausas del GC y las muestras de CPU, así
+ * que se puede ver en qué tick o con qué {@code Junction} ocurren.
+ * </p> <p>
+ * Esta clase no usa {@code jdk.jfr}, que sólo existe a partir de
+ * JDK 11 y OpenJDK 8u262: la implementación se carga por reflexión
+ * en {@link #create()}, así que el simulador sigue funcionando en
+ * otras JVMs de Java 8 mientras no se pidan los eventos. Si la
+ * simulación no tiene {@code FlightEvents}, los eventos no
+ * cuestan nada.
+ * </p> <p>
+ * Se emiten desde el hilo de la simulación, que abre como
+ * mucho un evento de cada tipo a la vez.
+ * </p>
+ */
+public abstract class FlightEvents {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Fases del avance del mapa.
+	 */
+	public static final String REROUTING = "rerouting";
+	public static final String ROADS = "roads";
+	public static final String JUNCTIONS = "junctions";
+	public static final String REGIONS = "regions";
+	public static final String ARCHIVE = "archive";
+
+	/**
+	 * Implementación con {@code jdk.jfr}.
+	 */
+	private static final String IMPLEMENTATION =
+		"es.ucm.fdi.model.simulation.JfrFlightEvents";
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link FlightEvents}, sólo
+	 * para su implementación.
+	 */
+	FlightEvents() {
+		/*NADA*/
+	}
+
+	/**
+	 * Comprueba si la JVM tiene Java Flight Recorder.
+	 *
+	 * @return 	si se puede usar {@link #create()}
+	 */
+	public static boolean isSupported() {
+		try {
+			Class<?> recorder = Class.forName("jdk.jfr.FlightRecorder");
+			return (Boolean) recorder.getMethod("isAvailable").invoke(null);
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Carga la implementación de los eventos.
+	 *
+	 * @return 	nuevo emisor de eventos
+	 *
+	 * @throws UnsupportedOperationException 	if the JVM has no
+	 * 											Flight Recorder
+	 */
+	public static FlightEvents create() {
+		if ( ! isSupported() ) {
+			throw new UnsupportedOperationException(
+				"Java Flight Recorder is not available in this JVM " +
+				"(JDK 11+ or OpenJDK 8u262+ required)"
+			);
+		}
+
+		try {
+			return (FlightEvents) Class.forName(IMPLEMENTATION)
+				.getDeclaredConstructor().newInstance();
+		}
+		catch (ReflectiveOperationException | LinkageError e) {
+			throw new UnsupportedOperationException(
+				"Java Flight Recorder events could not be loaded: " + e, e
+			);
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE EMISIÓN ** //
+	abstract void beginTick(int time);
+
+	abstract void endTick();
+
+	/**
+	 * Abre la fase {@code name}, cerrando la anterior.
+	 */
+	abstract void beginPhase(String name, int time);
+
+	abstract void endPhase();
+
+	abstract void beginExecution(es.ucm.fdi.model.events.Event event, int time);
+
+	abstract void endExecution();
+
+	/**
+	 * Abre un volcado de informes y envuelve el flujo
+	 * de salida para contar sus bytes.
+	 *
+	 * @return 	flujo que cuenta y escribe en {@code out}
+	 */
+	abstract OutputStream beginReport(int time, int sections, OutputStream out);
+
+	abstract void endReport();
+
+
+
+
+
+
+	// ** MÉTODOS DE GRABACIÓN ** //
+	/**
+	 * Inicia una grabación con la configuración {@code profile}
+	 * de la JVM, que se escribe en {@code file} al pararla con
+	 * {@link #stopRecording()}. No hace falta si la JVM ya graba
+	 * con {@code -XX:StartFlightRecording}.
+	 *
+	 * @param file 	- fichero {@code .jfr} de la grabación
+	 *
+	 * @throws IOException 	if the recording could
+	 * 						not be started
+	 */
+	public abstract void startRecording(File file) throws IOException;
+
+	/**
+	 * Para la grabación iniciada con {@link #startRecording(File)},
+	 * si la hay, y la escribe en su fichero.
+	 */
+	public abstract void stopRecording();
+}
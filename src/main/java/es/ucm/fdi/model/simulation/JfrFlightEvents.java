@@ -0,0 +1,235 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.File;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.ParseException;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * Implementación de {@link FlightEvents} con {@code jdk.jfr}.
+ * Es la única clase que lo importa; sólo se carga desde
+ * {@link FlightEvents#create()}.
+ */
+final class JfrFlightEvents extends FlightEvents {
+
+	// ** CLASES INTERNAS ** //
+	@Name("es.ucm.fdi.Tick")
+	@Label("Simulation Tick")
+	@Description("One tick of the traffic simulation loop")
+	@Category("Traffic Simulation")
+	@StackTrace(false)
+	static class TickEvent extends Event {
+
+		@Label("Tick")
+		int tick;
+	}
+
+	@Name("es.ucm.fdi.Phase")
+	@Label("Tick Phase")
+	@Description("Phase of the advance of the road map in a tick")
+	@Category("Traffic Simulation")
+	@StackTrace(false)
+	static class PhaseEvent extends Event {
+
+		@Label("Tick")
+		int tick;
+
+		@Label("Phase")
+		String phase;
+	}
+
+	@Name("es.ucm.fdi.EventExecution")
+	@Label("Event Execution")
+	@Description("Execution of a simulation event")
+	@Category("Traffic Simulation")
+	@StackTrace(false)
+	static class ExecutionEvent extends Event {
+
+		@Label("Tick")
+		int tick;
+
+		@Label("Event Class")
+		String eventClass;
+
+		@Label("Object ID")
+		String objectId;
+	}
+
+	@Name("es.ucm.fdi.ReportFlush")
+	@Label("Report Flush")
+	@Description("Reports of a tick written to the output stream")
+	@Category("Traffic Simulation")
+	@StackTrace(false)
+	static class ReportEvent extends Event {
+
+		@Label("Tick")
+		int tick;
+
+		@Label("Sections")
+		int sections;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+	}
+
+	/**
+	 * Flujo que cuenta los bytes del volcado en curso.
+	 */
+	private class CountingStream extends FilterOutputStream {
+
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			report.bytes++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			report.bytes += len;
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Eventos abiertos, o {@code null}.
+	 */
+	private TickEvent tick = null;
+	private PhaseEvent phase = null;
+	private ExecutionEvent execution = null;
+	private ReportEvent report = null;
+
+	/**
+	 * Grabación iniciada con {@link #startRecording(File)},
+	 * o {@code null}.
+	 */
+	private Recording recording = null;
+
+
+
+
+
+
+	// ** MÉTODOS DE EMISIÓN ** //
+	@Override
+	void beginTick(int time) {
+		tick = new TickEvent();
+		tick.tick = time;
+		tick.begin();
+	}
+
+	@Override
+	void endTick() {
+		endPhase();
+		if (tick != null) {
+			tick.commit();
+			tick = null;
+		}
+	}
+
+	@Override
+	void beginPhase(String name, int time) {
+		endPhase();
+		phase = new PhaseEvent();
+		phase.tick = time;
+		phase.phase = name;
+		phase.begin();
+	}
+
+	@Override
+	void endPhase() {
+		if (phase != null) {
+			phase.commit();
+			phase = null;
+		}
+	}
+
+	@Override
+	void beginExecution(es.ucm.fdi.model.events.Event event, int time) {
+		execution = new ExecutionEvent();
+		execution.tick = time;
+		execution.eventClass = event.getClass().getSimpleName();
+		execution.objectId = event.getObjectID();
+		execution.begin();
+	}
+
+	@Override
+	void endExecution() {
+		if (execution != null) {
+			execution.commit();
+			execution = null;
+		}
+	}
+
+	@Override
+	OutputStream beginReport(int time, int sections, OutputStream out) {
+		report = new ReportEvent();
+		report.tick = time;
+		report.sections = sections;
+		report.begin();
+		return new CountingStream(out);
+	}
+
+	@Override
+	void endReport() {
+		if (report != null) {
+			report.commit();
+			report = null;
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE GRABACIÓN ** //
+	@Override
+	public void startRecording(File file) throws IOException {
+		if (recording == null) {
+			Configuration profile;
+			try {
+				profile = Configuration.getConfiguration("profile");
+			}
+			catch (ParseException e) {
+				throw new IOException("Invalid Flight Recorder profile: " + e.getMessage(), e);
+			}
+
+			Recording started = new Recording(profile);
+			started.setName("traffic-simulation");
+			started.setDestination(file.toPath());
+			started.start();
+			recording = started;
+		}
+	}
+
+	@Override
+	public void stopRecording() {
+		if (recording != null) {
+			recording.stop();
+			recording.close();
+			recording = null;
+		}
+	}
+}
@@ -0,0 +1,264 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.SimObj.SimObjCodec;
+import es.ucm.fdi.model.SimObj.Vehicle;
+import es.ucm.fdi.model.SimObj.VehicleArchive;
+import es.ucm.fdi.model.SimObj.VehicleTransfer;
+import es.ucm.fdi.model.simulation.RoadMap.Region;
+
+/**
+ * <p>
+ * Parte de una simulación distribuida que avanza una sola región
+ * del mapa. Todos los procesos ejecutan los mismos {@code Event}s y
+ * conocen todas las {@code Junction}s y {@code Road}s, pero cada
+ * uno sólo guarda los {@code Vehicle}s que circulan por su región.
+ * </p> <p>
+ * Cada tick se divide en dos pasos, entre los que el coordinador
+ * reparte los {@code Vehicle}s que cruzan de una región a otra:
+ * {@link #step()} ejecuta los {@code Event}s, avanza la región y
+ * devuelve los {@code Vehicle}s que salen; {@link #finish(List)}
+ * mete los que entran, cierra el tick y devuelve los informes de
+ * la región.
+ * </p>
+ */
+public class PartitionWorker {
+
+	// ** CLASE INTERNA ** //
+	/**
+	 * Informe de un {@code SimObject} de la región, con la
+	 * posición que ocupa en el informe completo del tick.
+	 */
+	public static final class Report {
+
+		/**
+		 * Orden de los informes: {@code Junction}s, {@code Road}s
+		 * y {@code Vehicle}s, cada grupo en el orden del mapa
+		 * (los {@code Vehicle}s, en orden de creación).
+		 */
+		public static final Comparator<Report> ORDER =
+			Comparator.comparingInt((Report r) -> r.group)
+				.thenComparingInt(r -> r.order);
+
+		private final int group;
+		private final int order;
+		private final String text;
+
+		private Report(int group, int order, String text) {
+			this.group = group;
+			this.order = order;
+			this.text = text;
+		}
+
+		/**
+		 * Devuelve la sección del informe tal y como
+		 * se escribe en la salida.
+		 *
+		 * @return 	texto de la sección
+		 */
+		public String getText() {
+			return text;
+		}
+
+		/**
+		 * Escribe el informe para enviarlo al coordinador.
+		 *
+		 * @param out 	- flujo de salida
+		 *
+		 * @throws IOException 	if the report could not be written
+		 */
+		public void write(DataOutput out) throws IOException {
+			byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+			out.writeInt(group);
+			out.writeInt(order);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+
+		/**
+		 * Lee un informe escrito con {@link #write(DataOutput)}.
+		 *
+		 * @param in 	- flujo de entrada
+		 *
+		 * @return 		informe leído
+		 *
+		 * @throws IOException 	if the input is not a report
+		 */
+		public static Report read(DataInput in) throws IOException {
+			int group = in.readInt();
+			int order = in.readInt();
+			if (group < JUNCTIONS || group > VEHICLES) {
+				throw new IOException("Invalid report group: " + group);
+			}
+
+			byte[] bytes = new byte[ SimObjCodec.readCount(in) ];
+			in.readFully(bytes);
+			return new Report(group, order, new String(bytes, StandardCharsets.UTF_8));
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	private static final int JUNCTIONS = 0, ROADS = 1, VEHICLES = 2;
+
+	/**
+	 * Simulador local.
+	 */
+	private TrafficSimulation sim;
+
+	/**
+	 * Región local y número de regiones.
+	 */
+	private int rank, parts;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link PartitionWorker}. El simulador
+	 * debe tener ya cargados todos los {@code Event}s.
+	 *
+	 * @param sim 	- simulador local
+	 * @param rank 	- región local
+	 * @param parts - número de regiones
+	 */
+	public PartitionWorker(TrafficSimulation sim, int rank, int parts) {
+		this.sim = sim;
+		this.rank = rank;
+		this.parts = parts;
+		sim.setLocalRegion(parts, rank);
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE AVANCE ** //
+	/**
+	 * Primera mitad de un tick: ejecuta los {@code Event}s,
+	 * avanza la región local y saca de ella los {@code Vehicle}s
+	 * que han cruzado a otra región.
+	 *
+	 * @return 	para cada región, los {@code Vehicle}s codificados
+	 * 			que entran en ella, en orden de entrada
+	 *
+	 * @throws SimulationException 	if an event failed
+	 * @throws IOException 			if a vehicle could not
+	 * 								be serialized
+	 */
+	public List<List<byte[]>> step() throws SimulationException, IOException {
+		sim.executeEvents();
+
+		RoadMap map = sim.getRoadMap();
+		List<Region> regions = map.getRegions();
+		if ( rank < regions.size() ) {
+			regions.get(rank).proceed();
+		}
+
+		List<List<byte[]>> outgoing = new ArrayList<>();
+		for (int i = 0; i < parts; ++i) {
+			outgoing.add(new ArrayList<>());
+		}
+
+		// Sólo se llenan los buffers de las Roads frontera que
+		// salen de la región local, y todas van a otra región.
+		for ( Road road : map.getBoundaryRoads() ) {
+			List<Vehicle> leaving = road.takeHandoff();
+			int target = map.getRegionOf(road.getToJunction());
+
+			for ( Vehicle v : leaving ) {
+				outgoing.get(target).add( VehicleTransfer.export(v) );
+				map.emigrateVehicle(v);
+			}
+		}
+
+		return outgoing;
+	}
+
+	/**
+	 * Segunda mitad de un tick: mete en sus {@code Road}s los
+	 * {@code Vehicle}s que llegan de otras regiones, cierra el
+	 * tick y genera los informes de la región.
+	 *
+	 * @param incoming 	- {@code Vehicle}s codificados que entran,
+	 * 					en orden de entrada en cada {@code Road}
+	 *
+	 * @return 			informes de la región
+	 *
+	 * @throws IOException 	if a vehicle could not
+	 * 						be deserialized
+	 */
+	public List<Report> finish(List<byte[]> incoming) throws IOException {
+		RoadMap map = sim.getRoadMap();
+
+		for ( byte[] data : incoming ) {
+			Vehicle v = VehicleTransfer.adopt(data, map);
+			map.immigrateVehicle(v);
+			v.getRoad().pushVehicle(v);
+		}
+
+		sim.finishTick();
+		return generateReports();
+	}
+
+	/**
+	 * Genera los informes de las {@code Junction}s, las
+	 * {@code Road}s que llegan a ellas y los {@code Vehicle}s
+	 * de la región local.
+	 *
+	 * @return 	informes de la región
+	 */
+	private List<Report> generateReports() {
+		RoadMap map = sim.getRoadMap();
+		int time = sim.getCurrentTime();
+		String separator = System.lineSeparator();
+		List<Report> reports = new ArrayList<>();
+
+		int i = 0;
+		for ( Junction junction : map.getJunctions().values() ) {
+			if ( map.getRegionOf(junction) == rank ) {
+				reports.add( new Report(JUNCTIONS, i,
+					junction.generateIniSection(time) + separator) );
+			}
+			i++;
+		}
+
+		i = 0;
+		for ( Road road : map.getRoads().values() ) {
+			if ( map.getRegionOf(road.getToJunction()) == rank ) {
+				reports.add( new Report(ROADS, i,
+					road.generateIniSection(time) + separator) );
+			}
+			i++;
+		}
+
+		for ( Vehicle vehicle : map.getVehicles().values() ) {
+			reports.add( new Report(VEHICLES, vehicle.getSerial(),
+				vehicle.generateIniSection(time) + separator) );
+		}
+		VehicleArchive archive = map.getVehicleArchive();
+		for (int pos = 0; pos < archive.size(); ++pos) {
+			reports.add( new Report(VEHICLES, archive.getSerial(pos),
+				archive.generateIniSection(pos, time) + separator) );
+		}
+
+		return reports;
+	}
+}
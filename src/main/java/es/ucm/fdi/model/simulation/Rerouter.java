@@ -0,0 +1,377 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.simulation.RouteCache.Route;
+
+/**
+ * <p>
+ * Política de recálculo de rutas según la congestión. Cuando un
+ * {@code Vehicle} va a salir de una {@code Junction}, compara el
+ * coste del resto de su ruta con el del mejor camino hasta su
+ * destino y, si éste es claramente mejor, cambia de ruta.
+ * </p> <p>
+ * El coste de cada {@code Road} es su tiempo de recorrido estimado
+ * ({@link Road#getTravelTimeEstimate()}), que se toma de todas las
+ * {@code Road}s cada {@code period} ticks y no cambia entre medias.
+ * Con esos costes fijos, el coste mínimo hasta un destino desde
+ * cualquier {@code Junction} se calcula con una única búsqueda hacia
+ * atrás desde el destino, que comparten todos los {@code Vehicle}s
+ * que van a él hasta la siguiente toma de costes. Cada decisión
+ * cuesta entonces una consulta y la suma de la ruta restante, no
+ * una búsqueda.
+ * </p> <p>
+ * Las decisiones sólo dependen de los costes tomados al principio
+ * del tick, así que no cambian al avanzar el mapa por regiones.
+ * </p>
+ */
+public class Rerouter {
+
+	// ** CLASE INTERNA ** //
+	/**
+	 * Costes mínimos hasta un destino desde todas
+	 * las {@code Junction}s.
+	 */
+	private final class Field {
+
+		/**
+		 * Coste mínimo hasta el destino.
+		 */
+		private final double[] dist;
+
+		/**
+		 * {@code Road} por la que se sale de cada
+		 * {@code Junction} hacia el destino, o -1.
+		 */
+		private final int[] next;
+
+		/**
+		 * Caminos ya construidos, por {@code Junction}
+		 * de origen.
+		 */
+		private final Map<Integer, Route> routes = new ConcurrentHashMap<>();
+
+		private Field(int dst) {
+			dist = new double[nodes.length];
+			next = new int[nodes.length];
+			Arrays.fill(dist, Double.POSITIVE_INFINITY);
+			Arrays.fill(next, -1);
+
+			CostHeap heap = new CostHeap();
+			dist[dst] = 0;
+			heap.push(dst, 0);
+
+			while ( ! heap.isEmpty() ) {
+				double d = heap.peekCost();
+				int u = heap.pop();
+				if (d > dist[u]) {
+					continue;
+				}
+
+				for (int k = inStart[u]; k < inStart[u + 1]; ++k) {
+					int r = inRoad[k];
+					int v = roadSource[r];
+					double nd = d + cost[r];
+					if (nd < dist[v]) {
+						dist[v] = nd;
+						next[v] = r;
+						heap.push(v, nd);
+					}
+				}
+			}
+		}
+
+		private Route routeFrom(int src) {
+			return routes.computeIfAbsent(src, u -> {
+				ArrayList<Junction> junctions = new ArrayList<>();
+				ArrayList<Road> path = new ArrayList<>();
+
+				junctions.add(nodes[u]);
+				for (int v = u; next[v] >= 0; v = roadTarget[next[v]]) {
+					path.add(roads[next[v]]);
+					junctions.add(nodes[roadTarget[next[v]]]);
+				}
+
+				return new Route(junctions, path.toArray(new Road[0]));
+			});
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Proporción del coste de la ruta restante por debajo de
+	 * la cual se cambia de ruta. Evita que los {@code Vehicle}s
+	 * cambien de ruta por diferencias mínimas.
+	 */
+	private static final double IMPROVEMENT = 0.9;
+
+	/**
+	 * Número de costes mínimos (uno por {@code Junction}) que se
+	 * conservan a la vez entre todos los destinos, si no se fija
+	 * otro. Cada uno ocupa 12 bytes: unos 12 MB en total.
+	 */
+	public static final int DEFAULT_FIELD_BUDGET = 1 << 20;
+
+	/**
+	 * Número de costes mínimos que se conservan a la vez. 
+	 * Los destinos usados hace más tiempo se descartan y
+	 * se recalculan si se vuelven a pedir.
+	 */
+	private int fieldBudget;
+
+	/**
+	 * Ticks entre dos tomas de costes.
+	 */
+	private int period;
+
+	/**
+	 * Periodo de la última toma de costes.
+	 */
+	private int epoch = -1;
+
+	/**
+	 * {@code Junction}s de la red, por índice.
+	 */
+	private Junction[] nodes;
+
+	/**
+	 * Índice de cada {@code Junction}.
+	 */
+	private Map<Junction, Integer> index = new IdentityHashMap<>();
+
+	/**
+	 * {@code Road}s de la red, por su índice en el
+	 * {@code VehicleStore}, con sus {@code Junction}s.
+	 */
+	private Road[] roads;
+	private int[] roadSource;
+	private int[] roadTarget;
+
+	/**
+	 * {@code Road}s que llegan a cada {@code Junction}: las
+	 * posiciones de {@code inStart[i]} a {@code inStart[i + 1]}
+	 * de {@code inRoad}.
+	 */
+	private int[] inStart;
+	private int[] inRoad;
+
+	/**
+	 * Tiempo de recorrido de cada {@code Road}
+	 * en la última toma de costes.
+	 */
+	private double[] cost;
+
+	/**
+	 * Costes mínimos calculados en el periodo actual,
+	 * por destino. Se rehacen a partir de {@code cost}.
+	 */
+	private Map<Integer, Field> fields;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link Rerouter}, que toma una
+	 * copia compacta de la red de {@code map} y conserva
+	 * {@link #DEFAULT_FIELD_BUDGET} costes mínimos.
+	 *
+	 * @param map 		- mapa de la simulación
+	 * @param period 	- ticks entre dos tomas de costes
+	 */
+	public Rerouter(RoadMap map, int period) {
+		this(map, period, DEFAULT_FIELD_BUDGET);
+	}
+
+	/**
+	 * Constructor de {@link Rerouter}, que toma una
+	 * copia compacta de la red de {@code map}.
+	 *
+	 * @param map 		- mapa de la simulación
+	 * @param period 	- ticks entre dos tomas de costes
+	 * @param budget 	- costes mínimos que se conservan a la
+	 * 					vez; como mínimo, los de un destino
+	 */
+	public Rerouter(RoadMap map, int period, int budget) {
+		this.period = Math.max(1, period);
+		this.fieldBudget = budget;
+
+		nodes = map.getJunctions().values().toArray(new Junction[0]);
+		for (int i = 0; i < nodes.length; ++i) {
+			index.put(nodes[i], i);
+		}
+
+		int numRoads = map.getRoads().size();
+		roads = new Road[numRoads];
+		roadSource = new int[numRoads];
+		roadTarget = new int[numRoads];
+		inStart = new int[nodes.length + 1];
+		for (Road road : map.getRoads().values()) {
+			int r = road.getIndex();
+			roads[r] = road;
+			roadSource[r] = index.get(road.getFromJunction());
+			roadTarget[r] = index.get(road.getToJunction());
+			inStart[ roadTarget[r] + 1 ]++;
+		}
+		for (int i = 0; i < nodes.length; ++i) {
+			inStart[i + 1] += inStart[i];
+		}
+
+		int[] next = Arrays.copyOf(inStart, nodes.length);
+		inRoad = new int[numRoads];
+		for (int r = 0; r < numRoads; ++r) {
+			inRoad[ next[roadTarget[r]]++ ] = r;
+		}
+
+		cost = new double[numRoads];
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE RECÁLCULO ** //
+	/**
+	 * Toma de nuevo los costes de las {@code Road}s si
+	 * {@code tick} empieza un nuevo periodo. Debe llamarse
+	 * al principio de cada tick, antes de que avance ninguna
+	 * {@code Road}.
+	 *
+	 * @param tick 	- tick que empieza
+	 */
+	public void refresh(int tick) {
+		if (fields == null) {
+			int maxFields = Math.max(1, fieldBudget / Math.max(1, nodes.length));
+			fields = Collections.synchronizedMap(
+				new LinkedHashMap<Integer, Field>(16, 0.75f, true) {
+					private static final long serialVersionUID = 1L;
+
+					@Override
+					protected boolean removeEldestEntry(Map.Entry<Integer, Field> eldest) {
+						return size() > maxFields;
+					}
+				});
+		}
+
+		if (tick / period != epoch) {
+			epoch = tick / period;
+			for (int r = 0; r < roads.length; ++r) {
+				cost[r] = roads[r].getTravelTimeEstimate();
+			}
+			fields.clear();
+		}
+	}
+
+	/**
+	 * Escribe el periodo de la última toma de costes y los
+	 * costes tomados. El resto se rehace a partir de la red.
+	 *
+	 * @param out 	- flujo de salida
+	 *
+	 * @throws IOException 	if the costs could not be written
+	 */
+	void write(DataOutput out) throws IOException {
+		out.writeInt(epoch);
+		out.writeInt(cost.length);
+		for (double c : cost) {
+			out.writeDouble(c);
+		}
+	}
+
+	/**
+	 * Lee los costes escritos con {@link #write(DataOutput)},
+	 * tomados sobre la misma red.
+	 *
+	 * @param in 	- flujo de entrada
+	 *
+	 * @throws IOException 	if the costs do not match the network
+	 */
+	void read(DataInput in) throws IOException {
+		epoch = in.readInt();
+		int n = in.readInt();
+		if (n != cost.length) {
+			throw new IOException("Invalid number of road costs: " + n);
+		}
+		for (int r = 0; r < n; ++r) {
+			cost[r] = in.readDouble();
+		}
+		fields = null;
+	}
+
+	/**
+	 * Devuelve el número de destinos cuyos costes
+	 * mínimos se conservan.
+	 *
+	 * @return 	destinos calculados en el periodo actual
+	 */
+	public int getCachedFields() {
+		return (fields == null) ? 0 : fields.size();
+	}
+
+	/**
+	 * Propone una nueva ruta para un {@code Vehicle} que va
+	 * a salir de la {@code Junction} {@code at}, si es
+	 * claramente mejor que la que lleva.
+	 *
+	 * @param at 		- {@code Junction} de la que sale
+	 * @param dest 		- destino del {@code Vehicle}
+	 * @param planned 	- {@code Road}s de su ruta
+	 * @param pos 		- posición de la siguiente {@code Road}
+	 * 					de la ruta
+	 *
+	 * @return 			nuevo camino desde {@code at}, o
+	 * 					{@code null} para mantener la ruta
+	 */
+	public Route reroute(Junction at, Junction dest, Road[] planned, int pos) {
+		Integer u = index.get(at), t = index.get(dest);
+		if (u == null || t == null) {
+			return null;
+		}
+
+		Field field = fields.get(t);
+		if (field == null) {
+			// Dos hilos pueden calcularlo a la vez;
+			// el resultado es el mismo.
+			field = new Field(t);
+			fields.put(t, field);
+		}
+		if (field.next[u] < 0) {
+			return null;
+		}
+
+		// Coste de la ruta restante, infinito
+		// si le falta alguna Road.
+		double plannedCost = 0;
+		for (int i = pos; i < planned.length; ++i) {
+			if (planned[i] == null) {
+				plannedCost = Double.POSITIVE_INFINITY;
+				break;
+			}
+			plannedCost += cost[ planned[i].getIndex() ];
+		}
+
+		if ( field.dist[u] < plannedCost * IMPROVEMENT ) {
+			return field.routeFrom(u);
+		}
+		return null;
+	}
+}
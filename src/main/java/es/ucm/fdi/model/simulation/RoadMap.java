@@ -1,11 +1,25 @@
 package es.ucm.fdi.model.simulation;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import es.ucm.fdi.model.SimObj.Junction;
 import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.SimObj.SimObjCodec;
 import es.ucm.fdi.model.SimObj.Vehicle;
+import es.ucm.fdi.model.SimObj.VehicleArchive;
+import es.ucm.fdi.model.SimObj.VehicleStore;
 
 /**
  * Clase que guarda los {@link SimObj} introducidos durante
@@ -14,11 +28,152 @@ import es.ucm.fdi.model.SimObj.Vehicle;
  */
 public class RoadMap {
 
+    // ** CLASE INTERNA ** //
+    /**
+     * <p>
+     * Región del mapa: un conjunto de <code>Junctions</code> contiguas
+     * y las <code>Roads</code> que llegan a ellas. Cada región avanza
+     * sus <code>Roads</code> activas y después sus <code>Junctions</code>
+     * sin tocar el estado de las demás, así que varias regiones pueden
+     * avanzar a la vez.
+     * </p> <p>
+     * Un <code>Vehicle</code> que cruza a una <code>Road</code> de otra
+     * región se deja en el buffer de intercambio de esa <code>Road</code>,
+     * que se vacía cuando han terminado todas.
+     * </p>
+     */
+    public static class Region {
+
+        private List<Junction> junctions = new ArrayList<>();
+        private Set<Road> activeRoads = new LinkedHashSet<>();
+
+        /**
+         * <code>Vehicles</code> que avanzaron y que cruzaron
+         * una <code>Junction</code> en el último tick.
+         */
+        private int movedVehicles = 0;
+        private int crossedVehicles = 0;
+
+        /**
+         * Avanza un tick la región: primero sus <code>Roads</code>
+         * con <code>Vehicles</code> circulando y después sus
+         * <code>Junctions</code>.
+         */
+        public void proceed() {
+            movedVehicles = 0;
+            for (Road road : activeRoads) {
+                road.proceed();
+                movedVehicles += road.getMovedVehicles();
+            }
+            activeRoads.removeIf(Road::noVehiclesOnRoad);
+
+            crossedVehicles = 0;
+            for (Junction junction : junctions) {
+                junction.proceed();
+                crossedVehicles += junction.getCrossedVehicles();
+            }
+        }
+
+        public int getMovedVehicles() {
+            return movedVehicles;
+        }
+
+        public int getCrossedVehicles() {
+            return crossedVehicles;
+        }
+    }
+
     // ** MAPA ** //
     private Map<String, Junction>   junctionObjects = new LinkedHashMap<>();
     private Map<String, Road>       roadObjects = new LinkedHashMap<>();
     private Map<String, Vehicle>    vehicleObjects = new LinkedHashMap<>();
 
+    // ** ÍNDICE DE ADYACENCIA ** //
+    /**
+     * Mapa de id de <code>Junction</code> de origen a mapa de id
+     * de <code>Junction</code> de destino a la <code>Road</code>
+     * que las une.
+     */
+    private Map<String, Map<String, Road>> roadIndex = new HashMap<>();
+
+    // ** CARRETERAS ACTIVAS ** //
+    /**
+     * <code>Roads</code> con <code>Vehicles</code> circulando.
+     */
+    private Set<Road> activeRoads = new LinkedHashSet<>();
+
+    // ** REGIONES ** //
+    /**
+     * Número de regiones en que se divide el mapa, o 0 si
+     * no se divide.
+     */
+    private int numRegions = 0;
+
+    /**
+     * Regiones del mapa, o <code>null</code> si hay que
+     * calcularlas de nuevo.
+     */
+    private List<Region> regions = null;
+
+    /**
+     * <code>Roads</code> que unen dos regiones distintas.
+     */
+    private List<Road> boundaryRoads = new ArrayList<>();
+
+    /**
+     * Región de cada <code>Junction</code>, por id.
+     */
+    private Map<String, Integer> junctionRegion = new HashMap<>();
+
+    // ** CAMINOS MÍNIMOS ** //
+    /**
+     * Caché de caminos entre <code>Junctions</code>, o 
+     * <code>null</code> si hay que crearla de nuevo.
+     */
+    private RouteCache              routeCache = null;
+
+    /**
+     * Número de cambios de la red: aumenta al añadir
+     * <code>Junctions</code> o <code>Roads</code> y al
+     * limpiar el mapa.
+     */
+    private int networkVersion = 0;
+
+    // ** RECÁLCULO DE RUTAS ** //
+    /**
+     * Ticks entre dos tomas de costes del recálculo de
+     * rutas, o 0 si los <code>Vehicles</code> siguen
+     * siempre su ruta.
+     */
+    private int reroutePeriod = 0;
+
+    /**
+     * Costes mínimos que conserva a la vez la política
+     * de recálculo de rutas.
+     */
+    private int rerouteBudget = Rerouter.DEFAULT_FIELD_BUDGET;
+
+    /**
+     * Política de recálculo de rutas, o <code>null</code>
+     * si hay que crearla de nuevo.
+     */
+    private Rerouter rerouter = null;
+
+    // ** ESTADO DE VEHÍCULOS ** //
+    private VehicleStore            vehicleStore = new VehicleStore(roadIndex);
+
+    // ** VEHÍCULOS LLEGADOS ** //
+    /**
+     * <code>Vehicles</code> que han llegado a su destino, ya
+     * fuera de <code>vehicleObjects</code>.
+     */
+    private VehicleArchive          vehicleArchive = new VehicleArchive();
+
+    /**
+     * Orden de creación del siguiente <code>Vehicle</code>.
+     */
+    private int                     nextSerial = 0;
+
 
 
     // ** CONSTRUCTOR ** //
@@ -62,6 +217,80 @@ public class RoadMap {
         return vehicleObjects;
     }
 
+    /**
+     * Devuelve el almacén por columnas del estado
+     * de los <code>Vehicles</code>.
+     * 
+     * @return <code>vehicleStore</code>
+     */
+    public VehicleStore getVehicleStore() {
+        return vehicleStore;
+    }
+
+    /**
+     * Devuelve el archivo de <code>Vehicles</code>
+     * que han llegado a su destino.
+     * 
+     * @return <code>vehicleArchive</code>
+     */
+    public VehicleArchive getVehicleArchive() {
+        return vehicleArchive;
+    }
+
+    /**
+     * Devuelve el conjunto de <code>Roads</code> con
+     * <code>Vehicles</code> circulando.
+     * 
+     * @return <code>activeRoads</code>
+     */
+    public Set<Road> getActiveRoads() {
+        return activeRoads;
+    }
+
+    /**
+     * Devuelve la caché de caminos mínimos de la red,
+     * creándola si se ha modificado la red desde la
+     * última vez.
+     * 
+     * @return <code>routeCache</code>
+     */
+    public RouteCache getRouteCache() {
+        if (routeCache == null) {
+            routeCache = new RouteCache(this);
+        }
+        return routeCache;
+    }
+
+    /**
+     * Devuelve el número de cambios de la red, que
+     * permite saber si ha cambiado desde que se
+     * resolvió una ruta.
+     * 
+     * @return <code>networkVersion</code>
+     */
+    public int getNetworkVersion() {
+        return networkVersion;
+    }
+
+    /**
+     * Comprueba si hay alguna <code>Road</code> con
+     * <code>Vehicles</code> circulando, esté o no
+     * dividido el mapa en regiones.
+     * 
+     * @return  if any <code>Road</code> is active
+     */
+    public boolean hasActiveRoads() {
+        if (numRegions == 0) {
+            return ! activeRoads.isEmpty();
+        }
+        for (Region region : getRegions()) {
+            if ( ! region.activeRoads.isEmpty() ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
 
 
 
@@ -76,6 +305,10 @@ public class RoadMap {
      */
     public void addJunction(Junction newJunction) {
         junctionObjects.put(newJunction.getID(), newJunction);
+        detachRegions();
+        routeCache = null;
+        networkVersion++;
+        dropRerouter();
     }
 
     /**
@@ -86,6 +319,18 @@ public class RoadMap {
      */
     public void addRoad(Road newRoad) {
         roadObjects.put(newRoad.getID(), newRoad);
+        vehicleStore.registerRoad(newRoad);
+        newRoad.setActiveRoads(activeRoads);
+        detachRegions();
+        routeCache = null;
+        networkVersion++;
+        dropRerouter();
+
+        // Si hay varias entre las mismas junctions,
+        // se queda la primera en añadirse.
+        roadIndex
+            .computeIfAbsent(newRoad.getFromJunction().getID(), k -> new HashMap<>())
+            .putIfAbsent(newRoad.getToJunction().getID(), newRoad);
     }
     
     /**
@@ -95,9 +340,70 @@ public class RoadMap {
      * @param newVehicle <code>Vehicle</code> a añadir
      */
     public void addVehicle(Vehicle newVehicle) {
+        newVehicle.setSerial(nextSerial++);
         vehicleObjects.put(newVehicle.getID(), newVehicle);
     }
 
+    /**
+     * Cuenta <code>Vehicles</code> creados en la región de 
+     * otro proceso de una simulación distribuida. Ocupan su 
+     * orden de creación para que los informes coincidan, 
+     * pero el mapa no guarda nada de ellos.
+     * 
+     * @param count número de <code>Vehicles</code>
+     */
+    public void addRemoteVehicles(int count) {
+        nextSerial += count;
+    }
+
+    /**
+     * Saca del mapa un <code>Vehicle</code> que pasa a la 
+     * región de otro proceso.
+     * 
+     * @param v     <code>Vehicle</code> que sale
+     */
+    public void emigrateVehicle(Vehicle v) {
+        vehicleObjects.remove(v.getID());
+    }
+
+    /**
+     * Mete en el mapa un <code>Vehicle</code> que llega desde
+     * la región de otro proceso, conservando su orden de creación.
+     * 
+     * @param v     <code>Vehicle</code> que entra
+     */
+    public void immigrateVehicle(Vehicle v) {
+        vehicleObjects.put(v.getID(), v);
+    }
+
+    /**
+     * Devuelve el número de <code>Vehicles</code> creados
+     * en la simulación, en cualquier proceso.
+     * 
+     * @return  número de <code>Vehicles</code> creados
+     */
+    public int getNumCreatedVehicles() {
+        return nextSerial;
+    }
+
+    /**
+     * Pasa al archivo los <code>Vehicles</code> que han
+     * llegado a su destino desde la última llamada, 
+     * sacándolos del mapa de <code>Vehicles</code>.
+     * 
+     * @param tick  tick de llegada
+     */
+    public void archiveArrivals(int tick) {
+        List<Vehicle> arrivals = vehicleStore.drainArrivals();
+        // Con regiones, el orden de llegada depende de los hilos.
+        arrivals.sort(Comparator.comparingInt(Vehicle::getSerial));
+
+        for (Vehicle arrived : arrivals) {
+            vehicleObjects.remove(arrived.getID());
+            vehicleArchive.archive(arrived, tick);
+        }
+    }
+
 
 
 
@@ -133,7 +439,7 @@ public class RoadMap {
 
     /**
      * Comprueba si existe un determinado <code>Vehicle</code> 
-     * en el mapa de la simulación.
+     * en el mapa de la simulación o en el archivo de llegados.
      * 
      * @param id    id del <code>Vehicle</code>    
      *              buscado
@@ -141,7 +447,8 @@ public class RoadMap {
      */
     public boolean existsVehicleID(String id) {
     	//O(1)
-    	return vehicleObjects.containsKey(id);
+    	return vehicleObjects.containsKey(id) || 
+    	        vehicleArchive.indexOf(id) >= 0;
     }
 
 
@@ -196,6 +503,376 @@ public class RoadMap {
     	return roadObjects.get(id);
     }
 
+    /**
+     * Método que busca la <code>Road</code> que va de una
+     * <code>Junction</code> a otra. Devuelve la <code>Road</code>
+     * buscada si la encuentra y <code>null</code> en caso contrario.
+     * 
+     * @param from  <code>Junction</code> de origen
+     * @param to    <code>Junction</code> de destino
+     * @return      <code>Road</code> buscada
+     *              o <code>null</code>
+     */
+    public Road getRoadBetween(Junction from, Junction to) {
+    	//O(1)
+    	Map<String, Road> exits = roadIndex.get(from.getID());
+
+    	return (exits != null) ? exits.get(to.getID()) : null;
+    }
+
+
+
+
+
+
+    // ** MÉTODOS DE REGIONES ** //
+    /**
+     * Fija el número de regiones en que se divide el mapa. 
+     * Con <code>n <= 1</code> deja de dividirse.
+     * 
+     * @param n     número de regiones
+     */
+    public void setRegions(int n) {
+        detachRegions();
+        numRegions = (n > 1) ? n : 0;
+    }
+
+    /**
+     * Devuelve las regiones del mapa, calculándolas de nuevo
+     * si se han añadido <code>Junctions</code> o <code>Roads</code>
+     * desde la última vez (al añadirlas se deshace la división).
+     * 
+     * @return  regiones del mapa, vacía si no se divide
+     */
+    public List<Region> getRegions() {
+        if (numRegions == 0) {
+            return new ArrayList<>();
+        }
+        if (regions == null) {
+            buildRegions();
+        }
+        return regions;
+    }
+
+    /**
+     * Devuelve la región de una <code>Junction</code>,
+     * 0 si el mapa no se divide o -1 si no está en el mapa.
+     * 
+     * @param j     <code>Junction</code>
+     * @return      índice de su región
+     */
+    public int getRegionOf(Junction j) {
+        if (numRegions == 0) {
+            return junctionObjects.containsKey(j.getID()) ? 0 : -1;
+        }
+        getRegions();
+        Integer region = junctionRegion.get(j.getID());
+        return (region != null) ? region : -1;
+    }
+
+    /**
+     * Devuelve la región a la que llega la primera 
+     * <code>Road</code> de una ruta, la que crea su 
+     * <code>Vehicle</code> en una simulación distribuida.
+     * 
+     * @param tripID    ids de las <code>Junctions</code>
+     *                  de la ruta
+     * @return          índice de la región, o -1 si la
+     *                  ruta no es válida
+     */
+    public int getRegionOf(List<String> tripID) {
+        if (tripID == null || tripID.size() < 2) {
+            return -1;
+        }
+        Junction first = junctionObjects.get(tripID.get(1));
+        return (first != null) ? getRegionOf(first) : -1;
+    }
+
+    /**
+     * Devuelve las <code>Roads</code> que unen dos regiones,
+     * en el orden del mapa.
+     * 
+     * @return  <code>Roads</code> frontera
+     */
+    public List<Road> getBoundaryRoads() {
+        getRegions();
+        return boundaryRoads;
+    }
+
+    /**
+     * Vacía los buffers de intercambio de las <code>Roads</code>
+     * frontera. Debe llamarse cuando han avanzado todas las regiones.
+     */
+    public void flushBoundaries() {
+        for (Road road : boundaryRoads) {
+            road.flushHandoff();
+        }
+    }
+
+    /**
+     * <p>
+     * Divide el mapa en <code>numRegions</code> regiones. Las
+     * <code>Junctions</code> se recorren en anchura (sin tener en
+     * cuenta el sentido de las <code>Roads</code>) y se reparten en 
+     * tramos consecutivos de ese recorrido, de forma que cada región 
+     * es aproximadamente contigua y casi todas las <code>Roads</code> 
+     * quedan dentro de una misma región.
+     * </p> <p>
+     * Cada <code>Road</code> pertenece a la región de su
+     * <code>Junction</code> de destino, que es la única que toca
+     * su cola de espera. Si la de origen es de otra región, la
+     * <code>Road</code> es frontera.
+     * </p>
+     */
+    private void buildRegions() {
+        // Recorrido en anchura.
+        Map<Junction, Integer> regionOf = new HashMap<>();
+        List<Junction> order = new ArrayList<>();
+        Set<Junction> visited = new LinkedHashSet<>();
+
+        for (Junction start : junctionObjects.values()) {
+            if ( ! visited.add(start) ) {
+                continue;
+            }
+            Deque<Junction> queue = new ArrayDeque<>();
+            queue.add(start);
+
+            while ( ! queue.isEmpty() ) {
+                Junction j = queue.poll();
+                order.add(j);
+
+                for (Road r : j.getExitRoads().values()) {
+                    if ( visited.add(r.getToJunction()) ) {
+                        queue.add(r.getToJunction());
+                    }
+                }
+                for (Road r : j.getIncomingRoads().values()) {
+                    if ( visited.add(r.getFromJunction()) ) {
+                        queue.add(r.getFromJunction());
+                    }
+                }
+            }
+        }
+
+        int n = Math.max(1, Math.min(numRegions, order.size()));
+        for (int i = 0; i < order.size(); ++i) {
+            int region = (int) ((long) i * n / order.size());
+            regionOf.put(order.get(i), region);
+            junctionRegion.put(order.get(i).getID(), region);
+        }
+
+        regions = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            regions.add(new Region());
+        }
+        // Las Junctions de cada región conservan el orden del mapa.
+        for (Junction j : junctionObjects.values()) {
+            regions.get(regionOf.get(j)).junctions.add(j);
+        }
+
+        activeRoads.clear();
+        for (Road road : roadObjects.values()) {
+            int owner = regionOf.get(road.getToJunction());
+            Set<Road> active = regions.get(owner).activeRoads;
+
+            road.setActiveRoads(active);
+            if ( ! road.noVehiclesOnRoad() ) {
+                active.add(road);
+            }
+            if ( regionOf.get(road.getFromJunction()) != owner ) {
+                road.setHandoff(new ArrayList<>());
+                boundaryRoads.add(road);
+            }
+        }
+    }
+
+    /**
+     * Deshace la división en regiones: todas las <code>Roads</code>
+     * vuelven al conjunto común de <code>Roads</code> activas.
+     */
+    private void detachRegions() {
+        if (regions == null) {
+            return;
+        }
+
+        activeRoads.clear();
+        for (Road road : roadObjects.values()) {
+            road.setActiveRoads(activeRoads);
+            road.setHandoff(null);
+            if ( ! road.noVehiclesOnRoad() ) {
+                activeRoads.add(road);
+            }
+        }
+        boundaryRoads.clear();
+        junctionRegion.clear();
+        regions = null;
+    }
+
+
+
+
+
+
+    // ** MÉTODOS DE RECÁLCULO DE RUTAS ** //
+    /**
+     * Fija cada cuántos ticks se toman los costes de las 
+     * <code>Roads</code> para recalcular las rutas de los 
+     * <code>Vehicles</code>. Con <code>period <= 0</code>
+     * siguen siempre su ruta.
+     * 
+     * @param period    ticks entre dos tomas de costes
+     */
+    public void setRerouting(int period) {
+        period = Math.max(period, 0);
+        if (period != reroutePeriod) {
+            reroutePeriod = period;
+            dropRerouter();
+        }
+    }
+
+    /**
+     * Fija cuántos costes mínimos (uno por <code>Junction</code>
+     * y destino) conserva a la vez el recálculo de rutas.
+     * 
+     * @param budget    costes mínimos que se conservan
+     */
+    public void setRerouteBudget(int budget) {
+        if (budget != rerouteBudget) {
+            rerouteBudget = budget;
+            dropRerouter();
+        }
+    }
+
+    /**
+     * Prepara el recálculo de rutas para el tick que empieza,
+     * rehaciendo la copia de la red si ha cambiado. Debe 
+     * llamarse antes de que avance ninguna <code>Road</code>.
+     * 
+     * @param tick  tick que empieza
+     */
+    public void refreshRerouting(int tick) {
+        if (reroutePeriod == 0) {
+            return;
+        }
+        if (rerouter == null) {
+            rerouter = new Rerouter(this, reroutePeriod, rerouteBudget);
+            vehicleStore.setRerouter(rerouter);
+        }
+        rerouter.refresh(tick);
+    }
+
+    /**
+     * Descarta la política de recálculo de rutas, que 
+     * se creará de nuevo en el siguiente tick.
+     */
+    private void dropRerouter() {
+        rerouter = null;
+        vehicleStore.setRerouter(null);
+    }
+
+
+
+
+
+
+    // ** MÉTODOS DE PUNTOS DE CONTROL ** //
+    /**
+     * Escribe el mapa: <code>Junctions</code>, <code>Roads</code> y
+     * <code>Vehicles</code> con sus ids y parámetros, las columnas del
+     * <code>VehicleStore</code>, el archivo de <code>Vehicles</code>
+     * llegados, el estado de semáforos y colas y los costes del
+     * recálculo de rutas. Las regiones y la caché de caminos no se
+     * escriben: se calculan de nuevo.
+     * 
+     * @param out   flujo de salida
+     * 
+     * @throws IOException  if the map could not be written
+     */
+    void write(DataOutput out) throws IOException {
+        out.writeInt(networkVersion);
+        out.writeInt(nextSerial);
+        out.writeInt(reroutePeriod);
+        out.writeInt(rerouteBudget);
+
+        out.writeInt(junctionObjects.size());
+        for (Junction j : junctionObjects.values()) {
+            SimObjCodec.writeJunction(j, out);
+        }
+        out.writeInt(roadObjects.size());
+        for (Road r : roadObjects.values()) {
+            SimObjCodec.writeRoad(r, out);
+        }
+
+        vehicleStore.write(out);
+        SimObjCodec.writeVehicles(vehicleObjects.values(), out);
+        vehicleArchive.write(out);
+
+        for (Junction j : junctionObjects.values()) {
+            SimObjCodec.writeState(j, out);
+        }
+        for (Road r : roadObjects.values()) {
+            SimObjCodec.writeState(r, out);
+        }
+
+        out.writeBoolean(rerouter != null);
+        if (rerouter != null) {
+            rerouter.write(out);
+        }
+    }
+
+    /**
+     * Lee un mapa escrito con {@link #write(DataOutput)}, sin 
+     * dividir en regiones.
+     * 
+     * @param in    flujo de entrada
+     * 
+     * @return      nuevo mapa
+     * 
+     * @throws IOException  if the input is not a valid map
+     */
+    static RoadMap read(DataInput in) throws IOException {
+        RoadMap map = new RoadMap();
+        int version = in.readInt();
+        int serial = in.readInt();
+        int period = in.readInt();
+        int budget = in.readInt();
+
+        for (int n = SimObjCodec.readCount(in); n > 0; --n) {
+            map.addJunction( SimObjCodec.readJunction(in) );
+        }
+        for (int n = SimObjCodec.readCount(in); n > 0; --n) {
+            map.addRoad( SimObjCodec.readRoad(in, map) );
+        }
+
+        map.vehicleStore.read(in);
+        for (Vehicle v : SimObjCodec.readVehicles(in, map)) {
+            map.vehicleObjects.put(v.getID(), v);
+        }
+        map.vehicleArchive.read(in);
+
+        for (Junction j : map.junctionObjects.values()) {
+            SimObjCodec.readState(j, in);
+        }
+        for (Road r : map.roadObjects.values()) {
+            SimObjCodec.readState(r, in, map);
+            if ( ! r.noVehiclesOnRoad() ) {
+                map.activeRoads.add(r);
+            }
+        }
+
+        map.networkVersion = version;
+        map.nextSerial = serial;
+        map.reroutePeriod = period;
+        map.rerouteBudget = budget;
+        if ( in.readBoolean() ) {
+            map.rerouter = new Rerouter(map, period, budget);
+            map.rerouter.read(in);
+            map.vehicleStore.setRerouter(map.rerouter);
+        }
+
+        return map;
+    }
+
 
 
 
@@ -210,7 +887,18 @@ public class RoadMap {
     public void clear() {
     	junctionObjects.clear();
     	roadObjects.clear();
+    	roadIndex.clear();
+    	activeRoads.clear();
     	vehicleObjects.clear();
+    	vehicleStore.clear();
+    	vehicleArchive.clear();
+    	nextSerial = 0;
+    	boundaryRoads.clear();
+    	regions = null;
+    	junctionRegion.clear();
+    	routeCache = null;
+    	networkVersion++;
+    	rerouter = null;
     }
 
     
@@ -0,0 +1,378 @@
+package es.ucm.fdi.model.simulation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
+
+/**
+ * <p>
+ * Caché de caminos mínimos entre {@code Junction}s del
+ * {@link RoadMap}, compartida por todos los {@code Vehicle}s
+ * que se crean con origen y destino en lugar de itinerario.
+ * </p> <p>
+ * La red se guarda en forma compacta (listas de adyacencia en
+ * arrays) y, para cada origen pedido, se calcula con Dijkstra el
+ * árbol de caminos mínimos a todas las {@code Junction}s. Los
+ * últimos árboles calculados se conservan, de forma que todos los
+ * destinos de un mismo origen salen de una única búsqueda, y cada
+ * {@link Route} obtenida se guarda para los siguientes
+ * {@code Vehicle}s con el mismo par origen-destino.
+ * </p> <p>
+ * Se descarta entera cuando cambia la red.
+ * </p>
+ */
+public class RouteCache {
+
+	// ** CLASES INTERNAS ** //
+	/**
+	 * Coste de una {@code Road} en la búsqueda de caminos.
+	 */
+	public enum Metric {
+		/**
+		 * Longitud de la {@code Road}.
+		 */
+		LENGTH,
+
+		/**
+		 * Tiempo de recorrido a la velocidad
+		 * máxima de la {@code Road}.
+		 */
+		TIME;
+
+		/**
+		 * Devuelve el coste de recorrer una {@code Road}.
+		 *
+		 * @param road 	- {@code Road} a recorrer
+		 *
+		 * @return 		coste no negativo
+		 */
+		double cost(Road road) {
+			if (this == LENGTH) {
+				return road.getLength();
+			}
+			return (double) road.getLength() / Math.max(1, road.getSpeedLimit());
+		}
+	}
+
+	/**
+	 * Camino calculado entre dos {@code Junction}s. Se comparte
+	 * entre todos los {@code Vehicle}s que lo recorren: sus
+	 * listas no se pueden modificar, y el array de {@code Road}s
+	 * sólo se lee.
+	 */
+	public static final class Route {
+
+		private final List<Junction> junctions;
+		private final Road[] roads;
+		private final List<String> ids;
+
+		Route(List<Junction> junctions, Road[] roads) {
+			this.junctions = Collections.unmodifiableList(junctions);
+			this.roads = roads;
+
+			List<String> ids = new ArrayList<>(junctions.size());
+			for (Junction j : junctions) {
+				ids.add(j.getID());
+			}
+			this.ids = Collections.unmodifiableList(ids);
+		}
+
+		/**
+		 * Devuelve las {@code Junction}s del camino,
+		 * de origen a destino.
+		 *
+		 * @return 	{@code Junction}s del camino,
+		 * 			no modificables
+		 */
+		public List<Junction> getJunctions() {
+			return junctions;
+		}
+
+		/**
+		 * Devuelve las {@code Road}s del camino:
+		 * la posición {@code i} une las {@code Junction}s
+		 * {@code i} e {@code i + 1}.
+		 *
+		 * @return 	{@code Road}s del camino
+		 */
+		public Road[] getRoads() {
+			return roads;
+		}
+
+		/**
+		 * Devuelve los ids de las {@code Junction}s
+		 * del camino, de origen a destino.
+		 *
+		 * @return 	ids del camino
+		 */
+		public List<String> getIDs() {
+			return ids;
+		}
+	}
+
+
+
+
+
+
+	/**
+	 * Árbol de caminos mínimos desde un origen: la {@code Road}
+	 * por la que se llega a cada {@code Junction} (o -1), y los
+	 * caminos ya obtenidos de él, por destino.
+	 */
+	private static final class SourceTree {
+
+		private final int[] pred;
+		private final Map<Integer, Route> routes = new HashMap<>();
+
+		SourceTree(int[] pred) {
+			this.pred = pred;
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Número de árboles de caminos mínimos que se conservan
+	 * por métrica. Cada uno ocupa un entero por {@code Junction},
+	 * más los caminos que se han obtenido de él.
+	 */
+	private static final int MAX_TREES = 64;
+
+	/**
+	 * {@code Junction}s de la red, por índice.
+	 */
+	private Junction[] nodes;
+
+	/**
+	 * Índice de cada {@code Junction}.
+	 */
+	private Map<Junction, Integer> index = new IdentityHashMap<>();
+
+	/**
+	 * Listas de adyacencia: las {@code Road}s que salen de la
+	 * {@code Junction} {@code i} son las posiciones de
+	 * {@code edgeStart[i]} a {@code edgeStart[i + 1]} de
+	 * {@code edges}, {@code edgeSource} y {@code edgeTarget}.
+	 */
+	private int[] edgeStart;
+	private int[] edgeSource;
+	private int[] edgeTarget;
+	private Road[] edges;
+
+	/**
+	 * Coste de cada {@code Road}, por métrica.
+	 */
+	private double[][] edgeCost = new double[Metric.values().length][];
+
+	/**
+	 * Últimos árboles de caminos mínimos calculados,
+	 * por métrica y origen.
+	 */
+	private List<Map<Integer, SourceTree>> trees = new ArrayList<>();
+
+	/**
+	 * Montículo de la búsqueda, reutilizado.
+	 */
+	private CostHeap heap = new CostHeap();
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link RouteCache}, que toma una
+	 * copia compacta de la red de {@code map}.
+	 *
+	 * @param map 	- mapa de la simulación
+	 */
+	public RouteCache(RoadMap map) {
+		nodes = map.getJunctions().values().toArray(new Junction[0]);
+		for (int i = 0; i < nodes.length; ++i) {
+			index.put(nodes[i], i);
+		}
+
+		// Roads agrupadas por Junction de origen.
+		edgeStart = new int[nodes.length + 1];
+		for (Road road : map.getRoads().values()) {
+			edgeStart[ index.get(road.getFromJunction()) + 1 ]++;
+		}
+		for (int i = 0; i < nodes.length; ++i) {
+			edgeStart[i + 1] += edgeStart[i];
+		}
+
+		int numEdges = edgeStart[nodes.length];
+		int[] next = Arrays.copyOf(edgeStart, nodes.length);
+		edgeSource = new int[numEdges];
+		edgeTarget = new int[numEdges];
+		edges = new Road[numEdges];
+		for (Road road : map.getRoads().values()) {
+			int from = index.get(road.getFromJunction());
+			int e = next[from]++;
+			edgeSource[e] = from;
+			edgeTarget[e] = index.get(road.getToJunction());
+			edges[e] = road;
+		}
+
+		for (Metric metric : Metric.values()) {
+			double[] cost = new double[numEdges];
+			for (int e = 0; e < numEdges; ++e) {
+				cost[e] = metric.cost(edges[e]);
+			}
+			edgeCost[metric.ordinal()] = cost;
+
+			trees.add(new LinkedHashMap<Integer, SourceTree>(16, 0.75f, true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<Integer, SourceTree> eldest) {
+					return size() > MAX_TREES;
+				}
+			});
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODO DE CONSULTA ** //
+	/**
+	 * Devuelve el camino mínimo entre dos {@code Junction}s,
+	 * calculándolo sólo si no se ha pedido antes. Los caminos
+	 * se guardan con el árbol de su origen y se descartan con
+	 * él, así que la caché no crece con los pares pedidos.
+	 *
+	 * @param from 		- {@code Junction} de origen
+	 * @param to 		- {@code Junction} de destino
+	 * @param metric 	- coste de las {@code Road}s
+	 *
+	 * @return 			camino compartido, o {@code null} si
+	 * 					no se puede llegar de una a otra
+	 */
+	public Route getRoute(Junction from, Junction to, Metric metric) {
+		Integer src = index.get(from), dst = index.get(to);
+		if (src == null || dst == null || src.equals(dst)) {
+			return null;
+		}
+
+		Map<Integer, SourceTree> cached = trees.get(metric.ordinal());
+		SourceTree tree = cached.get(src);
+		if (tree == null) {
+			tree = new SourceTree(shortestPathTree(src, edgeCost[metric.ordinal()]));
+			cached.put(src, tree);
+		}
+
+		Route route = tree.routes.get(dst);
+		if (route == null) {
+			route = buildRoute(tree.pred, src, dst);
+			if (route != null) {
+				tree.routes.put(dst, route);
+			}
+		}
+
+		return route;
+	}
+
+	/**
+	 * Devuelve el número de caminos guardados, sumando
+	 * los de todos los árboles conservados.
+	 *
+	 * @return 	caminos en la caché
+	 */
+	public int getCachedRoutes() {
+		int count = 0;
+		for (Map<Integer, SourceTree> cached : trees) {
+			for (SourceTree tree : cached.values()) {
+				count += tree.routes.size();
+			}
+		}
+		return count;
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE BÚSQUEDA ** //
+	/**
+	 * Calcula con Dijkstra el árbol de caminos mínimos
+	 * desde una {@code Junction}.
+	 *
+	 * @return 	para cada {@code Junction}, la {@code Road}
+	 * 			por la que se llega a ella, o -1
+	 */
+	private int[] shortestPathTree(int src, double[] cost) {
+		double[] dist = new double[nodes.length];
+		int[] pred = new int[nodes.length];
+		Arrays.fill(dist, Double.POSITIVE_INFINITY);
+		Arrays.fill(pred, -1);
+
+		dist[src] = 0;
+		heap.clear();
+		heap.push(src, 0);
+
+		while ( ! heap.isEmpty() ) {
+			double d = heap.peekCost();
+			int u = heap.pop();
+			if (d > dist[u]) {
+				continue;
+			}
+
+			for (int e = edgeStart[u]; e < edgeStart[u + 1]; ++e) {
+				int v = edgeTarget[e];
+				double nd = d + cost[e];
+				if (nd < dist[v]) {
+					dist[v] = nd;
+					pred[v] = e;
+					heap.push(v, nd);
+				}
+			}
+		}
+
+		return pred;
+	}
+
+	/**
+	 * Reconstruye el camino hasta {@code dst} a
+	 * partir del árbol de caminos mínimos.
+	 */
+	private Route buildRoute(int[] pred, int src, int dst) {
+		if (pred[dst] < 0) {
+			return null;
+		}
+
+		int length = 0;
+		for (int v = dst; v != src; v = edgeSource[pred[v]]) {
+			length++;
+		}
+
+		Road[] roads = new Road[length];
+		Junction[] junctions = new Junction[length + 1];
+		int v = dst;
+		for (int i = length; i > 0; --i) {
+			roads[i - 1] = edges[pred[v]];
+			junctions[i] = nodes[v];
+			v = edgeSource[pred[v]];
+		}
+		junctions[0] = nodes[src];
+
+		return new Route(Arrays.asList(junctions), roads);
+	}
+}
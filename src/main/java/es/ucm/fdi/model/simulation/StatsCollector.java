@@ -0,0 +1,259 @@
+package es.ucm.fdi.model.simulation;
+
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.SimObj.VehicleStore;
+import es.ucm.fdi.util.RingSeries;
+
+/**
+ * <p>
+ * Estadísticas por tick de la simulación: ocupación y longitud
+ * de la cola de espera de cada {@code Road}, {@code Vehicle}s que
+ * cruzan cada {@code Junction} y {@code Vehicle}s en marcha y
+ * averiados de toda la red.
+ * </p> <p>
+ * Cada serie se guarda en un {@link RingSeries} de capacidad fija,
+ * agrupando {@code window} ticks por ventana (mínimo, máximo y
+ * media), así que la memoria no depende de la duración de la
+ * simulación: sólo se conservan las últimas {@code capacity}
+ * ventanas. Cada {@code Road} y {@code Junction} ocupa una fila,
+ * en el orden en que se añadieron al mapa.
+ * </p>
+ */
+public class StatsCollector {
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Filas de la serie {@link #getNetwork()}.
+	 */
+	public static final int MOVING = 0;
+	public static final int FAULTY = 1;
+
+	/**
+	 * Series de {@code Road}s, de {@code Junction}s
+	 * y de la red.
+	 */
+	private final RingSeries roadOccupancy;
+	private final RingSeries roadWaiting;
+	private final RingSeries junctionThroughput;
+	private final RingSeries network;
+
+	/**
+	 * Fila de cada {@code Road} y {@code Junction}
+	 * en sus series, por identificador.
+	 */
+	private final Map<String, Integer> roadRows = new LinkedHashMap<>();
+	private final Map<String, Integer> junctionRows = new LinkedHashMap<>();
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link StatsCollector}, sin muestras.
+	 *
+	 * @param capacity 	- ventanas que se conservan por serie
+	 * @param window 	- ticks agrupados en cada ventana
+	 *
+	 * @throws IllegalArgumentException 	if capacity or window
+	 * 										are not positive
+	 */
+	public StatsCollector(int capacity, int window) {
+		roadOccupancy = new RingSeries(capacity, window);
+		roadWaiting = new RingSeries(capacity, window);
+		junctionThroughput = new RingSeries(capacity, window);
+		network = new RingSeries(capacity, window);
+		network.ensureRows(2);
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE MUESTREO ** //
+	/**
+	 * Toma una muestra del estado del mapa al final de
+	 * un tick. Las {@code Road}s y {@code Junction}s nuevas
+	 * reciben una fila, que vale 0 en los ticks anteriores.
+	 *
+	 * @param tick 		- tick de la muestra
+	 * @param map 		- mapa de la simulación
+	 */
+	public void sample(int tick, RoadMap map) {
+		Map<String, Road> roads = map.getRoads();
+		Map<String, Junction> junctions = map.getJunctions();
+
+		// 1 //
+		// Filas de los objetos nuevos.
+		addRows(roads.keySet(), roadRows);
+		roadOccupancy.ensureRows(roadRows.size());
+		roadWaiting.ensureRows(roadRows.size());
+
+		addRows(junctions.keySet(), junctionRows);
+		junctionThroughput.ensureRows(junctionRows.size());
+
+		// 2 //
+		// Muestras.
+		roadOccupancy.beginSample(tick);
+		roadWaiting.beginSample(tick);
+		for ( Road road : roads.values() ) {
+			int row = roadRows.get( road.getID() );
+			roadOccupancy.add(row, road.getNumVehiclesOnRoad());
+			roadWaiting.add(row, road.getNumWaitingVehicles());
+		}
+
+		junctionThroughput.beginSample(tick);
+		for ( Junction junction : junctions.values() ) {
+			int row = junctionRows.get( junction.getID() );
+			junctionThroughput.add(row, junction.getCrossedVehicles());
+		}
+
+		VehicleStore store = map.getVehicleStore();
+		network.beginSample(tick);
+		network.add(MOVING, store.countMoving());
+		network.add(FAULTY, store.countFaulty());
+	}
+
+	/**
+	 * Asigna la siguiente fila libre a los
+	 * identificadores que aún no tienen.
+	 */
+	private static void addRows(Iterable<String> ids, Map<String, Integer> rows) {
+		for (String id : ids) {
+			if ( ! rows.containsKey(id) ) {
+				rows.put(id, rows.size());
+			}
+		}
+	}
+
+	/**
+	 * Borra todas las muestras y filas.
+	 */
+	public void clear() {
+		roadOccupancy.clear();
+		roadWaiting.clear();
+		junctionThroughput.clear();
+		network.clear();
+		network.ensureRows(2);
+		roadRows.clear();
+		junctionRows.clear();
+	}
+
+
+
+
+
+
+	// ** MÉTODO DE INFORME ** //
+	/**
+	 * <p>
+	 * Escribe todas las series en formato CSV, una línea
+	 * por objeto y ventana, con las columnas:
+	 * </p> <p>
+	 * series,id,start_tick,samples,min,max,mean
+	 * </p>
+	 *
+	 * @param out 	- flujo de salida
+	 */
+	public void writeCsv(OutputStream out) {
+		PrintWriter csv = new PrintWriter(out);
+		csv.println("series,id,start_tick,samples,min,max,mean");
+
+		writeRows(csv, "road_occupancy", roadOccupancy, roadRows);
+		writeRows(csv, "road_waiting", roadWaiting, roadRows);
+		writeRows(csv, "junction_throughput", junctionThroughput, junctionRows);
+
+		Map<String, Integer> networkRows = new LinkedHashMap<>();
+		networkRows.put("moving", MOVING);
+		networkRows.put("faulty", FAULTY);
+		writeRows(csv, "network", network, networkRows);
+
+		csv.flush();
+	}
+
+	private static void writeRows(PrintWriter csv, String name,
+			RingSeries series, Map<String, Integer> rows) {
+		for ( Entry<String, Integer> row : rows.entrySet() ) {
+			for (int w = 0; w < series.size(); ++w) {
+				csv.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%d,%d,%.3f",
+					name, row.getKey(), series.getStartTick(w), series.getSamples(w),
+					series.getMin(row.getValue(), w), series.getMax(row.getValue(), w),
+					series.getMean(row.getValue(), w)));
+			}
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE ACCESO ** //
+	/**
+	 * Devuelve la fila de una {@code Road} en
+	 * {@link #getRoadOccupancy()} y {@link #getRoadWaiting()}.
+	 *
+	 * @param id 	- identificador de la {@code Road}
+	 *
+	 * @return 		fila, o -1 si no se ha muestreado
+	 */
+	public int getRoadRow(String id) {
+		Integer row = roadRows.get(id);
+		return (row == null) ? -1 : row;
+	}
+
+	/**
+	 * Devuelve la fila de una {@code Junction}
+	 * en {@link #getJunctionThroughput()}.
+	 *
+	 * @param id 	- identificador de la {@code Junction}
+	 *
+	 * @return 		fila, o -1 si no se ha muestreado
+	 */
+	public int getJunctionRow(String id) {
+		Integer row = junctionRows.get(id);
+		return (row == null) ? -1 : row;
+	}
+
+	/**
+	 * @return 	{@code Vehicle}s en cada {@code Road}
+	 */
+	public RingSeries getRoadOccupancy() {
+		return roadOccupancy;
+	}
+
+	/**
+	 * @return 	{@code Vehicle}s en la cola de
+	 * 			espera de cada {@code Road}
+	 */
+	public RingSeries getRoadWaiting() {
+		return roadWaiting;
+	}
+
+	/**
+	 * @return 	{@code Vehicle}s que cruzan
+	 * 			cada {@code Junction}
+	 */
+	public RingSeries getJunctionThroughput() {
+		return junctionThroughput;
+	}
+
+	/**
+	 * @return 	{@code Vehicle}s en marcha (fila
+	 * 			{@link #MOVING}) y averiados (fila
+	 * 			{@link #FAULTY}) de toda la red
+	 */
+	public RingSeries getNetwork() {
+		return network;
+	}
+}
@@ -0,0 +1,456 @@
+package es.ucm.fdi.model.simulation;
+
+import java.beans.ConstructorProperties;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * Instrumentación del bucle de {@link TrafficSimulation}: tiempo
+ * de cada fase del tick (eventos, {@code Road}s, {@code Junction}s
+ * o regiones, e informes) y de cada periodo en reposo saltado, y
+ * contadores de eventos ejecutados, ticks en reposo, {@code Vehicle}s
+ * que avanzan, cruces de {@code Junction}s y bytes de informe escritos.
+ * </p> <p>
+ * Los acumuladores no usan cerrojos, de forma que se pueden leer
+ * por JMX mientras la simulación sigue corriendo. Cada fase guarda
+ * un histograma logarítmico con 16 subdivisiones por potencia de
+ * dos, así que los percentiles tienen un error relativo menor
+ * del 7%.
+ * </p>
+ */
+public class TickMetrics implements TickMetricsMXBean {
+
+	// ** CLASES INTERNAS ** //
+	/**
+	 * Fases de un tick.
+	 */
+	public enum Phase {
+		TICK, EVENTS, ROADS, JUNCTIONS, REGIONS, REPORTS, QUIESCENT
+	}
+
+	/**
+	 * Resumen de los tiempos de una fase, en microsegundos.
+	 */
+	public static class PhaseStats {
+
+		private long count;
+		private double meanMicros;
+		private double p50Micros, p90Micros, p99Micros, maxMicros;
+
+		@ConstructorProperties({ "count", "meanMicros", "p50Micros",
+				"p90Micros", "p99Micros", "maxMicros" })
+		public PhaseStats(long count, double meanMicros, double p50Micros,
+				double p90Micros, double p99Micros, double maxMicros) {
+			this.count = count;
+			this.meanMicros = meanMicros;
+			this.p50Micros = p50Micros;
+			this.p90Micros = p90Micros;
+			this.p99Micros = p99Micros;
+			this.maxMicros = maxMicros;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		public double getMeanMicros() {
+			return meanMicros;
+		}
+
+		public double getP50Micros() {
+			return p50Micros;
+		}
+
+		public double getP90Micros() {
+			return p90Micros;
+		}
+
+		public double getP99Micros() {
+			return p99Micros;
+		}
+
+		public double getMaxMicros() {
+			return maxMicros;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("n=%d mean=%.1f p50=%.1f p90=%.1f p99=%.1f max=%.1f us",
+				count, meanMicros, p50Micros, p90Micros, p99Micros, maxMicros);
+		}
+	}
+
+	/**
+	 * Histograma sin cerrojos de duraciones en nanosegundos.
+	 * Los valores menores que {@link #SUB} tienen cubeta propia;
+	 * el resto se agrupan por potencia de dos, cada una dividida
+	 * en {@link #SUB} cubetas.
+	 */
+	static class Histogram {
+
+		private static final int SUB_BITS = 4;
+		private static final int SUB = 1 << SUB_BITS;
+		private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+		private final LongAdder count = new LongAdder();
+		private final LongAdder sum = new LongAdder();
+		private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+		void record(long nanos) {
+			long value = Math.max(nanos, 0);
+			buckets.incrementAndGet(bucketOf(value));
+			count.increment();
+			sum.add(value);
+			max.accumulate(value);
+		}
+
+		static int bucketOf(long value) {
+			if (value < SUB) {
+				return (int) value;
+			}
+			int exp = 63 - Long.numberOfLeadingZeros(value);
+			int sub = (int) (value >>> (exp - SUB_BITS)) & (SUB - 1);
+			return (exp - SUB_BITS + 1) * SUB + sub;
+		}
+
+		/**
+		 * Punto medio de los valores de la cubeta {@code index}.
+		 */
+		static double valueOf(int index) {
+			if (index < SUB) {
+				return index;
+			}
+			int exp = index / SUB + SUB_BITS - 1;
+			long width = 1L << (exp - SUB_BITS);
+			long lower = (SUB + index % SUB) * width;
+			return lower + (width - 1) / 2.0;
+		}
+
+		/**
+		 * Valor aproximado del percentil {@code q} (entre 0 y 1),
+		 * o 0 si no hay muestras.
+		 */
+		double percentile(double q) {
+			long[] snapshot = new long[BUCKETS];
+			long total = 0;
+			for (int i = 0; i < BUCKETS; ++i) {
+				snapshot[i] = buckets.get(i);
+				total += snapshot[i];
+			}
+			if (total == 0) {
+				return 0;
+			}
+
+			long rank = Math.max(1, (long) Math.ceil(q * total));
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; ++i) {
+				seen += snapshot[i];
+				if (seen >= rank) {
+					return Math.min(valueOf(i), max.get());
+				}
+			}
+			return max.get();
+		}
+
+		PhaseStats stats() {
+			long n = count.sum();
+			return new PhaseStats(n,
+				n == 0 ? 0 : sum.sum() / 1e3 / n,
+				percentile(0.50) / 1e3,
+				percentile(0.90) / 1e3,
+				percentile(0.99) / 1e3,
+				max.get() / 1e3);
+		}
+
+		void reset() {
+			for (int i = 0; i < BUCKETS; ++i) {
+				buckets.set(i, 0);
+			}
+			count.reset();
+			sum.reset();
+			max.reset();
+		}
+	}
+
+	/**
+	 * Flujo que cuenta los bytes que pasan por él.
+	 */
+	private class CountingStream extends FilterOutputStream {
+
+		CountingStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			reportBytes.increment();
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			reportBytes.add(len);
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	/**
+	 * Dominio de los nombres JMX y número de
+	 * instrumentaciones registradas hasta ahora.
+	 */
+	private static final String DOMAIN = "es.ucm.fdi.model.simulation";
+	private static final AtomicInteger registered = new AtomicInteger();
+
+	/**
+	 * Histograma de cada fase, indexado por su ordinal.
+	 */
+	private final Histogram[] phases = new Histogram[Phase.values().length];
+
+	/**
+	 * Contadores de la simulación.
+	 */
+	private final LongAdder ticks = new LongAdder();
+	private final LongAdder quiescentTicks = new LongAdder();
+	private final LongAdder eventsExecuted = new LongAdder();
+	private final LongAdder vehiclesMoved = new LongAdder();
+	private final LongAdder junctionCrossings = new LongAdder();
+	private final LongAdder reportBytes = new LongAdder();
+
+	/**
+	 * Nombre con el que está registrada, o {@code null}.
+	 */
+	private ObjectName name = null;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Constructor de {@link TickMetrics}, con todos
+	 * los tiempos y contadores a cero.
+	 */
+	public TickMetrics() {
+		for (int i = 0; i < phases.length; ++i) {
+			phases[i] = new Histogram();
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE REGISTRO ** //
+	/**
+	 * Guarda la duración de una fase de un tick.
+	 *
+	 * @param phase 	- fase medida
+	 * @param nanos 	- duración en nanosegundos
+	 */
+	public void record(Phase phase, long nanos) {
+		phases[phase.ordinal()].record(nanos);
+		if (phase == Phase.TICK) {
+			ticks.increment();
+		}
+	}
+
+	/**
+	 * Suma ticks saltados en un periodo en reposo. Cada
+	 * periodo se mide como una sola fase {@code QUIESCENT},
+	 * no como ticks {@code TICK}.
+	 *
+	 * @param n 	- número de ticks
+	 */
+	public void addQuiescentTicks(long n) {
+		quiescentTicks.add(n);
+	}
+
+	/**
+	 * Suma {@code Event}s ejecutados sin error.
+	 *
+	 * @param n 	- número de {@code Event}s
+	 */
+	public void addEventsExecuted(long n) {
+		eventsExecuted.add(n);
+	}
+
+	/**
+	 * Suma {@code Vehicle}s que han avanzado por
+	 * su {@code Road} en un tick.
+	 *
+	 * @param n 	- número de {@code Vehicle}s
+	 */
+	public void addVehiclesMoved(long n) {
+		vehiclesMoved.add(n);
+	}
+
+	/**
+	 * Suma {@code Vehicle}s que han salido de la cola
+	 * de una {@code Junction} en un tick.
+	 *
+	 * @param n 	- número de cruces
+	 */
+	public void addJunctionCrossings(long n) {
+		junctionCrossings.add(n);
+	}
+
+	/**
+	 * Envuelve el flujo de informes para contar
+	 * los bytes que se escriben en él.
+	 *
+	 * @param out 	- flujo de informes
+	 *
+	 * @return 		flujo que cuenta y escribe en {@code out}
+	 */
+	public OutputStream countReportBytes(OutputStream out) {
+		return new CountingStream(out);
+	}
+
+	/**
+	 * Registra la instrumentación en el servidor de
+	 * gestión de la plataforma, con un nombre distinto
+	 * para cada simulación.
+	 *
+	 * @return 	nombre JMX con el que se ha registrado
+	 *
+	 * @throws JMException 	if the MBean could not
+	 * 						be registered
+	 */
+	public ObjectName register() throws JMException {
+		if (name == null) {
+			ObjectName candidate = new ObjectName(DOMAIN +
+				":type=TickMetrics,name=simulation-" + registered.incrementAndGet());
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+			name = candidate;
+		}
+		return name;
+	}
+
+	/**
+	 * Quita la instrumentación del servidor de gestión,
+	 * si estaba registrada.
+	 *
+	 * @throws JMException 	if the MBean could not
+	 * 						be unregistered
+	 */
+	public void unregister() throws JMException {
+		if (name != null) {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			name = null;
+		}
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE ACCESO ** //
+	/**
+	 * Devuelve el resumen de tiempos de una fase.
+	 *
+	 * @param phase 	- fase
+	 *
+	 * @return 			tiempos de la fase
+	 */
+	public PhaseStats getStats(Phase phase) {
+		return phases[phase.ordinal()].stats();
+	}
+
+	@Override
+	public long getTicks() {
+		return ticks.sum();
+	}
+
+	@Override
+	public long getQuiescentTicks() {
+		return quiescentTicks.sum();
+	}
+
+	@Override
+	public long getEventsExecuted() {
+		return eventsExecuted.sum();
+	}
+
+	@Override
+	public long getVehiclesMoved() {
+		return vehiclesMoved.sum();
+	}
+
+	@Override
+	public long getJunctionCrossings() {
+		return junctionCrossings.sum();
+	}
+
+	@Override
+	public long getReportBytes() {
+		return reportBytes.sum();
+	}
+
+	@Override
+	public PhaseStats getTick() {
+		return getStats(Phase.TICK);
+	}
+
+	@Override
+	public PhaseStats getEvents() {
+		return getStats(Phase.EVENTS);
+	}
+
+	@Override
+	public PhaseStats getRoads() {
+		return getStats(Phase.ROADS);
+	}
+
+	@Override
+	public PhaseStats getJunctions() {
+		return getStats(Phase.JUNCTIONS);
+	}
+
+	@Override
+	public PhaseStats getRegions() {
+		return getStats(Phase.REGIONS);
+	}
+
+	@Override
+	public PhaseStats getReports() {
+		return getStats(Phase.REPORTS);
+	}
+
+	@Override
+	public PhaseStats getQuiescent() {
+		return getStats(Phase.QUIESCENT);
+	}
+
+	@Override
+	public void reset() {
+		for (Histogram phase : phases) {
+			phase.reset();
+		}
+		ticks.reset();
+		quiescentTicks.reset();
+		eventsExecuted.reset();
+		vehiclesMoved.reset();
+		junctionCrossings.reset();
+		reportBytes.reset();
+	}
+}
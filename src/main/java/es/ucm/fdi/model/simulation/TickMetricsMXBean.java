@@ -0,0 +1,40 @@
+package es.ucm.fdi.model.simulation;
+
+/**
+ * Interfaz de gestión de {@link TickMetrics}, que publica
+ * por JMX los tiempos de cada fase del tick y los contadores
+ * de la simulación. Los tiempos se dan en microsegundos.
+ */
+public interface TickMetricsMXBean {
+
+	long getTicks();
+
+	long getQuiescentTicks();
+
+	long getEventsExecuted();
+
+	long getVehiclesMoved();
+
+	long getJunctionCrossings();
+
+	long getReportBytes();
+
+	TickMetrics.PhaseStats getTick();
+
+	TickMetrics.PhaseStats getEvents();
+
+	TickMetrics.PhaseStats getRoads();
+
+	TickMetrics.PhaseStats getJunctions();
+
+	TickMetrics.PhaseStats getRegions();
+
+	TickMetrics.PhaseStats getReports();
+
+	TickMetrics.PhaseStats getQuiescent();
+
+	/**
+	 * Pone a cero todos los tiempos y contadores.
+	 */
+	void reset();
+}
@@ -1,18 +1,47 @@
 package es.ucm.fdi.model.simulation;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 import javax.swing.SwingUtilities;
 
 import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
 import es.ucm.fdi.model.SimObj.Junction;
 import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.SimObj.SimObjCodec;
 import es.ucm.fdi.model.SimObj.SimObject;
 import es.ucm.fdi.model.SimObj.Vehicle;
+import es.ucm.fdi.model.SimObj.VehicleArchive;
 import es.ucm.fdi.model.events.Event;
+import es.ucm.fdi.model.events.EventCodec;
+import es.ucm.fdi.model.simulation.RoadMap.Region;
+import es.ucm.fdi.model.simulation.TickMetrics.Phase;
 import es.ucm.fdi.util.EventType;
 import es.ucm.fdi.util.MultiTreeMap;
 
@@ -22,7 +51,7 @@ import es.ucm.fdi.util.MultiTreeMap;
  * objetos de simulación en un {@link RoadMap}, y el 
  * tiempo de actual de la simulación.
  */
-public class TrafficSimulation {
+public class TrafficSimulation implements AutoCloseable {
 
 	
 	// ** CLASES INTERNAS (PARA EVENTOS) ** //
@@ -34,8 +63,24 @@ public class TrafficSimulation {
 		
 		EventType event;
 		
+		/**
+		 * Tick de la simulación cuando se creó el aviso,
+		 * que no cambia aunque la simulación siga.
+		 */
+		private final int tick;
+		
+		/**
+		 * Copia de la cola de {@code Event}s en los avisos
+		 * {@code NEW_EVENT}, tomada en el hilo de la simulación.
+		 */
+		private final List<Event> eventList;
+		
 		public UpdateEvent(EventType ev){
 			event = ev;
+			tick = time;
+			eventList = (ev == EventType.NEW_EVENT) ? 
+				Collections.unmodifiableList( new ArrayList<>(events.valuesList()) ) :
+				Collections.<Event>emptyList();
 		}
 		
 		public EventType getEvent() {
@@ -46,12 +91,81 @@ public class TrafficSimulation {
 			return roadMap;
 		}
 		
+		/**
+		 * Devuelve la cola de {@code Event}s de la simulación,
+		 * que sigue cambiando: sólo debe leerse desde el hilo
+		 * que avanza la simulación.
+		 * 
+		 * @return 	cola de {@code Event}s actual
+		 */
 		public MultiTreeMap<Integer, Event> getEventQueue() {
 			return events;
 		}
 		
+		/**
+		 * Devuelve los {@code Event}s pendientes cuando se creó
+		 * el aviso {@code NEW_EVENT}, en orden de ejecución. Es
+		 * una copia inmutable que puede leerse desde cualquier
+		 * hilo; en los demás avisos está vacía.
+		 * 
+		 * @return 	lista de {@code Event}s
+		 */
+		public List<Event> getEventList() {
+			return eventList;
+		}
+		
 		public int getCurrentTime() {
-			return time;
+			return tick;
+		}
+	}
+
+	/**
+	 * Modos de avance rápido en los periodos en reposo (sin
+	 * {@code Vehicle}s circulando ni esperando en cruces).
+	 * <p>
+	 * {@code OFF}: se simula tick a tick. {@code FULL}: sólo avanzan 
+	 * los semáforos hasta el siguiente {@code Event}, escribiendo 
+	 * todos los informes. {@code COMPACT}: como {@code FULL}, pero 
+	 * los informes intermedios se resumen en una sección 
+	 * {@code [unchanged_report]}.
+	 * </p>
+	 */
+	public enum FastForward {
+		OFF, FULL, COMPACT
+	}
+
+	/**
+	 * Tarea de avance de un tramo de la lista de {@code Road}s,
+	 * que se divide recursivamente hasta llegar a {@code batch}
+	 * {@code Road}s.
+	 */
+	@SuppressWarnings("serial")
+	private static class RoadAdvanceTask extends RecursiveAction {
+
+		private List<Road> roads;
+		private int from, to, batch;
+
+		public RoadAdvanceTask(List<Road> roads, int from, int to, int batch) {
+			this.roads = roads;
+			this.from = from;
+			this.to = to;
+			this.batch = batch;
+		}
+
+		@Override
+		protected void compute() {
+			if ( to - from <= batch ) {
+				for (int i = from; i < to; ++i) {
+					roads.get(i).proceed();
+				}
+			}
+			else {
+				int mid = (from + to) >>> 1;
+				invokeAll(
+					new RoadAdvanceTask(roads, from, mid, batch),
+					new RoadAdvanceTask(roads, mid, to, batch)
+				);
+			}
 		}
 	}
 	
@@ -62,6 +176,30 @@ public class TrafficSimulation {
 
 
 	// ** ATRIBUTOS ** //
+	/**
+	 * Número máximo de {@code Road}s que avanza secuencialmente
+	 * una {@code RoadAdvanceTask}, si no se fija otro.
+	 */
+	public static final int DEFAULT_ROAD_BATCH_SIZE = 256;
+
+	/**
+	 * Tiempo máximo que se espera a que terminen los
+	 * hilos de trabajo al cerrar el simulador.
+	 */
+	private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+	/**
+	 * Etiqueta de la sección que resume los informes
+	 * omitidos en modo {@code COMPACT}.
+	 */
+	private static final String UNCHANGED_TAG = "unchanged_report";
+
+	/**
+	 * Cabecera y versión del formato de los puntos de control.
+	 */
+	private static final int CHECKPOINT_MAGIC = 0x54534350; // "TSCP"
+	private static final int CHECKPOINT_VERSION = 3;
+
 	/**
 	 * Mapa de eventos donde: {@code Integer} representa 
 	 * el tiempo de ejecución de un evento, {@code Event} 
@@ -71,9 +209,16 @@ public class TrafficSimulation {
 	private MultiTreeMap<Integer, Event> events = new MultiTreeMap<>();
 
 	/**
-	 * Lista con los {@code Listener}s registrados en el simulador.
+	 * Generadores de demanda activos, que crean
+	 * {@code Vehicle}s en cada tick.
 	 */
-	private List<Listener> listeners = new ArrayList<>();
+	private List<DemandGenerator> demand = new ArrayList<>();
+
+	/**
+	 * {@code Listener}s registrados en el simulador, 
+	 * según el {@code EventType} al que se suscriben.
+	 */
+	private Map<EventType, List<Listener>> listeners = new EnumMap<>(EventType.class);
 
 	/**
 	 * Mapa de simulación.
@@ -84,6 +229,79 @@ public class TrafficSimulation {
 	 * Tiempo actual de la simulación.
 	 */
 	private int time = 0;
+
+	/**
+	 * Pool de hilos en el que avanzan las {@code Road}s.
+	 * Si es {@code null}, el avance es secuencial.
+	 */
+	private ForkJoinPool roadPool = null;
+
+	/**
+	 * Número máximo de {@code Road}s que avanza
+	 * secuencialmente cada tarea de {@code roadPool}.
+	 */
+	private int roadBatchSize = DEFAULT_ROAD_BATCH_SIZE;
+
+	/**
+	 * Pool de hilos en el que avanzan las regiones del
+	 * mapa, cada una con sus {@code Road}s y {@code Junction}s.
+	 * Si no es {@code null}, sustituye a {@code roadPool}.
+	 */
+	private ExecutorService regionPool = null;
+
+	/**
+	 * Número de regiones en que se divide el mapa.
+	 */
+	private int regionWorkers = 1;
+
+	/**
+	 * Región del mapa que simula este proceso en una 
+	 * simulación distribuida, o {@code -1} si las 
+	 * simula todas.
+	 */
+	private int localRegion = -1;
+
+	/**
+	 * Ticks entre dos tomas de costes del recálculo de
+	 * rutas, o 0 si está desactivado.
+	 */
+	private int reroutePeriod = 0;
+
+	/**
+	 * Costes mínimos que conserva el recálculo de rutas.
+	 */
+	private int rerouteBudget = Rerouter.DEFAULT_FIELD_BUDGET;
+
+	/**
+	 * Modo de avance rápido en los periodos en reposo.
+	 */
+	private FastForward fastForward = FastForward.OFF;
+
+	/**
+	 * Fichero de autoguardado y número de ticks entre 
+	 * puntos de control. Con {@code autosaveInterval <= 0}
+	 * no se autoguarda.
+	 */
+	private File autosaveFile = null;
+	private int autosaveInterval = 0;
+
+	/**
+	 * Instrumentación de las fases del tick, o 
+	 * {@code null} si no se mide nada.
+	 */
+	private TickMetrics metrics = null;
+
+	/**
+	 * Estadísticas por tick del mapa, o 
+	 * {@code null} si no se recogen.
+	 */
+	private StatsCollector stats = null;
+
+	/**
+	 * Eventos de Java Flight Recorder del bucle, o
+	 * {@code null} si no se emiten.
+	 */
+	private FlightEvents flight = null;
 	
 
 
@@ -94,10 +312,13 @@ public class TrafficSimulation {
 
 	// ** CONSTRUCTOR ** //
 	/**
-	 * Constructor vacío del simulador.
+	 * Constructor del simulador, sin {@code Listener}s
+	 * suscritos a ningún {@code EventType}.
 	 */
 	public TrafficSimulation() {
-		/*NADA*/
+		for (EventType type : EventType.values()) {
+			listeners.put(type, new ArrayList<>());
+		}
 	}
 
 
@@ -123,39 +344,99 @@ public class TrafficSimulation {
 		int timeLimit = time + steps - 1;
 
 		// ** //
-		// Bucle de la simulación.
+		// Bucle de la simulación. El tick se cierra en la grabación
+		// aunque falle, pues es el que más interesa.
 		while (time <= timeLimit) {
-			// 1 // EVENTOS //
-			// Se ejecutan los eventos correspondientes a ese tiempo.			
-			try {
-				executeEvents();
-			} catch (SimulationException e1) {
-				fireUpdateEvent(EventType.ERROR, e1.getMessage());
-				break;
+			if (flight != null) {
+				flight.beginTick(time);
 			}
-			
-			// 2 // SIMULACIÓN //
-			proceedAll();
-			
-			//Aviso a Listeners de avance
-			fireUpdateEvent(EventType.ADVANCED, "Advanced error");
-			
-			// Se avanza un tick.
-			time++;
 
-			// 3 // INFORME //
-			// Escribir un informe en OutputStream en 
-			// caso de que no sea nulo
+			boolean executed;
 			try {
-				generateReports(file);
+				executed = executeTick(timeLimit, file);
 			}
-			catch (IOException e) {
-				throw e;
+			finally {
+				if (flight != null) {
+					flight.endTick();
+				}
 			}
 
+			if ( ! executed ) {
+				break;
+			}
 		}
 	}
 
+	/**
+	 * Ejecuta un tick de la simulación o, si no se puede
+	 * mover ningún {@code Vehicle}, el periodo de reposo 
+	 * que empieza en él.
+	 * 
+	 * @param timeLimit 	- último tick a simular
+	 * @param file 			- fichero de salida
+	 * 
+	 * @return 				si se ha ejecutado sin que falle
+	 * 						ningún {@code Event}
+	 * 
+	 * @throws IOException	if an IO error ocurred during
+	 * 						reports generation
+	 */
+	private boolean executeTick(int timeLimit, OutputStream file) 
+			throws IOException {
+
+		long tickStart = now();
+
+		// 1 // EVENTOS //
+		// Se ejecutan los eventos correspondientes a ese tiempo.			
+		try {
+			executeEvents();
+		} catch (SimulationException e1) {
+			fireUpdateEvent(EventType.ERROR, e1.getMessage());
+			return false;
+		}
+		lap(Phase.EVENTS, tickStart);
+
+		// * // REPOSO //
+		// Si ningún vehículo puede moverse, se salta 
+		// directamente hasta el siguiente evento.
+		if ( fastForward != FastForward.OFF && isQuiescent() ) {
+			int firstSkipped = time;
+			skipQuiescentTicks(timeLimit, file);
+			if (metrics != null) {
+				metrics.addQuiescentTicks(time - firstSkipped);
+			}
+			lap(Phase.QUIESCENT, tickStart);
+			return true;
+		}
+		
+		// 2 // SIMULACIÓN //
+		proceedAll();
+		
+		//Aviso a Listeners de avance
+		fireUpdateEvent(EventType.ADVANCED, "Advanced error");
+		
+		// Se avanza un tick.
+		time++;
+
+		// 3 // INFORME //
+		// Escribir un informe en OutputStream en 
+		// caso de que no sea nulo
+		long reportStart = now();
+		try {
+			generateReports(file);
+		}
+		catch (IOException e) {
+			throw e;
+		}
+		lap(Phase.REPORTS, reportStart);
+
+		// 4 // PUNTO DE CONTROL //
+		checkAutosave();
+
+		lap(Phase.TICK, tickStart);
+		return true;
+	}
+
 	/**
 	 * Llama a los métodos de avance de {@Road}s
 	 * y de {@Junction}s.
@@ -167,12 +448,17 @@ public class TrafficSimulation {
 	 * 								with a non-existint 
 	 * 								{@code SimObject}
 	 */
-	private void executeEvents() throws SimulationException{
+	void executeEvents() throws SimulationException{
 		if ( events.get(time) != null ) {
 			for ( Event event : events.get(time) ) {
+				if (flight != null) {
+					flight.beginExecution(event, time);
+				}
 				try {
 					event.execute(this);
-					
+					if (metrics != null) {
+						metrics.addEventsExecuted(1);
+					}
 				}
 				catch (AlreadyExistingSimObjException e1) {
 					throw new SimulationException(
@@ -183,9 +469,33 @@ public class TrafficSimulation {
 					throw new SimulationException(
 						"Simulation error:\n" + e2.getMessage()
 					);
-				}		
+				}
+				finally {
+					if (flight != null) {
+						flight.endExecution();
+					}
+				}
+			}
+		}
+
+		// Los generadores de demanda crean después los
+		// vehículos del tick, en el orden en que empezaron.
+		try {
+			for ( DemandGenerator generator : demand ) {
+				generator.spawn(this);
 			}
 		}
+		catch (AlreadyExistingSimObjException e1) {
+			throw new SimulationException(
+				"Simulation error:\n" + e1.getMessage()
+			);
+		}
+		catch (NonExistingSimObjException e2) {
+			throw new SimulationException(
+				"Simulation error:\n" + e2.getMessage()
+			);
+		}
+		demand.removeIf(generator -> generator.isFinished(time));
 	}
 
 	/**
@@ -193,18 +503,287 @@ public class TrafficSimulation {
 	 * y de {@code Junction}s.
 	 */
 	private void proceedAll(){
-		// Para cada carretera, los coches que no están 
-		// esperando avanzan.
-		for ( Road road : roadMap.getRoads().values() ) {
-			road.proceed();
+		// Los costes del recálculo de rutas se toman
+		// antes de que se mueva ningún vehículo.
+		if (flight != null) {
+			flight.beginPhase(FlightEvents.REROUTING, time);
+		}
+		roadMap.refreshRerouting(time);
+
+		if (regionPool != null) {
+			proceedRegions();
+		}
+		else {
+			proceedSequential();
+		}
+
+		// Los vehículos que han llegado a su destino ya no cambian:
+		// se archivan y dejan de recorrerse en cada tick.
+		if (flight != null) {
+			flight.beginPhase(FlightEvents.ARCHIVE, time);
+		}
+		roadMap.archiveArrivals(time);
+		if (flight != null) {
+			flight.endPhase();
+		}
+
+		// Muestra del tick que se cierra, con el tiempo de su informe.
+		if (stats != null) {
+			stats.sample(time + 1, roadMap);
+		}
+	}
+
+	/**
+	 * Avanza primero las {@code Road}s activas (en paralelo 
+	 * si hay {@code roadPool}) y después las {@code Junction}s.
+	 */
+	private void proceedSequential() {
+		// Para cada carretera con vehículos circulando, los coches 
+		// que no están esperando avanzan (en las vacías no ocurre 
+		// nada). Cada Road sólo modifica sus propios vehículos y 
+		// colas, así que pueden avanzar en cualquier orden o en 
+		// paralelo sin alterar el resultado.
+		long roadStart = now();
+		if (flight != null) {
+			flight.beginPhase(FlightEvents.ROADS, time);
+		}
+		Set<Road> activeRoads = roadMap.getActiveRoads();
+		if (roadPool == null) {
+			for ( Road road : activeRoads ) {
+				road.proceed();
+			}
+		}
+		else {
+			List<Road> roads = new ArrayList<>(activeRoads);
+			roadPool.invoke(new RoadAdvanceTask(roads, 0, roads.size(), roadBatchSize));
+		}
+		if (metrics != null) {
+			long moved = 0;
+			for ( Road road : activeRoads ) {
+				moved += road.getMovedVehicles();
+			}
+			metrics.addVehiclesMoved(moved);
+		}
+		// Las carreteras que se han vaciado dejan de estar activas.
+		activeRoads.removeIf(Road::noVehiclesOnRoad);
+		long junctionStart = lap(Phase.ROADS, roadStart);
+		if (flight != null) {
+			flight.beginPhase(FlightEvents.JUNCTIONS, time);
 		}
 
 		// Para cada cruce, avanzan los vehículos a la espera que 
 		// puedan y se actualiza el semáforo y los tiempos de 
 		// avería de los vehículos a la espera.
+		long crossed = 0;
 		for ( Junction junction : roadMap.getJunctions().values() ) {
 			junction.proceed();			
+			crossed += junction.getCrossedVehicles();
+		}
+		if (metrics != null) {
+			metrics.addJunctionCrossings(crossed);
+		}
+		lap(Phase.JUNCTIONS, junctionStart);
+	}
+
+	/**
+	 * Avanza cada región del mapa en un hilo de 
+	 * {@code regionPool} y, cuando han terminado todas, 
+	 * mete en sus {@code Road}s a los {@code Vehicle}s que 
+	 * han cruzado de una región a otra. El resultado es el
+	 * mismo que el del avance secuencial.
+	 */
+	private void proceedRegions() {
+		long regionStart = now();
+		if (flight != null) {
+			flight.beginPhase(FlightEvents.REGIONS, time);
+		}
+		List<Future<?>> pending = new ArrayList<>();
+		for ( Region region : roadMap.getRegions() ) {
+			pending.add( regionPool.submit(region::proceed) );
+		}
+
+		// Se espera a todas aunque se interrumpa el hilo,
+		// para no dejar el tick a medias.
+		boolean interrupted = false;
+		for ( Future<?> region : pending ) {
+			while (true) {
+				try {
+					region.get();
+					break;
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+				catch (ExecutionException e) {
+					if ( e.getCause() instanceof RuntimeException ) {
+						throw (RuntimeException) e.getCause();
+					}
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+
+		roadMap.flushBoundaries();
+
+		if (metrics != null) {
+			for ( Region region : roadMap.getRegions() ) {
+				metrics.addVehiclesMoved(region.getMovedVehicles());
+				metrics.addJunctionCrossings(region.getCrossedVehicles());
+			}
+		}
+		lap(Phase.REGIONS, regionStart);
+	}
+
+	/**
+	 * Marca de tiempo para medir una fase del tick, 
+	 * o 0 si no hay instrumentación.
+	 * 
+	 * @return 	instante actual en nanosegundos
+	 */
+	private long now() {
+		return (metrics != null) ? System.nanoTime() : 0;
+	}
+
+	/**
+	 * Guarda en {@code metrics} la duración de una fase 
+	 * que empezó en {@code start}.
+	 * 
+	 * @param phase 	- fase medida
+	 * @param start 	- marca de inicio de la fase
+	 * 
+	 * @return 			marca de fin de la fase, o 0
+	 * 					si no hay instrumentación
+	 */
+	private long lap(Phase phase, long start) {
+		if (metrics == null) {
+			return 0;
+		}
+		long end = System.nanoTime();
+		metrics.record(phase, end - start);
+		return end;
+	}
+
+	/**
+	 * Comprueba si la simulación está en reposo: no hay 
+	 * {@code Vehicle}s circulando ni en ninguna cola de 
+	 * espera, de forma que hasta el siguiente {@code Event} 
+	 * sólo pueden cambiar los semáforos. Mientras haya 
+	 * generadores de demanda activos nunca lo está.
+	 * 
+	 * @return 	si la simulación está en reposo
+	 */
+	private boolean isQuiescent() {
+		if ( ! demand.isEmpty() || roadMap.hasActiveRoads() ) {
+			return false;
 		}
+		for ( Road road : roadMap.getRoads().values() ) {
+			if ( ! road.noVehiclesWaiting() ) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * <p>
+	 * Avanza la simulación en reposo hasta el tick anterior 
+	 * al siguiente {@code Event} (o hasta {@code timeLimit}). 
+	 * En cada tick sólo avanzan las {@code Junction}s; los 
+	 * informes de {@code Road}s y {@code Vehicle}s no cambian 
+	 * salvo el tiempo, así que se reutilizan.
+	 * </p> <p>
+	 * En modo {@code COMPACT}, los informes intermedios se 
+	 * sustituyen por una sección {@code [unchanged_report]} 
+	 * con el intervalo omitido, seguida del informe completo 
+	 * del último tick.
+	 * </p>
+	 * 
+	 * @param timeLimit 	- último tick a simular
+	 * @param file 			- fichero de salida
+	 * 
+	 * @throws IOException	if an IO error ocurred during
+	 * 						reports generation
+	 */
+	private void skipQuiescentTicks(int timeLimit, OutputStream file) 
+			throws IOException {
+
+		// Último tick sin eventos.
+		Integer nextEvent = events.higherKey(time);
+		int lastTick = (nextEvent == null) ? 
+			timeLimit : Math.min(nextEvent - 1, timeLimit);
+		int firstReport = time + 1;
+
+		// Informes invariantes durante el reposo.
+		List<IniSection> stillReports = new ArrayList<>();
+		for (Road road : roadMap.getRoads().values() ) {
+			stillReports.add(road.generateIniSection(firstReport));
+		}
+		addVehicleReports(firstReport, stillReports::add);
+
+		// Las Junctions sólo avanzan, de una vez, los ticks 
+		// en los que alguien observa sus semáforos.
+		int idle = 0;
+		while (time <= lastTick) {
+			idle++;
+			time++;
+
+			boolean last = (time > lastTick);
+			if ( last || fastForward == FastForward.FULL || 
+					stats != null || isAutosaveDue() ) {
+				for ( Junction junction : roadMap.getJunctions().values() ) {
+					junction.proceedIdle(idle);
+				}
+				idle = 0;
+			}
+
+			if (stats != null) {
+				stats.sample(time, roadMap);
+			}
+			checkAutosave();
+
+			if ( fastForward == FastForward.FULL || last ) {
+				fireUpdateEvent(EventType.ADVANCED, "Advanced error");
+				if (file != null) {
+					// Marca de informes omitidos.
+					if ( last && time > firstReport && 
+							fastForward == FastForward.COMPACT ) {
+						IniSection unchanged = new IniSection(UNCHANGED_TAG);
+						unchanged.setValue("from", firstReport);
+						unchanged.setValue("to", time - 1);
+
+						Ini marker = new Ini();
+						marker.addsection(unchanged);
+						storeReports(marker, file);
+					}
+					storeReports(generateQuiescentReports(stillReports), file);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Genera el {@code Ini} de un tick en reposo: las 
+	 * {@code Junction}s se informan de nuevo y al resto 
+	 * sólo se les actualiza el tiempo.
+	 * 
+	 * @param stillReports 	- informes de {@code Road}s
+	 * 						y {@code Vehicle}s, en orden
+	 * 
+	 * @return 				{@code Ini} con los informes
+	 */
+	private Ini generateQuiescentReports(List<IniSection> stillReports) {
+		Ini iniFile = new Ini();
+		for (Junction junction : roadMap.getJunctions().values() ) {
+			iniFile.addsection(junction.generateIniSection(time));
+		}
+		for (IniSection section : stillReports) {
+			section.setValue("time", time);
+			iniFile.addsection(section);
+		}
+		return iniFile;
 	}
 
 	/**
@@ -216,17 +795,38 @@ public class TrafficSimulation {
 			throws IOException {
 		
 		if (file != null) {
-			Ini iniFile = generateIniReports();
-			
-			// Guardado en el outputStream
-			try{
-				iniFile.store(file);
-			}
-			catch (IOException e) {
-				throw new IOException(
-					"Error when saving file on time " + time + ":" + 
-					e.getMessage()
-				);
+			storeReports(generateIniReports(), file);
+		}
+	}
+
+	/**
+	 * Vuelca un {@code Ini} de informes en el fichero de salida.
+	 * 
+	 * @param iniFile 	- informes a guardar
+	 * @param file 		- fichero de salida
+	 */
+	private void storeReports(Ini iniFile, OutputStream file) 
+			throws IOException {
+
+		OutputStream out = (metrics != null) ? 
+			metrics.countReportBytes(file) : file;
+		if (flight != null) {
+			out = flight.beginReport(time, iniFile.getSections().size(), out);
+		}
+
+		// Guardado en el outputStream
+		try{
+			iniFile.store(out);
+		}
+		catch (IOException e) {
+			throw new IOException(
+				"Error when saving file on time " + time + ":" + 
+				e.getMessage()
+			);
+		}
+		finally {
+			if (flight != null) {
+				flight.endReport();
 			}
 		}
 	}
@@ -265,6 +865,36 @@ public class TrafficSimulation {
 		events.putValue(e.getTime(), e);
 		fireUpdateEvent(EventType.NEW_EVENT, "New Event error.");
 	}
+
+	/**
+	 * Añade varios {@code Event}s al mapa de {@code Event}s
+	 * de la simulación con un único aviso {@code NEW_EVENT}.
+	 * Si algún {@code Event} tiene un tiempo menor que el de
+	 * la simulación, no se añade ninguno.
+	 * 
+	 * @param added 	- {@code Event}s a añadir
+	 * 
+	 * @throws IllegalArgumentException		if any event time lower 
+	 * 										than sim time
+	 */
+	public void pushEvents(List<Event> added) 
+			throws IllegalArgumentException {
+		
+		// Comprueba los tiempos.
+		for (Event e : added) {
+			if( e.getTime() < time ) {
+				throw new IllegalArgumentException(
+					"Event time is lower than current time."
+				);
+			}
+		}
+
+		// Añade los eventos al mapa.
+		for (Event e : added) {
+			events.putValue(e.getTime(), e);
+		}
+		fireUpdateEvent(EventType.NEW_EVENT, "New Event error.");
+	}
 	
 	
 	
@@ -306,10 +936,34 @@ public class TrafficSimulation {
 			iniFile.addsection(road.generateIniSection(time));
 		}
 		//Vehicles:
+		addVehicleReports(time, iniFile::addsection);
+		return iniFile;
+	}
+
+	/**
+	 * Genera los informes de los {@code Vehicle}s, tanto 
+	 * los que circulan como los archivados, en el orden 
+	 * en que se crearon.
+	 * 
+	 * @param simTime 	- tiempo de los informes
+	 * @param out 		- destino de los informes
+	 */
+	private void addVehicleReports(int simTime, Consumer<IniSection> out) {
+		VehicleArchive archive = roadMap.getVehicleArchive();
+		int next = 0;
+
 		for (Vehicle vehicle : roadMap.getVehicles().values() ) {
-			iniFile.addsection(vehicle.generateIniSection(time));
+			while ( next < archive.size() && archive.getSerial(
+					archive.getBySerial(next)) < vehicle.getSerial() ) {
+				out.accept(archive.generateIniSection(
+					archive.getBySerial(next++), simTime));
+			}
+			out.accept(vehicle.generateIniSection(simTime));
+		}
+		while ( next < archive.size() ) {
+			out.accept(archive.generateIniSection(
+				archive.getBySerial(next++), simTime));
 		}
-		return iniFile;
 	}
 
 	/**
@@ -343,7 +997,8 @@ public class TrafficSimulation {
 	/**
 	 * Añade tiempo de avería a los {@code Vehicle}s con 
 	 * los ID de la lista. Además comprueba que existan 
-	 * los {@code Vehicle}s referenciados por esos IDs.
+	 * los {@code Vehicle}s referenciados por esos IDs,
+	 * ya sea circulando o archivados al llegar.
 	 * 
 	 * @param vehiclesID 	- lista de IDs de los 
 	 * 						{@code Vehicle}s a 
@@ -354,12 +1009,22 @@ public class TrafficSimulation {
 	public void makeFaulty(List<String> vehiclesID, int breakDuration) 
 			throws NonExistingSimObjException {
 
+		VehicleArchive archive = roadMap.getVehicleArchive();
+
 		for ( String id : vehiclesID ) {
 			Vehicle toBreak = roadMap.getVehicleWithID(id);
+			int archived = archive.indexOf(id);
 
 			if ( toBreak != null ) {
 				toBreak.setBreakdownTime(breakDuration);
 			}
+			else if ( archived >= 0 ) {
+				archive.addBreakdownTime(archived, breakDuration);
+			}
+			else if ( localRegion >= 0 ) {
+				// Está en otro proceso, que lo avería. El
+				// coordinador ya ha comprobado que existe.
+			}
 			else {
 				throw new NonExistingSimObjException(
 					"Vehicle with id: " + id + " to make faulty not found."
@@ -379,12 +1044,24 @@ public class TrafficSimulation {
 		roadMap.addVehicle(newVehicle);
 	}
 
+	/**
+	 * Pone en marcha un generador de demanda, que crea
+	 * {@code Vehicle}s desde el tick actual.
+	 * 
+	 * @param generator 	- generador a añadir
+	 */
+	public void addDemand(DemandGenerator generator) {
+		generator.begin();
+		demand.add(generator);
+	}
+
 	/**
 	 * Añade una {@code Road} al {@code RoadMap}.
 	 * 
 	 * @param newRoad 	- {@code Road} a añadir
 	 */
 	public void addRoad(Road newRoad) {
+		checkStaticNetwork();
 		// Se mete en el RoadMap.
 		roadMap.addRoad(newRoad);
 	}
@@ -395,10 +1072,49 @@ public class TrafficSimulation {
 	 * @param newJunction 	- {@code Junction} a añadir
 	 */
 	public void addJunction(Junction newJunction) {
+		checkStaticNetwork();
 		// Se mete en el RoadMap
 		roadMap.addJunction(newJunction);
 	}
 
+	/**
+	 * En una simulación distribuida, las regiones no pueden
+	 * cambiar una vez que hay {@code Vehicle}s repartidos
+	 * entre los procesos.
+	 * 
+	 * @throws IllegalStateException 	if the network changes
+	 * 									after the first vehicle
+	 */
+	private void checkStaticNetwork() {
+		if ( localRegion >= 0 && roadMap.getNumCreatedVehicles() > 0 ) {
+			throw new IllegalStateException(
+				"Distributed simulation needs every junction and road " +
+				"to be created before the first vehicle."
+			);
+		}
+	}
+
+	/**
+	 * Comprueba si un {@code Vehicle} nuevo con la ruta 
+	 * {@code tripID} debe crearse en este proceso: su primera
+	 * {@code Road} llega a una {@code Junction} de la región
+	 * local. Si la ruta no es válida se crea, para que falle
+	 * igual que en una simulación no distribuida.
+	 * 
+	 * @param tripID 	- ids de las {@code Junction}s
+	 * 					de la ruta
+	 * 
+	 * @return 			si el {@code Vehicle} es local
+	 */
+	public boolean ownsNewVehicle(List<String> tripID) {
+		if ( localRegion < 0 ) {
+			return true;
+		}
+
+		int region = roadMap.getRegionOf(tripID);
+		return region < 0 || region == localRegion;
+	}
+
 	
 
 
@@ -409,17 +1125,39 @@ public class TrafficSimulation {
 
 	// ** MÉTODOS DE LISTENERS ** //
 	/**
-	 *  Añade un {@code Listener} a la lista 
-	 * (además, implementa {@code REGISTERED}).
+	 *  Añade un {@code Listener} suscrito a todos 
+	 * los {@code EventType}s (además, implementa 
+	 * {@code REGISTERED}).
 	 * 
 	 *  @param l 	{@code Listener} a añadir
 	 */
 	public void addSimulatorListener(Listener l) {
-		listeners.add(l);
-		UpdateEvent ue = new UpdateEvent(EventType.REGISTERED);
-		// evita pseudo-recursividad
-		// Error?
-		SwingUtilities.invokeLater(() -> l.update(ue, "Registered error."));
+		addSimulatorListener(l, EventType.values());
+	}
+
+	/**
+	 * Añade un {@code Listener} que sólo recibe los 
+	 * {@code EventType}s indicados. Si ninguno está 
+	 * suscrito a un {@code EventType}, el simulador 
+	 * ni siquiera crea el {@code UpdateEvent}.
+	 * 
+	 * @param l 		- {@code Listener} a añadir
+	 * @param types 	- {@code EventType}s que recibe
+	 */
+	public void addSimulatorListener(Listener l, EventType... types) {
+		Set<EventType> subscribed = EnumSet.noneOf(EventType.class);
+		subscribed.addAll(Arrays.asList(types));
+
+		for (EventType type : subscribed) {
+			listeners.get(type).add(l);
+		}
+
+		if ( subscribed.contains(EventType.REGISTERED) ) {
+			UpdateEvent ue = new UpdateEvent(EventType.REGISTERED);
+			// evita pseudo-recursividad
+			// Error?
+			SwingUtilities.invokeLater(() -> l.update(ue, "Registered error."));
+		}
 	}
 
 	/**
@@ -428,17 +1166,24 @@ public class TrafficSimulation {
 	 *  @param l 	{@code Listener} a eliminar
 	 */
 	public void removeListener(Listener l) {
-		listeners.remove(l);
+		for (List<Listener> subscribed : listeners.values()) {
+			subscribed.remove(l);
+		}
 	}
 
 	/**
-	 * Método de uso interno que informa a todos 
-	 * los {@code Listener}s registrados de un 
+	 * Método de uso interno que informa a los 
+	 * {@code Listener}s suscritos de un 
 	 * {@code EventType} en simulación.
 	 */
 	private void fireUpdateEvent(EventType type, String error) {
+		List<Listener> subscribed = listeners.get(type);
+		if ( subscribed.isEmpty() ) {
+			return;
+		}
+
 		UpdateEvent ue = new UpdateEvent(type);
-		for (Listener l : listeners) {
+		for (Listener l : subscribed) {
 			l.update(ue, error);
 		}
 	}
@@ -449,7 +1194,11 @@ public class TrafficSimulation {
 	 */
 	public void reset() {
 		events.clear();
+		demand.clear();
 		roadMap.clear();
+		if (stats != null) {
+			stats.clear();
+		}
 		time = 0;
 		fireUpdateEvent(EventType.RESET, "Reset error");
 	}
@@ -458,6 +1207,339 @@ public class TrafficSimulation {
 
 
 
+	// ** MÉTODOS DE PUNTOS DE CONTROL ** //
+	/**
+	 * Escribe un punto de control con el estado completo de 
+	 * la simulación: tiempo actual, {@code Event}s (pendientes
+	 * y ejecutados), {@code RoadMap} y generadores de demanda
+	 * activos, incluido el estado de semáforos, colas y 
+	 * generadores aleatorios.
+	 * <p>
+	 * El formato es binario y explícito: los objetos se escriben
+	 * con sus parámetros y se enlazan por id, y el estado de los
+	 * {@code Vehicle}s son las columnas del {@code VehicleStore}.
+	 * </p>
+	 * 
+	 * @param out 	- flujo de salida
+	 * 
+	 * @throws IOException	if the checkpoint could not 
+	 * 						be written
+	 */
+	public void saveCheckpoint(OutputStream out) throws IOException {
+		DataOutputStream data = new DataOutputStream(
+				new BufferedOutputStream(out));
+		data.writeInt(CHECKPOINT_MAGIC);
+		data.writeInt(CHECKPOINT_VERSION);
+		data.writeInt(time);
+
+		data.writeInt( events.sizeOfValues() );
+		for ( Event e : events.innerValues() ) {
+			EventCodec.write(e, data);
+		}
+
+		roadMap.write(data);
+
+		data.writeInt( demand.size() );
+		for ( DemandGenerator generator : demand ) {
+			generator.write(data);
+			generator.writeState(data);
+		}
+		data.flush();
+	}
+
+	/**
+	 * Sustituye el estado de la simulación por el de un 
+	 * punto de control escrito con {@link #saveCheckpoint}.
+	 * Los {@code Listener}s y la configuración se mantienen.
+	 * Si el punto de control no es válido, la simulación
+	 * no cambia.
+	 * 
+	 * @param in 	- flujo de entrada
+	 * 
+	 * @throws IOException	if the input is not a valid
+	 * 						checkpoint
+	 */
+	public void loadCheckpoint(InputStream in) throws IOException {
+		DataInputStream data = new DataInputStream(
+				new BufferedInputStream(in));
+		if ( data.readInt() != CHECKPOINT_MAGIC ) {
+			throw new IOException("Not a simulation checkpoint.");
+		}
+		int version = data.readInt();
+		if ( version != CHECKPOINT_VERSION ) {
+			throw new IOException(
+				"Unsupported checkpoint version: " + version
+			);
+		}
+
+		int newTime = data.readInt();
+
+		MultiTreeMap<Integer, Event> newEvents = new MultiTreeMap<>();
+		for (int n = SimObjCodec.readCount(data); n > 0; --n) {
+			Event e = EventCodec.read(data);
+			newEvents.putValue(e.getTime(), e);
+		}
+
+		RoadMap newMap = RoadMap.read(data);
+
+		List<DemandGenerator> newDemand = new ArrayList<>();
+		for (int n = SimObjCodec.readCount(data); n > 0; --n) {
+			DemandGenerator generator = DemandGenerator.read(data);
+			generator.readState(data);
+			newDemand.add(generator);
+		}
+
+		time = newTime;
+		events = newEvents;
+		roadMap = newMap;
+		demand = newDemand;
+		roadMap.setRegions(regionWorkers);
+		roadMap.setRerouting(reroutePeriod);
+		roadMap.setRerouteBudget(rerouteBudget);
+		fireUpdateEvent(EventType.NEW_EVENT, "New Event error.");
+	}
+
+	/**
+	 * Escribe un punto de control en {@code autosaveFile}
+	 * si el tiempo actual es múltiplo de {@code autosaveInterval}.
+	 * Se escribe primero en un fichero temporal, de forma que 
+	 * un fallo a mitad no estropea el punto de control anterior.
+	 * 
+	 * @throws IOException	if the checkpoint could not 
+	 * 						be written
+	 */
+	private void checkAutosave() throws IOException {
+		if ( isAutosaveDue() ) {
+			File tmp = new File(autosaveFile.getPath() + ".tmp");
+
+			try ( OutputStream out = new FileOutputStream(tmp) ) {
+				saveCheckpoint(out);
+			}
+			Files.move(tmp.toPath(), autosaveFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Comprueba si toca escribir un punto de
+	 * control en el tick actual.
+	 * 
+	 * @return 	si está activo el autoguardado y 
+	 * 			{@code time} es múltiplo del intervalo
+	 */
+	private boolean isAutosaveDue() {
+		return autosaveInterval > 0 && time % autosaveInterval == 0;
+	}
+
+	/**
+	 * Activa el autoguardado de puntos de control.
+	 * 
+	 * @param file 		- fichero del punto de control
+	 * @param interval 	- ticks entre puntos de control
+	 * 					({@code <= 0} lo desactiva)
+	 */
+	public void setAutosave(File file, int interval) {
+		autosaveFile = file;
+		autosaveInterval = (file != null) ? interval : 0;
+	}
+
+
+
+
+
+	// ** MÉTODOS DE CONFIGURACIÓN ** //
+	/**
+	 * Fija el número de hilos con los que avanzan las
+	 * {@code Road}s en cada tick. Con {@code workers <= 1}
+	 * el avance vuelve a ser secuencial.
+	 * 
+	 * @param workers 	- número de hilos de trabajo
+	 */
+	public void setRoadWorkers(int workers) {
+		shutdown(roadPool);
+
+		roadPool = (workers > 1) ? new ForkJoinPool(workers) : null;
+	}
+
+	/**
+	 * Fija el número máximo de {@code Road}s que avanza cada
+	 * hilo sin repartirlas más. Las listas de {@code Road}s
+	 * activas más cortas avanzan en un solo hilo.
+	 * 
+	 * @param size 	- {@code Road}s por tarea (por defecto,
+	 * 				{@link #DEFAULT_ROAD_BATCH_SIZE})
+	 * 
+	 * @throws IllegalArgumentException 	if size is not positive
+	 */
+	public void setRoadBatchSize(int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException(
+				"Invalid road batch size: " + size
+			);
+		}
+
+		roadBatchSize = size;
+	}
+
+	/**
+	 * Divide el mapa en {@code workers} regiones que avanzan
+	 * cada una en su propio hilo. Con {@code workers <= 1} 
+	 * el mapa deja de dividirse. Si está activo, sustituye 
+	 * al avance en paralelo de {@link #setRoadWorkers(int)}.
+	 * 
+	 * @param workers 	- número de regiones e hilos
+	 */
+	public void setRegionWorkers(int workers) {
+		shutdown(regionPool);
+
+		regionWorkers = Math.max(workers, 1);
+		regionPool = (workers > 1) ? 
+			Executors.newFixedThreadPool(workers, r -> {
+				Thread t = new Thread(r, "region-worker");
+				t.setDaemon(true);
+				return t;
+			}) : null;
+		roadMap.setRegions(regionWorkers);
+	}
+
+	/**
+	 * Activa el recálculo de rutas según la congestión: los
+	 * {@code Vehicle}s pueden cambiar el resto de su ruta al
+	 * salir de cada {@code Junction}, con los tiempos de
+	 * recorrido tomados cada {@code period} ticks. Con
+	 * {@code period <= 0} siguen siempre su ruta.
+	 * 
+	 * @param period 	- ticks entre dos tomas de costes
+	 */
+	public void setReroutePeriod(int period) {
+		reroutePeriod = Math.max(period, 0);
+		roadMap.setRerouting(reroutePeriod);
+	}
+
+	/**
+	 * Fija cuántos costes mínimos (uno por {@code Junction} y
+	 * destino) conserva a la vez el recálculo de rutas. Con
+	 * más destinos de los que caben, los usados hace más
+	 * tiempo se recalculan cuando se vuelven a pedir.
+	 * 
+	 * @param budget 	- costes mínimos que se conservan
+	 * 					(por defecto, 
+	 * 					{@link Rerouter#DEFAULT_FIELD_BUDGET})
+	 * 
+	 * @throws IllegalArgumentException 	if budget is not positive
+	 */
+	public void setRerouteBudget(int budget) {
+		if (budget < 1) {
+			throw new IllegalArgumentException(
+				"Invalid rerouting budget: " + budget
+			);
+		}
+
+		rerouteBudget = budget;
+		roadMap.setRerouteBudget(rerouteBudget);
+	}
+
+	/**
+	 * Hace que el simulador sólo avance una de las 
+	 * {@code regions} regiones del mapa, como proceso
+	 * de una simulación distribuida.
+	 * 
+	 * @param regions 	- número de regiones
+	 * @param rank 		- región local
+	 */
+	void setLocalRegion(int regions, int rank) {
+		setRegionWorkers(1);
+		roadMap.setRegions(regions);
+		localRegion = rank;
+	}
+
+	/**
+	 * Para los hilos de trabajo de {@link #setRoadWorkers(int)} 
+	 * y {@link #setRegionWorkers(int)} y espera a que terminen.
+	 * El simulador se puede seguir usando, pero avanza 
+	 * secuencialmente hasta que se vuelvan a fijar.
+	 */
+	@Override
+	public void close() {
+		shutdown(roadPool);
+		shutdown(regionPool);
+		roadPool = null;
+		regionPool = null;
+	}
+
+	/**
+	 * Para un pool de hilos de trabajo, si lo hay, y espera 
+	 * a que terminen: entre dos ticks no tienen tareas.
+	 */
+	private static void shutdown(ExecutorService pool) {
+		if (pool == null) {
+			return;
+		}
+
+		pool.shutdown();
+		try {
+			pool.awaitTermination(CLOSE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Archiva los {@code Vehicle}s llegados y avanza 
+	 * el reloj, cerrando un tick.
+	 */
+	void finishTick() {
+		roadMap.archiveArrivals(time);
+		time++;
+	}
+
+	/**
+	 * Activa la medición de las fases de cada tick en
+	 * {@code tickMetrics}. Con {@code null} se desactiva.
+	 * 
+	 * @param tickMetrics 	- acumuladores de la medición
+	 */
+	public void setMetrics(TickMetrics tickMetrics) {
+		metrics = tickMetrics;
+	}
+
+	/**
+	 * Activa la recogida de estadísticas del mapa al 
+	 * final de cada tick en {@code collector}. Con 
+	 * {@code null} se desactiva.
+	 * 
+	 * @param collector 	- series de estadísticas
+	 */
+	public void setStats(StatsCollector collector) {
+		stats = collector;
+	}
+
+	/**
+	 * Activa la emisión de eventos de Java Flight Recorder
+	 * en el bucle de la simulación. Con {@code null} se 
+	 * desactiva.
+	 * 
+	 * @param events 	- emisor de los eventos
+	 */
+	public void setFlightEvents(FlightEvents events) {
+		flight = events;
+	}
+
+	/**
+	 * Fija el modo de avance rápido en los periodos
+	 * en los que ningún {@code Vehicle} puede moverse.
+	 * 
+	 * @param mode 	- modo de avance rápido
+	 */
+	public void setFastForward(FastForward mode) {
+		fastForward = mode;
+	}
+
+
+
+
+
 	// ** MÉTODOS DE ACCESO ** //
 	/**
 	 * Devuelve el mapa de la simulación.
@@ -468,6 +1550,24 @@ public class TrafficSimulation {
 		return roadMap;
 	}
 
+	/**
+	 * Devuelve la instrumentación de las fases del tick.
+	 * 
+	 * @return 	{@code TickMetrics} activa, o {@code null}
+	 */
+	public TickMetrics getMetrics() {
+		return metrics;
+	}
+
+	/**
+	 * Devuelve las estadísticas por tick del mapa.
+	 * 
+	 * @return 	{@code StatsCollector} activo, o {@code null}
+	 */
+	public StatsCollector getStats() {
+		return stats;
+	}
+
 	/**
 	 * Devuelve el tiempo actual de la simulación.
 	 * 
@@ -0,0 +1,124 @@
+package es.ucm.fdi.util;
+
+/**
+ * Counter-based random generator. The n-th draw is a pure function of
+ * (seed, n): the 48-bit linear congruential state after n steps is
+ * computed directly by jumping ahead, instead of being carried from one
+ * draw to the next.
+ *
+ * It uses the same recurrence and derivations as {@link java.util.Random},
+ * so for a given seed it yields exactly the same sequence, but its only
+ * state is the seed and the number of draws taken so far.
+ */
+public final class CounterRandom {
+
+    private static final long MULTIPLIER = 0x5DEECE66DL;
+    private static final long ADDEND = 0xBL;
+    private static final long MASK = (1L << 48) - 1;
+    private static final double DOUBLE_UNIT = 0x1.0p-53;
+
+    private final long seed;
+    private long counter = 0;
+
+    /**
+     * Creates a generator positioned at its first draw.
+     * @param seed the seed, as given to {@code new Random(seed)}
+     */
+    public CounterRandom(long seed) {
+        this.seed = seed;
+    }
+
+    /**
+     * Creates a generator positioned after {@code counter} draws,
+     * as returned by {@link #getCounter()}.
+     * @param seed the seed
+     * @param counter number of draws already taken
+     */
+    public CounterRandom(long seed, long counter) {
+        this.seed = seed;
+        this.counter = counter;
+    }
+
+    /**
+     * Returns the generator state after {@code n} steps from {@code seed}.
+     * Runs in O(log n) by composing the affine step {@code x -> a*x + c}.
+     * @param seed the seed
+     * @param n number of steps
+     * @return 48-bit state
+     */
+    public static long state(long seed, long n) {
+        long accMul = 1, accAdd = 0;
+        long curMul = MULTIPLIER, curAdd = ADDEND;
+
+        while (n > 0) {
+            if ((n & 1) != 0) {
+                accMul = (accMul * curMul) & MASK;
+                accAdd = (accAdd * curMul + curAdd) & MASK;
+            }
+            curAdd = ((curMul + 1) * curAdd) & MASK;
+            curMul = (curMul * curMul) & MASK;
+            n >>>= 1;
+        }
+
+        long initial = (seed ^ MULTIPLIER) & MASK;
+        return (accMul * initial + accAdd) & MASK;
+    }
+
+    /**
+     * Returns the {@code n}-th (1-based) group of {@code bits} random bits
+     * for {@code seed}, as {@code java.util.Random.next(bits)} would.
+     * @param seed the seed
+     * @param n index of the draw
+     * @param bits number of random bits (at most 32)
+     * @return random bits
+     */
+    public static int next(long seed, long n, int bits) {
+        return (int) (state(seed, n) >>> (48 - bits));
+    }
+
+    private int next(int bits) {
+        return next(seed, ++counter, bits);
+    }
+
+    /**
+     * @return uniformly distributed double in [0, 1)
+     */
+    public double nextDouble() {
+        return (((long) next(26) << 27) + next(27)) * DOUBLE_UNIT;
+    }
+
+    /**
+     * @param bound upper bound (exclusive), must be positive
+     * @return uniformly distributed int in [0, bound)
+     */
+    public int nextInt(int bound) {
+        if (bound <= 0) {
+            throw new IllegalArgumentException("bound must be positive");
+        }
+
+        int r = next(31);
+        int m = bound - 1;
+        if ((bound & m) == 0) {
+            r = (int) ((bound * (long) r) >> 31);
+        } else {
+            for (int u = r; u - (r = u % bound) + m < 0; u = next(31)) {
+                /* rejected: draw again */
+            }
+        }
+        return r;
+    }
+
+    /**
+     * @return number of draws of 32 or fewer bits taken so far
+     */
+    public long getCounter() {
+        return counter;
+    }
+
+    /**
+     * @return the seed of this generator
+     */
+    public long getSeed() {
+        return seed;
+    }
+}
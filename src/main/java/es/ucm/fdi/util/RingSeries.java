@@ -0,0 +1,199 @@
+package es.ucm.fdi.util;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size ring buffer of time series, one per row, sampled
+ * together. Every {@code window} consecutive samples are folded
+ * into a single slot holding their minimum, maximum and sum, so
+ * a series keeps the last {@code capacity} windows whatever the
+ * length of the run. With {@code window = 1} each slot is a raw
+ * sample.
+ *
+ * Values are kept in flat primitive arrays indexed by
+ * {@code row * capacity + slot}: 16 bytes per row and slot.
+ * Rows can be added at any time; a row added in the middle of a
+ * window counts as 0 for the samples taken before it existed.
+ */
+public final class RingSeries {
+
+    private final int capacity;
+    private final int window;
+
+    private int rows = 0;
+    private int[] min = new int[0];
+    private int[] max = new int[0];
+    private long[] sum = new long[0];
+
+    /** First tick and number of samples of each slot. */
+    private final int[] startTick;
+    private final int[] samples;
+
+    /** Oldest slot, number of slots in use and slot being filled. */
+    private int head = 0;
+    private int used = 0;
+    private int current = -1;
+
+    /**
+     * Creates an empty buffer with no rows.
+     * @param capacity number of windows kept per row
+     * @param window samples folded into each window
+     * @throws IllegalArgumentException if capacity or window are not positive
+     */
+    public RingSeries(int capacity, int window) {
+        if (capacity < 1 || window < 1) {
+            throw new IllegalArgumentException(
+                "Invalid series capacity or window: " + capacity + ", " + window);
+        }
+        this.capacity = capacity;
+        this.window = window;
+        startTick = new int[capacity];
+        samples = new int[capacity];
+    }
+
+    /**
+     * Grows the buffer to at least {@code count} rows. The new
+     * rows read as 0 in every window taken so far, so this must be
+     * called before {@link #beginSample} and not in the middle of
+     * a sample.
+     * @param count number of rows
+     */
+    public void ensureRows(int count) {
+        if (count > rows) {
+            min = Arrays.copyOf(min, count * capacity);
+            max = Arrays.copyOf(max, count * capacity);
+            sum = Arrays.copyOf(sum, count * capacity);
+            rows = count;
+        }
+    }
+
+    /**
+     * Starts a sample of every row, opening a new window
+     * (and dropping the oldest one if full) when needed.
+     * Every row must then be given its value with {@link #add}.
+     * @param tick tick of the sample
+     */
+    public void beginSample(int tick) {
+        if (current < 0 || samples[current] == window) {
+            if (used == capacity) {
+                head = (head + 1) % capacity;
+                used--;
+            }
+            current = (head + used) % capacity;
+            used++;
+
+            startTick[current] = tick;
+            samples[current] = 0;
+            for (int r = 0; r < rows; ++r) {
+                int i = r * capacity + current;
+                min[i] = Integer.MAX_VALUE;
+                max[i] = Integer.MIN_VALUE;
+                sum[i] = 0;
+            }
+        }
+        samples[current]++;
+    }
+
+    /**
+     * Adds the value of {@code row} to the current sample.
+     * @param row row index
+     * @param value sampled value
+     */
+    public void add(int row, int value) {
+        int i = row * capacity + current;
+        if (value < min[i]) {
+            min[i] = value;
+        }
+        if (value > max[i]) {
+            max[i] = value;
+        }
+        sum[i] += value;
+    }
+
+    /** Discards every window and row. */
+    public void clear() {
+        rows = 0;
+        min = new int[0];
+        max = new int[0];
+        sum = new long[0];
+        head = 0;
+        used = 0;
+        current = -1;
+    }
+
+    /**
+     * Returns the number of windows kept, including
+     * the one still being filled.
+     * @return windows in the buffer
+     */
+    public int size() {
+        return used;
+    }
+
+    /** @return number of rows */
+    public int rows() {
+        return rows;
+    }
+
+    /** @return samples folded into each window */
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * @param w window, 0 being the oldest kept
+     * @return tick of the first sample of the window
+     */
+    public int getStartTick(int w) {
+        return startTick[slot(w)];
+    }
+
+    /**
+     * @param w window, 0 being the oldest kept
+     * @return number of samples taken in the window
+     */
+    public int getSamples(int w) {
+        return samples[slot(w)];
+    }
+
+    /**
+     * @param row row index
+     * @param w window, 0 being the oldest kept
+     * @return minimum value of the row in the window
+     */
+    public int getMin(int row, int w) {
+        return min[index(row, w)];
+    }
+
+    /**
+     * @param row row index
+     * @param w window, 0 being the oldest kept
+     * @return maximum value of the row in the window
+     */
+    public int getMax(int row, int w) {
+        return max[index(row, w)];
+    }
+
+    /**
+     * @param row row index
+     * @param w window, 0 being the oldest kept
+     * @return mean value of the row in the window
+     */
+    public double getMean(int row, int w) {
+        return (double) sum[index(row, w)] / samples[slot(w)];
+    }
+
+    private int slot(int w) {
+        if (w < 0 || w >= used) {
+            throw new IndexOutOfBoundsException("Window: " + w);
+        }
+        return (head + w) % capacity;
+    }
+
+    private int index(int row, int w) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row: " + row);
+        }
+        return row * capacity + slot(w);
+    }
+}
@@ -66,6 +66,29 @@ public class SimGraph extends JPanel {
      * {@code _graphComp}.
      */
     public void generateGraph() {
+        setGraph( buildGraph(roadMap) );
+    }
+
+    /**
+     * Muestra un {@code Graph} ya construido.
+     * 
+     * @param graph     - grafo a mostrar
+     */
+    public void setGraph(Graph graph) {
+        _graphComp.setGraph(graph);
+    }
+
+    /**
+     * Construye el {@code Graph} del estado actual de un 
+     * {@code RoadMap}. No modifica componentes de Swing, 
+     * por lo que puede llamarse desde el hilo de la simulación.
+     * 
+     * @param roadMap   - mapa de la simulación
+     * 
+     * @return          grafo con cruces, carreteras 
+     *                  y vehículos
+     */
+    public static Graph buildGraph(RoadMap roadMap) {
         // Nuevo grafo y mapa Junction-Node.
         Graph graph = new Graph();
         Map<Junction, Node> junctToNode = new HashMap<>();
@@ -100,8 +123,7 @@ public class SimGraph extends JPanel {
             graph.addEdge(e);
         }
 
-        // Se pasa el grafo al GraphComponent
-        _graphComp.setGraph(graph);
+        return graph;
     }
     
 }
\ No newline at end of file
@@ -0,0 +1,134 @@
+package es.ucm.fdi.view;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import es.ucm.fdi.extra.graphlayout.Graph;
+import es.ucm.fdi.model.SimObj.SimObject;
+import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.util.Describable;
+import es.ucm.fdi.util.TableDataType;
+
+/**
+ * <p>
+ * Instantánea inmutable del estado de la simulación tras
+ * un tick, tomada en el hilo de la simulación para que la
+ * {@code GUI} pueda mostrarla desde el hilo de Swing sin
+ * leer objetos que se están modificando.
+ * </p> <p>
+ * Contiene las filas de las tablas de {@code Junction}s,
+ * {@code Road}s y {@code Vehicle}s y el grafo del mapa.
+ * </p>
+ */
+public final class SimSnapshot {
+
+	// ** CLASE INTERNA ** //
+	/**
+	 * Fila congelada de una tabla: la descripción de un
+	 * {@code SimObject} en el momento de la instantánea.
+	 */
+	public static final class Row implements Describable {
+
+		private final SimObject source;
+		private final Map<TableDataType, Object> data;
+
+		private Row(SimObject obj) {
+			Map<TableDataType, Object> out = new EnumMap<>(TableDataType.class);
+			obj.describe(out);
+
+			source = obj;
+			data = Collections.unmodifiableMap(out);
+		}
+
+		/**
+		 * Devuelve el {@code SimObject} descrito,
+		 * para generar sus informes.
+		 *
+		 * @return 	objeto de simulación
+		 */
+		public SimObject getSource() {
+			return source;
+		}
+
+		@Override
+		public void describe(Map<TableDataType, Object> out) {
+			out.putAll(data);
+		}
+	}
+
+
+
+
+
+
+	// ** ATRIBUTOS ** //
+	private final int time;
+	private final List<Row> junctions;
+	private final List<Row> roads;
+	private final List<Row> vehicles;
+	private final Graph graph;
+
+
+
+
+
+
+	// ** CONSTRUCTOR ** //
+	/**
+	 * Toma una instantánea del {@code RoadMap}. Debe
+	 * llamarse desde el hilo que avanza la simulación,
+	 * entre dos ticks.
+	 *
+	 * @param time 	- tiempo actual de la simulación
+	 * @param map 	- mapa de la simulación
+	 */
+	public SimSnapshot(int time, RoadMap map) {
+		this.time = time;
+		this.junctions = freeze(map.getJunctions().values());
+		this.roads = freeze(map.getRoads().values());
+		this.vehicles = freeze(map.getVehicles().values());
+		this.graph = SimGraph.buildGraph(map);
+	}
+
+	/**
+	 * Congela la descripción de una colección de
+	 * {@code SimObject}s.
+	 */
+	private static List<Row> freeze(Collection<? extends SimObject> objects) {
+		List<Row> rows = new ArrayList<>(objects.size());
+		for (SimObject obj : objects) {
+			rows.add(new Row(obj));
+		}
+		return Collections.unmodifiableList(rows);
+	}
+
+
+
+
+
+
+	// ** MÉTODOS DE ACCESO ** //
+	public int getTime() {
+		return time;
+	}
+
+	public List<Row> getJunctions() {
+		return junctions;
+	}
+
+	public List<Row> getRoads() {
+		return roads;
+	}
+
+	public List<Row> getVehicles() {
+		return vehicles;
+	}
+
+	public Graph getGraph() {
+		return graph;
+	}
+}
@@ -217,12 +217,12 @@ public class SimTable extends JPanel {
 
 
     /**
-     * Método que hace un clear de la tabla, haciendo
-     * un clear de {@code tableElements} y llamando a
+     * Método que hace un clear de la tabla, vaciando
+     * {@code tableElements} y llamando a
      * {@link #update()}.
      */
     public void clear(){
-    	tableElements.clear();
+    	tableElements = new ArrayList<>();
     	update();
     }
 
@@ -257,8 +257,16 @@ public class SimTable extends JPanel {
 
         for (int row = 0; row < tableElements.size(); ++row) {
             if ( (Boolean) model.getValueAt(row, columnIndex) ) {
-                SimObject d = (SimObject) tableElements.get(row);
-                selected.add(d);
+                Describable d = tableElements.get(row);
+
+                // Las filas de una instantánea informan
+                // del objeto que describen.
+                if (d instanceof SimSnapshot.Row) {
+                    selected.add( ((SimSnapshot.Row) d).getSource() );
+                }
+                else {
+                    selected.add( (SimObject) d );
+                }
             }
         }
         
@@ -12,6 +12,7 @@ import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -22,6 +23,7 @@ import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.swing.*;
 import javax.swing.border.Border;
@@ -41,10 +43,12 @@ import es.ucm.fdi.model.SimObj.SimObject;
 import es.ucm.fdi.model.SimObj.Vehicle;
 import es.ucm.fdi.model.events.Event;
 import es.ucm.fdi.model.simulation.RoadMap;
+import es.ucm.fdi.model.simulation.TrafficSimulation;
 import es.ucm.fdi.model.simulation.TrafficSimulation.Listener;
 import es.ucm.fdi.model.simulation.TrafficSimulation.UpdateEvent;
 
 import es.ucm.fdi.util.Describable;
+import es.ucm.fdi.util.EventType;
 import es.ucm.fdi.util.MultiTreeMap;
 import es.ucm.fdi.util.TableDataType;
 
@@ -66,6 +70,9 @@ public class SimWindow extends JFrame implements Listener {
 	private final int INITIAL_STEPS = 1;
 	private final int MIN_TIME = 1;
 	private final int MAX_TIME = 500;
+
+	//Para la simulación en segundo plano (máx. 25 refrescos/s)
+	private final int FRAME_MILLIS = 40;
 	
 	//Para las áreas de texto
 	private final String EVENTS_TITLE = "Events";
@@ -119,7 +126,17 @@ public class SimWindow extends JFrame implements Listener {
 
 	// ** ATRIBUTOS ** //
 	private Controller control;
-	private OutputStream reports = null;
+	private boolean redirectReports = false;
+
+	// Simulación en curso (null si no hay ninguna) y
+	// temporizador que refresca la GUI mientras avanza.
+	private SimulationRunner runner = null;
+	private Timer frameTimer = null;
+	private boolean resetAfterRun = false;
+
+	// Último aviso NEW_EVENT pendiente de mostrar: los
+	// anteriores se descartan sin reconstruir la tabla.
+	private final AtomicReference<UpdateEvent> pendingEvents = new AtomicReference<>();
 
 
 
@@ -217,6 +234,18 @@ public class SimWindow extends JFrame implements Listener {
 					KeyEvent.VK_P, "control shift P", 
 					() -> runSimulator());
 
+	private SimulatorAction pause =
+			new SimulatorAction("Pause", "pause.png", 
+					"Pause or resume the running simulation",
+					KeyEvent.VK_U, "control shift U", 
+					() -> pauseSimulator());
+
+	private SimulatorAction stop =
+			new SimulatorAction("Stop", "stop.png", 
+					"Stop the running simulation",
+					KeyEvent.VK_T, "control shift T", 
+					() -> stopSimulator());
+
 	private SimulatorAction reset =
 			new SimulatorAction("Reset", "reset.png",
 					"Reset the simulator",
@@ -256,15 +285,121 @@ public class SimWindow extends JFrame implements Listener {
 	
 	// ** CLASE INTERNA ** //
 	/**
-	 * Clase interna que representa la
-	 * redirección de los reports a su área de texto.
+	 * <p>
+	 * Clase interna que avanza la simulación en un hilo propio, 
+	 * tick a tick, de forma que la {@code GUI} no se bloquea y 
+	 * la simulación puede pausarse o detenerse entre ticks.
+	 * </p> <p>
+	 * Como mucho una vez cada {@code FRAME_MILLIS} se deja en 
+	 * {@code latest} una {@code SimSnapshot}; el temporizador 
+	 * de la {@code GUI} recoge sólo la última, junto con los 
+	 * informes acumulados.
+	 * </p>
 	 */
-	private class ReportStream extends OutputStream {
+	private class SimulationRunner implements Runnable {
+
+		private final int steps;
+		private final boolean withReports;
+
+		private final AtomicReference<SimSnapshot> latest = new AtomicReference<>();
+		private final StringBuilder pendingReports = new StringBuilder();
 
-		public void write(int arg0) throws IOException {
-			reportsTextArea.append("" + (char) arg0);			
+		private volatile boolean cancelled = false;
+		private volatile boolean finished = false;
+		private volatile IOException failure = null;
+		private boolean paused = false;
+
+		public SimulationRunner(int steps, boolean withReports) {
+			this.steps = steps;
+			this.withReports = withReports;
+		}
+
+		@Override
+		public void run() {
+			TrafficSimulation sim = control.getSimulator();
+			ByteArrayOutputStream tickReports = 
+				withReports ? new ByteArrayOutputStream() : null;
+			long frameNanos = FRAME_MILLIS * 1000000L;
+			long lastPublish = System.nanoTime();
+
+			try {
+				for (int i = 0; i < steps && ! cancelled; ++i) {
+					if ( ! waitWhilePaused() ) {
+						break;
+					}
+
+					int before = sim.getCurrentTime();
+					sim.execute(1, tickReports);
+
+					if (tickReports != null) {
+						synchronized (pendingReports) {
+							pendingReports.append(tickReports.toString());
+						}
+						tickReports.reset();
+					}
+
+					// Error en la simulación: el tiempo no avanza.
+					if (sim.getCurrentTime() == before) {
+						break;
+					}
+
+					long now = System.nanoTime();
+					if (now - lastPublish >= frameNanos) {
+						latest.set( new SimSnapshot(sim.getCurrentTime(), sim.getRoadMap()) );
+						lastPublish = now;
+					}
+				}
+			}
+			catch (IOException e) {
+				failure = e;
+			}
+			finally {
+				latest.set( new SimSnapshot(sim.getCurrentTime(), sim.getRoadMap()) );
+				finished = true;
+			}
+		}
+
+		/**
+		 * Espera mientras la simulación está pausada.
+		 * 
+		 * @return 	si debe continuar
+		 */
+		private synchronized boolean waitWhilePaused() {
+			while (paused && ! cancelled) {
+				try {
+					wait();
+				}
+				catch (InterruptedException e) {
+					return false;
+				}
+			}
+			return ! cancelled;
+		}
+
+		public synchronized void togglePause() {
+			paused = ! paused;
+			notifyAll();
+		}
+
+		public synchronized boolean isPaused() {
+			return paused;
+		}
+
+		public synchronized void cancel() {
+			cancelled = true;
+			notifyAll();
+		}
+
+		/**
+		 * Devuelve y vacía los informes acumulados.
+		 */
+		public String takeReports() {
+			synchronized (pendingReports) {
+				String text = pendingReports.toString();
+				pendingReports.setLength(0);
+				return text;
+			}
 		}
-		
 	}
 
 
@@ -366,6 +501,8 @@ public class SimWindow extends JFrame implements Listener {
 		fileMenu.add(exit);
 		
 		simulatorMenu.add(run);
+		simulatorMenu.add(pause);
+		simulatorMenu.add(stop);
 		simulatorMenu.add(reset);
 		
 		
@@ -401,9 +538,13 @@ public class SimWindow extends JFrame implements Listener {
 		
 		toolBar.add(insertEvents);
 		toolBar.add(run);
+		toolBar.add(pause);
+		toolBar.add(stop);
 		toolBar.add(reset);
 		insertEvents.setEnabled(false);
 		run.setEnabled(false);
+		pause.setEnabled(false);
+		stop.setEnabled(false);
 		reset.setEnabled(false);
 		
 		toolBar.addSeparator();
@@ -482,8 +623,10 @@ public class SimWindow extends JFrame implements Listener {
 	 * Creación de la tabla de eventos.
 	 */
 	private void addEventsView() {
+		// Copia: la tabla se actualiza con los avisos NEW_EVENT
+		// y no debe leer la cola mientras avanza la simulación.
 		MultiTreeMap<Integer, Event> eventsMap = control.getSimulator().getEvents();
-		List<Event> eventsList = eventsMap.valuesList();
+		List<Event> eventsList = new ArrayList<>( eventsMap.valuesList() );
 
 		eventsTable = new SimTable(eventDataHeaders, eventsList);
 		
@@ -652,32 +795,34 @@ public class SimWindow extends JFrame implements Listener {
 	 */
 	@Override
 	public void update(UpdateEvent ue, String error) {
+		// Avisos desde el hilo de la simulación: los avances se
+		// muestran mediante instantáneas y el resto se reenvía
+		// al hilo de Swing.
+		if ( ! SwingUtilities.isEventDispatchThread() ) {
+			if (ue.getEvent() == EventType.NEW_EVENT) {
+				pendingEvents.set(ue);
+				SwingUtilities.invokeLater(() -> {
+					if ( pendingEvents.compareAndSet(ue, null) ) {
+						update(ue, error);
+					}
+				});
+			}
+			else if (ue.getEvent() != EventType.ADVANCED) {
+				SwingUtilities.invokeLater(() -> update(ue, error));
+			}
+			return;
+		}
+
 		switch(ue.getEvent()){
 		case NEW_EVENT :
-			List<Event> addedEvents = ue.getEventQueue().valuesList();
+			List<Event> addedEvents = ue.getEventList();
 			eventsTable.setList(addedEvents);
 			infoText.setText("Events added to the simulator.");
 			break;
 		case ADVANCED :
-			timeViewer.setText("" + (control.getExecutionTime() + 1));
-			
-			List<Junction> addedJunctions = 
-				new ArrayList<Junction>(ue.getRoadMap().
-						getJunctions().values());
-			junctionsTable.setList(addedJunctions);
-			
-			List<Vehicle> addedVehicles = 
-				new ArrayList<Vehicle>(ue.getRoadMap().
-						getVehicles().values());
-			vehiclesTable.setList(addedVehicles);
-			
-			List<Road> addedRoads = 
-				new ArrayList<Road>(ue.getRoadMap().
-						getRoads().values());
-			roadsTable.setList(addedRoads);
-			
-			simGraph.generateGraph();
-			
+			// Se avisa antes de incrementar el tiempo.
+			showSnapshot(new SimSnapshot(
+				ue.getCurrentTime() + 1, ue.getRoadMap()));
 			infoText.setText("Simulation playing...");
 			break;
 		case RESET :
@@ -696,7 +841,13 @@ public class SimWindow extends JFrame implements Listener {
 		case ERROR:
 			JOptionPane.showMessageDialog(this,
 					error, "Simulator error", JOptionPane.WARNING_MESSAGE);
-			resetSimulator();
+			// No se resetea mientras termina el hilo de la simulación.
+			if (runner != null) {
+				resetAfterRun = true;
+			}
+			else {
+				resetSimulator();
+			}
 			break;
 		default : break;
 		}
@@ -803,27 +954,129 @@ public class SimWindow extends JFrame implements Listener {
 
 	/**
 	 * Método que ejecuta el simulador el número 
-	 * de pasos que el usuario haya seleccionado.
+	 * de pasos que el usuario haya seleccionado,
+	 * en un hilo aparte para no bloquear la GUI.
 	 */
 	private void runSimulator() {
-		try {
-			generateRep.setEnabled(true);
-			control.getSimulator().execute((int) stepsSpinner.getValue(),
-					reports);
+		if (runner != null) {
+			return;
+		}
 
-			// Se actualiza la tabla de eventos.
-			int minTime = control.getSimulator().getCurrentTime();
-			
-			updateEventsTable(minTime);
-			if(reports != null){
-				clearRep.setEnabled(true);
-				saveRep.setEnabled(true);
-			}
-		} catch (IOException e) {
+		runner = new SimulationRunner((int) stepsSpinner.getValue(),
+				redirectReports);
+		setRunningActions(true);
+		infoText.setText("Simulation playing...");
+
+		// Refresco de la GUI con la última instantánea.
+		frameTimer = new Timer(FRAME_MILLIS, e -> refreshFrame());
+		frameTimer.start();
+
+		Thread simThread = new Thread(runner, "simulation");
+		simThread.setDaemon(true);
+		simThread.start();
+	}
+
+	/**
+	 * Pausa o reanuda la simulación en curso.
+	 */
+	private void pauseSimulator() {
+		if (runner != null) {
+			runner.togglePause();
+			infoText.setText(runner.isPaused() ? 
+				"Simulation paused." : "Simulation playing...");
+		}
+	}
+
+	/**
+	 * Detiene la simulación en curso tras el tick actual.
+	 */
+	private void stopSimulator() {
+		if (runner != null) {
+			runner.cancel();
+		}
+	}
+
+	/**
+	 * Recoge la última instantánea y los informes de la 
+	 * simulación en curso y, si ha terminado, restaura 
+	 * las acciones.
+	 */
+	private void refreshFrame() {
+		// Se lee antes de recoger para no perder la última.
+		boolean finished = runner.finished;
+
+		String newReports = runner.takeReports();
+		if ( ! newReports.isEmpty() ) {
+			reportsTextArea.append(newReports);
+		}
+
+		SimSnapshot snapshot = runner.latest.getAndSet(null);
+		if (snapshot != null) {
+			showSnapshot(snapshot);
+		}
+
+		if (finished) {
+			onRunFinished();
+		}
+	}
+
+	/**
+	 * Restaura la GUI al terminar la simulación en curso.
+	 */
+	private void onRunFinished() {
+		frameTimer.stop();
+		IOException failure = runner.failure;
+		runner = null;
+		frameTimer = null;
+		setRunningActions(false);
+
+		// Se actualiza la tabla de eventos.
+		int minTime = control.getSimulator().getCurrentTime();
+		updateEventsTable(minTime);
+		infoText.setText("Simulation stopped at time " + minTime + ".");
+
+		if (redirectReports && ! reportsTextArea.getText().isEmpty()) {
+			clearRep.setEnabled(true);
+			saveRep.setEnabled(true);
+		}
+		if (failure != null) {
 			generateRep.setEnabled(false);
 			JOptionPane.showMessageDialog(this,
-					e.getMessage());
+					failure.getMessage());
 		}
+		if (resetAfterRun) {
+			resetAfterRun = false;
+			resetSimulator();
+		}
+	}
+
+	/**
+	 * Activa o desactiva las acciones según haya
+	 * una simulación en curso.
+	 * 
+	 * @param running 	- si hay simulación en curso
+	 */
+	private void setRunningActions(boolean running) {
+		run.setEnabled(! running);
+		reset.setEnabled(! running);
+		insertEvents.setEnabled(! running && ! eventsTextArea.getText().isEmpty());
+		generateRep.setEnabled(! running);
+		pause.setEnabled(running);
+		stop.setEnabled(running);
+	}
+
+	/**
+	 * Muestra una instantánea en las tablas,
+	 * el grafo y el tiempo actual.
+	 * 
+	 * @param snapshot 	- instantánea a mostrar
+	 */
+	private void showSnapshot(SimSnapshot snapshot) {
+		timeViewer.setText("" + snapshot.getTime());
+		junctionsTable.setList(snapshot.getJunctions());
+		roadsTable.setList(snapshot.getRoads());
+		vehiclesTable.setList(snapshot.getVehicles());
+		simGraph.setGraph(snapshot.getGraph());
 	}
 	
 	/**
@@ -866,10 +1119,7 @@ public class SimWindow extends JFrame implements Listener {
 	 * a zona de reports.
 	 */
 	private void changeOutput(){
-		if(reports == null){
-			reports = new ReportStream();
-		}
-		else reports = null;
+		redirectReports = ! redirectReports;
 	}
 
 	/**
@@ -8,8 +8,10 @@ import es.ucm.fdi.ini.IniSection;
 import es.ucm.fdi.model.events.Event;
 import es.ucm.fdi.model.events.FaultyVehicle;
 import es.ucm.fdi.model.events.NewJunction;
+import es.ucm.fdi.model.events.NewODVehicle;
 import es.ucm.fdi.model.events.NewRoad;
 import es.ucm.fdi.model.events.NewVehicle;
+import es.ucm.fdi.model.simulation.RouteCache;
 
 import static org.junit.Assert.*;
 
@@ -66,6 +68,20 @@ public class EventParserTest {
 		current = parser.parse(iniV1);
 		assertEquals("vehicle builder test", v1, current);
 		
+		//Testeo de NewODVehicleBuilder
+		NewODVehicle od1 = new NewODVehicle(4, "v2", 4, "j1", "j2", 
+				RouteCache.Metric.TIME);
+		IniSection iniOD1 = new IniSection("new_od_vehicle");
+		iniOD1.setValue("time", 4);
+		iniOD1.setValue("id", "v2");
+		iniOD1.setValue("max_speed", 4);
+		iniOD1.setValue("origin", "j1");
+		iniOD1.setValue("destination", "j2");
+		iniOD1.setValue("route_by", "time");
+		current = parser.parse(iniOD1);
+		assertEquals("od vehicle builder test", od1, current);
+		assertEquals("od vehicle hash test", od1.hashCode(), current.hashCode());
+		
 		//Testeo de FaultyVehicleBuilder
 		IniSection iniFV = new IniSection("make_vehicle_faulty");
 		iniFV.setValue("time", 5);
@@ -1,7 +1,27 @@
 package es.ucm.fdi.launcher;
 
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 import org.junit.Test;
 
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.simulation.SimulationException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 /**
@@ -36,4 +56,152 @@ public class FullTest {
     public void testError() throws Exception {
         runTests("err", true);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testConcurrentScenarios() throws Exception {
+        List<File> scenarios = ScenarioRunner.listScenarios("src/test/resources/examples/advanced");
+        List<ScenarioRunner.Result> results = new ScenarioRunner(4, 10).run(scenarios);
+
+        assertEquals(scenarios.size(), results.size());
+        for (ScenarioRunner.Result r : results) {
+            assertEquals(r.getScenario().getPath(), ScenarioRunner.Result.Status.OK, r.getStatus());
+        }
+    }
+
+    @Test
+    public void testParameterSweep() throws Exception {
+        ParameterSweep sweep = new ParameterSweep(
+                new Ini("src/test/resources/examples/advanced/14_misc.ini"), 50, 4);
+        sweep.addParameter("new_vehicle.max_speed=10,30,60");
+        sweep.addParameter("seed=1,2");
+        assertEquals(6, sweep.variants().size());
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        assertEquals(0, sweep.run(new PrintStream(table)));
+        // Cabecera más una fila por variante, cada una con sus parámetros
+        String[] lines = table.toString().trim().split("\\R");
+        assertEquals(7, lines.length);
+        assertEquals("run\tnew_vehicle.max_speed\tseed\tarrived\tvehicles"
+                + "\tmean_kilometrage\tmean_queue\tmax_queue\tms", lines[0]);
+
+        Set<String> rows = new HashSet<>();
+        for (int i = 1; i < lines.length; ++i) {
+            String[] row = lines[i].split("\t");
+            assertEquals(9, row.length);
+            assertEquals(sweep.variants().get(Integer.parseInt(row[0])),
+                    variant(row[1], row[2]));
+            rows.add(row[0]);
+            // Los vehículos del escenario y ninguna cola negativa
+            assertEquals("3", row[4]);
+            assertTrue(Integer.parseInt(row[3]) <= 3);
+            assertTrue(Integer.parseInt(row[7]) >= 0);
+        }
+        assertEquals(6, rows.size());
+    }
+
+    @Test
+    public void testParameterSweepErrors() throws Exception {
+        ParameterSweep sweep = new ParameterSweep(
+                new Ini("src/test/resources/examples/advanced/14_misc.ini"), 20, 2);
+        sweep.addParameter("new_vehicle.max_speed=10,fast,30");
+
+        ByteArrayOutputStream table = new ByteArrayOutputStream();
+        assertEquals(1, sweep.run(new PrintStream(table)));
+
+        // La fila de error lleva el número y los parámetros de la variante
+        String error = null;
+        for (String line : table.toString().trim().split("\\R")) {
+            if (line.contains("\tERROR\t")) {
+                error = line;
+            }
+        }
+        assertNotNull(error);
+        assertTrue(error, error.startsWith("1\tfast\tERROR\t"));
+
+        // Un parámetro que no sustituye nada no da filas iguales
+        for (String spec : new String[] { "max_sped=10,30", "new_road.seed=1,2" }) {
+            ParameterSweep typo = new ParameterSweep(
+                    new Ini("src/test/resources/examples/advanced/14_misc.ini"), 20, 2);
+            typo.addParameter(spec);
+            table = new ByteArrayOutputStream();
+            try {
+                typo.run(new PrintStream(table));
+                fail("Parameter matching no key: " + spec);
+            } catch (IllegalArgumentException e) {
+                assertEquals(0, table.size());
+            }
+        }
+    }
+
+    private static Map<String, String> variant(String maxSpeed, String seed) {
+        Map<String, String> variant = new LinkedHashMap<>();
+        variant.put("new_vehicle.max_speed", maxSpeed);
+        variant.put("seed", seed);
+        return variant;
+    }
+
+    @Test
+    public void testDistributed() throws Exception {
+        String[] examples = {
+            "src/test/resources/examples/new/N01_complex.ini",
+            "src/test/resources/examples/advanced/14_misc.ini"
+        };
+
+        for (String example : examples) {
+            ByteArrayOutputStream single = new ByteArrayOutputStream();
+            new Controller(new Ini(example), single, 40).executeBatch();
+
+            // Varios procesos dan el mismo informe que uno solo
+            for (int workers : new int[] { 2, 3 }) {
+                ByteArrayOutputStream distributed = new ByteArrayOutputStream();
+                new DistributedSimulation(example, workers, 40).run(distributed);
+                assertArrayEquals(example + " / " + workers,
+                        single.toByteArray(), distributed.toByteArray());
+            }
+        }
+    }
+
+    @Test
+    public void testDistributedErrors() throws Exception {
+        Ini ini = new Ini("src/test/resources/examples/basic/04_faultyVehicle.ini");
+        IniSection faulty = new IniSection("make_vehicle_faulty");
+        faulty.setValue("time", 1);
+        faulty.setValue("vehicles", "v9");
+        faulty.setValue("duration", 2);
+        ini.addsection(faulty);
+
+        // El coordinador comprueba las averías antes de lanzar los procesos
+        File scenario = File.createTempFile("distributed", ".ini");
+        scenario.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(scenario)) {
+            ini.store(out);
+        }
+        try {
+            new DistributedSimulation(scenario.getPath(), 2, 10).run(new ByteArrayOutputStream());
+            fail("Unknown vehicle made faulty");
+        } catch (SimulationException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("v9 to make faulty not found"));
+        }
+
+        // Un proceso que falla envía su traza completa
+        ini = new Ini("src/test/resources/examples/basic/04_faultyVehicle.ini");
+        IniSection road = new IniSection("new_road");
+        road.setValue("time", 2);
+        road.setValue("id", "r9");
+        road.setValue("src", "j1");
+        road.setValue("dest", "j9");
+        road.setValue("max_speed", 20);
+        road.setValue("length", 30);
+        ini.addsection(road);
+        try (OutputStream out = new FileOutputStream(scenario)) {
+            ini.store(out);
+        }
+        try {
+            new DistributedSimulation(scenario.getPath(), 2, 10).run(new ByteArrayOutputStream());
+            fail("Road to a missing junction");
+        } catch (SimulationException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Worker "));
+            assertTrue(e.getMessage(), e.getMessage().contains("\tat es.ucm.fdi."));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package es.ucm.fdi.launcher;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.model.SimObj.Road;
+import es.ucm.fdi.model.simulation.RoadMap;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the synthetic scenario generator
+ */
+public class NetworkGeneratorTest {
+
+	@Test
+	public void generatedScenariosRun() throws Exception {
+		for (String topology : new String[] { "grid", "ring", "random" }) {
+			String spec = topology + ":junctions=400,vehicles=500,seed=5";
+			Ini ini = NetworkGenerator.fromSpec(spec).toIni();
+
+			//Mismo escenario con la misma semilla, también escrito a fichero
+			assertEquals(spec, ini, NetworkGenerator.fromSpec(spec).toIni());
+			ByteArrayOutputStream written = new ByteArrayOutputStream();
+			NetworkGenerator.fromSpec(spec).write(written);
+			assertEquals(spec, ini, new Ini(new ByteArrayInputStream(written.toByteArray())));
+
+			//Hay de todos los tipos
+			String text = ini.toString();
+			for (String type : new String[] { "lanes", "dirt", "rr", "mc" }) {
+				assertTrue(spec + " / " + type, text.contains("type = " + type));
+			}
+
+			//Y se simula sin errores
+			Controller control = new Controller(ini, null, 200);
+			control.executeBatch();
+			RoadMap map = control.getSimulator().getRoadMap();
+			assertTrue(spec, map.getJunctions().size() >= 400);
+			assertEquals(spec, 500, map.getNumCreatedVehicles());
+			assertTrue(spec, map.getVehicleArchive().size() > 0);
+
+			//Todas las Roads van en los dos sentidos
+			for (Road road : map.getRoads().values()) {
+				assertNotNull(spec, map.getRoadBetween(road.getToJunction(),
+						road.getFromJunction()));
+			}
+		}
+	}
+
+	@Test
+	public void invalidSpecs() {
+		String[] specs = { "hexagon", "grid:junctions", "grid:size=3",
+				"ring:lanes=0.8,dirt=0.5", "random:vehicles=-1" };
+		for (String spec : specs) {
+			try {
+				NetworkGenerator.fromSpec(spec);
+				fail(spec);
+			}
+			catch (IllegalArgumentException e) {
+				//Esperado
+			}
+		}
+
+		//Sin parámetros se usan los de por defecto
+		int junctions = 0;
+		for (IniSection section : NetworkGenerator.fromSpec("ring").toIni().getSections()) {
+			if ( section.getTag().equals("new_junction") ) {
+				junctions++;
+			}
+		}
+		assertEquals(1 + 9 * 11, junctions);
+	}
+}
@@ -1,14 +1,42 @@
 package es.ucm.fdi.model.simulation;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
 
 import org.junit.Test;
 
+import es.ucm.fdi.control.Controller;
+import es.ucm.fdi.control.evbuild.EventParser;
+import es.ucm.fdi.ini.Ini;
+import es.ucm.fdi.ini.IniSection;
+import es.ucm.fdi.launcher.NetworkGenerator;
+import es.ucm.fdi.model.SimObj.Junction;
+import es.ucm.fdi.model.SimObj.Road;
 import es.ucm.fdi.model.events.FaultyVehicle;
+import es.ucm.fdi.model.events.NewDemand;
 import es.ucm.fdi.model.events.NewJunction;
 import es.ucm.fdi.model.events.NewRoad;
 import es.ucm.fdi.model.events.NewVehicle;
+import es.ucm.fdi.model.simulation.AsyncListener.Backpressure;
+import es.ucm.fdi.model.simulation.TrafficSimulation.FastForward;
+import es.ucm.fdi.util.EventType;
 import static org.junit.Assert.*;
 
 public class TrafficSimulationTest {
@@ -64,4 +92,964 @@ public class TrafficSimulationTest {
 		
 	}
 	
+	@Test
+	public void lateRoadTest() throws Exception {
+		//El segundo tramo del itinerario se crea después que el vehículo,
+		//que lo busca al llegar a él y termina su ruta
+		String out = runLateRoad(true);
+		assertTrue(out, out.contains("location = (r2,"));
+		assertTrue(out, out.contains("location = arrived"));
+		
+		//Si sigue sin existir, el vehículo se queda esperando en el cruce
+		out = runLateRoad(false);
+		assertFalse(out, out.contains("location = arrived"));
+		assertTrue(out, out.endsWith("location = (r1,30)\n\n"));
+	}
+	
+	@Test
+	public void missingRoadHandleTest() throws Exception {
+		//Un vehículo sin primera carretera no reserva fila en el almacén
+		Ini ini = new Ini();
+		for (int j = 1; j <= 2; ++j) {
+			IniSection junction = new IniSection("new_junction");
+			junction.setValue("time", 0);
+			junction.setValue("id", "j" + j);
+			ini.addsection(junction);
+		}
+		IniSection vehicle = new IniSection("new_vehicle");
+		vehicle.setValue("time", 0);
+		vehicle.setValue("id", "v1");
+		vehicle.setValue("itinerary", "j1,j2");
+		vehicle.setValue("max_speed", 20);
+		ini.addsection(vehicle);
+		
+		List<String> errors = new ArrayList<>();
+		Controller control = new Controller(ini, null, 1);
+		control.getSimulator().addSimulatorListener( 
+				(ue, error) -> errors.add(error), EventType.ERROR);
+		control.executeBatch();
+		assertEquals(errors.toString(), 1, errors.size());
+		assertEquals(0, control.getSimulator().getRoadMap()
+				.getVehicleStore().size());
+	}
+	
+	private static String runLateRoad(boolean withRoad) throws Exception {
+		Ini ini = new Ini();
+		for (int j = 1; j <= 3; ++j) {
+			IniSection junction = new IniSection("new_junction");
+			junction.setValue("time", 0);
+			junction.setValue("id", "j" + j);
+			ini.addsection(junction);
+		}
+		String[][] roads = { { "r1", "j1", "j2", "0" }, { "r2", "j2", "j3", "1" } };
+		for (String[] r : roads) {
+			if ( withRoad || r[0].equals("r1") ) {
+				IniSection road = new IniSection("new_road");
+				road.setValue("time", r[3]);
+				road.setValue("id", r[0]);
+				road.setValue("src", r[1]);
+				road.setValue("dest", r[2]);
+				road.setValue("max_speed", 20);
+				road.setValue("length", 30);
+				ini.addsection(road);
+			}
+		}
+		IniSection vehicle = new IniSection("new_vehicle");
+		vehicle.setValue("time", 0);
+		vehicle.setValue("id", "v1");
+		vehicle.setValue("itinerary", "j1,j2,j3");
+		vehicle.setValue("max_speed", 20);
+		ini.addsection(vehicle);
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		List<String> errors = new ArrayList<>();
+		Controller control = new Controller(ini, out, 5);
+		control.getSimulator().addSimulatorListener( 
+				(ue, error) -> errors.add(error), EventType.ERROR);
+		control.executeBatch();
+		assertTrue(errors.toString(), errors.isEmpty());
+		return out.toString();
+	}
+	
+	@Test
+	public void parallelRoadsTest() throws Exception {
+		String[] examples = {
+			"src/test/resources/examples/basic/10_crossRoadMultipleVehicles.ini",
+			"src/test/resources/examples/advanced/14_misc.ini",
+			"src/test/resources/examples/advanced/15_misc.ini"
+		};
+		
+		//La salida con varios hilos debe ser idéntica byte a byte,
+		//también repartiendo las carreteras de una en una para que
+		//estos mapas pequeños se dividan en varias tareas
+		for (String example : examples) {
+			byte[] sequential = runExample(example, 1);
+			assertArrayEquals(example, sequential, runExample(example, 4));
+			assertArrayEquals(example, sequential, 
+					runExample(example, 4, 1, FastForward.OFF, 10));
+		}
+	}
+	
+	@Test
+	public void closeWorkersTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/14_misc.ini";
+		int regionThreads = countThreads("region-worker");
+		int forkThreads = countThreads("ForkJoinPool-");
+		
+		Controller control = new Controller(new Ini(example), null, 10);
+		control.setRoadWorkers(3);
+		control.setRoadBatchSize(1);
+		control.executeBatch();
+		control.setRegionWorkers(3);
+		control.getSimulator().execute(10, null);
+		assertEquals(regionThreads + 3, countThreads("region-worker"));
+		
+		//Al cerrarlo no queda ningún hilo, y sigue avanzando secuencialmente
+		control.close();
+		assertEquals(regionThreads, countThreads("region-worker"));
+		assertEquals(forkThreads, countThreads("ForkJoinPool-"));
+		control.getSimulator().execute(5, null);
+		assertEquals(25, control.getSimulator().getCurrentTime());
+		
+		try {
+			control.setRoadBatchSize(0);
+			fail("Batch size must be positive");
+		} catch (IllegalArgumentException e) {
+			//Esperado
+		}
+	}
+	
+	private static int countThreads(String prefix) {
+		int count = 0;
+		for (Thread t : Thread.getAllStackTraces().keySet()) {
+			if ( t.isAlive() && t.getName().startsWith(prefix) ) {
+				count++;
+			}
+		}
+		return count;
+	}
+	
+	@Test
+	public void fastForwardTest() throws Exception {
+		String[] examples = {
+			"src/test/resources/examples/basic/00_helloWorld.ini",
+			"src/test/resources/examples/basic/09_crossRoadTwoVehicles.ini",
+			"src/test/resources/examples/advanced/14_misc.ini",
+			"src/test/resources/examples/advanced/15_misc.ini"
+		};
+		
+		//Saltar los ticks en reposo no cambia los informes
+		for (String example : examples) {
+			assertArrayEquals(example, 
+					runExample(example, 1, FastForward.OFF, 100), 
+					runExample(example, 1, FastForward.FULL, 100));
+		}
+		
+		//En modo compacto se resumen los informes omitidos
+		String compact = new String(runExample(examples[0], 1, 
+				FastForward.COMPACT, 100));
+		assertTrue(compact.contains("[unchanged_report]"));
+		assertTrue(compact.contains("time = 100"));
+		assertFalse(compact.contains("time = 99"));
+		
+		//Los ticks saltados se miden aparte de los simulados
+		TickMetrics metrics = new TickMetrics();
+		Controller control = new Controller(new Ini(examples[0]), null, 100);
+		control.setFastForward(FastForward.COMPACT);
+		control.setMetrics(metrics);
+		control.executeBatch();
+		assertTrue(metrics.getQuiescentTicks() > 0);
+		assertEquals(100, metrics.getTicks() + metrics.getQuiescentTicks());
+		assertTrue(metrics.getQuiescent().getCount() > 0);
+	}
+	
+	@Test
+	public void idleJunctionsTest() throws Exception {
+		//Red sin vehículos con los tres tipos de cruce
+		StringBuilder empty = new StringBuilder();
+		String[] types = { "", "type = rr\nmax_time_slice = 4\nmin_time_slice = 2\n", "type = mc\n" };
+		for (int j = 0; j < 3; ++j) {
+			empty.append("[new_junction]\ntime = 0\nid = j" + j + "\n" + types[j] + "\n");
+		}
+		for (int j = 0; j < 3; ++j) {
+			for (int k = 0; k < 3; ++k) {
+				if (j != k) {
+					empty.append("[new_road]\ntime = 0\nid = r" + j + k + "\nsrc = j" + j 
+						+ "\ndest = j" + k + "\nmax_speed = 10\nlength = 10\n\n");
+				}
+			}
+		}
+		Ini emptyIni = new Ini(new ByteArrayInputStream(empty.toString().getBytes()));
+		Ini misc = new Ini("src/test/resources/examples/advanced/14_misc.ini");
+		Ini complex = new Ini("src/test/resources/examples/new/N01_complex.ini");
+		
+		//Los semáforos saltados de una vez acaban igual que avanzando tick a tick
+		for (Ini ini : Arrays.asList(emptyIni, misc, complex)) {
+			for (int ticks : new int[] { 1, 7, 30, 137 }) {
+				assertEquals(ticks + "", lastJunctionReports(ini, FastForward.OFF, ticks), 
+					lastJunctionReports(ini, FastForward.COMPACT, ticks));
+			}
+		}
+	}
+	
+	/**
+	 * Informes de las {@code Junction}s del último 
+	 * tick de simular {@code ticks} ticks.
+	 */
+	private List<String> lastJunctionReports(Ini ini, FastForward mode, 
+			int ticks) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Controller control = new Controller(ini, out, ticks);
+		control.setFastForward(mode);
+		control.executeBatch();
+		
+		List<String> reports = new ArrayList<>();
+		Ini output = new Ini(new ByteArrayInputStream(out.toByteArray()));
+		for (IniSection section : output.getSections()) {
+			if ( section.getTag().equals("junction_report") && 
+					section.getValue("time").equals(ticks + "") ) {
+				reports.add(section.toString());
+			}
+		}
+		assertFalse(reports.isEmpty());
+		return reports;
+	}
+	
+	@Test
+	public void checkpointTest() throws Exception {
+		String[] examples = {
+			"src/test/resources/examples/advanced/14_misc.ini",
+			"src/test/resources/examples/new/N01_complex.ini"
+		};
+		
+		for (String example : examples) {
+			byte[] full = runExample(example, 1, FastForward.OFF, 40);
+			
+			//Primera mitad y punto de control
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Controller first = new Controller(new Ini(example), out, 17);
+			first.executeBatch();
+			
+			ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+			first.getSimulator().saveCheckpoint(checkpoint);
+			
+			//Reanudación hasta el mismo tiempo
+			Controller resumed = new Controller(null, out, 40);
+			resumed.resumeBatch(
+					new ByteArrayInputStream(checkpoint.toByteArray()));
+			
+			assertEquals(40, resumed.getExecutionTime());
+			assertArrayEquals(example, full, out.toByteArray());
+		}
+	}
+	
+	@Test
+	public void regionsTest() throws Exception {
+		String[] examples = {
+			"src/test/resources/examples/basic/10_crossRoadMultipleVehicles.ini",
+			"src/test/resources/examples/advanced/14_misc.ini",
+			"src/test/resources/examples/advanced/15_misc.ini",
+			"src/test/resources/examples/new/N01_complex.ini"
+		};
+		
+		//Con el mapa dividido en regiones la salida es idéntica
+		for (String example : examples) {
+			byte[] sequential = runExample(example, 1, FastForward.OFF, 40);
+			for (int regions : new int[] { 2, 3, 8 }) {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				Controller control = new Controller(new Ini(example), out, 40);
+				control.setRegionWorkers(regions);
+				control.executeBatch();
+				
+				assertArrayEquals(example + " / " + regions, 
+						sequential, out.toByteArray());
+			}
+		}
+	}
+	
+	@Test
+	public void arrivedArchiveTest() throws Exception {
+		String example = "src/test/resources/examples/basic/00_helloWorld.ini";
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Controller control = new Controller(new Ini(example), out, 100);
+		control.executeBatch();
+		RoadMap map = control.getSimulator().getRoadMap();
+		
+		//El vehículo llegado sale del mapa pero sigue existiendo
+		assertTrue(map.getVehicles().isEmpty());
+		assertEquals(1, map.getVehicleArchive().size());
+		assertTrue(map.existsVehicleID("v1"));
+		assertEquals(0, map.getVehicleStore().size());
+		
+		//Y se sigue informando de él
+		String last = new String(out.toByteArray());
+		last = last.substring(last.lastIndexOf("[vehicle_report]"));
+		assertTrue(last.contains("time = 100"));
+		assertTrue(last.contains("location = arrived"));
+	}
+	
+	@Test
+	public void originDestinationTest() throws Exception {
+		String example = "src/test/resources/examples/basic/10_crossRoadMultipleVehicles.ini";
+		byte[] expected = runExample(example, 1, FastForward.OFF, 40);
+		
+		//Los mismos vehículos, dados sólo por origen y destino
+		Ini od = new Ini();
+		for (IniSection section : new Ini(example).getSections()) {
+			if ( section.getTag().equals("new_vehicle") ) {
+				String[] trip = section.getValue("itinerary").split(",");
+				IniSection v = new IniSection("new_od_vehicle");
+				v.setValue("time", section.getValue("time"));
+				v.setValue("id", section.getValue("id"));
+				v.setValue("origin", trip[0]);
+				v.setValue("destination", trip[trip.length - 1]);
+				v.setValue("max_speed", section.getValue("max_speed"));
+				section = v;
+			}
+			od.addsection(section);
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		Controller control = new Controller(od, out, 40);
+		control.executeBatch();
+		assertArrayEquals(expected, out.toByteArray());
+		
+		//Los caminos se calculan una vez y se comparten
+		RoadMap map = control.getSimulator().getRoadMap();
+		RouteCache cache = map.getRouteCache();
+		RouteCache.Route route = cache.getRoute(map.getJunctionWithID("j1"), 
+				map.getJunctionWithID("j3"), RouteCache.Metric.LENGTH);
+		assertEquals(Arrays.asList("j1", "j2", "j3"), route.getIDs());
+		assertSame(route, cache.getRoute(map.getJunctionWithID("j1"), 
+				map.getJunctionWithID("j3"), RouteCache.Metric.LENGTH));
+		assertNull(cache.getRoute(map.getJunctionWithID("j3"), 
+				map.getJunctionWithID("j1"), RouteCache.Metric.LENGTH));
+		try {
+			route.getJunctions().clear();
+			fail("Shared routes must be read-only");
+		} catch (UnsupportedOperationException e) {
+			//Esperado
+		}
+	}
+	
+	@Test
+	public void routeCacheBoundTest() throws Exception {
+		Ini grid = NetworkGenerator.fromSpec(
+				"grid:junctions=100,vehicles=0,seed=1").toIni();
+		Controller control = new Controller(grid, null, 1);
+		control.executeBatch();
+		
+		//Con más orígenes que árboles guardados, sólo se conservan
+		//los caminos de los últimos orígenes
+		RoadMap map = control.getSimulator().getRoadMap();
+		RouteCache cache = map.getRouteCache();
+		List<Junction> junctions = new ArrayList<>(map.getJunctions().values());
+		for (Junction from : junctions) {
+			for (Junction to : junctions) {
+				if (from != to) {
+					assertNotNull(cache.getRoute(from, to, RouteCache.Metric.LENGTH));
+				}
+			}
+		}
+		int n = junctions.size();
+		assertTrue(n > 64);
+		assertEquals(64 * (n - 1), cache.getCachedRoutes());
+	}
+	
+	@Test
+	public void reroutingTest() throws Exception {
+		//Dos caminos de j1 a j4: por j2 (corto) y por j3
+		Ini ini = new Ini();
+		for (int j = 0; j <= 4; ++j) {
+			IniSection junction = new IniSection("new_junction");
+			junction.setValue("time", 0);
+			junction.setValue("id", "j" + j);
+			ini.addsection(junction);
+		}
+		String[][] roads = {
+			{ "r0", "j0", "j1", "10" }, 
+			{ "ra", "j1", "j2", "50" }, { "rb", "j2", "j4", "50" },
+			{ "rc", "j1", "j3", "60" }, { "rd", "j3", "j4", "60" }
+		};
+		for (String[] r : roads) {
+			IniSection road = new IniSection("new_road");
+			road.setValue("time", 0);
+			road.setValue("id", r[0]);
+			road.setValue("src", r[1]);
+			road.setValue("dest", r[2]);
+			road.setValue("max_speed", 50);
+			road.setValue("length", r[3]);
+			ini.addsection(road);
+		}
+		for (int i = 0; i < 30; ++i) {
+			IniSection vehicle = new IniSection("new_vehicle");
+			vehicle.setValue("time", i / 3);
+			vehicle.setValue("id", "v" + i);
+			vehicle.setValue("itinerary", "j0,j1,j2,j4");
+			vehicle.setValue("max_speed", 50);
+			ini.addsection(vehicle);
+		}
+		
+		//Sin recálculo nadie usa el camino por j3
+		ByteArrayOutputStream fixed = new ByteArrayOutputStream();
+		new Controller(ini, fixed, 40).executeBatch();
+		assertFalse(fixed.toString().contains("location = (rc,"));
+		
+		//Con recálculo, parte del tráfico se desvía
+		ByteArrayOutputStream rerouted = new ByteArrayOutputStream();
+		Controller control = new Controller(ini, rerouted, 40);
+		control.setReroutePeriod(2);
+		control.executeBatch();
+		assertTrue(rerouted.toString().contains("location = (rc,"));
+		assertTrue(rerouted.toString().contains("location = (rb,"));
+		assertEquals(30, control.getSimulator().getRoadMap()
+				.getVehicleArchive().size());
+		
+		//Y las decisiones no dependen de las regiones
+		ByteArrayOutputStream regions = new ByteArrayOutputStream();
+		control = new Controller(ini, regions, 40);
+		control.setReroutePeriod(2);
+		control.setRegionWorkers(3);
+		control.executeBatch();
+		assertArrayEquals(rerouted.toByteArray(), regions.toByteArray());
+
+		//Ni de continuar desde un punto de control a mitad de periodo
+		ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+		control = new Controller(ini, resumed, 13);
+		control.setReroutePeriod(2);
+		control.executeBatch();
+		ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+		control.getSimulator().saveCheckpoint(checkpoint);
+
+		control = new Controller(null, resumed, 40);
+		control.setReroutePeriod(2);
+		control.setRegionWorkers(3);
+		control.resumeBatch(new ByteArrayInputStream(checkpoint.toByteArray()));
+		assertArrayEquals(rerouted.toByteArray(), resumed.toByteArray());
+
+		//Ni de cuántos destinos se conservan los costes
+		ByteArrayOutputStream small = new ByteArrayOutputStream();
+		control = new Controller(ini, small, 40);
+		control.setReroutePeriod(2);
+		control.setRerouteBudget(1);
+		control.executeBatch();
+		assertArrayEquals(rerouted.toByteArray(), small.toByteArray());
+		
+		//Con sitio para un solo destino, se descarta el anterior
+		RoadMap map = control.getSimulator().getRoadMap();
+		Junction j1 = map.getJunctionWithID("j1");
+		Rerouter rerouter = new Rerouter(map, 2, map.getJunctions().size());
+		rerouter.refresh(0);
+		rerouter.reroute(j1, map.getJunctionWithID("j4"), new Road[0], 0);
+		rerouter.reroute(j1, map.getJunctionWithID("j2"), new Road[0], 0);
+		assertEquals(1, rerouter.getCachedFields());
+		
+		rerouter = new Rerouter(map, 2);
+		rerouter.refresh(0);
+		rerouter.reroute(j1, map.getJunctionWithID("j4"), new Road[0], 0);
+		rerouter.reroute(j1, map.getJunctionWithID("j2"), new Road[0], 0);
+		assertEquals(2, rerouter.getCachedFields());
+	}
+	
+	@Test
+	public void demandTest() throws Exception {
+		String example = "src/test/resources/examples/basic/10_crossRoadMultipleVehicles.ini";
+		
+		//La red del ejemplo con un único generador de demanda
+		Ini ini = new Ini();
+		for (IniSection section : new Ini(example).getSections()) {
+			if ( ! section.getTag().equals("new_vehicle") ) {
+				ini.addsection(section);
+			}
+		}
+		IniSection demand = new IniSection("new_demand");
+		demand.setValue("time", 2);
+		demand.setValue("end", 30);
+		demand.setValue("id", "d");
+		demand.setValue("rate", "0.5,2");
+		demand.setValue("rate_interval", 5);
+		demand.setValue("itineraries", "j1:j2:j3");
+		demand.setValue("od", "j4:j5,j1:j5");
+		demand.setValue("max_speed", 30);
+		demand.setValue("mix", "vehicle:2,car:1,bike:1");
+		demand.setValue("resistance", 2);
+		demand.setValue("fault_probability", 0.2);
+		demand.setValue("max_fault_duration", 3);
+		demand.setValue("seed", 7);
+		ini.addsection(demand);
+		
+		ByteArrayOutputStream first = new ByteArrayOutputStream();
+		Controller control = new Controller(ini, first, 50);
+		control.executeBatch();
+		
+		//Muchos vehículos de todos los tipos con un solo evento
+		TrafficSimulation sim = control.getSimulator();
+		RoadMap map = sim.getRoadMap();
+		int spawned = ((NewDemand) sim.getEvents().get(2).get(0))
+				.getGenerator().getSpawned();
+		assertTrue(spawned > 20);
+		assertEquals(spawned, map.getNumCreatedVehicles());
+		String report = first.toString();
+		assertTrue(report.contains("id = d_0"));
+		assertTrue(report.contains("type = car"));
+		assertTrue(report.contains("type = bike"));
+		assertFalse(report.contains("id = v1"));
+		assertEquals(10, sim.getEvents().sizeOfValues());
+		
+		//Con la misma semilla, los mismos vehículos
+		ByteArrayOutputStream second = new ByteArrayOutputStream();
+		new Controller(ini, second, 50).executeBatch();
+		assertArrayEquals(first.toByteArray(), second.toByteArray());
+		
+		//También al continuar desde un punto de control
+		ByteArrayOutputStream resumed = new ByteArrayOutputStream();
+		Controller half = new Controller(ini, resumed, 13);
+		half.executeBatch();
+		ByteArrayOutputStream checkpoint = new ByteArrayOutputStream();
+		half.getSimulator().saveCheckpoint(checkpoint);
+		Controller rest = new Controller(null, resumed, 50);
+		rest.resumeBatch(new ByteArrayInputStream(checkpoint.toByteArray()));
+		assertArrayEquals(first.toByteArray(), resumed.toByteArray());
+		
+		//Y con otra semilla, otros
+		demand.setValue("seed", 8);
+		ByteArrayOutputStream other = new ByteArrayOutputStream();
+		new Controller(ini, other, 50).executeBatch();
+		assertFalse(Arrays.equals(first.toByteArray(), other.toByteArray()));
+		
+		//Las rutas se resuelven de nuevo cuando cambia la red
+		demand.setValue("seed", 7);
+		IniSection junction = new IniSection("new_junction");
+		junction.setValue("time", 10);
+		junction.setValue("id", "j9");
+		ini.addsection(junction);
+		int version = map.getNetworkVersion();
+		ByteArrayOutputStream grown = new ByteArrayOutputStream();
+		control = new Controller(ini, grown, 50);
+		control.executeBatch();
+		assertEquals(version + 1, 
+				control.getSimulator().getRoadMap().getNetworkVersion());
+		assertEquals(first.toString().split("\\[vehicle_report\\]").length,
+				grown.toString().split("\\[vehicle_report\\]").length);
+		
+		//Un itinerario sin carretera entre dos cruces es un error
+		//que nombra al generador y a los cruces
+		demand.setValue("itineraries", "j1:j3");
+		List<String> errors = new ArrayList<>();
+		control = new Controller(ini, null, 50);
+		control.getSimulator().addSimulatorListener( 
+				(ue, error) -> errors.add(error), EventType.ERROR);
+		control.executeBatch();
+		assertEquals(1, errors.size());
+		assertTrue(errors.get(0), errors.get(0).contains("j1 to junction j3"));
+		assertTrue(errors.get(0), errors.get(0).contains("demand d "));
+		
+		//Y los eventos iguales tienen el mismo hash
+		es.ucm.fdi.model.events.Event parsed = new EventParser().parse(demand);
+		es.ucm.fdi.model.events.Event again = new EventParser().parse(demand);
+		assertEquals(parsed, again);
+		assertEquals(parsed.hashCode(), again.hashCode());
+	}
+	
+	@Test
+	public void movedVehiclesTest() throws Exception {
+		Ini ini = new Ini();
+		for (int j = 1; j <= 2; ++j) {
+			IniSection junction = new IniSection("new_junction");
+			junction.setValue("time", 0);
+			junction.setValue("id", "j" + j);
+			ini.addsection(junction);
+		}
+		IniSection road = new IniSection("new_road");
+		road.setValue("time", 0);
+		road.setValue("id", "r1");
+		road.setValue("src", "j1");
+		road.setValue("dest", "j2");
+		road.setValue("max_speed", 40);
+		road.setValue("length", 100);
+		ini.addsection(road);
+		IniSection car = new IniSection("new_vehicle");
+		car.setValue("time", 0);
+		car.setValue("id", "v1");
+		car.setValue("itinerary", "j1,j2");
+		car.setValue("max_speed", 5);
+		car.setValue("type", "car");
+		car.setValue("resistance", 4);
+		car.setValue("fault_probability", 1);
+		car.setValue("max_fault_duration", 3);
+		car.setValue("seed", 1);
+		ini.addsection(car);
+		
+		//El coche avanza en el primer tick y se avería al empezar
+		//el segundo, en el que ya no cuenta como movido
+		Controller control = new Controller(ini, null, 2);
+		TickMetrics metrics = new TickMetrics();
+		control.setMetrics(metrics);
+		control.executeBatch();
+		assertEquals(1, metrics.getVehiclesMoved());
+		assertTrue(control.getSimulator().getRoadMap()
+				.getVehicleWithID("v1").getBreakdownTime() > 0);
+	}
+	
+	@Test
+	public void metricsTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/15_misc.ini";
+		Ini ini = new Ini(example);
+		
+		TickMetrics[] metrics = new TickMetrics[2];
+		for (int regions = 1; regions <= 2; ++regions) {
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			Controller control = new Controller(ini, out, 40);
+			control.setRegionWorkers(regions);
+			metrics[regions - 1] = new TickMetrics();
+			control.setMetrics(metrics[regions - 1]);
+			control.executeBatch();
+			
+			TickMetrics m = metrics[regions - 1];
+			assertEquals(40, m.getTicks());
+			assertEquals(40, m.getTick().getCount());
+			assertEquals(ini.getSections().size(), m.getEventsExecuted());
+			assertEquals(out.size(), m.getReportBytes());
+			assertTrue(m.getVehiclesMoved() > 0);
+			assertTrue(m.getJunctionCrossings() > 0);
+			assertTrue(m.getTick().getP50Micros() <= m.getTick().getP99Micros());
+			assertTrue(m.getTick().getP99Micros() <= m.getTick().getMaxMicros());
+		}
+		
+		//Por regiones se mide otra fase, con los mismos contadores
+		assertEquals(40, metrics[0].getRoads().getCount());
+		assertEquals(0, metrics[0].getRegions().getCount());
+		assertEquals(40, metrics[1].getRegions().getCount());
+		assertEquals(metrics[0].getVehiclesMoved(), metrics[1].getVehiclesMoved());
+		assertEquals(metrics[0].getJunctionCrossings(), metrics[1].getJunctionCrossings());
+		
+		//El evento que falla no cuenta como ejecutado
+		TickMetrics failed = new TickMetrics();
+		Controller control = new Controller(
+			new Ini("src/test/resources/examples/err/03_parsingError.ini"), 
+			new ByteArrayOutputStream(), 10);
+		control.setMetrics(failed);
+		control.executeBatch();
+		assertEquals(3, failed.getEventsExecuted());
+		
+		//Se publica por JMX
+		ObjectName name = metrics[0].register();
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			assertEquals(40L, server.getAttribute(name, "Ticks"));
+			CompositeData tick = (CompositeData) server.getAttribute(name, "Tick");
+			assertEquals(40L, tick.get("count"));
+			server.invoke(name, "reset", null, null);
+			assertEquals(0, metrics[0].getTicks());
+		}
+		finally {
+			metrics[0].unregister();
+		}
+	}
+	
+	@Test
+	public void statsTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/15_misc.ini";
+		Ini ini = new Ini(example);
+		
+		//Una ventana por tick, otra cada 5 ticks y otra que sólo guarda las 4 últimas
+		StatsCollector raw = new StatsCollector(64, 1);
+		StatsCollector windowed = new StatsCollector(64, 5);
+		StatsCollector bounded = new StatsCollector(4, 5);
+		TickMetrics metrics = new TickMetrics();
+		for (StatsCollector stats : Arrays.asList(raw, windowed, bounded)) {
+			Controller control = new Controller(ini, new ByteArrayOutputStream(), 40);
+			control.setStats(stats);
+			control.setMetrics(stats == raw ? metrics : null);
+			control.executeBatch();
+		}
+		
+		assertEquals(40, raw.getNetwork().size());
+		assertEquals(1, raw.getNetwork().getStartTick(0));
+		assertEquals(40, raw.getNetwork().getStartTick(39));
+		assertEquals(8, windowed.getNetwork().size());
+		assertEquals(4, bounded.getNetwork().size());
+		assertEquals(21, bounded.getNetwork().getStartTick(0));
+		
+		//Los cruces muestreados son los medidos
+		long crossed = 0;
+		for (int row = 0; row < raw.getJunctionThroughput().rows(); ++row) {
+			for (int w = 0; w < 40; ++w) {
+				crossed += raw.getJunctionThroughput().getMax(row, w);
+			}
+		}
+		assertEquals(metrics.getJunctionCrossings(), crossed);
+		
+		//Cada ventana resume los ticks que agrupa
+		int road = raw.getRoadRow("r1");
+		assertTrue(road >= 0);
+		assertEquals(-1, raw.getRoadRow("none"));
+		for (int w = 0; w < 8; ++w) {
+			int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE, sum = 0;
+			for (int t = 5 * w; t < 5 * w + 5; ++t) {
+				int value = raw.getRoadOccupancy().getMin(road, t);
+				min = Math.min(min, value);
+				max = Math.max(max, value);
+				sum += value;
+			}
+			assertEquals(5 * w + 1, windowed.getRoadOccupancy().getStartTick(w));
+			assertEquals(min, windowed.getRoadOccupancy().getMin(road, w));
+			assertEquals(max, windowed.getRoadOccupancy().getMax(road, w));
+			assertEquals(sum / 5.0, windowed.getRoadOccupancy().getMean(road, w), 1e-9);
+		}
+		
+		boolean moving = false;
+		for (int w = 0; w < 40; ++w) {
+			moving |= raw.getNetwork().getMax(StatsCollector.MOVING, w) > 0;
+		}
+		assertTrue(moving);
+		
+		ByteArrayOutputStream csv = new ByteArrayOutputStream();
+		bounded.writeCsv(csv);
+		String[] lines = csv.toString().split("\\R");
+		assertEquals("series,id,start_tick,samples,min,max,mean", lines[0]);
+		assertEquals(1 + 4 * (2 * bounded.getRoadOccupancy().rows() 
+			+ bounded.getJunctionThroughput().rows() + 2), lines.length);
+	}
+	
+	@Test
+	public void flightEventsTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/15_misc.ini";
+		Ini ini = new Ini(example);
+		assertTrue(FlightEvents.isSupported());
+		
+		Map<String, Integer> count = new HashMap<>();
+		List<String> executed = new ArrayList<>();
+		recordFlight(example, count, executed);
+		
+		//Un tick y un informe por tick, y las cuatro fases del avance secuencial
+		assertEquals(Integer.valueOf(20), count.get("es.ucm.fdi.Tick"));
+		assertEquals(Integer.valueOf(20), count.get("es.ucm.fdi.ReportFlush"));
+		assertEquals(Integer.valueOf(80), count.get("es.ucm.fdi.Phase"));
+		assertEquals(ini.getSections().size(), executed.size());
+		assertTrue(executed.contains("NewJunction:j1"));
+		
+		//El tick en el que falla un evento también se graba
+		count.clear();
+		executed.clear();
+		recordFlight("src/test/resources/examples/err/03_parsingError.ini", count, executed);
+		assertEquals(Integer.valueOf(1), count.get("es.ucm.fdi.Tick"));
+		assertEquals(4, executed.size());
+		assertEquals("NewRoad:r2", executed.get(3));
+	}
+	
+	/**
+	 * Graba 20 ticks de la simulación de {@code file} y cuenta
+	 * los eventos de Flight Recorder de cada tipo, guardando
+	 * los {@code Event}s ejecutados en {@code executed}.
+	 */
+	private void recordFlight(String file, Map<String, Integer> count, 
+			List<String> executed) throws Exception {
+		File recording = File.createTempFile("simulation", ".jfr");
+		recording.deleteOnExit();
+		
+		FlightEvents flight = FlightEvents.create();
+		flight.startRecording(recording);
+		try {
+			Controller control = new Controller(new Ini(file), new ByteArrayOutputStream(), 20);
+			control.setFlightEvents(flight);
+			control.executeBatch();
+		}
+		finally {
+			flight.stopRecording();
+		}
+		
+		List<RecordedEvent> events = RecordingFile.readAllEvents(recording.toPath());
+		events.sort( (a, b) -> a.getStartTime().compareTo(b.getStartTime()) );
+		for (RecordedEvent e : events) {
+			String name = e.getEventType().getName();
+			count.merge(name, 1, Integer::sum);
+			if (name.equals("es.ucm.fdi.EventExecution")) {
+				executed.add(e.getString("eventClass") + ":" + e.getString("objectId"));
+			}
+		}
+	}
+	
+	@Test
+	public void histogramTest() {
+		TickMetrics.Histogram histogram = new TickMetrics.Histogram();
+		for (long nanos = 1; nanos <= 100000; ++nanos) {
+			histogram.record(nanos);
+		}
+		
+		//Error relativo menor del 7%
+		assertEquals(50000, histogram.percentile(0.5), 3500);
+		assertEquals(99000, histogram.percentile(0.99), 7000);
+		assertEquals(100000, histogram.percentile(1), 0);
+		assertEquals(50.0, histogram.stats().getMeanMicros(), 0.01);
+	}
+	
+	@Test
+	public void asyncListenerTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/15_misc.ini";
+		
+		//Sin presión: llegan todos los avances, en orden y con su tick
+		List<Integer> ticks = runAsyncListener(example, Backpressure.BLOCK, 4, false, null);
+		assertEquals(40, ticks.size());
+		for (int t = 0; t < 40; ++t) {
+			assertEquals(t, (int) ticks.get(t));
+		}
+		
+		//Con el Listener bloqueado, los avances se juntan o se descartan
+		//sin parar la simulación, y el último sigue llegando
+		for (Backpressure policy : new Backpressure[] { 
+				Backpressure.COALESCE, Backpressure.DROP_OLDEST }) {
+			long[] lost = new long[1];
+			ticks = runAsyncListener(example, policy, 2, true, lost);
+			
+			assertTrue(policy.toString(), ticks.size() < 40);
+			assertTrue(policy.toString(), lost[0] > 0);
+			assertEquals(policy.toString(), 39, (int) ticks.get(ticks.size() - 1));
+			for (int i = 1; i < ticks.size(); ++i) {
+				assertTrue(policy.toString(), ticks.get(i - 1) < ticks.get(i));
+			}
+		}
+	}
+	
+	@Test(timeout = 10000)
+	public void asyncListenerFailureTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/15_misc.ini";
+		
+		//Un Listener que falla no detiene el reparto
+		Controller control = new Controller(new Ini(example), null, 40);
+		control.pushEvents();
+		AsyncListener failing = new AsyncListener( (ue, error) -> {
+			throw new IllegalStateException("failing listener");
+		}, 1, Backpressure.BLOCK);
+		control.getSimulator().addSimulatorListener(failing, EventType.ADVANCED);
+		control.simulate(40);
+		failing.close();
+		assertEquals(40, failing.getFailed());
+		
+		//Si el hilo de reparto muere, la simulación no se bloquea
+		control = new Controller(new Ini(example), null, 40);
+		control.pushEvents();
+		AsyncListener dead = new AsyncListener( (ue, error) -> {
+			throw new AssertionError("dead listener");
+		}, 1, Backpressure.BLOCK);
+		control.getSimulator().addSimulatorListener(dead, EventType.ADVANCED);
+		control.simulate(40);
+		dead.close();
+		assertTrue(dead.getDropped() > 0);
+	}
+	
+	@Test
+	public void typedListenersTest() throws Exception {
+		String example = "src/test/resources/examples/advanced/15_misc.ini";
+		Controller control = new Controller(new Ini(example), null, 10);
+		TrafficSimulation sim = control.getSimulator();
+		
+		//Cada Listener sólo recibe los tipos a los que se suscribe
+		List<EventType> advanced = new ArrayList<>();
+		List<EventType> newEvents = new ArrayList<>();
+		sim.addSimulatorListener( (ue, error) -> advanced.add(ue.getEvent()), 
+				EventType.ADVANCED);
+		List<Integer> loaded = new ArrayList<>();
+		TrafficSimulation.Listener onNew = (ue, error) -> {
+			newEvents.add(ue.getEvent());
+			loaded.add(ue.getEventList().size());
+		};
+		sim.addSimulatorListener(onNew, EventType.NEW_EVENT, EventType.RESET);
+		
+		control.pushEvents();
+		control.simulate(10);
+		
+		assertEquals(Collections.nCopies(10, EventType.ADVANCED), advanced);
+		//Cargar el archivo da un único aviso con todos sus eventos
+		assertEquals(Collections.singletonList(EventType.NEW_EVENT), newEvents);
+		assertEquals(Collections.singletonList(new Ini(example).getSections().size()), 
+				loaded);
+		assertFalse(newEvents.contains(EventType.ADVANCED));
+		
+		//Cada NEW_EVENT lleva una copia de la cola, que no cambia
+		//al añadir más eventos
+		List<List<es.ucm.fdi.model.events.Event>> queues = new ArrayList<>();
+		sim.addSimulatorListener( (ue, error) -> queues.add(ue.getEventList()), 
+				EventType.NEW_EVENT);
+		sim.pushEvent(new NewJunction(20, "j_extra1"));
+		sim.pushEvent(new NewJunction(15, "j_extra2"));
+		
+		int pending = sim.getEvents().sizeOfValues();
+		assertEquals(pending - 1, queues.get(0).size());
+		assertEquals(pending, queues.get(1).size());
+		assertEquals(sim.getEvents().valuesList(), queues.get(1));
+		try {
+			queues.get(1).clear();
+			fail("The queue copy must be read-only");
+		} catch (UnsupportedOperationException e) {
+			//Esperado
+		}
+		
+		//Y deja de recibirlos al quitarlo
+		newEvents.clear();
+		sim.removeListener(onNew);
+		sim.reset();
+		control.pushEvents();
+		assertTrue(newEvents.isEmpty());
+	}
+	
+	/**
+	 * Simula 40 ticks con un {@code AsyncListener} y devuelve los ticks
+	 * de los {@code ADVANCED} recibidos. Si {@code stall}, el Listener
+	 * no atiende ningún aviso hasta que termina la simulación.
+	 */
+	private List<Integer> runAsyncListener(String file, Backpressure policy,
+			int capacity, boolean stall, long[] lost) throws Exception {
+		Controller control = new Controller(new Ini(file), null, 40);
+		control.pushEvents();
+		
+		CountDownLatch release = new CountDownLatch(stall ? 1 : 0);
+		List<Integer> ticks = Collections.synchronizedList(new ArrayList<>());
+		AsyncListener async = new AsyncListener( (ue, error) -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			if ( ue.getEvent() == EventType.ADVANCED ) {
+				ticks.add(ue.getCurrentTime());
+			}
+		}, capacity, policy);
+		
+		control.getSimulator().addSimulatorListener(async);
+		control.simulate(40);
+		release.countDown();
+		async.close();
+		
+		if (lost != null) {
+			lost[0] = async.getCoalesced() + async.getDropped();
+		}
+		return ticks;
+	}
+	
+	private byte[] runExample(String file, int workers) throws Exception {
+		return runExample(file, workers, FastForward.OFF, 10);
+	}
+	
+	private byte[] runExample(String file, int workers, 
+			FastForward mode, int ticks) throws Exception {
+		return runExample(file, workers, 
+				TrafficSimulation.DEFAULT_ROAD_BATCH_SIZE, mode, ticks);
+	}
+	
+	private byte[] runExample(String file, int workers, int batch,
+			FastForward mode, int ticks) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		
+		try ( Controller control = new Controller(new Ini(file), out, ticks) ) {
+			control.setRoadWorkers(workers);
+			control.setRoadBatchSize(batch);
+			control.setFastForward(mode);
+			control.executeBatch();
+		}
+		
+		return out.toByteArray();
+	}
+	
 }
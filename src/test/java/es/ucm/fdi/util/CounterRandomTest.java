@@ -0,0 +1,47 @@
+package es.ucm.fdi.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CounterRandom
+ */
+public class CounterRandomTest {
+
+    private static final long[] SEEDS = { 0, 1, -1, 42, 314709265, Long.MAX_VALUE };
+
+    @Test
+    public void sameSequenceAsRandom() {
+        for (long seed : SEEDS) {
+            Random expected = new Random(seed);
+            CounterRandom actual = new CounterRandom(seed);
+
+            for (int i = 0; i < 1000; ++i) {
+                assertEquals(expected.nextDouble(), actual.nextDouble(), 0.0);
+                // Power of two and rejection-sampled bounds
+                assertEquals(expected.nextInt(8), actual.nextInt(8));
+                assertEquals(expected.nextInt(3), actual.nextInt(3));
+                assertEquals(expected.nextInt(Integer.MAX_VALUE / 3 * 2),
+                        actual.nextInt(Integer.MAX_VALUE / 3 * 2));
+            }
+        }
+    }
+
+    @Test
+    public void drawIsPureFunctionOfIndex() {
+        CounterRandom r = new CounterRandom(7);
+        int[] sequential = new int[50];
+        for (int i = 0; i < sequential.length; ++i) {
+            sequential[i] = r.nextInt(1 << 20);
+        }
+        assertEquals(50, r.getCounter());
+
+        // Any draw can be computed directly, in any order
+        for (int i = sequential.length - 1; i >= 0; --i) {
+            assertEquals(sequential[i], CounterRandom.next(7, i + 1, 31) >> 11);
+        }
+    }
+}
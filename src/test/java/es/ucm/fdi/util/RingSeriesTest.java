@@ -0,0 +1,112 @@
+package es.ucm.fdi.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RingSeries
+ */
+public class RingSeriesTest {
+
+    private static void sample(RingSeries series, int tick, int... values) {
+        series.beginSample(tick);
+        for (int r = 0; r < values.length; ++r) {
+            series.add(r, values[r]);
+        }
+    }
+
+    @Test
+    public void rawSamples() {
+        RingSeries series = new RingSeries(4, 1);
+        series.ensureRows(2);
+        for (int t = 1; t <= 3; ++t) {
+            sample(series, t, t, 10 * t);
+        }
+
+        assertEquals(3, series.size());
+        for (int w = 0; w < 3; ++w) {
+            assertEquals(w + 1, series.getStartTick(w));
+            assertEquals(1, series.getSamples(w));
+            assertEquals(w + 1, series.getMin(0, w));
+            assertEquals(w + 1, series.getMax(0, w));
+            assertEquals(10 * (w + 1), series.getMean(1, w), 0.0);
+        }
+    }
+
+    @Test
+    public void downsampling() {
+        RingSeries series = new RingSeries(8, 3);
+        series.ensureRows(1);
+        int[] values = { 5, 1, 3, 7, 2, 9, 4 };
+        for (int t = 0; t < values.length; ++t) {
+            sample(series, t, values[t]);
+        }
+
+        assertEquals(3, series.size());
+        assertEquals(0, series.getStartTick(0));
+        assertEquals(1, series.getMin(0, 0));
+        assertEquals(5, series.getMax(0, 0));
+        assertEquals(3.0, series.getMean(0, 0), 0.0);
+
+        assertEquals(3, series.getStartTick(1));
+        assertEquals(2, series.getMin(0, 1));
+        assertEquals(9, series.getMax(0, 1));
+        assertEquals(6.0, series.getMean(0, 1), 0.0);
+
+        // Last window still open
+        assertEquals(1, series.getSamples(2));
+        assertEquals(4.0, series.getMean(0, 2), 0.0);
+    }
+
+    @Test
+    public void oldestWindowsAreDropped() {
+        RingSeries series = new RingSeries(3, 2);
+        series.ensureRows(1);
+        for (int t = 0; t < 10; ++t) {
+            sample(series, t, t);
+        }
+
+        assertEquals(3, series.size());
+        assertEquals(4, series.getStartTick(0));
+        assertEquals(4, series.getMin(0, 0));
+        assertEquals(8, series.getStartTick(2));
+        assertEquals(9, series.getMax(0, 2));
+    }
+
+    @Test
+    public void rowsAddedLateReadAsZero() {
+        RingSeries series = new RingSeries(4, 4);
+        series.ensureRows(1);
+        sample(series, 0, 1);
+        sample(series, 1, 1);
+
+        series.ensureRows(2);
+        sample(series, 2, 1, 8);
+        sample(series, 3, 1, 4);
+
+        assertEquals(1, series.size());
+        assertEquals(0, series.getMin(1, 0));
+        assertEquals(8, series.getMax(1, 0));
+        assertEquals(3.0, series.getMean(1, 0), 0.0);
+    }
+
+    @Test
+    public void clear() {
+        RingSeries series = new RingSeries(2, 1);
+        series.ensureRows(3);
+        sample(series, 0, 1, 2, 3);
+        series.clear();
+
+        assertEquals(0, series.size());
+        assertEquals(0, series.rows());
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void windowOutOfRange() {
+        RingSeries series = new RingSeries(2, 1);
+        series.ensureRows(1);
+        sample(series, 0, 1);
+        series.getMin(0, 1);
+    }
+}